@@ -0,0 +1,35 @@
+package org.jetlinks.community.elastic.search.aggreation;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 聚合查询结果缓存配置
+ *
+ * @author zhouhao
+ * @see AggregationResultCache
+ * @since 1.0
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "elasticsearch.aggregation.cache")
+public class AggregationCacheProperties {
+
+    private boolean enabled = false;
+
+    //已经结束的时间分组的缓存时间
+    private Duration closedTtl = Duration.ofMinutes(10);
+
+    //未结束的时间分组的缓存时间,在此时间内相同的查询共享结果
+    private Duration openTtl = Duration.ofSeconds(1);
+
+    //时间分组结束后多久才认为数据不会再变化,用于容忍延迟写入的数据
+    private Duration closedDelay = Duration.ofSeconds(10);
+
+    //最大缓存数量,超过后淘汰最早过期的缓存
+    private int maxSize = 1024;
+
+}
@@ -0,0 +1,119 @@
+package org.jetlinks.community.elastic.search.aggreation;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 聚合查询结果缓存,相同的查询在缓存有效期内直接返回缓存的结果,
+ * 同时正在执行的相同查询只会向elasticsearch发起一次请求.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+@Slf4j
+class AggregationResultCache {
+
+    private final AggregationCacheProperties properties;
+
+    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
+
+    //正在执行的查询
+    private final Map<String, Mono<List<Map<String, Object>>>> inflight = new ConcurrentHashMap<>();
+
+    AggregationResultCache(AggregationCacheProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * 获取缓存的结果,缓存不存在时执行查询.
+     *
+     * @param key    缓存key
+     * @param ttl    缓存有效期,为<code>null</code>时只合并正在执行的查询,不缓存结果
+     * @param loader 查询
+     * @return 查询结果
+     */
+    Flux<Map<String, Object>> get(String key, Duration ttl, Supplier<Flux<Map<String, Object>>> loader) {
+        return Mono
+            .defer(() -> {
+                CacheEntry entry = cache.get(key);
+                if (entry != null) {
+                    if (!entry.isExpired(System.currentTimeMillis())) {
+                        return Mono.just(entry.rows);
+                    }
+                    cache.remove(key, entry);
+                }
+                return inflight.computeIfAbsent(key, ignore -> load(key, ttl, loader));
+            })
+            .flatMapIterable(rows -> rows)
+            //复制一份,防止缓存被修改
+            .<Map<String, Object>>map(HashMap::new);
+    }
+
+    private Mono<List<Map<String, Object>>> load(String key, Duration ttl, Supplier<Flux<Map<String, Object>>> loader) {
+        return loader
+            .get()
+            .collectList()
+            .doOnNext(rows -> {
+                if (ttl != null) {
+                    put(key, new CacheEntry(rows, System.currentTimeMillis() + ttl.toMillis()));
+                }
+            })
+            .doFinally(signal -> inflight.remove(key))
+            .cache();
+    }
+
+    private void put(String key, CacheEntry entry) {
+        if (properties.getMaxSize() <= 0) {
+            return;
+        }
+        if (cache.size() >= properties.getMaxSize()) {
+            long now = System.currentTimeMillis();
+            cache.entrySet().removeIf(e -> e.getValue().isExpired(now));
+            //淘汰最早过期的缓存
+            while (cache.size() >= properties.getMaxSize()) {
+                String eldest = null;
+                long expireAt = Long.MAX_VALUE;
+                for (Map.Entry<String, CacheEntry> e : cache.entrySet()) {
+                    if (e.getValue().expireAt < expireAt) {
+                        expireAt = e.getValue().expireAt;
+                        eldest = e.getKey();
+                    }
+                }
+                if (eldest == null) {
+                    break;
+                }
+                log.debug("聚合查询缓存已满:{},淘汰:{}", cache.size(), eldest);
+                cache.remove(eldest);
+            }
+        }
+        cache.put(key, entry);
+    }
+
+    int size() {
+        return cache.size();
+    }
+
+    void clear() {
+        cache.clear();
+    }
+
+    @AllArgsConstructor
+    static class CacheEntry {
+        private final List<Map<String, Object>> rows;
+
+        private final long expireAt;
+
+        boolean isExpired(long now) {
+            return now >= expireAt;
+        }
+    }
+}
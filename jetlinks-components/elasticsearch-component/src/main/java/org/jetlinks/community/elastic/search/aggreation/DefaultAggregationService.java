@@ -26,7 +26,10 @@ import org.jetlinks.community.elastic.search.index.ElasticSearchIndexManager;
 import org.jetlinks.community.elastic.search.service.AggregationService;
 import org.jetlinks.community.elastic.search.utils.ElasticSearchConverter;
 import org.jetlinks.community.elastic.search.utils.ReactorActionListener;
+import org.jetlinks.community.timeseries.query.AggregationColumn;
 import org.jetlinks.community.timeseries.query.AggregationQueryParam;
+import org.jetlinks.community.timeseries.query.Group;
+import org.jetlinks.community.timeseries.query.TimeGroup;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
@@ -49,11 +52,23 @@ public class DefaultAggregationService implements AggregationService {
 
     private final ElasticSearchIndexManager indexManager;
 
-    @Autowired
+    private final AggregationCacheProperties cacheProperties;
+
+    private final AggregationResultCache cache;
+
     public DefaultAggregationService(ElasticSearchIndexManager indexManager,
                                      ElasticRestClient restClient) {
+        this(indexManager, restClient, new AggregationCacheProperties());
+    }
+
+    @Autowired
+    public DefaultAggregationService(ElasticSearchIndexManager indexManager,
+                                     ElasticRestClient restClient,
+                                     AggregationCacheProperties cacheProperties) {
         this.restClient = restClient;
         this.indexManager = indexManager;
+        this.cacheProperties = cacheProperties;
+        this.cache = new AggregationResultCache(cacheProperties);
     }
 
     @Override
@@ -120,8 +135,120 @@ public class DefaultAggregationService implements AggregationService {
 
     @Override
     public Flux<Map<String, Object>> aggregation(String index, AggregationQueryParam aggregationQueryParam) {
-        QueryParam queryParam = prepareQueryParam(aggregationQueryParam);
-        BucketAggregationsStructure structure = createAggParameter(aggregationQueryParam);
+        long startWithTime = calculateStartWithTime(aggregationQueryParam);
+        long endWithTime = aggregationQueryParam.getEndWithTime();
+        if (!cacheProperties.isEnabled() || aggregationQueryParam.getLimit() <= 0) {
+            return doAggregation(index, aggregationQueryParam, startWithTime, endWithTime);
+        }
+        TimeGroup timeGroup = aggregationQueryParam.getGroupByTime();
+        long closedTime = System.currentTimeMillis() - cacheProperties.getClosedDelay().toMillis();
+        //没有按时间分组,只合并相同的查询
+        if (timeGroup == null || timeGroup.getInterval() == null) {
+            return cache.get(createCacheKey(index, aggregationQueryParam, startWithTime, endWithTime),
+                endWithTime <= closedTime ? cacheProperties.getClosedTtl() : null,
+                () -> doAggregation(index, aggregationQueryParam, startWithTime, endWithTime));
+        }
+        //按时间分组对齐开始时间,保证不同时间发起的相同查询使用相同的缓存
+        long start = timeGroup.getBucketStart(startWithTime);
+        //查询的时间范围都已结束
+        if (endWithTime <= closedTime) {
+            return cache.get(createCacheKey(index, aggregationQueryParam, start, endWithTime),
+                cacheProperties.getClosedTtl(),
+                () -> doAggregation(index, aggregationQueryParam, start, endWithTime));
+        }
+        //已结束和未结束的时间分组的分界点
+        long split = Math.max(start, timeGroup.getBucketStart(closedTime));
+        //结束时间按分组对齐,结束时间在同一个分组内的查询(如end=now)共用缓存,结束分组不同的查询不共用
+        long endBucket = timeGroup.getBucketStart(endWithTime);
+        Flux<Map<String, Object>> open = cache.get(createCacheKey(index, aggregationQueryParam, split, endBucket).concat(":open"),
+            cacheProperties.getOpenTtl(),
+            () -> doAggregation(index, aggregationQueryParam, split, endWithTime));
+        if (split <= start) {
+            return open;
+        }
+        //分界点变化后缓存就不会再被使用
+        Duration closedTtl = timeGroup.getInterval().plus(cacheProperties.getClosedDelay());
+        if (closedTtl.compareTo(cacheProperties.getClosedTtl()) > 0) {
+            closedTtl = cacheProperties.getClosedTtl();
+        }
+        Flux<Map<String, Object>> closed = cache.get(createCacheKey(index, aggregationQueryParam, start, split),
+            closedTtl,
+            () -> doAggregation(index, aggregationQueryParam, start, split - 1));
+        //按分组合并后再限制数量
+        return Mono
+            .zip(open.collectList(), closed.collectList())
+            .flatMapMany(tp2 -> {
+                List<Map<String, Object>> merged = mergeBuckets(aggregationQueryParam, tp2.getT1(), tp2.getT2());
+                if (merged == null) {
+                    return doAggregation(index, aggregationQueryParam, startWithTime, endWithTime);
+                }
+                return Flux.fromIterable(merged);
+            })
+            .take(aggregationQueryParam.getLimit());
+    }
+
+    /**
+     * 按时间分组和字段分组的值合并未结束和已结束的结果,顺序和只查询一次时相同(时间倒序).
+     * 同一个分组同时出现在两个结果中时合并聚合值,无法合并(如平均值)时返回<code>null</code>.
+     */
+    protected static List<Map<String, Object>> mergeBuckets(AggregationQueryParam param,
+                                                            List<Map<String, Object>> open,
+                                                            List<Map<String, Object>> closed) {
+        Map<List<Object>, Map<String, Object>> merged = new LinkedHashMap<>();
+        for (Map<String, Object> row : open) {
+            merged.put(createBucketKey(param, row), row);
+        }
+        for (Map<String, Object> row : closed) {
+            Map<String, Object> exists = merged.putIfAbsent(createBucketKey(param, row), row);
+            if (exists != null && !mergeBucket(param, exists, row)) {
+                return null;
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    private static List<Object> createBucketKey(AggregationQueryParam param, Map<String, Object> row) {
+        List<Object> key = new ArrayList<>();
+        key.add(row.get(param.getGroupByTime().getAlias()));
+        for (Group group : param.getGroupBy()) {
+            key.add(row.get(group.getAlias()));
+        }
+        return key;
+    }
+
+    private static boolean mergeBucket(AggregationQueryParam param, Map<String, Object> target, Map<String, Object> source) {
+        for (AggregationColumn column : param.getAggColumns()) {
+            Object left = target.get(column.getAlias());
+            Object right = source.get(column.getAlias());
+            if (!(right instanceof Number)) {
+                continue;
+            }
+            if (!(left instanceof Number)) {
+                target.put(column.getAlias(), right);
+                continue;
+            }
+            double l = ((Number) left).doubleValue(), r = ((Number) right).doubleValue();
+            switch (column.getAggregation()) {
+                case SUM:
+                case COUNT:
+                    target.put(column.getAlias(), l + r);
+                    break;
+                case MIN:
+                    target.put(column.getAlias(), Math.min(l, r));
+                    break;
+                case MAX:
+                    target.put(column.getAlias(), Math.max(l, r));
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    protected Flux<Map<String, Object>> doAggregation(String index, AggregationQueryParam aggregationQueryParam, long startWithTime, long endWithTime) {
+        QueryParam queryParam = prepareQueryParam(aggregationQueryParam, startWithTime, endWithTime);
+        BucketAggregationsStructure structure = createAggParameter(aggregationQueryParam, startWithTime, endWithTime);
         return indexManager
             .getIndexStrategy(index)
             .flatMap(strategy ->
@@ -149,6 +276,31 @@ public class DefaultAggregationService implements AggregationService {
             ;
     }
 
+    //生成缓存key,除了查询时间范围外相同的查询生成相同的key
+    protected static String createCacheKey(String index, AggregationQueryParam param, long startWithTime, long endWithTime) {
+        StringJoiner joiner = new StringJoiner("|");
+        joiner.add(index)
+            .add(param.getTimeProperty())
+            .add(String.valueOf(param.getLimit()))
+            .add(String.valueOf(startWithTime))
+            .add(String.valueOf(endWithTime));
+        param.getAggColumns()
+            .stream()
+            .map(column -> column.getProperty() + ":" + column.getAlias() + ":" + column.getAggregation())
+            .sorted()
+            .forEach(joiner::add);
+        TimeGroup timeGroup = param.getGroupByTime();
+        if (timeGroup != null) {
+            joiner.add(timeGroup.getProperty() + ":" + timeGroup.getInterval() + ":" + timeGroup.getAlias() + ":" + timeGroup.getFormat());
+        }
+        for (Group group : param.getGroupBy()) {
+            joiner.add(group.getProperty() + ":" + group.getAlias());
+        }
+        joiner.add(JSON.toJSONString(param.getQueryParam().getTerms()));
+        joiner.add(JSON.toJSONString(param.getQueryParam().getSorts()));
+        return joiner.toString();
+    }
+
     static class BucketsParser {
 
         private List<Map<String, Object>> result = new ArrayList<>();
@@ -185,9 +337,13 @@ public class DefaultAggregationService implements AggregationService {
     }
 
     protected static QueryParam prepareQueryParam(AggregationQueryParam param) {
+        return prepareQueryParam(param, calculateStartWithTime(param), param.getEndWithTime());
+    }
+
+    protected static QueryParam prepareQueryParam(AggregationQueryParam param, long startWithTime, long endWithTime) {
         QueryParam queryParam = param.getQueryParam().clone();
         queryParam.setPaging(false);
-        queryParam.and(param.getTimeProperty(), TermType.btw, Arrays.asList(calculateStartWithTime(param), param.getEndWithTime()));
+        queryParam.and(param.getTimeProperty(), TermType.btw, Arrays.asList(startWithTime, endWithTime));
         if (queryParam.getSorts().isEmpty()) {
             queryParam.orderBy(param.getTimeProperty()).desc();
         }
@@ -195,9 +351,13 @@ public class DefaultAggregationService implements AggregationService {
     }
 
     protected BucketAggregationsStructure createAggParameter(AggregationQueryParam param) {
+        return createAggParameter(param, calculateStartWithTime(param), param.getEndWithTime());
+    }
+
+    protected BucketAggregationsStructure createAggParameter(AggregationQueryParam param, long startWithTime, long endWithTime) {
         List<BucketAggregationsStructure> structures = new ArrayList<>();
         if (param.getGroupByTime() != null) {
-            structures.add(convertAggGroupTimeStructure(param));
+            structures.add(convertAggGroupTimeStructure(param, startWithTime, endWithTime));
         }
         if (param.getGroupBy() != null && !param.getGroupBy().isEmpty()) {
             structures.addAll(getTermTypeStructures(param));
@@ -224,6 +384,10 @@ public class DefaultAggregationService implements AggregationService {
     }
 
     protected BucketAggregationsStructure convertAggGroupTimeStructure(AggregationQueryParam param) {
+        return convertAggGroupTimeStructure(param, calculateStartWithTime(param), param.getEndWithTime());
+    }
+
+    protected BucketAggregationsStructure convertAggGroupTimeStructure(AggregationQueryParam param, long startWithTime, long endWithTime) {
         BucketAggregationsStructure structure = new BucketAggregationsStructure();
         structure.setInterval(durationFormat(param.getGroupByTime().getInterval()));
         structure.setType(BucketType.DATE_HISTOGRAM);
@@ -231,14 +395,10 @@ public class DefaultAggregationService implements AggregationService {
         structure.setName(param.getGroupByTime().getAlias());
         structure.setField(param.getGroupByTime().getProperty());
         structure.setSort(Sort.desc(OrderType.KEY));
-        structure.setExtendedBounds(getExtendedBounds(param));
+        structure.setExtendedBounds(new ExtendedBounds(startWithTime, endWithTime));
         return structure;
     }
 
-    protected static ExtendedBounds getExtendedBounds(AggregationQueryParam param) {
-        return new ExtendedBounds(calculateStartWithTime(param), param.getEndWithTime());
-    }
-
     private static long calculateStartWithTime(AggregationQueryParam param) {
         long startWithParam = param.getStartWithTime();
         if (param.getGroupByTime() != null && param.getGroupByTime().getInterval() != null) {
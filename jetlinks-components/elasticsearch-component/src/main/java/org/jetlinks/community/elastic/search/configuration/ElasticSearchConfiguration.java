@@ -4,7 +4,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.jetlinks.community.elastic.search.ElasticRestClient;
+import org.jetlinks.community.elastic.search.aggreation.AggregationCacheProperties;
 import org.jetlinks.community.elastic.search.index.ElasticSearchIndexProperties;
+import org.jetlinks.community.elastic.search.index.lifecycle.IndexLifecycleProperties;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
@@ -16,7 +18,12 @@ import org.springframework.context.annotation.Configuration;
  **/
 @Configuration
 @Slf4j
-@EnableConfigurationProperties({ElasticSearchProperties.class, ElasticSearchIndexProperties.class})
+@EnableConfigurationProperties({
+    ElasticSearchProperties.class,
+    ElasticSearchIndexProperties.class,
+    IndexLifecycleProperties.class,
+    AggregationCacheProperties.class
+})
 public class ElasticSearchConfiguration {
 
     @Autowired
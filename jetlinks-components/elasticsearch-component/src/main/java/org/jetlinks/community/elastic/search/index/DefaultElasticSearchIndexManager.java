@@ -4,6 +4,7 @@ import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
@@ -44,6 +45,11 @@ public class DefaultElasticSearchIndexManager implements ElasticSearchIndexManag
                 .doOnNext(metadata -> indexMetadataStore.put(metadata.getIndex(), metadata))));
     }
 
+    @Override
+    public Flux<ElasticSearchIndexMetadata> getAllIndexMetadata() {
+        return Flux.fromIterable(indexMetadataStore.values());
+    }
+
     protected Mono<ElasticSearchIndexMetadata> doLoadMetaData(String index) {
         return getIndexStrategy(index)
             .flatMap(strategy -> strategy.loadIndexMetadata(index));
@@ -1,5 +1,6 @@
 package org.jetlinks.community.elastic.search.index;
 
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 public interface ElasticSearchIndexManager {
@@ -10,4 +11,11 @@ public interface ElasticSearchIndexManager {
 
     Mono<ElasticSearchIndexStrategy> getIndexStrategy(String index);
 
+    /**
+     * 获取全部已注册的索引元数据
+     *
+     * @return 索引元数据
+     */
+    Flux<ElasticSearchIndexMetadata> getAllIndexMetadata();
+
 }
@@ -42,4 +42,15 @@ public interface ElasticSearchIndexStrategy {
     Mono<Void> putIndex(ElasticSearchIndexMetadata metadata);
 
     Mono<ElasticSearchIndexMetadata> loadIndexMetadata(String index);
+
+    /**
+     * 判断ES中实际存在的索引是否属于此策略下的原始索引,用于索引生命周期管理
+     *
+     * @param index         原始索引名
+     * @param physicalIndex ES中实际的索引名
+     * @return 是否属于
+     */
+    default boolean isPhysicalIndex(String index, String physicalIndex) {
+        return getIndexForSave(index).equals(physicalIndex);
+    }
 }
@@ -0,0 +1,41 @@
+package org.jetlinks.community.elastic.search.index;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * 支持按大小滚动的索引策略,滚动后新的数据将写入到新的索引中.
+ * <p>
+ * 当前写入的索引以ES中实际存在的索引为准,集群中的各个节点不需要同步滚动状态.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+public interface RolloverElasticSearchIndexStrategy extends ElasticSearchIndexStrategy {
+
+    /**
+     * 从ES中获取当前用于保存数据的索引,保存数据时应该使用此方法代替{@link ElasticSearchIndexStrategy#getIndexForSave(String)}
+     *
+     * @param index 原始索引名
+     * @return 索引名
+     */
+    Mono<String> loadIndexForSave(String index);
+
+    /**
+     * 根据ES中已经存在的索引获取当前用于保存数据的索引
+     *
+     * @param index           原始索引名
+     * @param physicalIndexes ES中实际存在的索引
+     * @return 索引名
+     */
+    String getIndexForSave(String index, Collection<String> physicalIndexes);
+
+    /**
+     * 滚动索引,在ES中创建新的索引,之后保存的数据将写入新的索引
+     *
+     * @param index 原始索引名
+     * @return 新的用于保存数据的索引名
+     */
+    Mono<String> rollover(String index);
+}
@@ -0,0 +1,337 @@
+package org.jetlinks.community.elastic.search.index.lifecycle;
+
+import com.alibaba.fastjson.JSON;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.close.CloseIndexRequest;
+import org.elasticsearch.action.admin.indices.close.CloseIndexResponse;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.admin.indices.forcemerge.ForceMergeRequest;
+import org.elasticsearch.action.admin.indices.forcemerge.ForceMergeResponse;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.action.support.master.AcknowledgedResponse;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.common.settings.Settings;
+import org.jetlinks.community.elastic.search.ElasticRestClient;
+import org.jetlinks.community.elastic.search.index.ElasticSearchIndexManager;
+import org.jetlinks.community.elastic.search.index.ElasticSearchIndexMetadata;
+import org.jetlinks.community.elastic.search.index.ElasticSearchIndexStrategy;
+import org.jetlinks.community.elastic.search.index.RolloverElasticSearchIndexStrategy;
+import org.jetlinks.community.elastic.search.utils.ReactorActionListener;
+import org.jetlinks.community.micrometer.MeterRegistryManager;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 索引生命周期管理,定时根据{@link IndexLifecyclePolicy}对索引进行滚动,合并段,只读,关闭以及删除.
+ * <p>
+ * 所有动作串行执行,并且每个动作之间间隔{@link IndexLifecycleProperties#getActionInterval()},防止对集群造成压力.
+ * 集群中只有获取到{@link IndexLifecycleLock}的节点执行,避免多个节点同时滚动,关闭或者删除同一个索引.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+@Component
+@Slf4j
+public class ElasticSearchIndexLifecycleManager {
+
+    static final String metric = "elasticsearch_index_lifecycle";
+
+    private final ElasticRestClient client;
+
+    private final ElasticSearchIndexManager indexManager;
+
+    private final IndexLifecycleProperties properties;
+
+    private final MeterRegistry registry;
+
+    //本次执行等待处理的动作数量
+    private final AtomicLong pending = new AtomicLong();
+
+    private final IndexLifecycleLock lock;
+
+    private Disposable disposable;
+
+    public ElasticSearchIndexLifecycleManager(ElasticRestClient client,
+                                              ElasticSearchIndexManager indexManager,
+                                              IndexLifecycleProperties properties,
+                                              MeterRegistryManager registryManager) {
+        this.client = client;
+        this.indexManager = indexManager;
+        this.properties = properties;
+        this.registry = registryManager.getMeterRegister(metric, "target", "action");
+        this.lock = new IndexLifecycleLock(client, properties.getLockLeaseTime().toMillis());
+        Gauge.builder(metric, pending, AtomicLong::get)
+            .tag("target", "pending")
+            .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        disposable = Flux
+            .interval(properties.getInitialDelay(), properties.getInterval())
+            .onBackpressureDrop()
+            .concatMap(ignore -> execute()
+                .onErrorResume(err -> {
+                    log.error("execute elasticsearch index lifecycle error", err);
+                    return Mono.empty();
+                }))
+            .subscribe();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (disposable != null) {
+            disposable.dispose();
+        }
+    }
+
+    /**
+     * 执行一次生命周期管理
+     *
+     * @return 执行成功的动作数量
+     */
+    public Mono<Long> execute() {
+        return lock
+            .tryAcquire()
+            .flatMap(acquired -> {
+                if (!acquired) {
+                    log.debug("elasticsearch index lifecycle is running on other node");
+                    return Mono.just(0L);
+                }
+                return executeActions();
+            });
+    }
+
+    private Mono<Long> executeActions() {
+        long now = System.currentTimeMillis();
+        return loadIndices()
+            .flatMapMany(indices -> indexManager
+                .getAllIndexMetadata()
+                .map(ElasticSearchIndexMetadata::getIndex)
+                .distinct()
+                .flatMap(index -> Mono
+                    .justOrEmpty(properties.getPolicy(index))
+                    .flatMapMany(policy -> indexManager
+                        .getIndexStrategy(index)
+                        .flatMapMany(strategy -> plan(index, strategy, policy, indices, now)))))
+            .take(properties.getMaxActionsPerRun())
+            .collectList()
+            .doOnNext(tasks -> pending.set(tasks.size()))
+            .flatMapMany(Flux::fromIterable)
+            .concatMap(task -> Mono
+                .delay(properties.getActionInterval())
+                //每个动作执行前续期,锁被其他节点获取后停止执行
+                .then(lock.tryAcquire())
+                .flatMap(acquired -> acquired ? doExecute(task).thenReturn(true) : Mono.just(false))
+                .doFinally(s -> pending.decrementAndGet()))
+            .takeWhile(Boolean::booleanValue)
+            .count()
+            .doFinally(s -> pending.set(0))
+            .doOnNext(count -> {
+                if (count > 0) {
+                    log.info("elasticsearch index lifecycle complete,actions:{}.use time:{}ms",
+                        count, System.currentTimeMillis() - now);
+                }
+            });
+    }
+
+    protected Flux<IndexLifecycleTask> plan(String index,
+                                            ElasticSearchIndexStrategy strategy,
+                                            IndexLifecyclePolicy policy,
+                                            List<IndexInfo> indices,
+                                            long now) {
+        List<IndexInfo> physicalIndexes = indices
+            .stream()
+            .filter(info -> strategy.isPhysicalIndex(index, info.getIndex()))
+            .collect(Collectors.toList());
+        String writeIndex = strategy instanceof RolloverElasticSearchIndexStrategy
+            ? ((RolloverElasticSearchIndexStrategy) strategy)
+            .getIndexForSave(index, physicalIndexes.stream().map(IndexInfo::getIndex).collect(Collectors.toList()))
+            : strategy.getIndexForSave(index);
+
+        return Flux
+            .fromIterable(physicalIndexes)
+            .flatMap(info -> {
+                IndexLifecycleAction action;
+                if (info.getIndex().equals(writeIndex)) {
+                    action = policy.planWriteIndex(info);
+                    if (action == IndexLifecycleAction.ROLLOVER && !(strategy instanceof RolloverElasticSearchIndexStrategy)) {
+                        log.warn("index strategy [{}] of [{}] does not support rollover", strategy.getId(), index);
+                        action = null;
+                    }
+                } else {
+                    action = policy.planSealedIndex(info, now);
+                }
+                return Mono.justOrEmpty(action)
+                    .map(act -> new IndexLifecycleTask(index, info, act, policy, strategy));
+            });
+    }
+
+    protected Mono<Void> doExecute(IndexLifecycleTask task) {
+        String physicalIndex = task.getInfo().getIndex();
+        log.info("{} elasticsearch index [{}]", task.getAction(), physicalIndex);
+        Mono<?> job;
+        switch (task.getAction()) {
+            case ROLLOVER:
+                job = ((RolloverElasticSearchIndexStrategy) task.getStrategy())
+                    .rollover(task.getIndex())
+                    .doOnNext(newIndex -> log.info("rollover elasticsearch index [{}] to [{}]", physicalIndex, newIndex));
+                break;
+            case FORCE_MERGE:
+                job = ReactorActionListener
+                    .<ForceMergeResponse>mono(listener -> client.getWriteClient()
+                        .indices()
+                        .forcemergeAsync(new ForceMergeRequest(physicalIndex)
+                                .maxNumSegments(task.getPolicy().getMaxNumSegments()),
+                            RequestOptions.DEFAULT, listener));
+                break;
+            case READ_ONLY:
+                job = ReactorActionListener
+                    .<AcknowledgedResponse>mono(listener -> client.getWriteClient()
+                        .indices()
+                        .putSettingsAsync(new UpdateSettingsRequest(physicalIndex)
+                                .settings(Settings.builder().put("index.blocks.write", true)),
+                            RequestOptions.DEFAULT, listener));
+                break;
+            case CLOSE:
+                //先从查询别名中移除,否则通过别名查询时会因为包含已关闭的索引而失败
+                job = removeSearchAlias(task)
+                    .then(ReactorActionListener
+                        .<CloseIndexResponse>mono(listener -> client.getWriteClient()
+                            .indices()
+                            .closeAsync(new CloseIndexRequest(physicalIndex), RequestOptions.DEFAULT, listener)));
+                break;
+            case DELETE:
+                job = ReactorActionListener
+                    .<AcknowledgedResponse>mono(listener -> client.getWriteClient()
+                        .indices()
+                        .deleteAsync(new DeleteIndexRequest(physicalIndex), RequestOptions.DEFAULT, listener));
+                break;
+            default:
+                job = Mono.empty();
+        }
+        String action = task.getAction().name().toLowerCase();
+        return job
+            .doOnSuccess(ignore -> getCounter("success", action).increment())
+            .onErrorResume(err -> {
+                getCounter("error", action).increment();
+                log.error("{} elasticsearch index [{}] error", task.getAction(), physicalIndex, err);
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    private Mono<Void> removeSearchAlias(IndexLifecycleTask task) {
+        String physicalIndex = task.getInfo().getIndex();
+        String alias = task.getStrategy().getIndexForSearch(task.getIndex());
+        if (alias.equals(physicalIndex)) {
+            return Mono.empty();
+        }
+        IndicesAliasesRequest request = new IndicesAliasesRequest()
+            .addAliasAction(IndicesAliasesRequest.AliasActions
+                .remove()
+                .index(physicalIndex)
+                .alias(alias));
+        //别名不存在时返回404,视为已经移除
+        return ReactorActionListener
+            .<AcknowledgedResponse>mono(listener -> client.getWriteClient()
+                .indices()
+                .updateAliasesAsync(request, RequestOptions.DEFAULT, listener))
+            .then();
+    }
+
+    private Counter getCounter(String target, String action) {
+        return Counter
+            .builder(metric)
+            .tag("target", target)
+            .tag("action", action)
+            .register(registry);
+    }
+
+    /**
+     * 加载ES中全部索引的状态信息
+     *
+     * @return 索引信息
+     */
+    protected Mono<List<IndexInfo>> loadIndices() {
+        Request request = new Request("GET", "/_cat/indices");
+        request.addParameter("format", "json");
+        request.addParameter("bytes", "b");
+        request.addParameter("h", "index,status,pri,rep,docs.count,pri.store.size,segments.count,creation.date");
+
+        return Mono
+            .<Response>create(sink -> client.getQueryClient()
+                .getLowLevelClient()
+                .performRequestAsync(request, new ResponseListener() {
+                    @Override
+                    public void onSuccess(Response response) {
+                        sink.success(response);
+                    }
+
+                    @Override
+                    public void onFailure(Exception exception) {
+                        sink.error(exception);
+                    }
+                }))
+            .map(this::convertIndices)
+            .flatMap(indices -> ReactorActionListener
+                .<GetSettingsResponse>mono(listener -> client.getQueryClient()
+                    .indices()
+                    .getSettingsAsync(new GetSettingsRequest().names("index.blocks.write"), RequestOptions.DEFAULT, listener))
+                .doOnNext(settings -> indices.forEach(info ->
+                    info.setReadOnly("true".equals(settings.getSetting(info.getIndex(), "index.blocks.write")))))
+                .thenReturn(indices));
+    }
+
+    @SuppressWarnings("all")
+    private List<IndexInfo> convertIndices(Response response) {
+        try {
+            return JSON.parseArray(EntityUtils.toString(response.getEntity()))
+                .stream()
+                .map(obj -> IndexInfo.of((Map<String, Object>) obj))
+                //忽略系统索引
+                .filter(info -> !info.getIndex().startsWith("."))
+                .collect(Collectors.toList());
+        } catch (Exception e) {
+            throw new IllegalStateException("parse elasticsearch indices error", e);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static class IndexLifecycleTask {
+        private final String index;
+
+        private final IndexInfo info;
+
+        private final IndexLifecycleAction action;
+
+        private final IndexLifecyclePolicy policy;
+
+        private final ElasticSearchIndexStrategy strategy;
+    }
+}
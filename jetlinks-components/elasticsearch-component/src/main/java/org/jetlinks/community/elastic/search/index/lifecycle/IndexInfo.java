@@ -0,0 +1,74 @@
+package org.jetlinks.community.elastic.search.index.lifecycle;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.hswebframework.web.bean.FastBeanCopier;
+
+import java.util.Map;
+
+/**
+ * ES中实际索引的状态信息,来自<code>_cat/indices</code>
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+@Getter
+@Setter
+public class IndexInfo {
+
+    private String index;
+
+    private String status;
+
+    private int primaries;
+
+    private int replicas;
+
+    private long docsCount;
+
+    private long primaryStoreSize;
+
+    private long segmentsCount;
+
+    private long creationDate;
+
+    private boolean readOnly;
+
+    public boolean isOpen() {
+        return !"close".equals(status);
+    }
+
+    public int getTotalShards() {
+        return primaries * (replicas + 1);
+    }
+
+    public static IndexInfo of(Map<String, Object> catIndex) {
+        IndexInfo info = new IndexInfo();
+        info.setIndex(String.valueOf(catIndex.get("index")));
+        info.setStatus(String.valueOf(catIndex.get("status")));
+        info.setPrimaries(toInt(catIndex.get("pri")));
+        info.setReplicas(toInt(catIndex.get("rep")));
+        info.setDocsCount(toLong(catIndex.get("docs.count")));
+        info.setPrimaryStoreSize(toLong(catIndex.get("pri.store.size")));
+        info.setSegmentsCount(toLong(catIndex.get("segments.count")));
+        info.setCreationDate(toLong(catIndex.get("creation.date")));
+        return info;
+    }
+
+    private static long toLong(Object value) {
+        //关闭的索引没有统计信息
+        if (value == null) {
+            return 0;
+        }
+        return FastBeanCopier.DEFAULT_CONVERT.convert(value, Long.class, FastBeanCopier.EMPTY_CLASS_ARRAY);
+    }
+
+    private static int toInt(Object value) {
+        return (int) toLong(value);
+    }
+
+    @Override
+    public String toString() {
+        return index;
+    }
+}
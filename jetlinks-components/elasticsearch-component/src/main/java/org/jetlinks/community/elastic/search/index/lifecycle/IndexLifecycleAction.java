@@ -0,0 +1,23 @@
+package org.jetlinks.community.elastic.search.index.lifecycle;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 索引生命周期动作
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+@Getter
+@AllArgsConstructor
+public enum IndexLifecycleAction {
+
+    ROLLOVER("滚动"),
+    FORCE_MERGE("合并段"),
+    READ_ONLY("只读"),
+    CLOSE("关闭"),
+    DELETE("删除");
+
+    private final String text;
+}
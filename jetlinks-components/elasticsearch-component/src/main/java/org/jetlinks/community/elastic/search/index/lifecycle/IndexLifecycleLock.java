@@ -0,0 +1,97 @@
+package org.jetlinks.community.elastic.search.index.lifecycle;
+
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.rest.RestStatus;
+import org.jetlinks.community.elastic.search.ElasticRestClient;
+import org.jetlinks.community.elastic.search.utils.ReactorActionListener;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 索引生命周期管理的集群锁,使用ES中的文档实现租约,同一时间只有一个节点执行生命周期管理.
+ * <p>
+ * 获取锁时使用文档的序列号做乐观锁,租约过期后其他节点才能获取,持有锁的节点每次执行动作前续期.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+class IndexLifecycleLock {
+
+    static final String LOCK_INDEX = "jetlinks_index_lifecycle_lock";
+
+    private static final String LOCK_ID = "lock";
+
+    private static final String TYPE = "_doc";
+
+    private final ElasticRestClient client;
+
+    //租约时间(毫秒)
+    private final long leaseTime;
+
+    private final String owner = UUID.randomUUID().toString();
+
+    IndexLifecycleLock(ElasticRestClient client, long leaseTime) {
+        this.client = client;
+        this.leaseTime = leaseTime;
+    }
+
+    /**
+     * 获取锁,已经持有锁时续期
+     *
+     * @return 是否获取成功
+     */
+    Mono<Boolean> tryAcquire() {
+        return Mono.defer(() -> doAcquire(System.currentTimeMillis()));
+    }
+
+    private Mono<Boolean> doAcquire(long now) {
+        return ReactorActionListener
+            .<GetResponse>mono(listener -> client.getWriteClient()
+                .getAsync(new GetRequest(LOCK_INDEX, TYPE, LOCK_ID), RequestOptions.DEFAULT, listener))
+            .filter(GetResponse::isExists)
+            .flatMap(response -> {
+                Map<String, Object> lock = response.getSourceAsMap();
+                Object expireTime = lock.get("expireTime");
+                //其他节点持有锁并且未过期
+                if (!owner.equals(lock.get("owner"))
+                    && expireTime instanceof Number
+                    && ((Number) expireTime).longValue() > now) {
+                    return Mono.just(false);
+                }
+                return write(new IndexRequest(LOCK_INDEX, TYPE, LOCK_ID)
+                    .setIfSeqNo(response.getSeqNo())
+                    .setIfPrimaryTerm(response.getPrimaryTerm()), now);
+            })
+            //锁不存在
+            .switchIfEmpty(Mono.defer(() -> write(new IndexRequest(LOCK_INDEX, TYPE, LOCK_ID)
+                .opType(DocWriteRequest.OpType.CREATE), now)));
+    }
+
+    private Mono<Boolean> write(IndexRequest request, long now) {
+        Map<String, Object> lock = new HashMap<>();
+        lock.put("owner", owner);
+        lock.put("expireTime", now + leaseTime);
+        request.source(lock);
+        return ReactorActionListener
+            .<Boolean, IndexResponse>mono(listener -> client.getWriteClient()
+                    .indexAsync(request, RequestOptions.DEFAULT, listener),
+                response -> Mono.just(true),
+                err -> {
+                    //其他节点同时获取了锁
+                    if (err instanceof ElasticsearchStatusException
+                        && ((ElasticsearchStatusException) err).status() == RestStatus.CONFLICT) {
+                        return Mono.just(false);
+                    }
+                    return Mono.error(err);
+                });
+    }
+}
@@ -0,0 +1,118 @@
+package org.jetlinks.community.elastic.search.index.lifecycle;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 索引生命周期策略,时间均以索引创建时间开始计算,未配置的阶段不执行.
+ *
+ * <pre>
+ * elasticsearch:
+ *   index:
+ *     lifecycle:
+ *       enabled: true
+ *       policies:
+ *         - indices: properties_*,event_* # 设备属性,设备事件
+ *           rollover-size: 30GB
+ *           force-merge-after: 32d
+ *           read-only-after: 32d
+ *           delete-after: 180d
+ * </pre>
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+@Getter
+@Setter
+public class IndexLifecyclePolicy {
+
+    //原始索引名,支持通配符*,如: properties_* , rule-engine-execute-log
+    private List<String> indices = new ArrayList<>();
+
+    //当前写入的索引(主分片)大小超过此值时滚动到新的索引
+    private DataSize rolloverSize;
+
+    //当前写入的索引文档数量超过此值时滚动到新的索引
+    private long rolloverDocs;
+
+    //不再写入的索引在此时间后合并段
+    private Duration forceMergeAfter;
+
+    //合并后每个分片的最大段数量
+    private int maxNumSegments = 1;
+
+    //不再写入的索引在此时间后设置为只读
+    private Duration readOnlyAfter;
+
+    //不再写入的索引在此时间后关闭
+    private Duration closeAfter;
+
+    //索引在此时间后删除
+    private Duration deleteAfter;
+
+    public boolean match(String index) {
+        for (String pattern : indices) {
+            if (pattern.endsWith("*")) {
+                if (index.startsWith(pattern.substring(0, pattern.length() - 1))) {
+                    return true;
+                }
+            } else if (pattern.equals(index)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 计算正在写入的索引需要执行的动作
+     *
+     * @param info 索引信息
+     * @return 动作, 无需执行时返回<code>null</code>
+     */
+    public IndexLifecycleAction planWriteIndex(IndexInfo info) {
+        if (!info.isOpen()) {
+            return null;
+        }
+        if ((rolloverSize != null && info.getPrimaryStoreSize() >= rolloverSize.toBytes())
+            || (rolloverDocs > 0 && info.getDocsCount() >= rolloverDocs)) {
+            return IndexLifecycleAction.ROLLOVER;
+        }
+        return null;
+    }
+
+    /**
+     * 计算已经不再写入的索引需要执行的动作
+     *
+     * @param info 索引信息
+     * @param now  当前时间
+     * @return 动作, 无需执行时返回<code>null</code>
+     */
+    public IndexLifecycleAction planSealedIndex(IndexInfo info, long now) {
+        long age = now - info.getCreationDate();
+        if (isExpired(deleteAfter, age)) {
+            return IndexLifecycleAction.DELETE;
+        }
+        if (!info.isOpen()) {
+            return null;
+        }
+        if (isExpired(closeAfter, age)) {
+            return IndexLifecycleAction.CLOSE;
+        }
+        if (!info.isReadOnly() && isExpired(readOnlyAfter, age)) {
+            return IndexLifecycleAction.READ_ONLY;
+        }
+        if (isExpired(forceMergeAfter, age) && info.getSegmentsCount() > (long) maxNumSegments * info.getTotalShards()) {
+            return IndexLifecycleAction.FORCE_MERGE;
+        }
+        return null;
+    }
+
+    private static boolean isExpired(Duration duration, long age) {
+        return duration != null && age >= duration.toMillis();
+    }
+}
@@ -0,0 +1,49 @@
+package org.jetlinks.community.elastic.search.index.lifecycle;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 索引生命周期配置
+ *
+ * @author zhouhao
+ * @see IndexLifecyclePolicy
+ * @since 1.0
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "elasticsearch.index.lifecycle")
+public class IndexLifecycleProperties {
+
+    private boolean enabled = false;
+
+    //启动后首次执行延迟
+    private Duration initialDelay = Duration.ofMinutes(1);
+
+    //执行间隔
+    private Duration interval = Duration.ofHours(1);
+
+    //每个动作执行的间隔,防止同时对集群执行大量操作
+    private Duration actionInterval = Duration.ofSeconds(5);
+
+    //单次执行最大动作数量,剩余的动作在下一次执行
+    private int maxActionsPerRun = 100;
+
+    //集群锁租约时间,需要大于单个动作的最长执行时间.持有锁的节点宕机后,其他节点在租约过期后接管
+    private Duration lockLeaseTime = Duration.ofMinutes(30);
+
+    private List<IndexLifecyclePolicy> policies = new ArrayList<>();
+
+    public Optional<IndexLifecyclePolicy> getPolicy(String index) {
+        return policies
+            .stream()
+            .filter(policy -> policy.match(index))
+            .findFirst();
+    }
+}
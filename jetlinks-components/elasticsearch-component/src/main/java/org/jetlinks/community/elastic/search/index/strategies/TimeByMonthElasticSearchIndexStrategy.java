@@ -1,29 +1,181 @@
 package org.jetlinks.community.elastic.search.index.strategies;
 
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.support.master.AcknowledgedResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.CreateIndexResponse;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.client.indices.GetIndexResponse;
 import org.hswebframework.utils.time.DateFormatter;
 import org.jetlinks.community.elastic.search.ElasticRestClient;
+import org.jetlinks.community.elastic.search.index.ElasticSearchIndexMetadata;
 import org.jetlinks.community.elastic.search.index.ElasticSearchIndexProperties;
+import org.jetlinks.community.elastic.search.index.RolloverElasticSearchIndexStrategy;
+import org.jetlinks.community.elastic.search.utils.ReactorActionListener;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
- * 按月对来划分索引策略
+ * 按月对来划分索引策略,当月索引过大时支持滚动,如: index_2020-02,index_2020-02_1
+ * <p>
+ * 滚动时在ES中创建新的索引,当前写入的索引为ES中当月滚动次数最大的索引,集群中各节点以ES中的索引为准.
  *
  * @author zhouhao
  * @since 1.0
  */
 @Component
-public class TimeByMonthElasticSearchIndexStrategy extends TemplateElasticSearchIndexStrategy {
+public class TimeByMonthElasticSearchIndexStrategy extends TemplateElasticSearchIndexStrategy implements RolloverElasticSearchIndexStrategy {
+
+    //从ES中重新获取写入索引的间隔
+    static final long WRITE_INDEX_CACHE_TIME = 10_000;
 
     private final String format = "yyyy-MM";
 
+    private static final Pattern physicalIndexPattern = Pattern.compile("_\\d{4}-\\d{2}(_(\\d+))?$");
+
+    //当前写入的索引,key为原始索引名,只缓存当月
+    private final Map<String, WriteIndex> writeIndexes = new ConcurrentHashMap<>();
+
     public TimeByMonthElasticSearchIndexStrategy(ElasticRestClient client, ElasticSearchIndexProperties properties) {
         super("time-by-month", client,properties);
     }
 
+    protected String getCurrentMonthIndex(String index) {
+        return wrapIndex(index).concat("_").concat(DateFormatter.toString(new Date(), format));
+    }
+
     @Override
     public String getIndexForSave(String index) {
-        return wrapIndex(index).concat("_").concat(DateFormatter.toString(new Date(), format));
+        String monthIndex = getCurrentMonthIndex(index);
+        WriteIndex writeIndex = writeIndexes.get(index);
+        if (writeIndex == null || !writeIndex.monthIndex.equals(monthIndex)) {
+            return monthIndex;
+        }
+        return writeIndex.index;
+    }
+
+    @Override
+    public Mono<String> loadIndexForSave(String index) {
+        String monthIndex = getCurrentMonthIndex(index);
+        WriteIndex writeIndex = writeIndexes.get(index);
+        if (writeIndex != null
+            && writeIndex.monthIndex.equals(monthIndex)
+            && System.currentTimeMillis() - writeIndex.loadTime < WRITE_INDEX_CACHE_TIME) {
+            return Mono.just(writeIndex.index);
+        }
+        return loadWriteIndex(index, monthIndex)
+            //ES不可用时使用上一次获取的索引
+            .onErrorResume(err -> Mono.just(getIndexForSave(index)));
+    }
+
+    @Override
+    public String getIndexForSave(String index, Collection<String> physicalIndexes) {
+        String monthIndex = getCurrentMonthIndex(index);
+        int generation = getGeneration(index, monthIndex, physicalIndexes);
+        return generation <= 0 ? monthIndex : monthIndex.concat("_").concat(String.valueOf(generation));
+    }
+
+    @Override
+    public Mono<String> rollover(String index) {
+        String monthIndex = getCurrentMonthIndex(index);
+        return getMonthIndexes(monthIndex)
+            .flatMap(indexes -> {
+                String newIndex = monthIndex.concat("_")
+                    .concat(String.valueOf(getGeneration(index, monthIndex, indexes) + 1));
+                //索引模版中已经包含了映射和别名
+                return ReactorActionListener
+                    .<CreateIndexResponse, CreateIndexResponse>mono(listener -> client.getWriteClient()
+                            .indices()
+                            .createAsync(new CreateIndexRequest(newIndex), RequestOptions.DEFAULT, listener),
+                        Mono::justOrEmpty,
+                        err -> {
+                            //其他节点已经滚动
+                            if (err instanceof ElasticsearchStatusException
+                                && String.valueOf(err.getMessage()).contains("resource_already_exists_exception")) {
+                                return Mono.empty();
+                            }
+                            return Mono.error(err);
+                        })
+                    .then(Mono.fromSupplier(() -> {
+                        writeIndexes.put(index, new WriteIndex(monthIndex, newIndex));
+                        return newIndex;
+                    }));
+            });
+    }
+
+    @Override
+    public Mono<Void> putIndex(ElasticSearchIndexMetadata metadata) {
+        return ReactorActionListener
+            .<AcknowledgedResponse>mono(listener -> client.getWriteClient()
+                .indices()//修改索引模版
+                .putTemplateAsync(createIndexTemplateRequest(metadata), RequestOptions.DEFAULT, listener))
+            //修改当前索引
+            .then(loadIndexForSave(metadata.getIndex()))
+            .flatMap(index -> doPutIndex(metadata.newIndexName(index), true));
+    }
+
+    @Override
+    public boolean isPhysicalIndex(String index, String physicalIndex) {
+        String prefix = wrapIndex(index);
+        if (!physicalIndex.startsWith(prefix)) {
+            return false;
+        }
+        Matcher matcher = physicalIndexPattern.matcher(physicalIndex);
+        return matcher.find() && matcher.start() == prefix.length();
+    }
+
+    private Mono<String> loadWriteIndex(String index, String monthIndex) {
+        return getMonthIndexes(monthIndex)
+            .map(indexes -> {
+                String writeIndex = getIndexForSave(index, indexes);
+                writeIndexes.put(index, new WriteIndex(monthIndex, writeIndex));
+                return writeIndex;
+            });
+    }
+
+    private Mono<Collection<String>> getMonthIndexes(String monthIndex) {
+        return ReactorActionListener
+            .<GetIndexResponse>mono(listener -> client.getQueryClient()
+                .indices()
+                .getAsync(new GetIndexRequest(monthIndex.concat("*")), RequestOptions.DEFAULT, listener))
+            .<Collection<String>>map(response -> Arrays.asList(response.getIndices()))
+            .defaultIfEmpty(Collections.emptyList());
+    }
+
+    private int getGeneration(String index, String monthIndex, Collection<String> physicalIndexes) {
+        int generation = 0;
+        for (String physicalIndex : physicalIndexes) {
+            if (!physicalIndex.startsWith(monthIndex) || !isPhysicalIndex(index, physicalIndex)) {
+                continue;
+            }
+            Matcher matcher = physicalIndexPattern.matcher(physicalIndex);
+            if (matcher.find() && matcher.group(2) != null) {
+                generation = Math.max(generation, Integer.parseInt(matcher.group(2)));
+            }
+        }
+        return generation;
+    }
+
+    private static class WriteIndex {
+        private final String monthIndex;
+
+        private final String index;
+
+        private final long loadTime = System.currentTimeMillis();
+
+        private WriteIndex(String monthIndex, String index) {
+            this.monthIndex = monthIndex;
+            this.index = index;
+        }
     }
 }
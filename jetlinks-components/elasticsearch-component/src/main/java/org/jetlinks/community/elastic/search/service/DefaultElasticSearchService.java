@@ -9,6 +9,8 @@ import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.RequestOptions;
@@ -22,6 +24,7 @@ import org.hswebframework.web.api.crud.entity.PagerResult;
 import org.jetlinks.core.utils.FluxUtils;
 import org.jetlinks.community.elastic.search.ElasticRestClient;
 import org.jetlinks.community.elastic.search.index.ElasticSearchIndexManager;
+import org.jetlinks.community.elastic.search.index.RolloverElasticSearchIndexStrategy;
 import org.jetlinks.community.elastic.search.utils.ElasticSearchConverter;
 import org.jetlinks.community.elastic.search.utils.ReactorActionListener;
 import org.reactivestreams.Publisher;
@@ -99,6 +102,55 @@ public class DefaultElasticSearchService implements ElasticSearchService {
             }, 0L);
     }
 
+    @Override
+    public Mono<Map<String, Long>> count(Collection<String> indexes, QueryParam queryParam) {
+        QueryParam param = queryParam.clone();
+        param.setPaging(false);
+        param.setSorts(Collections.emptyList());
+        //使用_msearch一次请求统计全部索引
+        return Flux.fromIterable(indexes)
+            .concatMap(index -> createSearchRequest(param, index)
+                .doOnNext(request -> request.source().size(0))
+                .map(request -> Tuples.of(index, request)))
+            .collectList()
+            .filter(CollectionUtils::isNotEmpty)
+            .flatMap(requests -> {
+                MultiSearchRequest request = new MultiSearchRequest();
+                requests.forEach(tp2 -> request.add(tp2.getT2()));
+                return ReactorActionListener
+                    .<MultiSearchResponse>mono(listener ->
+                        restClient
+                            .getQueryClient()
+                            .msearchAsync(request, RequestOptions.DEFAULT, listener))
+                    .map(response -> {
+                        Map<String, Long> counts = new HashMap<>();
+                        MultiSearchResponse.Item[] items = response.getResponses();
+                        for (int i = 0; i < items.length; i++) {
+                            MultiSearchResponse.Item item = items[i];
+                            if (item.isFailure()) {
+                                log.warn("count elastic index [{}] error", requests.get(i).getT1(), item.getFailure());
+                                continue;
+                            }
+                            counts.put(requests.get(i).getT1(), item.getResponse().getHits().getTotalHits());
+                        }
+                        return counts;
+                    });
+            })
+            .onErrorResume(err -> {
+                log.error("query elastic error", err);
+                return Mono.empty();
+            })
+            .defaultIfEmpty(Collections.emptyMap())
+            //没有数据的索引返回0
+            .map(counts -> {
+                Map<String, Long> result = new HashMap<>(counts);
+                for (String index : indexes) {
+                    result.putIfAbsent(index, 0L);
+                }
+                return result;
+            });
+    }
+
     @Override
     public <T> Mono<Void> commit(String index, T payload) {
         return Mono.fromRunnable(() -> {
@@ -159,7 +211,9 @@ public class DefaultElasticSearchService implements ElasticSearchService {
     private Mono<String> getIndexForSave(String index) {
         return indexManager
             .getIndexStrategy(index)
-            .map(strategy -> strategy.getIndexForSave(index));
+            .flatMap(strategy -> strategy instanceof RolloverElasticSearchIndexStrategy
+                ? ((RolloverElasticSearchIndexStrategy) strategy).loadIndexForSave(index)
+                : Mono.just(strategy.getIndexForSave(index)));
 
     }
 
@@ -7,6 +7,8 @@ import org.jetlinks.community.elastic.search.index.ElasticIndex;
 import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
 import java.util.Collection;
 import java.util.Map;
@@ -20,6 +22,19 @@ public interface ElasticSearchService {
 
     Mono<Long> count(String index, QueryParam queryParam);
 
+    /**
+     * 使用相同的条件统计多个索引的数据量
+     *
+     * @param indexes    索引
+     * @param queryParam 查询条件
+     * @return 索引和数据量, key为索引
+     */
+    default Mono<Map<String, Long>> count(Collection<String> indexes, QueryParam queryParam) {
+        return Flux.fromIterable(indexes)
+            .flatMap(index -> count(index, queryParam).map(count -> Tuples.of(index, count)))
+            .collectMap(Tuple2::getT1, Tuple2::getT2);
+    }
+
     <T> Mono<Void> commit(String index, T payload);
 
     <T> Mono<Void> commit(String index, Collection<T> payload);
@@ -1,6 +1,7 @@
 package org.jetlinks.community.elastic.search.timeseries;
 
 import lombok.extern.slf4j.Slf4j;
+import org.hswebframework.ezorm.core.param.QueryParam;
 import org.jetlinks.core.metadata.SimplePropertyMetadata;
 import org.jetlinks.core.metadata.types.DateTimeType;
 import org.jetlinks.community.elastic.search.index.DefaultElasticSearchIndexMetadata;
@@ -14,8 +15,10 @@ import org.jetlinks.community.timeseries.TimeSeriesService;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 /**
  * @author bsetfeng
@@ -55,6 +58,15 @@ public class ElasticSearchTimeSeriesManager implements TimeSeriesManager {
             id -> new ElasticSearchTimeSeriesService(id, elasticSearchService, aggregationService));
     }
 
+    @Override
+    public Mono<Map<String, Integer>> count(Collection<String> metrics, QueryParam queryParam) {
+        return elasticSearchService
+            .count(metrics, queryParam)
+            .map(counts -> counts
+                .entrySet()
+                .stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().intValue())));
+    }
 
     @Override
     public Mono<Void> registerMetadata(TimeSeriesMetadata metadata) {
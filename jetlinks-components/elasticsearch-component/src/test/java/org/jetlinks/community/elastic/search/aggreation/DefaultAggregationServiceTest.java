@@ -0,0 +1,64 @@
+package org.jetlinks.community.elastic.search.aggreation;
+
+import org.jetlinks.community.timeseries.query.AggregationQueryParam;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DefaultAggregationServiceTest {
+
+    static Map<String, Object> row(String time, String deviceId, double value) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("time", time);
+        row.put("deviceId", deviceId);
+        row.put("value", value);
+        return row;
+    }
+
+    @Test
+    void testMergeBuckets() {
+        AggregationQueryParam param = AggregationQueryParam.of()
+            .sum("value", "value")
+            .groupBy(Duration.ofHours(1), "time", "HH")
+            .groupBy("deviceId", "deviceId");
+
+        List<Map<String, Object>> merged = DefaultAggregationService.mergeBuckets(param,
+            Arrays.asList(row("11", "a", 1), row("10", "a", 2)),
+            Arrays.asList(row("10", "a", 3), row("10", "b", 4), row("09", "a", 5)));
+
+        assertNotNull(merged);
+        assertEquals(4, merged.size());
+        //同一个分组合并,顺序不变
+        assertEquals("11", merged.get(0).get("time"));
+        assertEquals(5D, merged.get(1).get("value"));
+        assertEquals("b", merged.get(2).get("deviceId"));
+        assertEquals("09", merged.get(3).get("time"));
+
+        //平均值无法合并
+        AggregationQueryParam avg = AggregationQueryParam.of()
+            .avg("value", "value")
+            .groupBy(Duration.ofHours(1), "time", "HH");
+        assertNull(DefaultAggregationService.mergeBuckets(avg,
+            Arrays.asList(row("10", "a", 1)),
+            Arrays.asList(row("10", "a", 3))));
+    }
+
+    @Test
+    void testCacheEviction() {
+        AggregationCacheProperties properties = new AggregationCacheProperties();
+        properties.setMaxSize(2);
+        AggregationResultCache cache = new AggregationResultCache(properties);
+        for (int i = 0; i < 5; i++) {
+            cache.get("key" + i, Duration.ofMinutes(i + 1), Flux::empty)
+                .blockLast();
+        }
+        assertEquals(2, cache.size());
+    }
+}
@@ -0,0 +1,108 @@
+package org.jetlinks.community.elastic.search.index.lifecycle;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.hswebframework.utils.time.DateFormatter;
+import org.jetlinks.community.elastic.search.ElasticRestClient;
+import org.jetlinks.community.elastic.search.index.DefaultElasticSearchIndexManager;
+import org.jetlinks.community.elastic.search.index.DefaultElasticSearchIndexMetadata;
+import org.jetlinks.community.elastic.search.index.ElasticSearchIndexProperties;
+import org.jetlinks.community.elastic.search.index.strategies.DirectElasticSearchIndexStrategy;
+import org.jetlinks.community.elastic.search.index.strategies.TimeByMonthElasticSearchIndexStrategy;
+import org.jetlinks.community.micrometer.MeterRegistryManager;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ElasticSearchIndexLifecycleManagerTest {
+
+    static IndexInfo info(String index, long createTime) {
+        IndexInfo info = new IndexInfo();
+        info.setIndex(index);
+        info.setStatus("open");
+        info.setPrimaries(1);
+        info.setCreationDate(createTime);
+        return info;
+    }
+
+    @Test
+    void testPlan() {
+        IndexLifecyclePolicy policy = new IndexLifecyclePolicy();
+        policy.setIndices(Arrays.asList("properties_*", "rule-engine-execute-log"));
+        policy.setRolloverSize(DataSize.ofMegabytes(1));
+        policy.setForceMergeAfter(Duration.ofDays(1));
+        policy.setReadOnlyAfter(Duration.ofDays(1));
+        policy.setDeleteAfter(Duration.ofDays(30));
+
+        assertTrue(policy.match("properties_demo"));
+        assertTrue(policy.match("rule-engine-execute-log"));
+        assertFalse(policy.match("event_demo_fire"));
+
+        long now = System.currentTimeMillis();
+
+        IndexInfo writeIndex = info("properties_demo_2020-02", now);
+        assertNull(policy.planWriteIndex(writeIndex));
+        writeIndex.setPrimaryStoreSize(DataSize.ofMegabytes(2).toBytes());
+        assertEquals(IndexLifecycleAction.ROLLOVER, policy.planWriteIndex(writeIndex));
+
+        IndexInfo sealed = info("properties_demo_2020-01", now - Duration.ofDays(2).toMillis());
+        sealed.setSegmentsCount(10);
+        assertEquals(IndexLifecycleAction.READ_ONLY, policy.planSealedIndex(sealed, now));
+        sealed.setReadOnly(true);
+        assertEquals(IndexLifecycleAction.FORCE_MERGE, policy.planSealedIndex(sealed, now));
+        sealed.setSegmentsCount(1);
+        assertNull(policy.planSealedIndex(sealed, now));
+
+        sealed.setCreationDate(now - Duration.ofDays(31).toMillis());
+        assertEquals(IndexLifecycleAction.DELETE, policy.planSealedIndex(sealed, now));
+    }
+
+    @Test
+    void testRolloverWriteIndex() {
+        TimeByMonthElasticSearchIndexStrategy strategy = new TimeByMonthElasticSearchIndexStrategy(null, new ElasticSearchIndexProperties());
+        String month = "properties_demo_" + DateFormatter.toString(new Date(), "yyyy-MM");
+
+        //写入索引以ES中当月滚动次数最大的索引为准
+        assertEquals(month, strategy.getIndexForSave("properties_demo", Collections.emptyList()));
+        assertEquals(month + "_2", strategy.getIndexForSave("properties_demo", Arrays.asList(
+            month, month + "_1", month + "_2", "properties_demo_2020-01_5", "properties_demo_test_" + month.substring(16) + "_9")));
+    }
+
+    @Test
+    @Disabled
+    void testLocalElasticSearch() {
+        RestHighLevelClient restClient = new RestHighLevelClient(RestClient.builder(new HttpHost("localhost", 9200, "http")));
+        ElasticRestClient client = new ElasticRestClient(restClient, restClient);
+        DefaultElasticSearchIndexManager indexManager = new DefaultElasticSearchIndexManager(
+            Collections.singletonList(new DirectElasticSearchIndexStrategy(client, new ElasticSearchIndexProperties())));
+
+        IndexLifecyclePolicy policy = new IndexLifecyclePolicy();
+        policy.setIndices(Collections.singletonList("lifecycle_test"));
+        policy.setRolloverDocs(1);
+        IndexLifecycleProperties properties = new IndexLifecycleProperties();
+        properties.setActionInterval(Duration.ZERO);
+        properties.setPolicies(Collections.singletonList(policy));
+
+        MeterRegistryManager registryManager = new MeterRegistryManager();
+        registryManager.setSuppliers(Collections.singletonList((metric, tags) -> new SimpleMeterRegistry()));
+
+        ElasticSearchIndexLifecycleManager manager = new ElasticSearchIndexLifecycleManager(client, indexManager, properties, registryManager);
+
+        indexManager.putIndex(new DefaultElasticSearchIndexMetadata("lifecycle_test"))
+            .then(manager.execute())
+            .as(StepVerifier::create)
+            //direct策略不支持滚动
+            .expectNext(0L)
+            .verifyComplete();
+    }
+}
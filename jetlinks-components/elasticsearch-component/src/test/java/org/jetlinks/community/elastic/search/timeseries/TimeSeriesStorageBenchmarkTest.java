@@ -0,0 +1,138 @@
+package org.jetlinks.community.elastic.search.timeseries;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpHost;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.hswebframework.ezorm.core.param.QueryParam;
+import org.jetlinks.community.elastic.search.ElasticRestClient;
+import org.jetlinks.community.elastic.search.aggreation.DefaultAggregationService;
+import org.jetlinks.community.elastic.search.index.DefaultElasticSearchIndexManager;
+import org.jetlinks.community.elastic.search.index.ElasticSearchIndexProperties;
+import org.jetlinks.community.elastic.search.index.strategies.DirectElasticSearchIndexStrategy;
+import org.jetlinks.community.elastic.search.service.DefaultElasticSearchService;
+import org.jetlinks.community.timeseries.TimeSeriesData;
+import org.jetlinks.community.timeseries.TimeSeriesManager;
+import org.jetlinks.community.timeseries.TimeSeriesMetadata;
+import org.jetlinks.community.timeseries.TimeSeriesMetric;
+import org.jetlinks.community.timeseries.local.LocalTimeSeriesManager;
+import org.jetlinks.community.timeseries.local.LocalTimeSeriesProperties;
+import org.jetlinks.core.metadata.PropertyMetadata;
+import org.jetlinks.core.metadata.SimplePropertyMetadata;
+import org.jetlinks.core.metadata.types.DoubleType;
+import org.jetlinks.core.metadata.types.StringType;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 本地时序存储与elasticsearch写入速度和磁盘占用对比,需要本地启动elasticsearch
+ */
+@Slf4j
+class TimeSeriesStorageBenchmarkTest {
+
+    static final String METRIC = "timeseries_benchmark";
+
+    static final int DEVICES = 1000;
+
+    static final int ROWS = 1_000_000;
+
+    static TimeSeriesMetadata metadata() {
+        SimplePropertyMetadata deviceId = new SimplePropertyMetadata();
+        deviceId.setId("deviceId");
+        deviceId.setValueType(new StringType());
+        SimplePropertyMetadata value = new SimplePropertyMetadata();
+        value.setId("value");
+        value.setValueType(new DoubleType());
+        List<PropertyMetadata> properties = Arrays.asList(deviceId, value);
+        return new TimeSeriesMetadata() {
+            @Override
+            public TimeSeriesMetric getMetric() {
+                return TimeSeriesMetric.of(METRIC);
+            }
+
+            @Override
+            public List<PropertyMetadata> getProperties() {
+                return properties;
+            }
+        };
+    }
+
+    static Flux<TimeSeriesData> createData() {
+        long start = System.currentTimeMillis() - Duration.ofDays(1).toMillis();
+        return Flux.range(0, ROWS)
+            .map(i -> {
+                Map<String, Object> data = new HashMap<>();
+                data.put("deviceId", "device-" + (i % DEVICES));
+                data.put("value", 20 + (i % 100) / 10D);
+                return TimeSeriesData.of(start + (i / DEVICES) * 1000L, data);
+            });
+    }
+
+    static long ingest(TimeSeriesManager manager) {
+        long time = System.currentTimeMillis();
+        manager.registerMetadata(metadata())
+            .then(manager.getService(METRIC).save(createData()))
+            .block();
+        //elasticsearch为异步批量写入,等待数据全部可查询
+        while (manager.getService(METRIC).count(new QueryParam()).blockOptional().orElse(0) < ROWS) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        long spent = System.currentTimeMillis() - time;
+        log.info("{} ingest {} rows in {}ms, {} rows/s", manager.getClass().getSimpleName(), ROWS, spent, ROWS * 1000L / Math.max(spent, 1));
+        return spent;
+    }
+
+    @Test
+    @Disabled
+    void testLocal(@TempDir File dir) {
+        LocalTimeSeriesProperties properties = new LocalTimeSeriesProperties();
+        properties.setDataDir(dir.getAbsolutePath());
+        LocalTimeSeriesManager manager = new LocalTimeSeriesManager(properties);
+        manager.start();
+        ingest(manager);
+        manager.flush();
+        log.info("local disk size: {} bytes", manager.getDiskSize());
+        manager.shutdown();
+    }
+
+    @Test
+    @Disabled
+    void testElasticSearch() throws Exception {
+        RestHighLevelClient restClient = new RestHighLevelClient(RestClient.builder(new HttpHost("localhost", 9200, "http")));
+        ElasticRestClient client = new ElasticRestClient(restClient, restClient);
+        DefaultElasticSearchIndexManager indexManager = new DefaultElasticSearchIndexManager(
+            Collections.singletonList(new DirectElasticSearchIndexStrategy(client, new ElasticSearchIndexProperties())));
+        ElasticSearchTimeSeriesManager manager = new ElasticSearchTimeSeriesManager(
+            indexManager,
+            new DefaultElasticSearchService(client, indexManager),
+            new DefaultAggregationService(indexManager, client));
+        ingest(manager);
+
+        restClient.getLowLevelClient().performRequest(new Request("POST", "/" + METRIC + "/_flush"));
+        Response response = restClient.getLowLevelClient().performRequest(new Request("GET", "/" + METRIC + "/_stats/store"));
+        JSONObject stats = JSON.parseObject(EntityUtils.toString(response.getEntity()));
+        log.info("elasticsearch disk size: {} bytes", stats.getJSONObject("_all")
+            .getJSONObject("primaries")
+            .getJSONObject("store")
+            .getLong("size_in_bytes"));
+    }
+}
@@ -0,0 +1,41 @@
+package org.jetlinks.community.gateway.events;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * 设备认证信息变更事件,修改设备,设备或产品重新发布,取消发布以及删除时发送,
+ * 网关收到事件后清除对应设备的认证缓存.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class DeviceCredentialChangedEvent {
+
+    //变更的设备ID
+    private Collection<String> deviceIds;
+
+    //变更的产品ID,不为空时此产品下的所有设备都已变更
+    private String productId;
+
+    public static DeviceCredentialChangedEvent ofDevice(Collection<String> deviceIds) {
+        return new DeviceCredentialChangedEvent(deviceIds, null);
+    }
+
+    public static DeviceCredentialChangedEvent ofDevice(String deviceId) {
+        return ofDevice(Collections.singletonList(deviceId));
+    }
+
+    public static DeviceCredentialChangedEvent ofProduct(String productId) {
+        return new DeviceCredentialChangedEvent(Collections.emptyList(), productId);
+    }
+}
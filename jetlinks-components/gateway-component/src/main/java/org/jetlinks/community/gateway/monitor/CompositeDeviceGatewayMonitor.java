@@ -40,6 +40,11 @@ class CompositeDeviceGatewayMonitor implements DeviceGatewayMonitor {
         doWith(DeviceGatewayMonitor::rejected);
     }
 
+    @Override
+    public void queued() {
+        doWith(DeviceGatewayMonitor::queued);
+    }
+
     @Override
     public void disconnected() {
         doWith(DeviceGatewayMonitor::disconnected);
@@ -54,4 +59,9 @@ class CompositeDeviceGatewayMonitor implements DeviceGatewayMonitor {
     public void sentMessage() {
         doWith(DeviceGatewayMonitor::sentMessage);
     }
+
+    @Override
+    public void authenticated(long costMillis, boolean cached) {
+        doWith(monitor -> monitor.authenticated(costMillis, cached));
+    }
 }
@@ -22,6 +22,11 @@ public interface DeviceGatewayMonitor {
      */
     void rejected();
 
+    /**
+     * 连接排队等待接入
+     */
+    void queued();
+
     /**
      * 断开连接
      */
@@ -37,4 +42,12 @@ public interface DeviceGatewayMonitor {
      */
     void sentMessage();
 
+    /**
+     * 设备认证完成
+     *
+     * @param costMillis 认证耗时(毫秒)
+     * @param cached     是否命中认证缓存
+     */
+    void authenticated(long costMillis, boolean cached);
+
 }
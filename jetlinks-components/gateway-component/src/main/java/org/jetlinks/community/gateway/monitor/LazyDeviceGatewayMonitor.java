@@ -35,6 +35,11 @@ class LazyDeviceGatewayMonitor implements DeviceGatewayMonitor {
         getTarget().rejected();
     }
 
+    @Override
+    public void queued() {
+        getTarget().queued();
+    }
+
     @Override
     public void disconnected() {
         getTarget().disconnected();
@@ -49,4 +54,9 @@ class LazyDeviceGatewayMonitor implements DeviceGatewayMonitor {
     public void sentMessage() {
         getTarget().sentMessage();
     }
+
+    @Override
+    public void authenticated(long costMillis, boolean cached) {
+        getTarget().authenticated(costMillis, cached);
+    }
 }
@@ -3,8 +3,10 @@ package org.jetlinks.community.gateway.monitor;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.AllArgsConstructor;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 class MicrometerDeviceGatewayMonitor implements DeviceGatewayMonitor {
@@ -26,16 +28,26 @@ class MicrometerDeviceGatewayMonitor implements DeviceGatewayMonitor {
 
         this.connected = getCounter("connected");
         this.rejected = getCounter("rejected");
+        this.queued = getCounter("queued");
         this.disconnected = getCounter("disconnected");
         this.sentMessage = getCounter("sent_message");
         this.receivedMessage = getCounter("received_message");
+        this.authCacheHit = getCounter("auth_cache_hit");
+        this.authLatency = Timer
+            .builder(id)
+            .tags(tags)
+            .tag("target", "auth_latency")
+            .register(registry);
     }
 
     final Counter connected;
     final Counter rejected;
+    final Counter queued;
     final Counter disconnected;
     final Counter receivedMessage;
     final Counter sentMessage;
+    final Counter authCacheHit;
+    final Timer authLatency;
 
 
     private Counter getCounter(String target) {
@@ -61,6 +73,11 @@ class MicrometerDeviceGatewayMonitor implements DeviceGatewayMonitor {
         rejected.increment();
     }
 
+    @Override
+    public void queued() {
+        queued.increment();
+    }
+
     @Override
     public void disconnected() {
         disconnected.increment();
@@ -75,4 +92,12 @@ class MicrometerDeviceGatewayMonitor implements DeviceGatewayMonitor {
     public void sentMessage() {
         sentMessage.increment();
     }
+
+    @Override
+    public void authenticated(long costMillis, boolean cached) {
+        if (cached) {
+            authCacheHit.increment();
+        }
+        authLatency.record(costMillis, TimeUnit.MILLISECONDS);
+    }
 }
@@ -22,6 +22,11 @@ class NoneDeviceGatewayMonitor implements DeviceGatewayMonitor {
 
     }
 
+    @Override
+    public void queued() {
+
+    }
+
     @Override
     public void receivedMessage() {
 
@@ -31,4 +36,9 @@ class NoneDeviceGatewayMonitor implements DeviceGatewayMonitor {
     public void sentMessage() {
 
     }
+
+    @Override
+    public void authenticated(long costMillis, boolean cached) {
+
+    }
 }
@@ -0,0 +1,261 @@
+package org.jetlinks.community.gateway.supports;
+
+import org.jetlinks.community.gateway.monitor.DeviceGatewayMonitor;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 设备网关连接准入控制,用于大量设备同时重连时保护服务.
+ * <p>
+ * 限制同时进行中的握手数量和每秒接入的新连接数量,超过限制的连接排队等待,
+ * 队列已满或者等待超时则拒绝连接.最近成功接入过的客户端使用优先队列,但同样受接入速率限制,
+ * 客户端标识(IP地址,未认证的客户端ID)可以被伪造,只用于排队顺序.
+ * <p>
+ * 许可在握手完成后释放,超过最长握手时间未释放的许可自动释放,避免握手卡住的连接一直占用许可.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+public class ConnectionAdmissionController {
+
+    private final ConnectionAdmissionProperties properties;
+
+    private final DeviceGatewayMonitor monitor;
+
+    private final Deque<Waiter> priorityQueue = new ArrayDeque<>();
+
+    private final Deque<Waiter> normalQueue = new ArrayDeque<>();
+
+    private final Map<String, Boolean> knownClients;
+
+    private int handshaking;
+
+    //令牌桶
+    private double tokens;
+
+    private long lastRefillTime = System.currentTimeMillis();
+
+    private boolean drainScheduled;
+
+    public ConnectionAdmissionController(ConnectionAdmissionProperties properties, DeviceGatewayMonitor monitor) {
+        this.properties = properties;
+        this.monitor = monitor;
+        this.tokens = properties.getMaxConnectionsPerSecond();
+        this.knownClients = Collections.synchronizedMap(new LinkedHashMap<String, Boolean>(1024, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > properties.getMaxKnownClients();
+            }
+        });
+    }
+
+    /**
+     * 申请接入,在握手完成后必须调用{@link Admission#release()}
+     *
+     * @param clientKey 客户端标识,如客户端ID或者IP地址
+     * @return 接入许可, 为空时表示拒绝连接
+     */
+    public Mono<Admission> admit(String clientKey) {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(clientKey, sink);
+            boolean rejected = false;
+            synchronized (this) {
+                //优先队列中的连接先接入
+                boolean hasWaiter = waiter.known
+                    ? !priorityQueue.isEmpty()
+                    : !priorityQueue.isEmpty() || !normalQueue.isEmpty();
+                if (!hasWaiter && tryAcquire()) {
+                    waiter.admission = new Admission(clientKey);
+                } else if (priorityQueue.size() + normalQueue.size() < properties.getMaxPendingConnections()) {
+                    (waiter.known ? priorityQueue : normalQueue).add(waiter);
+                } else {
+                    rejected = true;
+                }
+            }
+            if (waiter.admission != null) {
+                sink.success(waiter.admission);
+                return;
+            }
+            if (rejected) {
+                monitor.rejected();
+                sink.success();
+                return;
+            }
+            monitor.queued();
+            waiter.timeout = Schedulers
+                .parallel()
+                .schedule(() -> cancel(waiter, true), properties.getMaxPendingTime(), TimeUnit.MILLISECONDS);
+            sink.onCancel(() -> cancel(waiter, false));
+            scheduleDrain();
+        });
+    }
+
+    private void cancel(Waiter waiter, boolean timeout) {
+        boolean removed;
+        synchronized (this) {
+            removed = priorityQueue.remove(waiter) || normalQueue.remove(waiter);
+        }
+        if (removed) {
+            if (timeout) {
+                monitor.rejected();
+                waiter.sink.success();
+            }
+        } else if (!timeout && waiter.admission != null) {
+            //已经获取到许可但是订阅被取消
+            waiter.admission.release();
+        }
+    }
+
+    private boolean tryAcquire() {
+        if (isHandshakeFull()) {
+            return false;
+        }
+        int rate = properties.getMaxConnectionsPerSecond();
+        if (rate > 0) {
+            long now = System.currentTimeMillis();
+            tokens = Math.min(rate, tokens + (now - lastRefillTime) * rate / 1000D);
+            lastRefillTime = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+        }
+        handshaking++;
+        return true;
+    }
+
+    private boolean isHandshakeFull() {
+        int max = properties.getMaxConcurrentHandshakes();
+        return max > 0 && handshaking >= max;
+    }
+
+    private void release() {
+        synchronized (this) {
+            handshaking--;
+        }
+        drain();
+    }
+
+    //按优先级唤醒排队中的连接
+    private void drain() {
+        List<Waiter> admitted = new ArrayList<>();
+        boolean waitForToken = false;
+        synchronized (this) {
+            drainScheduled = false;
+            while (true) {
+                Waiter waiter = priorityQueue.peek();
+                Deque<Waiter> queue = priorityQueue;
+                if (waiter == null) {
+                    waiter = normalQueue.peek();
+                    queue = normalQueue;
+                }
+                if (waiter == null) {
+                    break;
+                }
+                if (!tryAcquire()) {
+                    //受速率限制,等待令牌
+                    waitForToken = !isHandshakeFull();
+                    break;
+                }
+                queue.poll();
+                waiter.admission = new Admission(waiter.key);
+                admitted.add(waiter);
+            }
+        }
+        for (Waiter waiter : admitted) {
+            Disposable timeout = waiter.timeout;
+            if (timeout != null) {
+                timeout.dispose();
+            }
+            waiter.sink.success(waiter.admission);
+        }
+        if (waitForToken) {
+            scheduleDrain();
+        }
+    }
+
+    private void scheduleDrain() {
+        synchronized (this) {
+            if (drainScheduled) {
+                return;
+            }
+            drainScheduled = true;
+        }
+        int rate = properties.getMaxConnectionsPerSecond();
+        long delay = rate > 0 ? Math.max(1, 1000 / rate) : 1;
+        Schedulers.parallel().schedule(this::drain, delay, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isKnown(String clientKey) {
+        return clientKey != null && knownClients.containsKey(clientKey);
+    }
+
+    private class Waiter {
+        private final String key;
+
+        private final boolean known;
+
+        private final MonoSink<Admission> sink;
+
+        private volatile Admission admission;
+
+        private volatile Disposable timeout;
+
+        private Waiter(String key, MonoSink<Admission> sink) {
+            this.key = key;
+            this.known = isKnown(key);
+            this.sink = sink;
+        }
+    }
+
+    /**
+     * 接入许可
+     */
+    public class Admission {
+
+        private final String clientKey;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private volatile Disposable timeout;
+
+        private Admission(String clientKey) {
+            this.clientKey = clientKey;
+            long maxHandshakeTime = properties.getMaxHandshakeTime();
+            if (maxHandshakeTime > 0) {
+                this.timeout = Schedulers
+                    .parallel()
+                    .schedule(this::release, maxHandshakeTime, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * 接入成功,之后此客户端重连时优先接入
+         */
+        public void success() {
+            if (clientKey != null) {
+                knownClients.put(clientKey, true);
+            }
+            release();
+        }
+
+        /**
+         * 握手结束,释放许可
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                Disposable timeout = this.timeout;
+                if (timeout != null) {
+                    timeout.dispose();
+                }
+                ConnectionAdmissionController.this.release();
+            }
+        }
+    }
+}
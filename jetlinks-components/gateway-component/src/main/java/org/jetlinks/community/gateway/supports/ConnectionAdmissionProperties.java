@@ -0,0 +1,35 @@
+package org.jetlinks.community.gateway.supports;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 设备网关连接准入配置,从网关配置中读取
+ *
+ * @author zhouhao
+ * @see ConnectionAdmissionController
+ * @since 1.0
+ */
+@Getter
+@Setter
+public class ConnectionAdmissionProperties {
+
+    //同时进行中的握手(认证,注册)数量,小于等于0时不限制
+    private int maxConcurrentHandshakes = 256;
+
+    //每秒最多接入的新连接数量,小于等于0时不限制
+    private int maxConnectionsPerSecond = 0;
+
+    //等待接入的最大连接数量,超过后直接拒绝
+    private int maxPendingConnections = 10000;
+
+    //连接最长等待时间(毫秒),超时后拒绝
+    private long maxPendingTime = 10000;
+
+    //获取许可后最长握手时间(毫秒),超时后自动释放许可,小于等于0时不限制
+    private long maxHandshakeTime = 10000;
+
+    //记录最近成功接入的客户端数量,这些客户端优先接入
+    private int maxKnownClients = 100000;
+
+}
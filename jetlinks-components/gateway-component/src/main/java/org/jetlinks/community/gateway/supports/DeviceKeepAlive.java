@@ -0,0 +1,43 @@
+package org.jetlinks.community.gateway.supports;
+
+import org.jetlinks.community.utils.TimeUtils;
+import org.jetlinks.core.Value;
+import org.jetlinks.core.device.DeviceOperator;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * 设备心跳超时配置,可在产品或设备的配置中设置{@link #CONFIG_KEY},设备配置优先.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+public class DeviceKeepAlive {
+
+    public static final String CONFIG_KEY = "keepAliveTimeout";
+
+    /**
+     * 获取设备的心跳超时时间,纯数字时单位为秒,也支持1m,90s等格式
+     *
+     * @param device 设备
+     * @return 心跳超时时间, 未配置时为空
+     */
+    public static Mono<Duration> getTimeout(DeviceOperator device) {
+        return device
+            .getConfig(CONFIG_KEY)
+            .map(Value::asString)
+            .filter(StringUtils::hasText)
+            .map(DeviceKeepAlive::parse)
+            .filter(duration -> !duration.isZero());
+    }
+
+    static Duration parse(String timeout) {
+        try {
+            return Duration.ofSeconds(Long.parseLong(timeout.trim()));
+        } catch (NumberFormatException e) {
+            return TimeUtils.parse(timeout.trim());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.jetlinks.community.gateway.supports;
+
+import org.jetlinks.core.Value;
+import org.jetlinks.core.device.DeviceOperator;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+class DeviceKeepAliveTest {
+
+    @Test
+    void testParse() {
+        //纯数字单位为秒
+        assertEquals(Duration.ofSeconds(90), DeviceKeepAlive.parse("90"));
+        assertEquals(Duration.ofSeconds(60), DeviceKeepAlive.parse(" 60 "));
+
+        assertEquals(Duration.ofMinutes(1), DeviceKeepAlive.parse("1m"));
+        assertEquals(Duration.ofSeconds(90), DeviceKeepAlive.parse("1m30s"));
+        assertEquals(Duration.ofMillis(500), DeviceKeepAlive.parse("500S"));
+        assertEquals(Duration.ofMinutes(5), DeviceKeepAlive.parse("PT5M"));
+    }
+
+    DeviceOperator device(String timeout) {
+        DeviceOperator device = mock(DeviceOperator.class);
+        doReturn(timeout == null ? Mono.empty() : Mono.just(Value.simple(timeout)))
+            .when(device)
+            .getConfig(DeviceKeepAlive.CONFIG_KEY);
+        return device;
+    }
+
+    @Test
+    void testGetTimeout() {
+        DeviceKeepAlive.getTimeout(device("120"))
+            .as(StepVerifier::create)
+            .expectNext(Duration.ofMinutes(2))
+            .verifyComplete();
+
+        //未配置或者配置为0时为空
+        DeviceKeepAlive.getTimeout(device(null))
+            .as(StepVerifier::create)
+            .verifyComplete();
+
+        DeviceKeepAlive.getTimeout(device("0"))
+            .as(StepVerifier::create)
+            .verifyComplete();
+
+        DeviceKeepAlive.getTimeout(device(""))
+            .as(StepVerifier::create)
+            .verifyComplete();
+    }
+}
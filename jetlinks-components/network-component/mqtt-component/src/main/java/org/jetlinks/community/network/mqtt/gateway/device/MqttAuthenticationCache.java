@@ -0,0 +1,129 @@
+package org.jetlinks.community.network.mqtt.gateway.device;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.jetlinks.core.device.AuthenticationResponse;
+import org.jetlinks.core.device.DeviceOperator;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MQTT连接认证缓存,缓存认证成功的结果,设备频繁重连时无需每次都获取设备并执行协议认证.
+ * <p>
+ * 以clientId为key,同时保存用户名和密码的摘要,凭证变化时不会命中缓存.
+ * 缓存数量达到上限时先清理过期的缓存,仍然没有空间则不再缓存.
+ * <p>
+ * 缓存只在当前节点通过{@link org.jetlinks.community.gateway.events.DeviceCredentialChangedEvent}清除,
+ * 命中缓存时网关仍会从注册中心获取设备,设备在其他节点被删除或者取消发布后不会再使用缓存.
+ * 其他节点修改的设备密钥等配置在缓存过期后生效.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+class MqttAuthenticationCache {
+
+    private final long ttl;
+
+    private final int maxSize;
+
+    private final Map<String, CachedAuthentication> cache = new ConcurrentHashMap<>();
+
+    MqttAuthenticationCache(Duration ttl, int maxSize) {
+        this.ttl = ttl.toMillis();
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 获取缓存的认证结果
+     *
+     * @param clientId clientId
+     * @param username 用户名
+     * @param password 密码
+     * @return 认证结果, 未命中时返回<code>null</code>
+     */
+    CachedAuthentication get(String clientId, String username, String password) {
+        CachedAuthentication cached = cache.get(clientId);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.isExpired(System.currentTimeMillis())) {
+            cache.remove(clientId, cached);
+            return null;
+        }
+        if (!cached.credential.equals(digest(clientId, username, password))) {
+            return null;
+        }
+        return cached;
+    }
+
+    void put(String clientId,
+             String username,
+             String password,
+             DeviceOperator device,
+             AuthenticationResponse response) {
+        if (ttl <= 0 || maxSize <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (cache.size() >= maxSize && !cache.containsKey(clientId)) {
+            cache.values().removeIf(cached -> cached.isExpired(now));
+            if (cache.size() >= maxSize) {
+                return;
+            }
+        }
+        cache.put(clientId, new CachedAuthentication(digest(clientId, username, password), device, response, now + ttl));
+    }
+
+    /**
+     * 清除设备的认证缓存,设备ID可能和clientId不同,所以同时按设备ID匹配
+     *
+     * @param deviceIds 设备ID
+     */
+    void invalidate(Collection<String> deviceIds) {
+        Set<String> ids = new HashSet<>(deviceIds);
+        for (String deviceId : ids) {
+            cache.remove(deviceId);
+        }
+        cache.values().removeIf(cached -> ids.contains(cached.device.getDeviceId()));
+    }
+
+    void invalidateAll() {
+        cache.clear();
+    }
+
+    int size() {
+        return cache.size();
+    }
+
+    private static String digest(String clientId, String username, String password) {
+        return DigestUtils.sha256Hex(clientId + "\n" + username + "\n" + password);
+    }
+
+    static class CachedAuthentication {
+        private final String credential;
+
+        final DeviceOperator device;
+
+        final AuthenticationResponse response;
+
+        private final long expireTime;
+
+        private CachedAuthentication(String credential,
+                                     DeviceOperator device,
+                                     AuthenticationResponse response,
+                                     long expireTime) {
+            this.credential = credential;
+            this.device = device;
+            this.response = response;
+            this.expireTime = expireTime;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expireTime;
+        }
+    }
+}
@@ -6,6 +6,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.jetlinks.community.gateway.monitor.DeviceGatewayMonitor;
 import org.jetlinks.community.gateway.monitor.GatewayMonitors;
 import org.jetlinks.community.gateway.monitor.MonitorSupportDeviceGateway;
+import org.jetlinks.community.gateway.supports.ConnectionAdmissionController;
+import org.jetlinks.community.gateway.supports.ConnectionAdmissionProperties;
+import org.jetlinks.community.gateway.supports.DeviceKeepAlive;
 import org.jetlinks.core.device.AuthenticationResponse;
 import org.jetlinks.core.device.DeviceOperator;
 import org.jetlinks.core.device.DeviceRegistry;
@@ -30,9 +33,11 @@ import reactor.core.publisher.EmitterProcessor;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.FluxSink;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple3;
 import reactor.util.function.Tuples;
 
 import javax.annotation.Nonnull;
+import java.util.Collections;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
@@ -53,14 +58,40 @@ class MqttServerDeviceGateway implements DeviceGateway , MonitorSupportDeviceGat
 
     private DeviceGatewayMonitor gatewayMonitor;
 
+    private ConnectionAdmissionController admissionController;
+
     private LongAdder counter = new LongAdder();
 
+    //认证缓存,为null时不缓存
+    private MqttAuthenticationCache authCache;
+
     public MqttServerDeviceGateway(String id,
                                    DeviceRegistry registry,
                                    DeviceSessionManager sessionManager,
                                    MqttServer mqttServer,
                                    DecodedClientMessageHandler messageHandler) {
+        this(id, registry, sessionManager, mqttServer, messageHandler, new ConnectionAdmissionProperties());
+    }
+
+    public MqttServerDeviceGateway(String id,
+                                   DeviceRegistry registry,
+                                   DeviceSessionManager sessionManager,
+                                   MqttServer mqttServer,
+                                   DecodedClientMessageHandler messageHandler,
+                                   ConnectionAdmissionProperties admissionProperties) {
+        this(id, registry, sessionManager, mqttServer, messageHandler, admissionProperties, null);
+    }
+
+    public MqttServerDeviceGateway(String id,
+                                   DeviceRegistry registry,
+                                   DeviceSessionManager sessionManager,
+                                   MqttServer mqttServer,
+                                   DecodedClientMessageHandler messageHandler,
+                                   ConnectionAdmissionProperties admissionProperties,
+                                   MqttAuthenticationCache authCache) {
+        this.authCache = authCache;
         this.gatewayMonitor = GatewayMonitors.getDeviceGatewayMonitor(id);
+        this.admissionController = new ConnectionAdmissionController(admissionProperties, gatewayMonitor);
         this.id = id;
         this.registry = registry;
         this.sessionManager = sessionManager;
@@ -94,68 +125,14 @@ class MqttServerDeviceGateway implements DeviceGateway , MonitorSupportDeviceGat
                 }
                 return started.get();
             })
-            .flatMap(con -> Mono.justOrEmpty(con.getAuth())
-                //没有认证信息,则拒绝连接.
-                .switchIfEmpty(Mono.fromRunnable(() -> {
-                    con.reject(MqttConnectReturnCode.CONNECTION_REFUSED_NOT_AUTHORIZED);
-                    gatewayMonitor.rejected();
-                }))
-                .flatMap(auth ->
-                    registry.getDevice(con.getClientId())
-                        .flatMap(device -> device
-                            .authenticate(new MqttAuthenticationRequest(con.getClientId(), auth.getUsername(), auth.getPassword(), getTransport()))
-                            .switchIfEmpty(Mono.fromRunnable(() -> con.reject(MqttConnectReturnCode.CONNECTION_REFUSED_BAD_USER_NAME_OR_PASSWORD)))
-                            .flatMap(resp -> {
-                                String deviceId = StringUtils.isEmpty(resp.getDeviceId()) ? device.getDeviceId() : resp.getDeviceId();
-                                //认证返回了新的设备ID,则使用新的设备
-                                if (!deviceId.equals(device.getDeviceId())) {
-                                    return registry
-                                        .getDevice(deviceId)
-                                        .map(operator -> Tuples.of(operator, resp, con));
-                                }
-                                return Mono.just(Tuples.of(device, resp, con));
-                            })
-                        ))
-                //设备注册信息不存在,拒绝连接
-                .switchIfEmpty(Mono.fromRunnable(() -> {
-                    con.reject(MqttConnectReturnCode.CONNECTION_REFUSED_IDENTIFIER_REJECTED);
-                    gatewayMonitor.rejected();
-                }))
-                .onErrorResume((err) -> Mono.fromRunnable(() -> {
-                    gatewayMonitor.rejected();
-                    con.reject(MqttConnectReturnCode.CONNECTION_REFUSED_SERVER_UNAVAILABLE);
-                    log.error("MQTT连接认证[{}]失败", con.getClientId(), err);
-                })))
-            .flatMap(tuple3 -> {
-                counter.increment();
-                DeviceOperator device = tuple3.getT1();
-                AuthenticationResponse resp = tuple3.getT2();
-                MqttConnection con = tuple3.getT3();
-                String deviceId = device.getDeviceId();
-                if (resp.isSuccess()) {
-                    DeviceSession session = new MqttConnectionSession(deviceId, device, getTransport(), con) {
-                        @Override
-                        public Mono<Boolean> send(EncodedMessage encodedMessage) {
-                            return super.send(encodedMessage).doOnSuccess(s -> gatewayMonitor.sentMessage());
-                        }
-                    };
-                    sessionManager.register(session);
-                    gatewayMonitor.connected();
-                    gatewayMonitor.totalConnection(counter.sum());
-                    //监听断开连接
-                    con.onClose(conn -> {
-                        counter.decrement();
-                        sessionManager.unregister(deviceId);
-                        gatewayMonitor.disconnected();
-                        gatewayMonitor.totalConnection(counter.sum());
-                    });
-                    return Mono.just(Tuples.of(con.accept(), device, session));
-                } else {
-                    gatewayMonitor.rejected();
-                    log.warn("MQTT客户端认证[{}]失败:{}", deviceId, resp.getMessage());
-                }
-                return Mono.empty();
-            })
+            .flatMap(con -> admissionController
+                .admit(con.getClientId())
+                //超过接入限制,拒绝连接
+                .switchIfEmpty(Mono.fromRunnable(() -> con.reject(MqttConnectReturnCode.CONNECTION_REFUSED_SERVER_UNAVAILABLE)))
+                .flatMap(admission -> authenticate(con)
+                    .flatMap(this::handleAuthResult)
+                    .doOnNext(ignore -> admission.success())
+                    .doFinally(s -> admission.release())))
             .onErrorResume((err) -> Mono.fromRunnable(() -> log.error("处理MQTT连接失败", err)))
             .subscribe(tp -> tp.getT1()
                 .handleMessage()
@@ -190,6 +167,102 @@ class MqttServerDeviceGateway implements DeviceGateway , MonitorSupportDeviceGat
 
     }
 
+    //认证
+    private Mono<Tuple3<DeviceOperator, AuthenticationResponse, MqttConnection>> authenticate(MqttConnection con) {
+        long startTime = System.currentTimeMillis();
+        return Mono.justOrEmpty(con.getAuth())
+            //没有认证信息,则拒绝连接.
+            .switchIfEmpty(Mono.fromRunnable(() -> {
+                con.reject(MqttConnectReturnCode.CONNECTION_REFUSED_NOT_AUTHORIZED);
+                gatewayMonitor.rejected();
+            }))
+            .flatMap(auth -> {
+                //设备频繁重连时直接使用缓存的认证结果
+                MqttAuthenticationCache.CachedAuthentication cached = authCache == null
+                    ? null
+                    : authCache.get(con.getClientId(), auth.getUsername(), auth.getPassword());
+                if (cached != null) {
+                    //缓存期间设备可能已在集群中的其他节点被删除或者取消发布,重新从注册中心获取设备
+                    return registry
+                        .getDevice(cached.device.getDeviceId())
+                        .switchIfEmpty(Mono.fromRunnable(() -> authCache.invalidate(Collections.singletonList(con.getClientId()))))
+                        .map(device -> {
+                            gatewayMonitor.authenticated(System.currentTimeMillis() - startTime, true);
+                            return Tuples.of(device, cached.response, con);
+                        });
+                }
+                return registry.getDevice(con.getClientId())
+                    .flatMap(device -> device
+                        .authenticate(new MqttAuthenticationRequest(con.getClientId(), auth.getUsername(), auth.getPassword(), getTransport()))
+                        .switchIfEmpty(Mono.fromRunnable(() -> con.reject(MqttConnectReturnCode.CONNECTION_REFUSED_BAD_USER_NAME_OR_PASSWORD)))
+                        .flatMap(resp -> {
+                            String deviceId = StringUtils.isEmpty(resp.getDeviceId()) ? device.getDeviceId() : resp.getDeviceId();
+                            //认证返回了新的设备ID,则使用新的设备
+                            if (!deviceId.equals(device.getDeviceId())) {
+                                return registry
+                                    .getDevice(deviceId)
+                                    .map(operator -> Tuples.of(operator, resp, con));
+                            }
+                            return Mono.just(Tuples.of(device, resp, con));
+                        })
+                    )
+                    .doOnNext(tp -> {
+                        gatewayMonitor.authenticated(System.currentTimeMillis() - startTime, false);
+                        if (authCache != null && tp.getT2().isSuccess()) {
+                            authCache.put(con.getClientId(), auth.getUsername(), auth.getPassword(), tp.getT1(), tp.getT2());
+                        }
+                    });
+            })
+            //设备注册信息不存在,拒绝连接
+            .switchIfEmpty(Mono.fromRunnable(() -> {
+                con.reject(MqttConnectReturnCode.CONNECTION_REFUSED_IDENTIFIER_REJECTED);
+                gatewayMonitor.rejected();
+            }))
+            .onErrorResume((err) -> Mono.fromRunnable(() -> {
+                gatewayMonitor.rejected();
+                con.reject(MqttConnectReturnCode.CONNECTION_REFUSED_SERVER_UNAVAILABLE);
+                log.error("MQTT连接认证[{}]失败", con.getClientId(), err);
+            }));
+    }
+
+    //处理认证结果,认证通过则注册会话
+    private Mono<Tuple3<MqttConnection, DeviceOperator, DeviceSession>> handleAuthResult(
+        Tuple3<DeviceOperator, AuthenticationResponse, MqttConnection> tuple3) {
+        counter.increment();
+        DeviceOperator device = tuple3.getT1();
+        AuthenticationResponse resp = tuple3.getT2();
+        MqttConnection con = tuple3.getT3();
+        String deviceId = device.getDeviceId();
+        if (resp.isSuccess()) {
+            DeviceSession session = new MqttConnectionSession(deviceId, device, getTransport(), con) {
+                @Override
+                public Mono<Boolean> send(EncodedMessage encodedMessage) {
+                    return super.send(encodedMessage).doOnSuccess(s -> gatewayMonitor.sentMessage());
+                }
+            };
+            sessionManager.register(session);
+            gatewayMonitor.connected();
+            gatewayMonitor.totalConnection(counter.sum());
+            //监听断开连接
+            con.onClose(conn -> {
+                counter.decrement();
+                sessionManager.unregister(deviceId);
+                gatewayMonitor.disconnected();
+                gatewayMonitor.totalConnection(counter.sum());
+            });
+            MqttConnection accepted = con.accept();
+            //使用产品或设备配置的心跳超时时间,由连接的事件循环在到期时关闭连接
+            return DeviceKeepAlive
+                .getTimeout(device)
+                .doOnNext(session::setKeepAliveTimeout)
+                .then(Mono.fromSupplier(() -> Tuples.of(accepted, device, session)));
+        } else {
+            gatewayMonitor.rejected();
+            log.warn("MQTT客户端认证[{}]失败:{}", deviceId, resp.getMessage());
+        }
+        return Mono.empty();
+    }
+
     @Override
     public Transport getTransport() {
         return DefaultTransport.MQTT;
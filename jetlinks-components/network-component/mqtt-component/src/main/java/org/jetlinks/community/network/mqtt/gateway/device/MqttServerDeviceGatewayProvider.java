@@ -1,8 +1,11 @@
 package org.jetlinks.community.network.mqtt.gateway.device;
 
+import org.hswebframework.web.bean.FastBeanCopier;
 import org.jetlinks.core.device.DeviceRegistry;
 import org.jetlinks.core.server.session.DeviceSessionManager;
 import org.jetlinks.community.gateway.DeviceGateway;
+import org.jetlinks.community.gateway.events.DeviceCredentialChangedEvent;
+import org.jetlinks.community.gateway.supports.ConnectionAdmissionProperties;
 import org.jetlinks.community.gateway.supports.DeviceGatewayProperties;
 import org.jetlinks.community.gateway.supports.DeviceGatewayProvider;
 import org.jetlinks.community.network.DefaultNetworkType;
@@ -10,9 +13,12 @@ import org.jetlinks.community.network.NetworkManager;
 import org.jetlinks.community.network.NetworkType;
 import org.jetlinks.community.network.mqtt.server.MqttServer;
 import org.jetlinks.supports.server.DecodedClientMessageHandler;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+
 @Component
 public class MqttServerDeviceGatewayProvider implements DeviceGatewayProvider {
 
@@ -24,6 +30,9 @@ public class MqttServerDeviceGatewayProvider implements DeviceGatewayProvider {
 
     private final DecodedClientMessageHandler messageHandler;
 
+    //所有MQTT网关共享的认证缓存
+    private final MqttAuthenticationCache authCache = new MqttAuthenticationCache(Duration.ofMinutes(5), 100000);
+
     public MqttServerDeviceGatewayProvider(NetworkManager networkManager,
                                            DeviceRegistry registry,
                                            DeviceSessionManager sessionManager,
@@ -54,9 +63,26 @@ public class MqttServerDeviceGatewayProvider implements DeviceGatewayProvider {
         return networkManager
             .<MqttServer>getNetwork(getNetworkType(), properties.getNetworkId())
             .map(mqttServer -> {
-                MqttServerDeviceGateway gateway = new MqttServerDeviceGateway(properties.getId(), registry, sessionManager, mqttServer, messageHandler);
+                MqttServerDeviceGateway gateway = new MqttServerDeviceGateway(
+                    properties.getId(),
+                    registry,
+                    sessionManager,
+                    mqttServer,
+                    messageHandler,
+                    FastBeanCopier.copy(properties.getConfiguration(), new ConnectionAdmissionProperties()),
+                    authCache);
 
                 return gateway;
             });
     }
+
+    //设备或产品的认证信息变更,清除认证缓存
+    @EventListener
+    public void handleCredentialChanged(DeviceCredentialChangedEvent event) {
+        if (event.getProductId() != null) {
+            authCache.invalidateAll();
+        } else if (event.getDeviceIds() != null) {
+            authCache.invalidate(event.getDeviceIds());
+        }
+    }
 }
@@ -0,0 +1,45 @@
+package org.jetlinks.community.network.mqtt.server.vertx;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * MQTT连接推送消息的在途窗口配置
+ *
+ * @author zhouhao
+ * @see VertxMqttServerProperties
+ * @since 1.0
+ */
+@Getter
+@AllArgsConstructor
+class MqttInflightOptions {
+
+    static final MqttInflightOptions DEFAULT = of(new VertxMqttServerProperties());
+
+    private final int maxInflightQos1;
+
+    private final int maxInflightQos2;
+
+    private final long retryInterval;
+
+    private final int maxRetries;
+
+    private final long waitTimeout;
+
+    private final long writeHighWaterMark;
+
+    //未配置在途数量,重发以及等待时不使用在途窗口
+    boolean isEnabled() {
+        return maxInflightQos1 > 0 || maxInflightQos2 > 0 || retryInterval > 0 || waitTimeout > 0;
+    }
+
+    static MqttInflightOptions of(VertxMqttServerProperties properties) {
+        return new MqttInflightOptions(
+            properties.getMaxInflightQos1(),
+            properties.getMaxInflightQos2(),
+            properties.getInflightRetryInterval(),
+            properties.getInflightMaxRetries(),
+            properties.getInflightWaitTimeout(),
+            properties.getWriteHighWaterMark());
+    }
+}
@@ -0,0 +1,344 @@
+package org.jetlinks.community.network.mqtt.server.vertx;
+
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.mqtt.MqttEndpoint;
+import lombok.extern.slf4j.Slf4j;
+import org.jetlinks.core.message.codec.MqttMessage;
+import reactor.core.Exceptions;
+import reactor.core.publisher.MonoSink;
+
+import java.net.SocketException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * MQTT推送消息在途窗口,在连接所在的事件循环中跟踪QoS1和QoS2消息的应答.
+ * <p>
+ * QoS1和QoS2消息分别限制在途(已推送未应答)数量,超时未应答时使用相同的消息ID重发,重发次数用尽后释放窗口.
+ * 窗口已满或者待写出字节数超过高水位时,推送按顺序进入等待队列,等待超时或者未配置等待时间时直接返回错误.
+ * <p>
+ * 推送结果在消息写出后返回,不等待客户端应答,应答只用于释放窗口.
+ * <p>
+ * 默认不启用,只有配置了在途数量,重发间隔或者等待时间时才会为连接创建窗口,见{@link MqttInflightOptions#isEnabled()}.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+@Slf4j
+class MqttInflightWindow {
+
+    private static final int MAX_MESSAGE_ID = 65535;
+
+    private final MqttEndpoint endpoint;
+
+    private final Context context;
+
+    private final MqttInflightOptions options;
+
+    //消息写出成功后回调
+    private final Runnable writeListener;
+
+    //以下字段只在事件循环中访问
+    private final Map<Integer, Inflight> inflight = new HashMap<>();
+
+    private final Deque<Pending> waiting = new ArrayDeque<>();
+
+    private int inflightQos1, inflightQos2;
+
+    private int lastMessageId;
+
+    private long pendingWriteBytes;
+
+    private boolean draining;
+
+    private volatile boolean closed;
+
+    MqttInflightWindow(MqttEndpoint endpoint, Context context, MqttInflightOptions options, Runnable writeListener) {
+        this.endpoint = endpoint;
+        this.context = context;
+        this.options = options;
+        this.writeListener = writeListener;
+    }
+
+    void publish(MqttMessage message, MonoSink<Void> sink) {
+        execute(() -> {
+            if (closed) {
+                sink.error(new SocketException("mqtt connection closed"));
+                return;
+            }
+            Pending pending = new Pending(message, sink);
+            //已有等待中的推送时也进入等待,保证推送顺序
+            if (waiting.isEmpty() && isWritable(pending.qos)) {
+                doPublish(pending);
+                return;
+            }
+            if (options.getWaitTimeout() <= 0) {
+                sink.error(overflow());
+                return;
+            }
+            pending.timerId = context.owner().setTimer(options.getWaitTimeout(), id -> {
+                pending.timerId = -1;
+                if (waiting.remove(pending)) {
+                    pending.sink.error(overflow());
+                }
+            });
+            waiting.add(pending);
+        });
+    }
+
+    //QoS1 PUBACK
+    void acknowledge(int messageId) {
+        Inflight entry = inflight.get(messageId);
+        if (entry != null && entry.qos == MqttQoS.AT_LEAST_ONCE) {
+            release(entry);
+            drain();
+        }
+    }
+
+    //QoS2 PUBREC,之后只重发PUBREL
+    void received(int messageId) {
+        Inflight entry = inflight.get(messageId);
+        if (entry != null && entry.qos == MqttQoS.EXACTLY_ONCE && !entry.received) {
+            entry.received = true;
+            entry.payload = null;
+            entry.retries = 0;
+            scheduleRetry(entry);
+        }
+        endpoint.publishRelease(messageId);
+    }
+
+    //QoS2 PUBCOMP
+    void complete(int messageId) {
+        Inflight entry = inflight.get(messageId);
+        if (entry != null && entry.qos == MqttQoS.EXACTLY_ONCE) {
+            release(entry);
+            drain();
+        }
+    }
+
+    void close() {
+        closed = true;
+        execute(() -> {
+            for (Inflight entry : new ArrayList<>(inflight.values())) {
+                release(entry);
+            }
+            Pending pending;
+            while ((pending = waiting.poll()) != null) {
+                cancelTimer(pending.timerId);
+                pending.sink.error(new SocketException("mqtt connection closed"));
+            }
+        });
+    }
+
+    private void execute(Runnable runnable) {
+        if (Vertx.currentContext() == context) {
+            runnable.run();
+        } else {
+            context.runOnContext(v -> runnable.run());
+        }
+    }
+
+    private boolean isWritable(MqttQoS qos) {
+        if (pendingWriteBytes >= options.getWriteHighWaterMark()) {
+            return false;
+        }
+        if (qos == MqttQoS.AT_MOST_ONCE) {
+            return true;
+        }
+        if (inflight.size() >= MAX_MESSAGE_ID) {
+            return false;
+        }
+        if (qos == MqttQoS.AT_LEAST_ONCE) {
+            return options.getMaxInflightQos1() <= 0 || inflightQos1 < options.getMaxInflightQos1();
+        }
+        return options.getMaxInflightQos2() <= 0 || inflightQos2 < options.getMaxInflightQos2();
+    }
+
+    private void drain() {
+        //写出回调中可能再次触发
+        if (draining) {
+            return;
+        }
+        draining = true;
+        try {
+            Pending pending;
+            while (!closed && (pending = waiting.peek()) != null && isWritable(pending.qos)) {
+                waiting.poll();
+                cancelTimer(pending.timerId);
+                doPublish(pending);
+            }
+        } finally {
+            draining = false;
+        }
+    }
+
+    private void doPublish(Pending pending) {
+        MqttMessage message = pending.message;
+        Buffer payload = Buffer.buffer(message.getPayload());
+        if (pending.qos == MqttQoS.AT_MOST_ONCE) {
+            write(message.getTopic(), payload, pending.qos, message.isDup(), message.isRetain(), 0, pending.sink, null);
+            return;
+        }
+        Inflight entry = new Inflight(nextMessageId(), pending.qos, message.getTopic(), payload, message.isRetain());
+        inflight.put(entry.messageId, entry);
+        if (entry.qos == MqttQoS.AT_LEAST_ONCE) {
+            inflightQos1++;
+        } else {
+            inflightQos2++;
+        }
+        scheduleRetry(entry);
+        write(entry.topic, payload, entry.qos, message.isDup(), entry.retain, entry.messageId, pending.sink, entry);
+    }
+
+    private void write(String topic,
+                       Buffer payload,
+                       MqttQoS qos,
+                       boolean dup,
+                       boolean retain,
+                       int messageId,
+                       MonoSink<Void> sink,
+                       Inflight entry) {
+        int size = payload.length();
+        pendingWriteBytes += size;
+        Handler<AsyncResult<Integer>> handler = result -> {
+            pendingWriteBytes -= size;
+            if (result.succeeded()) {
+                writeListener.run();
+                if (sink != null) {
+                    sink.success();
+                }
+            } else {
+                //写出失败时释放窗口,通常是连接已经断开
+                if (entry != null) {
+                    release(entry);
+                }
+                if (sink != null) {
+                    sink.error(result.cause());
+                }
+            }
+            drain();
+        };
+        try {
+            if (qos == MqttQoS.AT_MOST_ONCE) {
+                endpoint.publish(topic, payload, qos, dup, retain, handler);
+            } else {
+                endpoint.publish(topic, payload, qos, dup, retain, messageId, handler);
+            }
+        } catch (Throwable e) {
+            handler.handle(Future.failedFuture(e));
+        }
+    }
+
+    private void scheduleRetry(Inflight entry) {
+        cancelTimer(entry.timerId);
+        entry.timerId = -1;
+        if (options.getRetryInterval() <= 0) {
+            return;
+        }
+        entry.timerId = context.owner().setTimer(options.getRetryInterval(), id -> {
+            entry.timerId = -1;
+            retry(entry);
+        });
+    }
+
+    private void retry(Inflight entry) {
+        if (closed || inflight.get(entry.messageId) != entry) {
+            return;
+        }
+        if (entry.retries++ >= options.getMaxRetries()) {
+            log.warn("mqtt client [{}] message [{}] not acknowledged after {} retries", endpoint.clientIdentifier(), entry.messageId, options.getMaxRetries());
+            release(entry);
+            drain();
+            return;
+        }
+        log.debug("retry mqtt client [{}] message [{}] , retries: {}", endpoint.clientIdentifier(), entry.messageId, entry.retries);
+        scheduleRetry(entry);
+        if (entry.received) {
+            endpoint.publishRelease(entry.messageId);
+        } else {
+            write(entry.topic, entry.payload, entry.qos, true, entry.retain, entry.messageId, null, entry);
+        }
+    }
+
+    private void release(Inflight entry) {
+        if (inflight.remove(entry.messageId, entry)) {
+            cancelTimer(entry.timerId);
+            entry.timerId = -1;
+            if (entry.qos == MqttQoS.AT_LEAST_ONCE) {
+                inflightQos1--;
+            } else {
+                inflightQos2--;
+            }
+        }
+    }
+
+    //跳过仍在途中的消息ID
+    private int nextMessageId() {
+        do {
+            lastMessageId = lastMessageId % MAX_MESSAGE_ID + 1;
+        } while (inflight.containsKey(lastMessageId));
+        return lastMessageId;
+    }
+
+    private void cancelTimer(long timerId) {
+        if (timerId != -1) {
+            context.owner().cancelTimer(timerId);
+        }
+    }
+
+    private IllegalStateException overflow() {
+        return Exceptions.failWithOverflow("mqtt client [" + endpoint.clientIdentifier() + "] inflight window is full");
+    }
+
+    private static class Pending {
+        private final MqttMessage message;
+
+        private final MqttQoS qos;
+
+        private final MonoSink<Void> sink;
+
+        private long timerId = -1;
+
+        private Pending(MqttMessage message, MonoSink<Void> sink) {
+            this.message = message;
+            this.qos = MqttQoS.valueOf(message.getQosLevel());
+            this.sink = sink;
+        }
+    }
+
+    private static class Inflight {
+        private final int messageId;
+
+        private final MqttQoS qos;
+
+        private final String topic;
+
+        private final boolean retain;
+
+        private Buffer payload;
+
+        //QoS2已收到PUBREC
+        private boolean received;
+
+        private int retries;
+
+        private long timerId = -1;
+
+        private Inflight(int messageId, MqttQoS qos, String topic, Buffer payload, boolean retain) {
+            this.messageId = messageId;
+            this.qos = qos;
+            this.topic = topic;
+            this.payload = payload;
+            this.retain = retain;
+        }
+    }
+}
@@ -4,6 +4,8 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.mqtt.MqttConnectReturnCode;
 import io.netty.handler.codec.mqtt.MqttQoS;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.net.SocketAddress;
 import io.vertx.mqtt.MqttEndpoint;
@@ -14,6 +16,7 @@ import io.vertx.mqtt.messages.MqttUnsubscribeMessage;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.jetlinks.community.network.ConnectionIdleChecker;
 import org.jetlinks.community.network.mqtt.server.MqttConnection;
 import org.jetlinks.community.network.mqtt.server.MqttPublishing;
 import org.jetlinks.community.network.mqtt.server.MqttSubscription;
@@ -39,7 +42,13 @@ import java.util.stream.Collectors;
 class VertxMqttConnection implements MqttConnection {
 
     private MqttEndpoint endpoint;
-    private long keepAliveTimeoutMs;
+    private volatile long keepAliveTimeoutMs;
+    //连接所在的上下文,用于在事件循环中检测空闲
+    private final Context context;
+    private final long writeIdleTimeout, allIdleTimeout;
+    private volatile ConnectionIdleChecker idleChecker;
+    //QoS1和QoS2推送的在途窗口,不在事件循环中创建的连接不启用
+    private final MqttInflightWindow inflightWindow;
     @Getter
     private long lastPingTime = System.currentTimeMillis();
     private volatile boolean closed = false, accepted = false, autoAckSub = true, autoAckUnSub = true, autoAckMsg = true;
@@ -52,8 +61,20 @@ class VertxMqttConnection implements MqttConnection {
     private EmitterProcessor<MqttUnSubscription> unsubscription = EmitterProcessor.create(false);
 
     public VertxMqttConnection(MqttEndpoint endpoint) {
+        this(endpoint, 0, 0);
+    }
+
+    public VertxMqttConnection(MqttEndpoint endpoint, long writeIdleTimeout, long allIdleTimeout) {
+        this(endpoint, writeIdleTimeout, allIdleTimeout, MqttInflightOptions.DEFAULT);
+    }
+
+    VertxMqttConnection(MqttEndpoint endpoint, long writeIdleTimeout, long allIdleTimeout, MqttInflightOptions inflightOptions) {
         this.endpoint = endpoint;
         this.keepAliveTimeoutMs = (endpoint.keepAliveTimeSeconds() + 10) * 1000L;
+        this.context = Vertx.currentContext();
+        this.writeIdleTimeout = writeIdleTimeout;
+        this.allIdleTimeout = allIdleTimeout;
+        this.inflightWindow = context == null || !inflightOptions.isEnabled() ? null : new MqttInflightWindow(endpoint, context, inflightOptions, this::written);
     }
 
     private final Consumer<MqttConnection> defaultListener = mqttConnection -> {
@@ -124,9 +145,27 @@ class VertxMqttConnection implements MqttConnection {
 
     void ping() {
         lastPingTime = System.currentTimeMillis();
+        ConnectionIdleChecker checker = this.idleChecker;
+        if (checker != null) {
+            checker.read();
+        }
+    }
+
+    //在连接的事件循环中检测空闲,到期时关闭连接
+    private void startIdleCheck() {
+        if (context == null) {
+            return;
+        }
+        ConnectionIdleChecker checker = new ConnectionIdleChecker(context, state -> {
+            log.debug("mqtt client [{}] {}, close connection", getClientId(), state);
+            close().subscribe();
+        });
+        this.idleChecker = checker;
+        checker.setTimeout(Math.max(0, keepAliveTimeoutMs), writeIdleTimeout, allIdleTimeout);
     }
 
     void init() {
+        startIdleCheck();
         this.endpoint
             .disconnectHandler(ignore -> this.complete())
             .closeHandler(ignore -> this.complete())
@@ -151,12 +190,19 @@ class VertxMqttConnection implements MqttConnection {
             .publishAcknowledgeHandler(messageId -> {
                 ping();
                 log.debug("PUBACK mqtt[{}] message[{}]", getClientId(), messageId);
+                if (inflightWindow != null) {
+                    inflightWindow.acknowledge(messageId);
+                }
             })
             //QoS 2  PUBREC
             .publishReceivedHandler(messageId -> {
                 ping();
                 log.debug("PUBREC mqtt[{}] message[{}]", getClientId(), messageId);
-                endpoint.publishRelease(messageId);
+                if (inflightWindow != null) {
+                    inflightWindow.received(messageId);
+                } else {
+                    endpoint.publishRelease(messageId);
+                }
             })
             //QoS 2  PUBREL
             .publishReleaseHandler(messageId -> {
@@ -168,6 +214,9 @@ class VertxMqttConnection implements MqttConnection {
             .publishCompletionHandler(messageId -> {
                 ping();
                 log.debug("PUBCOMP mqtt[{}] message[{}]", getClientId(), messageId);
+                if (inflightWindow != null) {
+                    inflightWindow.complete(messageId);
+                }
             })
             .subscribeHandler(msg -> {
                 ping();
@@ -196,6 +245,10 @@ class VertxMqttConnection implements MqttConnection {
     @Override
     public void setKeepAliveTimeout(Duration duration) {
         keepAliveTimeoutMs = duration.toMillis();
+        ConnectionIdleChecker checker = this.idleChecker;
+        if (checker != null) {
+            checker.setReadIdleTimeout(Math.max(0, keepAliveTimeoutMs));
+        }
     }
 
     @Override
@@ -224,7 +277,11 @@ class VertxMqttConnection implements MqttConnection {
 
     @Override
     public Mono<Void> publish(MqttMessage message) {
-        ping();
+        //只更新会话时间,写出不作为空闲检测中的读
+        lastPingTime = System.currentTimeMillis();
+        if (inflightWindow != null) {
+            return Mono.create(sink -> inflightWindow.publish(message, sink));
+        }
         return Mono
             .<Void>create(sink -> {
                 Buffer buffer = Buffer.buffer(message.getPayload());
@@ -235,6 +292,7 @@ class VertxMqttConnection implements MqttConnection {
                     message.isRetain(),
                     result -> {
                         if (result.succeeded()) {
+                            written();
                             sink.success();
                         } else {
                             sink.error(result.cause());
@@ -244,6 +302,13 @@ class VertxMqttConnection implements MqttConnection {
             });
     }
 
+    private void written() {
+        ConnectionIdleChecker checker = this.idleChecker;
+        if (checker != null) {
+            checker.write();
+        }
+    }
+
     @Override
     public Flux<MqttSubscription> handleSubscribe(boolean autoAck) {
 
@@ -277,6 +342,12 @@ class VertxMqttConnection implements MqttConnection {
             return;
         }
         closed = true;
+        if (idleChecker != null) {
+            idleChecker.close();
+        }
+        if (inflightWindow != null) {
+            inflightWindow.close();
+        }
         disconnectConsumer.accept(this);
         disconnectConsumer = defaultListener;
     }
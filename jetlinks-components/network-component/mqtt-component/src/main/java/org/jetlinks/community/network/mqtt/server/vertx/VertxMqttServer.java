@@ -24,10 +24,25 @@ public class VertxMqttServer implements MqttServer {
 
     private String id;
 
+    private long writeIdleTimeout;
+
+    private long allIdleTimeout;
+
+    private MqttInflightOptions inflightOptions = MqttInflightOptions.DEFAULT;
+
     public VertxMqttServer(String id) {
         this.id = id;
     }
 
+    public void setIdleTimeout(long writeIdleTimeout, long allIdleTimeout) {
+        this.writeIdleTimeout = writeIdleTimeout;
+        this.allIdleTimeout = allIdleTimeout;
+    }
+
+    void setInflightOptions(MqttInflightOptions inflightOptions) {
+        this.inflightOptions = inflightOptions;
+    }
+
     public void setMqttServer(Collection<io.vertx.mqtt.MqttServer> mqttServer) {
         if (this.mqttServer != null && !this.mqttServer.isEmpty()) {
             shutdown();
@@ -49,7 +64,7 @@ public class VertxMqttServer implements MqttServer {
                         endpoint.reject(MqttConnectReturnCode.CONNECTION_REFUSED_SERVER_UNAVAILABLE);
                         return;
                     }
-                    sink.next(new VertxMqttConnection(endpoint));
+                    sink.next(new VertxMqttConnection(endpoint, writeIdleTimeout, allIdleTimeout, inflightOptions));
                 });
         }
     }
@@ -21,4 +21,28 @@ public class VertxMqttServerProperties {
 
     private MqttServerOptions options;
 
+    //写空闲及读写空闲超时时间(毫秒),小于等于0时不检测.读空闲超时时间为心跳超时时间
+    private long writeIdleTimeout;
+
+    private long allIdleTimeout;
+
+    //在途窗口默认不启用,以下配置均小于等于0时推送直接写出,不等待也不重发
+
+    //每个连接QoS1和QoS2消息的最大在途(已推送未应答)数量,小于等于0时不限制
+    private int maxInflightQos1;
+
+    private int maxInflightQos2;
+
+    //在途消息未应答时的重发间隔(毫秒),小于等于0时不重发
+    private long inflightRetryInterval;
+
+    //在途消息最大重发次数,重发次数用尽后释放窗口
+    private int inflightMaxRetries;
+
+    //窗口已满或者连接不可写时推送的最大等待时间(毫秒),小于等于0时直接返回错误
+    private long inflightWaitTimeout;
+
+    //启用在途窗口时,待写出字节数超过此值时认为连接不可写,暂停推送
+    private long writeHighWaterMark = 512 * 1024;
+
 }
@@ -51,6 +51,8 @@ public class VertxMqttServerProvider implements NetworkProvider<VertxMqttServerP
             instances.add(mqttServer);
 
         }
+        server.setIdleTimeout(properties.getWriteIdleTimeout(), properties.getAllIdleTimeout());
+        server.setInflightOptions(MqttInflightOptions.of(properties));
         server.setMqttServer(instances);
         for (MqttServer instance : instances) {
             instance.listen(result -> {
@@ -83,6 +85,9 @@ public class VertxMqttServerProvider implements NetworkProvider<VertxMqttServerP
             config.setId(properties.getId());
 
             config.setOptions(new JSONObject(properties.getConfigurations()).toJavaObject(MqttServerOptions.class));
+            FastBeanCopier
+                .copy(properties.getConfigurations(), new ServerSocketOptions())
+                .apply(config.getOptions(), vertx.isNativeTransportEnabled());
 
             if (config.isSsl()) {
                 config.getOptions().setSsl(true);
@@ -0,0 +1,176 @@
+package org.jetlinks.community.network.mqtt.server.vertx;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.mqtt.MqttEndpoint;
+import org.jetlinks.core.message.codec.SimpleMqttMessage;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MqttInflightWindowTest {
+
+    static Vertx vertx = Vertx.vertx();
+
+    Context context;
+
+    MqttEndpoint endpoint;
+
+    //写出的消息ID
+    List<Integer> published = new CopyOnWriteArrayList<>();
+
+    //写出时的dup标记
+    List<Boolean> duplicated = new CopyOnWriteArrayList<>();
+
+    List<Integer> released = new CopyOnWriteArrayList<>();
+
+    @AfterAll
+    static void close() {
+        vertx.close();
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void init() {
+        context = vertx.getOrCreateContext();
+        endpoint = mock(MqttEndpoint.class);
+        //写出后立即回调成功
+        doAnswer(invocation -> {
+            int messageId = invocation.getArgument(5);
+            published.add(messageId);
+            duplicated.add(invocation.getArgument(3));
+            Handler<AsyncResult<Integer>> handler = invocation.getArgument(6);
+            handler.handle(Future.succeededFuture(messageId));
+            return endpoint;
+        }).when(endpoint).publish(anyString(), any(Buffer.class), any(MqttQoS.class), anyBoolean(), anyBoolean(), anyInt(), any(Handler.class));
+        doAnswer(invocation -> {
+            released.add(invocation.getArgument(0));
+            return endpoint;
+        }).when(endpoint).publishRelease(anyInt());
+    }
+
+    MqttInflightWindow createWindow(MqttInflightOptions options) {
+        return new MqttInflightWindow(endpoint, context, options, () -> {
+        });
+    }
+
+    MonoProcessor<Void> publish(MqttInflightWindow window, int qos) {
+        return Mono
+            .<Void>create(sink -> window.publish(SimpleMqttMessage.builder()
+                .qosLevel(qos)
+                .topic("/test")
+                .payload(Unpooled.wrappedBuffer("test".getBytes()))
+                .build(), sink))
+            .toProcessor();
+    }
+
+    //应答在连接的事件循环中处理
+    void runOnContext(Runnable runnable) throws Exception {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        context.runOnContext(v -> {
+            runnable.run();
+            future.complete(null);
+        });
+        future.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testAcknowledgeRelease() throws Exception {
+        MqttInflightWindow window = createWindow(new MqttInflightOptions(1, 1, 0, 0, 5000, 512 * 1024));
+
+        MonoProcessor<Void> first = publish(window, 1);
+        first.block(Duration.ofSeconds(5));
+        assertEquals(1, published.size());
+
+        //窗口已满,等待PUBACK
+        MonoProcessor<Void> second = publish(window, 1);
+        Thread.sleep(100);
+        assertFalse(second.isTerminated());
+        assertEquals(1, published.size());
+
+        runOnContext(() -> window.acknowledge(published.get(0)));
+        second.block(Duration.ofSeconds(5));
+        assertEquals(2, published.size());
+        assertNotEquals(published.get(0), published.get(1));
+    }
+
+    @Test
+    void testCompleteRelease() throws Exception {
+        MqttInflightWindow window = createWindow(new MqttInflightOptions(1, 1, 0, 0, 5000, 512 * 1024));
+
+        publish(window, 2).block(Duration.ofSeconds(5));
+        int messageId = published.get(0);
+
+        MonoProcessor<Void> second = publish(window, 2);
+
+        //PUBREC只回复PUBREL,不释放窗口
+        runOnContext(() -> window.received(messageId));
+        assertEquals(messageId, (int) released.get(0));
+        Thread.sleep(100);
+        assertFalse(second.isTerminated());
+
+        runOnContext(() -> window.complete(messageId));
+        second.block(Duration.ofSeconds(5));
+        assertEquals(2, published.size());
+    }
+
+    @Test
+    void testRetry() {
+        MqttInflightWindow window = createWindow(new MqttInflightOptions(1, 1, 100, 2, 0, 512 * 1024));
+
+        publish(window, 1).block(Duration.ofSeconds(5));
+
+        //未应答时使用相同的消息ID重发,重发次数用尽后释放窗口
+        assertThrows(IllegalStateException.class, () -> publish(window, 1).block(Duration.ofSeconds(5)));
+        assertEquals(1, published.size());
+
+        await(() -> published.size() >= 3);
+        assertEquals(published.get(0), published.get(1));
+        assertEquals(published.get(0), published.get(2));
+        assertFalse(duplicated.get(0));
+        assertTrue(duplicated.get(1));
+        assertTrue(duplicated.get(2));
+
+        //窗口释放后可以继续推送
+        await(() -> {
+            try {
+                publish(window, 1).block(Duration.ofSeconds(5));
+                return true;
+            } catch (IllegalStateException e) {
+                return false;
+            }
+        });
+        assertEquals(4, published.size());
+    }
+
+    static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timeout");
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
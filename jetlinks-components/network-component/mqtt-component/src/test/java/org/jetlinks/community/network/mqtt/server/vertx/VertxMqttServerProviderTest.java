@@ -135,5 +135,48 @@ class VertxMqttServerProviderTest {
                 .verifyComplete();
     }
 
+    @Test
+    void testInflightWindowFull() {
+        VertxMqttServerProvider provider = new VertxMqttServerProvider(id -> Mono.empty(), vertx);
+
+        VertxMqttServerProperties properties = new VertxMqttServerProperties();
+        properties.setId("test-inflight");
+        properties.setInstance(1);
+        properties.setMaxInflightQos1(1);
+        properties.setInflightWaitTimeout(0);
+        properties.setOptions(new MqttServerOptions().setPort(1812));
+        MqttServer server = provider.createNetwork(properties);
+
+        MqttClient client = MqttClient.create(vertx);
+        client.connect(1812, "127.0.0.1", result -> {
+            if (!result.succeeded()) {
+                result.cause().printStackTrace();
+            }
+        });
+
+        server
+                .handleConnection()
+                .take(1)
+                .flatMap(conn -> {
+                    conn.accept();
+                    //窗口只有1个,第二条QoS1消息直接返回错误
+                    return Flux.merge(
+                            conn.publish(SimpleMqttMessage.builder()
+                                    .qosLevel(1)
+                                    .topic("/test")
+                                    .payload(Unpooled.wrappedBuffer("test1".getBytes()))
+                                    .build()),
+                            conn.publish(SimpleMqttMessage.builder()
+                                    .qosLevel(1)
+                                    .topic("/test")
+                                    .payload(Unpooled.wrappedBuffer("test2".getBytes()))
+                                    .build()));
+                })
+                .as(StepVerifier::create)
+                .expectError(IllegalStateException.class)
+                .verify();
+        server.shutdown();
+    }
+
 
-}
\ No newline at end of file
+}
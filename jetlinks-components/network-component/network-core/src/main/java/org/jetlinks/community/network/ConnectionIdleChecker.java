@@ -0,0 +1,136 @@
+package org.jetlinks.community.network;
+
+import io.netty.handler.timeout.IdleState;
+import io.vertx.core.Context;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.function.Consumer;
+
+/**
+ * 连接空闲检测,在连接所在的事件循环中使用定时器检测读空闲,写空闲以及读写空闲.
+ * <p>
+ * 和netty的IdleStateHandler一样,读写时只记录时间,定时器到期后根据最后读写时间计算下一次检测时间,
+ * 超时时在到期时刻回调,不依赖全局的定时轮询.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+@Slf4j
+public class ConnectionIdleChecker {
+
+    private final Context context;
+
+    private final Consumer<IdleState> idleHandler;
+
+    private volatile long readIdleTimeout;
+
+    private volatile long writeIdleTimeout;
+
+    private volatile long allIdleTimeout;
+
+    private volatile long lastReadTime = System.currentTimeMillis();
+
+    private volatile long lastWriteTime = System.currentTimeMillis();
+
+    //只在事件循环中访问
+    private long timerId = -1;
+
+    private volatile boolean closed;
+
+    /**
+     * @param context     连接所在的上下文,定时器在此上下文的事件循环中执行
+     * @param idleHandler 空闲回调,通常为关闭连接
+     */
+    public ConnectionIdleChecker(Context context, Consumer<IdleState> idleHandler) {
+        this.context = context;
+        this.idleHandler = idleHandler;
+    }
+
+    /**
+     * 设置超时时间,小于等于0时不检测
+     *
+     * @param readIdleTimeout  读空闲超时时间(毫秒)
+     * @param writeIdleTimeout 写空闲超时时间(毫秒)
+     * @param allIdleTimeout   读写空闲超时时间(毫秒)
+     */
+    public void setTimeout(long readIdleTimeout, long writeIdleTimeout, long allIdleTimeout) {
+        this.readIdleTimeout = readIdleTimeout;
+        this.writeIdleTimeout = writeIdleTimeout;
+        this.allIdleTimeout = allIdleTimeout;
+        context.runOnContext(v -> schedule());
+    }
+
+    public void setReadIdleTimeout(long readIdleTimeout) {
+        setTimeout(readIdleTimeout, writeIdleTimeout, allIdleTimeout);
+    }
+
+    public void read() {
+        lastReadTime = System.currentTimeMillis();
+    }
+
+    public void write() {
+        lastWriteTime = System.currentTimeMillis();
+    }
+
+    public void close() {
+        closed = true;
+        context.runOnContext(v -> cancel());
+    }
+
+    private void cancel() {
+        if (timerId != -1) {
+            context.owner().cancelTimer(timerId);
+            timerId = -1;
+        }
+    }
+
+    private void schedule() {
+        cancel();
+        if (closed) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long next = Long.MAX_VALUE;
+        if (readIdleTimeout > 0) {
+            long remaining = readIdleTimeout - (now - lastReadTime);
+            if (remaining <= 0) {
+                fireIdle(IdleState.READER_IDLE);
+                return;
+            }
+            next = remaining;
+        }
+        if (writeIdleTimeout > 0) {
+            long remaining = writeIdleTimeout - (now - lastWriteTime);
+            if (remaining <= 0) {
+                fireIdle(IdleState.WRITER_IDLE);
+                return;
+            }
+            next = Math.min(next, remaining);
+        }
+        if (allIdleTimeout > 0) {
+            long remaining = allIdleTimeout - (now - Math.max(lastReadTime, lastWriteTime));
+            if (remaining <= 0) {
+                fireIdle(IdleState.ALL_IDLE);
+                return;
+            }
+            next = Math.min(next, remaining);
+        }
+        if (next == Long.MAX_VALUE) {
+            return;
+        }
+        //在当前事件循环中执行
+        timerId = context.owner().setTimer(Math.max(1, next), id -> {
+            timerId = -1;
+            schedule();
+        });
+    }
+
+    private void fireIdle(IdleState state) {
+        closed = true;
+        try {
+            idleHandler.accept(state);
+        } catch (Throwable e) {
+            log.warn("handle connection idle error", e);
+        }
+    }
+}
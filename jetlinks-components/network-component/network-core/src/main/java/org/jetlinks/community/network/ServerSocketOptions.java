@@ -0,0 +1,66 @@
+package org.jetlinks.community.network;
+
+import io.vertx.core.net.NetServerOptions;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 服务端Socket参数,名称和{@link NetServerOptions}一致,可以直接在网络组件配置中设置.
+ * <p>
+ * SO_REUSEPORT,TCP_QUICKACK,TCP_FASTOPEN只在使用epoll等本地传输时生效.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+@Getter
+@Setter
+@Slf4j
+public class ServerSocketOptions {
+
+    //连接等待队列长度
+    private int acceptBacklog = 1024;
+
+    //发送缓冲区大小,小于等于0时使用系统默认值
+    private int sendBufferSize = -1;
+
+    //接收缓冲区大小,小于等于0时使用系统默认值
+    private int receiveBufferSize = -1;
+
+    private boolean tcpNoDelay = true;
+
+    private boolean reuseAddress = true;
+
+    //允许多个进程监听同一个端口,由内核分配连接.
+    //开启后其他进程可以监听相同的端口并分走连接,默认关闭,需要时显式开启
+    private boolean reusePort = false;
+
+    private boolean tcpQuickAck = true;
+
+    private boolean tcpFastOpen = false;
+
+    /**
+     * 设置参数到服务配置
+     *
+     * @param options         服务配置
+     * @param nativeTransport 是否使用了本地传输
+     */
+    public void apply(NetServerOptions options, boolean nativeTransport) {
+        options.setAcceptBacklog(acceptBacklog);
+        if (sendBufferSize > 0) {
+            options.setSendBufferSize(sendBufferSize);
+        }
+        if (receiveBufferSize > 0) {
+            options.setReceiveBufferSize(receiveBufferSize);
+        }
+        options.setTcpNoDelay(tcpNoDelay);
+        options.setReuseAddress(reuseAddress);
+        if (nativeTransport) {
+            options.setReusePort(reusePort);
+            options.setTcpQuickAck(tcpQuickAck);
+            options.setTcpFastOpen(tcpFastOpen);
+        } else if (reusePort || tcpFastOpen) {
+            log.debug("native transport is not available, ignore reusePort,tcpQuickAck and tcpFastOpen");
+        }
+    }
+}
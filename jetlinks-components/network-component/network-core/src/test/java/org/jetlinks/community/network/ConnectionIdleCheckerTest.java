@@ -0,0 +1,59 @@
+package org.jetlinks.community.network;
+
+import io.netty.handler.timeout.IdleState;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.MonoProcessor;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionIdleCheckerTest {
+
+    static Vertx vertx = Vertx.vertx();
+
+    @AfterAll
+    static void close() {
+        vertx.close();
+    }
+
+    @Test
+    void testReadDeadlineRearm() throws InterruptedException {
+        Context context = vertx.getOrCreateContext();
+        MonoProcessor<IdleState> idle = MonoProcessor.create();
+        long start = System.currentTimeMillis();
+
+        ConnectionIdleChecker checker = new ConnectionIdleChecker(context, idle::onNext);
+        checker.setTimeout(300, 0, 0);
+
+        //超时前收到数据,定时器到期后按最后读取时间重新计算下一次检测时间
+        Thread.sleep(150);
+        checker.read();
+
+        assertEquals(IdleState.READER_IDLE, idle.block(Duration.ofSeconds(5)));
+        assertTrue(System.currentTimeMillis() - start >= 400);
+    }
+
+    @Test
+    void testWriteIdle() {
+        MonoProcessor<IdleState> idle = MonoProcessor.create();
+        ConnectionIdleChecker checker = new ConnectionIdleChecker(vertx.getOrCreateContext(), idle::onNext);
+        checker.setTimeout(0, 100, 0);
+
+        assertEquals(IdleState.WRITER_IDLE, idle.block(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    void testClose() throws InterruptedException {
+        MonoProcessor<IdleState> idle = MonoProcessor.create();
+        ConnectionIdleChecker checker = new ConnectionIdleChecker(vertx.getOrCreateContext(), idle::onNext);
+        checker.setTimeout(100, 0, 0);
+        checker.close();
+
+        Thread.sleep(300);
+        assertFalse(idle.isTerminated());
+    }
+}
@@ -39,6 +39,24 @@ public interface TcpClient extends Network {
 
     void onDisconnect(Runnable disconnected);
 
+    /**
+     * 获取等待写出的消息数量
+     *
+     * @return 消息数量
+     */
+    default int getPendingWrites() {
+        return 0;
+    }
+
+    /**
+     * 获取等待写出的字节数
+     *
+     * @return 字节数
+     */
+    default long getPendingWriteBytes() {
+        return 0;
+    }
+
     /**
      * 连接保活
      */
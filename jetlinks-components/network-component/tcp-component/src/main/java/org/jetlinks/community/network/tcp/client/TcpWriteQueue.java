@@ -0,0 +1,182 @@
+package org.jetlinks.community.network.tcp.client;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Context;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetSocket;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.net.SocketException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * TCP写出队列,将同一事件循环周期内的多次写出合并为一次写出和flush.
+ * <p>
+ * 底层写出缓冲区超过高水位时暂停合并写出,新的写出请求在队列中等待,发送方的{@link Mono}也会随之延迟完成.
+ * 队列中待写出的字节数超过高水位的2倍时,新的写出请求直接返回错误.
+ * <p>
+ * 入队和出队使用同一把锁,保证写出顺序.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+class TcpWriteQueue {
+
+    //单次合并写出的最大字节数
+    static final int MAX_BATCH_BYTES = 64 * 1024;
+
+    private final NetSocket socket;
+
+    private final Context context;
+
+    private final long highWaterMark;
+
+    //队列中最大的待写出字节数
+    private final long maxPendingBytes;
+
+    //以下字段使用this加锁访问
+    private final Deque<PendingWrite> queue = new ArrayDeque<>();
+
+    private long pendingBytes;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private volatile boolean closed;
+
+    TcpWriteQueue(NetSocket socket, Context context, long highWaterMark) {
+        this.socket = socket;
+        this.context = context;
+        this.highWaterMark = Math.max(MAX_BATCH_BYTES, highWaterMark);
+        this.maxPendingBytes = this.highWaterMark * 2;
+        //底层写出缓冲区超过高水位时暂停合并写出,等待drain
+        socket.setWriteQueueMaxSize((int) Math.min(Integer.MAX_VALUE, this.highWaterMark));
+    }
+
+    Mono<Boolean> write(ByteBuf payload) {
+        return Mono.create(sink -> {
+            PendingWrite write = new PendingWrite(payload, sink);
+            Throwable error = null;
+            synchronized (this) {
+                if (closed) {
+                    error = new SocketException("socket closed");
+                } else if (!queue.isEmpty() && pendingBytes + write.size > maxPendingBytes) {
+                    //队列为空时总是允许写入,避免单个大数据包永远无法写出
+                    error = Exceptions.failWithOverflow("tcp write queue is full, pending bytes: " + pendingBytes);
+                } else {
+                    queue.add(write);
+                    pendingBytes += write.size;
+                }
+            }
+            if (error != null) {
+                sink.error(error);
+                return;
+            }
+            schedule();
+        });
+    }
+
+    synchronized int getPendingWrites() {
+        return queue.size();
+    }
+
+    synchronized long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    void close() {
+        List<PendingWrite> failed;
+        synchronized (this) {
+            closed = true;
+            failed = new ArrayList<>(queue);
+            queue.clear();
+            pendingBytes = 0;
+        }
+        for (PendingWrite write : failed) {
+            write.sink.error(new SocketException("socket closed"));
+        }
+    }
+
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        if (context == null) {
+            //不在事件循环中创建的连接,直接写出
+            synchronized (this) {
+                flush();
+            }
+        } else {
+            //在下一个事件循环周期执行,合并此期间的所有写出
+            context.runOnContext(v -> flush());
+        }
+    }
+
+    private void flush() {
+        scheduled.set(false);
+        if (closed) {
+            return;
+        }
+        if (socket.writeQueueFull()) {
+            socket.drainHandler(v -> schedule());
+            return;
+        }
+        List<PendingWrite> batch = new ArrayList<>();
+        boolean remaining;
+        synchronized (this) {
+            int bytes = 0;
+            PendingWrite write;
+            while (bytes < MAX_BATCH_BYTES && (write = queue.poll()) != null) {
+                batch.add(write);
+                bytes += write.size;
+            }
+            pendingBytes -= bytes;
+            remaining = !queue.isEmpty();
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        ByteBuf buffer;
+        if (batch.size() == 1) {
+            buffer = batch.get(0).payload;
+        } else {
+            ByteBuf[] payloads = new ByteBuf[batch.size()];
+            for (int i = 0; i < payloads.length; i++) {
+                payloads[i] = batch.get(i).payload;
+            }
+            buffer = Unpooled.wrappedBuffer(payloads);
+        }
+        socket.write(Buffer.buffer(buffer), result -> {
+            for (PendingWrite pending : batch) {
+                if (result.succeeded()) {
+                    pending.sink.success(true);
+                } else {
+                    pending.sink.error(result.cause());
+                }
+            }
+        });
+        if (remaining) {
+            schedule();
+        }
+    }
+
+    private static class PendingWrite {
+        private final ByteBuf payload;
+
+        private final MonoSink<Boolean> sink;
+
+        private final int size;
+
+        private PendingWrite(ByteBuf payload, MonoSink<Boolean> sink) {
+            this.payload = payload;
+            this.sink = sink;
+            this.size = payload.readableBytes();
+        }
+    }
+}
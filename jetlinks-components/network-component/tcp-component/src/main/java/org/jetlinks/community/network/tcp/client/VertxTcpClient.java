@@ -1,12 +1,14 @@
 package org.jetlinks.community.network.tcp.client;
 
-import io.vertx.core.buffer.Buffer;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
 import io.vertx.core.net.NetClient;
 import io.vertx.core.net.NetSocket;
 import io.vertx.core.net.SocketAddress;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.jetlinks.community.network.ConnectionIdleChecker;
 import org.jetlinks.community.network.DefaultNetworkType;
 import org.jetlinks.community.network.NetworkType;
 import org.jetlinks.community.network.tcp.TcpMessage;
@@ -29,6 +31,14 @@ public class VertxTcpClient extends AbstractTcpClient {
 
     volatile PayloadParser payloadParser;
 
+    volatile TcpWriteQueue writeQueue;
+
+    volatile ConnectionIdleChecker idleChecker;
+
+    //待写出数据的高水位,超过后发送方将等待
+    @Setter
+    private long writeHighWaterMark = 512 * 1024;
+
     @Getter
     private String id;
 
@@ -42,11 +52,42 @@ public class VertxTcpClient extends AbstractTcpClient {
     @Override
     public void keepAlive() {
         lastKeepAliveTime = System.currentTimeMillis();
+        ConnectionIdleChecker checker = this.idleChecker;
+        if (checker != null) {
+            checker.read();
+        }
     }
 
     @Override
     public void setKeepAliveTimeout(Duration timeout) {
         keepAliveTimeoutMs = timeout.toMillis();
+        ConnectionIdleChecker checker = this.idleChecker;
+        if (checker != null) {
+            checker.setReadIdleTimeout(Math.max(0, keepAliveTimeoutMs));
+        }
+    }
+
+    /**
+     * 在连接所在的事件循环中检测空闲,读空闲超时时间为心跳超时时间,空闲时关闭连接.
+     * 需要在连接的事件循环中调用.
+     *
+     * @param writeIdleTimeout 写空闲超时时间(毫秒),小于等于0时不检测
+     * @param allIdleTimeout   读写空闲超时时间(毫秒),小于等于0时不检测
+     */
+    public void startIdleCheck(long writeIdleTimeout, long allIdleTimeout) {
+        Context context = Vertx.currentContext();
+        if (context == null || socket == null) {
+            return;
+        }
+        if (this.idleChecker != null) {
+            this.idleChecker.close();
+        }
+        ConnectionIdleChecker checker = new ConnectionIdleChecker(context, state -> {
+            log.debug("tcp client [{}] {}, close connection", getRemoteAddress(), state);
+            shutdown();
+        });
+        this.idleChecker = checker;
+        checker.setTimeout(Math.max(0, keepAliveTimeoutMs), writeIdleTimeout, allIdleTimeout);
     }
 
     @Override
@@ -96,6 +137,14 @@ public class VertxTcpClient extends AbstractTcpClient {
             execute(socket::close);
             socket = null;
         }
+        if (null != writeQueue) {
+            execute(writeQueue::close);
+            writeQueue = null;
+        }
+        if (null != idleChecker) {
+            execute(idleChecker::close);
+            idleChecker = null;
+        }
         if (null != payloadParser) {
             execute(payloadParser::close);
             payloadParser = null;
@@ -118,10 +167,8 @@ public class VertxTcpClient extends AbstractTcpClient {
             this.payloadParser.close();
         }
         this.payloadParser = payloadParser;
-        this.payloadParser
-            .handlePayload()
-            .onErrorContinue((err, res) -> log.error(err.getMessage(), err))
-            .subscribe(buffer -> received(new TcpMessage(buffer.getByteBuf())));
+        //在连接的事件循环中直接回调
+        this.payloadParser.handlePayload(buffer -> received(new TcpMessage(buffer.getByteBuf())));
     }
 
     public void setSocket(NetSocket socket) {
@@ -129,7 +176,12 @@ public class VertxTcpClient extends AbstractTcpClient {
         if (this.socket != null && this.socket != socket) {
             this.socket.close();
         }
+        if (this.writeQueue != null) {
+            this.writeQueue.close();
+        }
         this.socket = socket;
+        //在连接所在的事件循环中合并写出
+        this.writeQueue = new TcpWriteQueue(socket, Vertx.currentContext(), writeHighWaterMark);
         this.socket.closeHandler(v -> {
             shutdown();
         });
@@ -145,22 +197,35 @@ public class VertxTcpClient extends AbstractTcpClient {
 
     @Override
     public Mono<Boolean> send(TcpMessage message) {
-        return Mono.<Boolean>create((sink) -> {
-            if (socket == null) {
-                sink.error(new SocketException("socket closed"));
-                return;
+        return Mono.defer(() -> {
+            TcpWriteQueue queue = this.writeQueue;
+            if (queue == null) {
+                return Mono.error(new SocketException("socket closed"));
             }
-            socket.write(Buffer.buffer(message.getPayload()), r -> {
-                keepAlive();
-                if (r.succeeded()) {
-                    sink.success(true);
-                } else {
-                    sink.error(r.cause());
-                }
-            });
+            return queue
+                .write(message.getPayload())
+                //写出不代表设备在线,不更新心跳时间
+                .doOnSuccess(r -> {
+                    ConnectionIdleChecker checker = this.idleChecker;
+                    if (checker != null) {
+                        checker.write();
+                    }
+                });
         });
     }
 
+    @Override
+    public int getPendingWrites() {
+        TcpWriteQueue queue = this.writeQueue;
+        return queue == null ? 0 : queue.getPendingWrites();
+    }
+
+    @Override
+    public long getPendingWriteBytes() {
+        TcpWriteQueue queue = this.writeQueue;
+        return queue == null ? 0 : queue.getPendingBytes();
+    }
+
     @Override
     public void onDisconnect(Runnable disconnected) {
         disconnectListener.add(disconnected);
@@ -60,6 +60,7 @@ public class VertxTcpClientProvider implements NetworkProvider<TcpClientProperti
         NetClient netClient = vertx.createNetClient(properties.getOptions());
         client.setClient(netClient);
         client.setKeepAliveTimeoutMs(properties.getLong("keepAliveTimeout").orElse(Duration.ofMinutes(10).toMillis()));
+        client.setWriteHighWaterMark(properties.getLong("writeHighWaterMark").orElse(512 * 1024L));
         netClient.connect(properties.getPort(), properties.getHost(), result -> {
             if (result.succeeded()) {
                 log.debug("connect tcp [{}:{}] success", properties.getHost(), properties.getPort());
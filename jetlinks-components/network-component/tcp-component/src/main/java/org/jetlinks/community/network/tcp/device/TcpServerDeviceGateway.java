@@ -10,6 +10,7 @@ import org.jetlinks.core.device.DeviceOperator;
 import org.jetlinks.core.device.DeviceRegistry;
 import org.jetlinks.core.message.*;
 import org.jetlinks.core.message.codec.DefaultTransport;
+import org.jetlinks.core.message.codec.DeviceMessageCodec;
 import org.jetlinks.core.message.codec.EncodedMessage;
 import org.jetlinks.core.message.codec.FromDeviceMessageContext;
 import org.jetlinks.core.message.codec.Transport;
@@ -19,6 +20,9 @@ import org.jetlinks.community.gateway.DeviceGateway;
 import org.jetlinks.community.gateway.monitor.DeviceGatewayMonitor;
 import org.jetlinks.community.gateway.monitor.GatewayMonitors;
 import org.jetlinks.community.gateway.monitor.MonitorSupportDeviceGateway;
+import org.jetlinks.community.gateway.supports.ConnectionAdmissionController;
+import org.jetlinks.community.gateway.supports.ConnectionAdmissionProperties;
+import org.jetlinks.community.gateway.supports.DeviceKeepAlive;
 import org.jetlinks.community.network.DefaultNetworkType;
 import org.jetlinks.community.network.NetworkType;
 import org.jetlinks.community.network.tcp.server.TcpServer;
@@ -60,8 +64,19 @@ class TcpServerDeviceGateway implements DeviceGateway, MonitorSupportDeviceGatew
 
     private DeviceGatewayMonitor gatewayMonitor;
 
+    private ConnectionAdmissionController admissionController;
+
     private LongAdder counter = new LongAdder();
 
+    //协议变更检查间隔,在此期间直接使用已解析的编解码器
+    private static final long PROTOCOL_CHECK_INTERVAL = Duration.ofSeconds(10).toMillis();
+
+    //单个连接解码管道的预取数量,超出时由客户端缓冲区丢弃并告警
+    private static final int DECODE_PREFETCH = 32;
+
+    //已解析的协议及编解码器,协议重新加载后原子替换
+    private final AtomicReference<ProtocolCodec> codecRef = new AtomicReference<>();
+
     public TcpServerDeviceGateway(String id,
                                   String protocol,
                                   ProtocolSupports supports,
@@ -69,7 +84,19 @@ class TcpServerDeviceGateway implements DeviceGateway, MonitorSupportDeviceGatew
                                   DecodedClientMessageHandler clientMessageHandler,
                                   DeviceSessionManager sessionManager,
                                   TcpServer tcpServer) {
+        this(id, protocol, supports, deviceRegistry, clientMessageHandler, sessionManager, tcpServer, new ConnectionAdmissionProperties());
+    }
+
+    public TcpServerDeviceGateway(String id,
+                                  String protocol,
+                                  ProtocolSupports supports,
+                                  DeviceRegistry deviceRegistry,
+                                  DecodedClientMessageHandler clientMessageHandler,
+                                  DeviceSessionManager sessionManager,
+                                  TcpServer tcpServer,
+                                  ConnectionAdmissionProperties admissionProperties) {
         this.gatewayMonitor = GatewayMonitors.getDeviceGatewayMonitor(id);
+        this.admissionController = new ConnectionAdmissionController(admissionProperties, gatewayMonitor);
         this.id = id;
         this.protocol = protocol;
         this.registry = deviceRegistry;
@@ -90,6 +117,38 @@ class TcpServerDeviceGateway implements DeviceGateway, MonitorSupportDeviceGatew
         return supports.getProtocol(protocol);
     }
 
+    /**
+     * 获取当前协议的编解码器,同一协议版本只解析一次.
+     * 每隔{@link #PROTOCOL_CHECK_INTERVAL}检查一次协议,协议被重新加载(实例变化)时替换为新的编解码器.
+     *
+     * @return 编解码器
+     */
+    Mono<DeviceMessageCodec> getCodec() {
+        ProtocolCodec current = codecRef.get();
+        long now = System.currentTimeMillis();
+        if (current != null && now - current.checkTime < PROTOCOL_CHECK_INTERVAL) {
+            return current.cached;
+        }
+        return getProtocol()
+            .flatMap(support -> {
+                ProtocolCodec old = codecRef.get();
+                if (old != null && old.support == support) {
+                    old.checkTime = now;
+                    return old.cached;
+                }
+                return support
+                    .getMessageCodec(getTransport())
+                    .doOnNext(codec -> {
+                        ProtocolCodec newCodec = new ProtocolCodec(support, codec, now);
+                        //并发解析时只保留一个
+                        if (codecRef.compareAndSet(old, newCodec)) {
+                            log.debug("TCP网关[{}]使用协议[{}]编解码器:{}", id, protocol, codec);
+                        }
+                    });
+            })
+            .switchIfEmpty(Mono.fromRunnable(() -> codecRef.set(null)));
+    }
+
     @Override
     public long totalConnection() {
         return counter.sum();
@@ -123,6 +182,14 @@ class TcpServerDeviceGateway implements DeviceGateway, MonitorSupportDeviceGatew
                     gatewayMonitor.disconnected();
                     gatewayMonitor.totalConnection(counter.sum());
                 });
+                //连接准入,在处理第一条消息之前获取许可,超过限制则断开连接.
+                //TCP连接没有独立的握手过程,获取到许可后立即释放,只限制接入速率
+                Mono<ConnectionAdmissionController.Admission> admission = admissionController
+                    .admit(clientAddr == null ? null : clientAddr.getHostString())
+                    .doOnNext(ConnectionAdmissionController.Admission::release)
+                    .switchIfEmpty(Mono.fromRunnable(client::shutdown))
+                    .cache();
+                admission.subscribe();
                 AtomicReference<Duration> keepaliveTimeout = new AtomicReference<>();
                 AtomicReference<DeviceSession> sessionRef = new AtomicReference<>(sessionManager.getSession(client.getId()));
                 client.subscribe()
@@ -132,8 +199,9 @@ class TcpServerDeviceGateway implements DeviceGateway, MonitorSupportDeviceGatew
                         log.debug("收到TCP报文:\n{}", r);
                         gatewayMonitor.receivedMessage();
                     })
-                    .flatMap(tcpMessage -> getProtocol()
-                        .flatMap(pt -> pt.getMessageCodec(getTransport()))
+                    //同一连接内按顺序解码,避免消息乱序
+                    .concatMap(tcpMessage -> admission
+                        .flatMap(ignore -> getCodec())
                         .flatMapMany(codec -> codec.decode(new FromDeviceMessageContext() {
                             @Override
                             @Nonnull
@@ -202,6 +270,18 @@ class TcpServerDeviceGateway implements DeviceGateway, MonitorSupportDeviceGatew
                                         }
                                         sessionRef.set(fSession);
                                         sessionManager.register(fSession);
+                                        admission.subscribe(ConnectionAdmissionController.Admission::success);
+                                        fSession.keepAlive();
+                                        if (fSession instanceof KeepOnlineSession) {
+                                            return Mono.empty();
+                                        }
+                                        //优先使用产品或设备配置的心跳超时时间,由连接的事件循环在到期时关闭连接
+                                        DeviceSession newSession = fSession;
+                                        return DeviceKeepAlive
+                                            .getTimeout(device)
+                                            .switchIfEmpty(Mono.fromSupplier(keepaliveTimeout::get))
+                                            .doOnNext(newSession::setKeepAliveTimeout)
+                                            .then();
                                     }
                                     fSession.keepAlive();
                                     if (keepaliveTimeout.get() != null) {
@@ -228,7 +308,7 @@ class TcpServerDeviceGateway implements DeviceGateway, MonitorSupportDeviceGatew
                             log.error("处理TCP[{}]消息失败:\n{}",
                                 clientAddr,
                                 tcpMessage
-                                , err))))
+                                , err))), DECODE_PREFETCH)
                     .onErrorResume((err) -> Mono.empty())
                     .subscriberContext(ReactiveLogger.start("network", tcpServer.getId()))
                     .subscribe();
@@ -258,6 +338,7 @@ class TcpServerDeviceGateway implements DeviceGateway, MonitorSupportDeviceGatew
             disposable.forEach(Disposable::dispose);
 
             disposable.clear();
+            codecRef.set(null);
         });
     }
 
@@ -265,4 +346,18 @@ class TcpServerDeviceGateway implements DeviceGateway, MonitorSupportDeviceGatew
     public boolean isAlive() {
         return started.get();
     }
+
+    private static class ProtocolCodec {
+        private final ProtocolSupport support;
+
+        private final Mono<DeviceMessageCodec> cached;
+
+        private volatile long checkTime;
+
+        private ProtocolCodec(ProtocolSupport support, DeviceMessageCodec codec, long checkTime) {
+            this.support = support;
+            this.cached = Mono.just(codec);
+            this.checkTime = checkTime;
+        }
+    }
 }
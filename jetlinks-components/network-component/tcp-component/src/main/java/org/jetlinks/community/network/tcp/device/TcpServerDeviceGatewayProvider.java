@@ -1,9 +1,11 @@
 package org.jetlinks.community.network.tcp.device;
 
+import org.hswebframework.web.bean.FastBeanCopier;
 import org.jetlinks.core.ProtocolSupports;
 import org.jetlinks.core.device.DeviceRegistry;
 import org.jetlinks.core.server.session.DeviceSessionManager;
 import org.jetlinks.community.gateway.DeviceGateway;
+import org.jetlinks.community.gateway.supports.ConnectionAdmissionProperties;
 import org.jetlinks.community.gateway.supports.DeviceGatewayProperties;
 import org.jetlinks.community.gateway.supports.DeviceGatewayProvider;
 import org.jetlinks.community.network.DefaultNetworkType;
@@ -71,7 +73,8 @@ public class TcpServerDeviceGatewayProvider implements DeviceGatewayProvider {
                     registry,
                     messageHandler,
                     sessionManager,
-                    mqttServer
+                    mqttServer,
+                    FastBeanCopier.copy(properties.getConfiguration(), new ConnectionAdmissionProperties())
                 );
             });
     }
@@ -0,0 +1,92 @@
+package org.jetlinks.community.network.tcp.parser;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.EmitterProcessor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 解析器基础类,完整的数据包优先通过回调发送,
+ * 只有调用了{@link PayloadParser#handlePayload()}时才创建{@link EmitterProcessor}.
+ * <p>
+ * 第一次处理数据时记录所在的Vert.x上下文,关闭时在此上下文中释放解析器的状态,避免和正在进行的解析并发.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+@Slf4j
+public abstract class AbstractPayloadParser implements PayloadParser {
+
+    private volatile Consumer<Buffer> handler;
+
+    private EmitterProcessor<Buffer> processor;
+
+    //解析器所在的上下文(连接的事件循环)
+    private volatile Context eventLoopContext;
+
+    /**
+     * 记录当前的Vert.x上下文,在{@link PayloadParser#handle(Buffer)}中调用
+     */
+    protected void bindContext() {
+        if (eventLoopContext == null) {
+            eventLoopContext = Vertx.currentContext();
+        }
+    }
+
+    /**
+     * 在解析器所在的上下文中执行,未绑定上下文或者已经在上下文中时直接执行
+     *
+     * @param runnable 任务
+     */
+    protected void runOnContext(Runnable runnable) {
+        Context context = this.eventLoopContext;
+        if (context == null || Vertx.currentContext() == context) {
+            runnable.run();
+        } else {
+            context.runOnContext(ignore -> runnable.run());
+        }
+    }
+
+    protected void emit(Buffer buffer) {
+        Consumer<Buffer> handler = this.handler;
+        if (handler == null) {
+            return;
+        }
+        try {
+            handler.accept(buffer);
+        } catch (Throwable e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void handlePayload(Consumer<Buffer> handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public synchronized Flux<Buffer> handlePayload() {
+        if (processor == null) {
+            processor = EmitterProcessor.create(false);
+            FluxSink<Buffer> sink = processor.sink();
+            handler = sink::next;
+        }
+        return processor.map(Function.identity());
+    }
+
+    @Override
+    public void close() {
+        handler = null;
+        synchronized (this) {
+            if (processor != null) {
+                processor.onComplete();
+            }
+        }
+    }
+}
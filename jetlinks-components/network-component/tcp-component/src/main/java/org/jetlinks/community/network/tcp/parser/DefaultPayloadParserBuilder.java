@@ -5,6 +5,7 @@ import org.jetlinks.core.Values;
 import org.jetlinks.community.network.tcp.parser.strateies.DelimitedPayloadParserBuilder;
 import org.jetlinks.community.network.tcp.parser.strateies.DirectPayloadParserBuilder;
 import org.jetlinks.community.network.tcp.parser.strateies.FixLengthPayloadParserBuilder;
+import org.jetlinks.community.network.tcp.parser.strateies.LengthFieldPayloadParserBuilder;
 import org.jetlinks.community.network.tcp.parser.strateies.ScriptPayloadParserBuilder;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.config.BeanPostProcessor;
@@ -13,6 +14,7 @@ import org.springframework.stereotype.Component;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 @Component
 public class DefaultPayloadParserBuilder implements PayloadParserBuilder, BeanPostProcessor {
@@ -22,6 +24,7 @@ public class DefaultPayloadParserBuilder implements PayloadParserBuilder, BeanPo
     public DefaultPayloadParserBuilder(){
         register(new FixLengthPayloadParserBuilder());
         register(new DelimitedPayloadParserBuilder());
+        register(new LengthFieldPayloadParserBuilder());
         register(new ScriptPayloadParserBuilder());
         register(new DirectPayloadParserBuilder());
     }
@@ -32,6 +35,13 @@ public class DefaultPayloadParserBuilder implements PayloadParserBuilder, BeanPo
                 .orElseThrow(() -> new UnsupportedOperationException("unsupported parser:" + type));
     }
 
+    @Override
+    public Supplier<PayloadParser> createFactory(PayloadParserType type, ValueObject configuration) {
+        return Optional.ofNullable(strategyMap.get(type))
+                .map(builder -> builder.createFactory(configuration))
+                .orElseThrow(() -> new UnsupportedOperationException("unsupported parser:" + type));
+    }
+
     public void register(PayloadParserBuilderStrategy strategy) {
         strategyMap.put(strategy.getType(), strategy);
     }
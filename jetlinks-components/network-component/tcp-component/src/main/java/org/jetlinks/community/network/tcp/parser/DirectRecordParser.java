@@ -1,28 +1,12 @@
 package org.jetlinks.community.network.tcp.parser;
 
 import io.vertx.core.buffer.Buffer;
-import reactor.core.publisher.EmitterProcessor;
-import reactor.core.publisher.Flux;
-
-import java.util.function.Function;
-
-public class DirectRecordParser implements PayloadParser {
-
-    EmitterProcessor<Buffer> processor = EmitterProcessor.create(false);
 
+public class DirectRecordParser extends AbstractPayloadParser {
 
     @Override
     public void handle(Buffer buffer) {
-        processor.onNext(buffer);
-    }
-
-    @Override
-    public Flux<Buffer> handlePayload() {
-        return processor.map(Function.identity());
+        emit(buffer);
     }
 
-    @Override
-    public void close() {
-        processor.onComplete();
-    }
 }
@@ -3,6 +3,8 @@ package org.jetlinks.community.network.tcp.parser;
 import io.vertx.core.buffer.Buffer;
 import reactor.core.publisher.Flux;
 
+import java.util.function.Consumer;
+
 /**
  * 用于处理TCP粘拆包的解析器,通常一个客户端对应一个解析器.
  *
@@ -28,6 +30,16 @@ public interface PayloadParser {
      */
     Flux<Buffer> handlePayload();
 
+    /**
+     * 设置完整数据包回调,在调用{@link PayloadParser#handle(Buffer)}的线程中直接回调,
+     * 不经过{@link PayloadParser#handlePayload()}.
+     *
+     * @param handler 回调
+     */
+    default void handlePayload(Consumer<Buffer> handler) {
+        handlePayload().subscribe(handler);
+    }
+
     /**
      * 关闭以释放相关资源
      */
@@ -3,8 +3,21 @@ package org.jetlinks.community.network.tcp.parser;
 import org.jetlinks.community.ValueObject;
 import org.jetlinks.core.Values;
 
+import java.util.function.Supplier;
+
 public interface PayloadParserBuilder {
 
     PayloadParser build(PayloadParserType type, ValueObject configuration);
 
+    /**
+     * 创建解析器工厂,配置发生变化时需要重新创建
+     *
+     * @param type          解析器类型
+     * @param configuration 配置
+     * @return 解析器工厂
+     */
+    default Supplier<PayloadParser> createFactory(PayloadParserType type, ValueObject configuration) {
+        return () -> build(type, configuration);
+    }
+
 }
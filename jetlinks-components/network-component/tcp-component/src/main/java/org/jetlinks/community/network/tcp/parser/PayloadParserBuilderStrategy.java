@@ -2,8 +2,20 @@ package org.jetlinks.community.network.tcp.parser;
 
 import org.jetlinks.community.ValueObject;
 
+import java.util.function.Supplier;
+
 public interface PayloadParserBuilderStrategy {
     PayloadParserType getType();
 
     PayloadParser build(ValueObject config);
+
+    /**
+     * 创建解析器工厂,同一个配置只需要创建一次,每个连接通过工厂创建各自的解析器.
+     *
+     * @param config 配置
+     * @return 解析器工厂
+     */
+    default Supplier<PayloadParser> createFactory(ValueObject config) {
+        return () -> build(config);
+    }
 }
@@ -18,6 +18,16 @@ public enum PayloadParserType implements EnumDict<String> {
     DELIMITED("分隔符"),
 
     /**
+     * @see org.jetlinks.community.network.tcp.parser.strateies.LengthFieldPayloadParserBuilder
+     */
+    LENGTH_FIELD("长度字段"),
+
+    /**
+     * 自定义脚本,配置项: script(脚本内容),lang(脚本语言).
+     * <p>
+     * 脚本在加载网络组件配置时只执行一次,所有连接共享脚本的全局变量,并且脚本中的函数会在多个连接的线程中并发执行.
+     * 连接需要在多个数据包之间保存的状态必须放在<code>parser.context()</code>中,不能使用脚本的全局变量.
+     *
      * @see org.jetlinks.community.network.tcp.parser.strateies.ScriptPayloadParserBuilder
      * @see PipePayloadParser
      */
@@ -1,6 +1,5 @@
 package org.jetlinks.community.network.tcp.parser.strateies;
 
-import io.vertx.core.parsetools.RecordParser;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.jetlinks.community.ValueObject;
 import org.jetlinks.core.Value;
@@ -14,9 +13,9 @@ public class DelimitedPayloadParserBuilder extends VertxPayloadParserBuilder {
     }
 
     @Override
-    protected RecordParser createParser(ValueObject config) {
+    protected void initParser(PipePayloadParser parser, ValueObject config) {
 
-        return RecordParser.newDelimited(StringEscapeUtils.unescapeJava(config.getString("delimited")
+        parser.delimited(StringEscapeUtils.unescapeJava(config.getString("delimited")
                 .orElseThrow(() -> new IllegalArgumentException("delimited can not be null"))));
     }
 
@@ -1,6 +1,5 @@
 package org.jetlinks.community.network.tcp.parser.strateies;
 
-import io.vertx.core.parsetools.RecordParser;
 import org.jetlinks.community.ValueObject;
 import org.jetlinks.core.Value;
 import org.jetlinks.core.Values;
@@ -13,8 +12,8 @@ public class FixLengthPayloadParserBuilder extends VertxPayloadParserBuilder {
     }
 
     @Override
-    protected RecordParser createParser(ValueObject config) {
-        return RecordParser.newFixed(config.getInt("size")
+    protected void initParser(PipePayloadParser parser, ValueObject config) {
+        parser.fixed(config.getInt("size")
                 .orElseThrow(() -> new IllegalArgumentException("size can not be null")));
     }
 
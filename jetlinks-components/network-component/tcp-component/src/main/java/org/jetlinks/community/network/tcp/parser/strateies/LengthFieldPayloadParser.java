@@ -0,0 +1,188 @@
+package org.jetlinks.community.network.tcp.parser.strateies;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import lombok.extern.slf4j.Slf4j;
+import org.jetlinks.community.network.tcp.parser.AbstractPayloadParser;
+
+/**
+ * 根据长度字段解析数据包.
+ * <p>
+ * 长度字段的值不合法(小于0,小于长度字段结束位置或者大于最大长度)时认为数据包已损坏,
+ * 丢弃1个字节(设置了起始标识时丢弃到下一个起始标识)后重新解析.
+ * <p>
+ * 只能在同一个线程中调用{@link LengthFieldPayloadParser#handle(Buffer)},关闭时在连接的事件循环中释放暂存的缓冲区.
+ *
+ * @author zhouhao
+ * @see LengthFieldPayloadParserBuilder
+ * @since 1.0
+ */
+@Slf4j
+public class LengthFieldPayloadParser extends AbstractPayloadParser {
+
+    private final int lengthFieldOffset;
+
+    private final int lengthFieldLength;
+
+    private final int lengthFieldEndOffset;
+
+    private final int lengthAdjustment;
+
+    private final int initialBytesToStrip;
+
+    private final boolean littleEndian;
+
+    private final int maxFrameLength;
+
+    private final byte[] magic;
+
+    //不完整的数据包
+    private ByteBuf cumulation;
+
+    //丢弃的损坏数据字节数
+    private long discardedBytes;
+
+    private volatile boolean closed;
+
+    public LengthFieldPayloadParser(int lengthFieldOffset,
+                                    int lengthFieldLength,
+                                    int lengthAdjustment,
+                                    int initialBytesToStrip,
+                                    boolean littleEndian,
+                                    int maxFrameLength,
+                                    byte[] magic) {
+        if (lengthFieldLength != 1 && lengthFieldLength != 2 && lengthFieldLength != 3
+            && lengthFieldLength != 4 && lengthFieldLength != 8) {
+            throw new IllegalArgumentException("lengthFieldLength must be either 1, 2, 3, 4, or 8: " + lengthFieldLength);
+        }
+        if (lengthFieldOffset < 0) {
+            throw new IllegalArgumentException("lengthFieldOffset must be a non-negative integer: " + lengthFieldOffset);
+        }
+        if (initialBytesToStrip < 0) {
+            throw new IllegalArgumentException("initialBytesToStrip must be a non-negative integer: " + initialBytesToStrip);
+        }
+        if (maxFrameLength <= 0) {
+            throw new IllegalArgumentException("maxFrameLength must be a positive integer: " + maxFrameLength);
+        }
+        this.lengthFieldOffset = lengthFieldOffset;
+        this.lengthFieldLength = lengthFieldLength;
+        this.lengthFieldEndOffset = lengthFieldOffset + lengthFieldLength;
+        this.lengthAdjustment = lengthAdjustment;
+        this.initialBytesToStrip = initialBytesToStrip;
+        this.littleEndian = littleEndian;
+        this.maxFrameLength = maxFrameLength;
+        this.magic = magic == null || magic.length == 0 ? null : magic;
+    }
+
+    @Override
+    public void handle(Buffer buffer) {
+        if (closed) {
+            return;
+        }
+        bindContext();
+        ByteBuf in = buffer.getByteBuf();
+        if (cumulation != null) {
+            cumulation.writeBytes(in);
+            in = cumulation;
+        }
+        //数据在收到的缓冲区中时直接切片,在暂存的缓冲区中时需要复制
+        boolean copy = in == cumulation;
+        while (!closed) {
+            if (magic != null && !skipToMagic(in)) {
+                break;
+            }
+            if (in.readableBytes() < lengthFieldEndOffset) {
+                break;
+            }
+            long frameLength = getUnadjustedFrameLength(in, in.readerIndex() + lengthFieldOffset)
+                + lengthAdjustment + lengthFieldEndOffset;
+            if (frameLength < lengthFieldEndOffset || frameLength > maxFrameLength || frameLength < initialBytesToStrip) {
+                discard(in, 1);
+                continue;
+            }
+            if (in.readableBytes() < frameLength) {
+                break;
+            }
+            int length = (int) frameLength - initialBytesToStrip;
+            int index = in.readerIndex() + initialBytesToStrip;
+            ByteBuf frame = copy
+                ? Unpooled.buffer(length).writeBytes(in, index, length)
+                : in.slice(index, length);
+            in.skipBytes((int) frameLength);
+            emit(Buffer.buffer(frame));
+        }
+        if (closed) {
+            return;
+        }
+        if (in != cumulation) {
+            if (in.isReadable()) {
+                cumulation = PooledByteBufAllocator.DEFAULT.heapBuffer(Math.max(in.readableBytes(), 64));
+                cumulation.writeBytes(in);
+            }
+        } else if (!cumulation.isReadable()) {
+            releaseCumulation();
+        } else {
+            cumulation.discardSomeReadBytes();
+        }
+    }
+
+    //跳到下一个起始标识,未找到时保留可能是起始标识开头的数据
+    private boolean skipToMagic(ByteBuf in) {
+        int readerIndex = in.readerIndex();
+        int last = in.writerIndex() - magic.length;
+        for (int i = readerIndex; i <= last; i++) {
+            int j = 0;
+            while (j < magic.length && in.getByte(i + j) == magic[j]) {
+                j++;
+            }
+            if (j == magic.length) {
+                discard(in, i - readerIndex);
+                return true;
+            }
+        }
+        discard(in, Math.max(0, last + 1 - readerIndex));
+        return false;
+    }
+
+    private void discard(ByteBuf in, int length) {
+        if (length <= 0) {
+            return;
+        }
+        in.skipBytes(length);
+        discardedBytes += length;
+        if (log.isDebugEnabled()) {
+            log.debug("discard {} bytes of corrupted frame, total discarded {} bytes", length, discardedBytes);
+        }
+    }
+
+    private long getUnadjustedFrameLength(ByteBuf buf, int offset) {
+        switch (lengthFieldLength) {
+            case 1:
+                return buf.getUnsignedByte(offset);
+            case 2:
+                return littleEndian ? buf.getUnsignedShortLE(offset) : buf.getUnsignedShort(offset);
+            case 3:
+                return littleEndian ? buf.getUnsignedMediumLE(offset) : buf.getUnsignedMedium(offset);
+            case 4:
+                return littleEndian ? buf.getUnsignedIntLE(offset) : buf.getUnsignedInt(offset);
+            default:
+                return littleEndian ? buf.getLongLE(offset) : buf.getLong(offset);
+        }
+    }
+
+    private void releaseCumulation() {
+        if (cumulation != null) {
+            cumulation.release();
+            cumulation = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        super.close();
+        runOnContext(this::releaseCumulation);
+    }
+}
@@ -0,0 +1,47 @@
+package org.jetlinks.community.network.tcp.parser.strateies;
+
+import lombok.SneakyThrows;
+import org.apache.commons.codec.binary.Hex;
+import org.jetlinks.community.ValueObject;
+import org.jetlinks.community.network.tcp.parser.PayloadParser;
+import org.jetlinks.community.network.tcp.parser.PayloadParserBuilderStrategy;
+import org.jetlinks.community.network.tcp.parser.PayloadParserType;
+
+/**
+ * 根据长度字段解析数据包,配置和Netty的LengthFieldBasedFrameDecoder一致:
+ * <pre>
+ * lengthFieldOffset:    长度字段偏移量,默认0
+ * lengthFieldLength:    长度字段字节数,支持1,2,3,4,8,默认4
+ * lengthAdjustment:     长度修正值,长度字段的值加上此值为长度字段之后的数据长度,默认0
+ * initialBytesToStrip:  结果中去掉的开头字节数,默认0
+ * littleEndian:         长度字段是否为小端,默认false
+ * maxFrameLength:       最大数据包长度,默认1MB
+ * magic:                数据包起始标识,16进制,如: AA55.设置后只从起始标识开始解析
+ * </pre>
+ *
+ * @author zhouhao
+ * @see LengthFieldPayloadParser
+ * @since 1.0
+ */
+public class LengthFieldPayloadParserBuilder implements PayloadParserBuilderStrategy {
+
+    @Override
+    public PayloadParserType getType() {
+        return PayloadParserType.LENGTH_FIELD;
+    }
+
+    @Override
+    @SneakyThrows
+    public PayloadParser build(ValueObject config) {
+        String magic = config.getString("magic").orElse(null);
+        return new LengthFieldPayloadParser(
+            config.getInt("lengthFieldOffset", 0),
+            config.getInt("lengthFieldLength", 4),
+            config.getInt("lengthAdjustment", 0),
+            config.getInt("initialBytesToStrip", 0),
+            config.getBoolean("littleEndian", false),
+            config.getInt("maxFrameLength", 1024 * 1024),
+            magic == null || magic.isEmpty() ? null : Hex.decodeHex(magic.toCharArray())
+        );
+    }
+}
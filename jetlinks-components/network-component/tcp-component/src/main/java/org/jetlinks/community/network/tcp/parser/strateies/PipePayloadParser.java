@@ -1,16 +1,17 @@
 package org.jetlinks.community.network.tcp.parser.strateies;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import io.vertx.core.buffer.Buffer;
-import io.vertx.core.parsetools.RecordParser;
 import lombok.extern.slf4j.Slf4j;
-import org.jetlinks.community.network.tcp.parser.PayloadParser;
-import reactor.core.publisher.EmitterProcessor;
-import reactor.core.publisher.Flux;
-import reactor.core.publisher.FluxSink;
+import org.jetlinks.community.network.tcp.parser.AbstractPayloadParser;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -24,25 +25,51 @@ import java.util.function.Function;
  *         })
  *       .handler(buffer -> parser.result(buffer.toString("UTF-8")).complete());
  * </pre>
+ * <p>
+ * 解析器没有加锁,只能在同一个线程(连接所在的事件循环)中调用{@link PipePayloadParser#handle(Buffer)}.
+ * 完整的数据包在收到的缓冲区中时直接切片,不复制.
+ * 不完整的数据包暂存在池化的缓冲区中,处理完后释放.关闭时在连接的事件循环中释放.
  */
 @Slf4j
-public class PipePayloadParser implements PayloadParser {
+public class PipePayloadParser extends AbstractPayloadParser {
 
-    private EmitterProcessor<Buffer> processor = EmitterProcessor.create(true);
+    private static final int MODE_NONE = 0;
 
-    private FluxSink<Buffer> sink = processor.sink();
+    private static final int MODE_FIXED = 1;
 
-    private List<Consumer<Buffer>> pipe = new CopyOnWriteArrayList<>();
+    private static final int MODE_DELIMITED = 2;
 
-    private List<Buffer> result = new CopyOnWriteArrayList<>();
+    private final List<Consumer<Buffer>> pipe = new ArrayList<>(2);
 
-    private volatile RecordParser recordParser;
+    private final List<Buffer> result = new ArrayList<>(2);
 
     private Function<Buffer, Buffer> directMapper;
 
-    private Consumer<RecordParser> firstInit;
+    private int mode = MODE_NONE;
 
-    private AtomicInteger currentPipe = new AtomicInteger();
+    private int fixedSize;
+
+    private byte[] delimiter;
+
+    //第一次设置的解析方式,complete时恢复
+    private int firstMode = MODE_NONE;
+
+    private int firstFixedSize;
+
+    private byte[] firstDelimiter;
+
+    private int currentPipe;
+
+    //不完整的数据包
+    private ByteBuf cumulation;
+
+    //分隔符模式下已经查找过的位置(相对于读取位置)
+    private int searchOffset;
+
+    private volatile boolean closed;
+
+    //连接自己的上下文,用于在多个数据包之间保存状态
+    private Map<String, Object> context;
 
     public PipePayloadParser result(String buffer) {
         return result(Buffer.buffer(buffer));
@@ -58,22 +85,30 @@ public class PipePayloadParser implements PayloadParser {
     }
 
     public PipePayloadParser delimited(String delimited) {
-        if (recordParser == null) {
-            setParser(RecordParser.newDelimited(delimited));
-            firstInit = (parser -> parser.delimitedMode(delimited));
-            return this;
+        byte[] bytes = delimited.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length == 0) {
+            throw new IllegalArgumentException("delimited can not be empty");
+        }
+        if (firstMode == MODE_NONE) {
+            firstMode = MODE_DELIMITED;
+            firstDelimiter = bytes;
         }
-        recordParser.delimitedMode(delimited);
+        mode = MODE_DELIMITED;
+        delimiter = bytes;
+        searchOffset = 0;
         return this;
     }
 
     public PipePayloadParser fixed(int size) {
-        if (recordParser == null) {
-            setParser(RecordParser.newFixed(size));
-            firstInit = (parser -> parser.fixedSizeMode(size));
-            return this;
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be greater than 0");
         }
-        recordParser.fixedSizeMode(size);
+        if (firstMode == MODE_NONE) {
+            firstMode = MODE_FIXED;
+            firstFixedSize = size;
+        }
+        mode = MODE_FIXED;
+        fixedSize = size;
         return this;
     }
 
@@ -82,35 +117,64 @@ public class PipePayloadParser implements PayloadParser {
         return this;
     }
 
-    private Consumer<Buffer> getNextHandler() {
-        int i = currentPipe.getAndIncrement();
-        if (i < pipe.size()) {
-            return pipe.get(i);
+    /**
+     * 连接自己的上下文,在多个数据包之间保存状态,复制解析规则时不复制上下文.
+     * 脚本解析器中连接的状态只能保存在这里
+     *
+     * @return 上下文
+     * @see ScriptPayloadParserBuilder#createFactory(org.jetlinks.community.ValueObject)
+     */
+    public Map<String, Object> context() {
+        if (context == null) {
+            context = new HashMap<>();
         }
-        currentPipe.set(0);
-        return pipe.get(0);
+        return context;
     }
 
-    private void setParser(RecordParser parser) {
-        this.recordParser = parser;
-        this.recordParser.handler(buffer -> getNextHandler().accept(buffer));
+    /**
+     * 复制当前的解析规则到另外一个解析器
+     *
+     * @param target 目标解析器
+     */
+    void copyTo(PipePayloadParser target) {
+        target.pipe.addAll(pipe);
+        target.directMapper = directMapper;
+        target.firstMode = target.mode = firstMode;
+        target.firstFixedSize = target.fixedSize = firstFixedSize;
+        target.firstDelimiter = target.delimiter = firstDelimiter;
     }
 
-    public PipePayloadParser complete() {
-        currentPipe.set(0);
-        if (recordParser != null) {
-            firstInit.accept(recordParser);
+    private Consumer<Buffer> getNextHandler() {
+        if (currentPipe >= pipe.size()) {
+            currentPipe = 0;
         }
-        if (!this.result.isEmpty()) {
-            Buffer buffer = Buffer.buffer();
-            for (Buffer buf : this.result) {
+        return pipe.get(currentPipe++);
+    }
+
+    public PipePayloadParser complete() {
+        currentPipe = 0;
+        mode = firstMode;
+        fixedSize = firstFixedSize;
+        delimiter = firstDelimiter;
+        searchOffset = 0;
+        int size = result.size();
+        if (size == 1) {
+            Buffer buffer = result.get(0);
+            result.clear();
+            emit(buffer);
+        } else if (size > 1) {
+            int length = 0;
+            for (Buffer buf : result) {
+                length += buf.length();
+            }
+            Buffer buffer = Buffer.buffer(length);
+            for (Buffer buf : result) {
                 buffer.appendBuffer(buf);
             }
-            this.result.clear();
-            sink.next(buffer);
+            result.clear();
+            emit(buffer);
         }
         return this;
-
     }
 
     public PipePayloadParser result(Buffer buffer) {
@@ -119,31 +183,119 @@ public class PipePayloadParser implements PayloadParser {
     }
 
     @Override
-    public synchronized void handle(Buffer buffer) {
-        if (recordParser == null && directMapper == null) {
-            log.error("record parser not init");
+    public void handle(Buffer buffer) {
+        if (closed) {
+            return;
+        }
+        bindContext();
+        if (mode == MODE_NONE) {
+            if (directMapper == null) {
+                log.error("record parser not init");
+                return;
+            }
+            Buffer buf = directMapper.apply(buffer);
+            if (null != buf) {
+                emit(buf);
+            }
             return;
         }
-        if (recordParser != null) {
-            recordParser.handle(buffer);
+        ByteBuf in = buffer.getByteBuf();
+        if (cumulation != null) {
+            cumulation.writeBytes(in);
+            in = cumulation;
+        }
+        //数据在收到的缓冲区中时直接切片,在暂存的缓冲区中时需要复制,因为暂存的缓冲区会被重用
+        boolean copy = in == cumulation;
+        while (!closed) {
+            int length;
+            int skip;
+            if (mode == MODE_FIXED) {
+                if (in.readableBytes() < fixedSize) {
+                    break;
+                }
+                length = fixedSize;
+                skip = 0;
+            } else {
+                length = indexOfDelimiter(in);
+                if (length < 0) {
+                    break;
+                }
+                skip = delimiter.length;
+            }
+            ByteBuf frame = copy
+                ? Unpooled.buffer(length).writeBytes(in, in.readerIndex(), length)
+                : in.slice(in.readerIndex(), length);
+            in.skipBytes(length + skip);
+            searchOffset = 0;
+            handleFrame(Buffer.buffer(frame));
+        }
+        if (closed) {
             return;
         }
-        Buffer buf = directMapper.apply(buffer);
-        if (null != buf) {
-            sink.next(buf);
+        if (in != cumulation) {
+            if (in.isReadable()) {
+                cumulation = PooledByteBufAllocator.DEFAULT.heapBuffer(Math.max(in.readableBytes(), 64));
+                cumulation.writeBytes(in);
+            }
+        } else if (!cumulation.isReadable()) {
+            releaseCumulation();
+        } else {
+            cumulation.discardSomeReadBytes();
         }
     }
 
-    @Override
-    public Flux<Buffer> handlePayload() {
-        return processor.map(Function.identity());
+    private void handleFrame(Buffer frame) {
+        if (pipe.isEmpty()) {
+            emit(frame);
+            return;
+        }
+        try {
+            getNextHandler().accept(frame);
+        } catch (Throwable e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    //查找分隔符,返回分隔符之前的数据长度,未找到时返回-1
+    private int indexOfDelimiter(ByteBuf in) {
+        byte[] delimiter = this.delimiter;
+        int readerIndex = in.readerIndex();
+        int last = in.writerIndex() - delimiter.length;
+        byte first = delimiter[0];
+        for (int i = readerIndex + searchOffset; i <= last; i++) {
+            if (in.getByte(i) != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < delimiter.length && in.getByte(i + j) == delimiter[j]) {
+                j++;
+            }
+            if (j == delimiter.length) {
+                return i - readerIndex;
+            }
+        }
+        searchOffset = Math.max(0, last + 1 - readerIndex);
+        return -1;
+    }
+
+    private void releaseCumulation() {
+        if (cumulation != null) {
+            cumulation.release();
+            cumulation = null;
+        }
     }
 
     @Override
     public void close() {
-        processor.onComplete();
-        currentPipe.set(0);
-        this.result.clear();
+        closed = true;
+        super.close();
+        //在事件循环中释放,避免释放正在解析中的缓冲区
+        runOnContext(() -> {
+            currentPipe = 0;
+            result.clear();
+            context = null;
+            releaseCumulation();
+        });
     }
 
 }
@@ -13,6 +13,7 @@ import org.jetlinks.community.network.tcp.parser.PayloadParserType;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 public class ScriptPayloadParserBuilder implements PayloadParserBuilderStrategy {
     @Override
@@ -21,8 +22,31 @@ public class ScriptPayloadParserBuilder implements PayloadParserBuilderStrategy
     }
 
     @Override
-    @SneakyThrows
     public PayloadParser build(ValueObject config) {
+        return createFactory(config).get();
+    }
+
+    /**
+     * 编译并执行一次脚本,记录解析规则,每个连接从模版创建各自的解析器.
+     * <p>
+     * 脚本的全局变量(如顶层的<code>var</code>)被所有连接共享,脚本中的函数也会被多个连接并发调用,
+     * 全局变量只能用于保存常量.连接自己的状态使用<code>parser.context()</code>:
+     * <pre>
+     * parser.fixed(4)
+     *       .handler(function(buffer){
+     *            parser.context().put("len", BytesUtils.highBytesToInt(buffer.getBytes()));
+     *            parser.fixed(parser.context().get("len"));
+     *        })
+     *       .handler(function(buffer){
+     *            parser.result(buffer.toString("UTF-8")).complete();
+     *        });
+     * </pre>
+     *
+     * @see ScriptPayloadParserTemplate
+     */
+    @Override
+    @SneakyThrows
+    public Supplier<PayloadParser> createFactory(ValueObject config) {
         String script = config.getString("script")
             .orElseThrow(() -> new IllegalArgumentException("script不能为空"));
         String lang = config.getString("lang")
@@ -32,14 +56,14 @@ public class ScriptPayloadParserBuilder implements PayloadParserBuilderStrategy
         if (engine == null) {
             throw new IllegalArgumentException("不支持的脚本:" + lang);
         }
-        PipePayloadParser parser = new PipePayloadParser();
+        ScriptPayloadParserTemplate template = new ScriptPayloadParserTemplate();
         String id = DigestUtils.md5Hex(script);
         if (!engine.compiled(id)) {
             engine.compile(id, script);
         }
         Map<String, Object> ctx = new HashMap<>();
-        ctx.put("parser", parser);
+        ctx.put("parser", template);
         engine.execute(id, ctx).getIfSuccess();
-        return parser;
+        return template::createParser;
     }
 }
@@ -0,0 +1,113 @@
+package org.jetlinks.community.network.tcp.parser.strateies;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 脚本解析器模版,脚本只执行一次,执行时记录解析规则.
+ * <p>
+ * 每个连接创建自己的{@link PipePayloadParser},连接的解析器处理数据包的整个过程中,
+ * 脚本中对<code>parser</code>的调用都转发到当前连接的解析器,连接之间的状态互不影响.
+ * 连接需要在多个数据包之间保存的状态必须放在<code>parser.context()</code>中:
+ * 脚本的全局变量被所有连接共享,并且脚本中的函数会在多个连接的事件循环线程中并发执行.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+class ScriptPayloadParserTemplate extends PipePayloadParser {
+
+    //当前线程正在处理数据包的解析器
+    private static final ThreadLocal<PipePayloadParser> current = new ThreadLocal<>();
+
+    PipePayloadParser createParser() {
+        PipePayloadParser parser = new ConnectionPayloadParser();
+        copyTo(parser);
+        return parser;
+    }
+
+    @Override
+    public PipePayloadParser handler(Consumer<Buffer> handler) {
+        PipePayloadParser parser = current.get();
+        if (parser != null) {
+            parser.handler(handler);
+            return this;
+        }
+        return super.handler(handler);
+    }
+
+    @Override
+    public PipePayloadParser delimited(String delimited) {
+        PipePayloadParser parser = current.get();
+        if (parser != null) {
+            parser.delimited(delimited);
+            return this;
+        }
+        return super.delimited(delimited);
+    }
+
+    @Override
+    public PipePayloadParser fixed(int size) {
+        PipePayloadParser parser = current.get();
+        if (parser != null) {
+            parser.fixed(size);
+            return this;
+        }
+        return super.fixed(size);
+    }
+
+    @Override
+    public PipePayloadParser direct(Function<Buffer, Buffer> mapper) {
+        PipePayloadParser parser = current.get();
+        if (parser != null) {
+            parser.direct(mapper);
+            return this;
+        }
+        return super.direct(mapper);
+    }
+
+    @Override
+    public PipePayloadParser result(Buffer buffer) {
+        PipePayloadParser parser = current.get();
+        if (parser != null) {
+            parser.result(buffer);
+            return this;
+        }
+        return super.result(buffer);
+    }
+
+    @Override
+    public PipePayloadParser complete() {
+        PipePayloadParser parser = current.get();
+        if (parser != null) {
+            parser.complete();
+            return this;
+        }
+        return super.complete();
+    }
+
+    @Override
+    public Map<String, Object> context() {
+        PipePayloadParser parser = current.get();
+        if (parser != null) {
+            return parser.context();
+        }
+        return super.context();
+    }
+
+    //连接的解析器,在处理数据包期间将当前线程的解析器设置为自己
+    private static class ConnectionPayloadParser extends PipePayloadParser {
+        @Override
+        public void handle(Buffer buffer) {
+            PipePayloadParser prev = current.get();
+            current.set(this);
+            try {
+                super.handle(buffer);
+            } finally {
+                current.set(prev);
+            }
+        }
+    }
+}
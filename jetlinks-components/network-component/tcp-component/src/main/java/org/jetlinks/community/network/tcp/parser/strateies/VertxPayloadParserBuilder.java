@@ -1,54 +1,24 @@
 package org.jetlinks.community.network.tcp.parser.strateies;
 
-import io.vertx.core.buffer.Buffer;
-import io.vertx.core.parsetools.RecordParser;
 import org.jetlinks.community.ValueObject;
-import org.jetlinks.core.Values;
 import org.jetlinks.community.network.tcp.parser.PayloadParser;
 import org.jetlinks.community.network.tcp.parser.PayloadParserBuilderStrategy;
 import org.jetlinks.community.network.tcp.parser.PayloadParserType;
-import reactor.core.publisher.EmitterProcessor;
-import reactor.core.publisher.Flux;
-
-import java.util.function.Function;
 
+/**
+ * 固定长度,分隔符等规则简单的解析器,使用{@link PipePayloadParser}解析,每一个数据包直接作为结果.
+ */
 public abstract class VertxPayloadParserBuilder implements PayloadParserBuilderStrategy {
     @Override
     public abstract PayloadParserType getType();
 
-    protected abstract RecordParser createParser(ValueObject config);
+    protected abstract void initParser(PipePayloadParser parser, ValueObject config);
 
     @Override
     public PayloadParser build(ValueObject config) {
-        return new RecordPayloadParser(createParser(config));
-    }
-
-    class RecordPayloadParser implements PayloadParser {
-        RecordParser recordParser;
-        EmitterProcessor<Buffer> processor = EmitterProcessor.create(false);
-
-        public RecordPayloadParser(RecordParser recordParser) {
-            this.recordParser = recordParser;
-            this.recordParser.handler(buffer -> {
-                processor.onNext(buffer);
-            });
-        }
-
-        @Override
-        public void handle(Buffer buffer) {
-            recordParser.handle(buffer);
-        }
-
-        @Override
-        public Flux<Buffer> handlePayload() {
-            return processor.map(Function.identity());
-        }
-
-        @Override
-        public void close() {
-            processor.onComplete();
-        }
+        PipePayloadParser parser = new PipePayloadParser();
+        initParser(parser, config);
+        return parser;
     }
 
-
 }
@@ -10,6 +10,7 @@ import org.jetlinks.core.metadata.ConfigMetadata;
 import org.jetlinks.community.network.*;
 import org.jetlinks.community.network.security.CertificateManager;
 import org.jetlinks.community.network.security.VertxKeyCertTrustOptions;
+import org.jetlinks.community.network.tcp.parser.PayloadParser;
 import org.jetlinks.community.network.tcp.parser.PayloadParserBuilder;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
@@ -19,6 +20,7 @@ import javax.annotation.Nullable;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
 @Component
 @Slf4j
@@ -53,15 +55,21 @@ public class TcpServerProvider implements NetworkProvider<TcpServerProperties> {
     }
 
     private void initTcpServer(VertxTcpServer tcpServer, TcpServerProperties properties) {
+        //每次加载配置时创建一次解析器工厂,脚本解析器只在此时执行脚本
+        Supplier<PayloadParser> parserSupplier = payloadParserBuilder.createFactory(properties.getParserType(), properties);
+        //创建一次解析器,配置错误时在启动时失败,而不是在设备连接时
+        parserSupplier.get().close();
         int instance = Math.max(2, properties.getInstance());
         List<NetServer> instances = new ArrayList<>(instance);
         for (int i = 0; i < instance; i++) {
             instances.add(vertx.createNetServer(properties.getOptions()));
         }
-        payloadParserBuilder.build(properties.getParserType(), properties);
-        tcpServer.setParserSupplier(() -> payloadParserBuilder.build(properties.getParserType(), properties));
+        tcpServer.setParserSupplier(parserSupplier);
         tcpServer.setServer(instances);
         tcpServer.setKeepAliveTimeout(properties.getLong("keepAliveTimeout", Duration.ofMinutes(10).toMillis()));
+        tcpServer.setWriteHighWaterMark(properties.getLong("writeHighWaterMark", 512 * 1024));
+        tcpServer.setWriteIdleTimeout(properties.getLong("writeIdleTimeout", 0));
+        tcpServer.setAllIdleTimeout(properties.getLong("allIdleTimeout", 0));
         for (NetServer netServer : instances) {
             netServer.listen(properties.createSocketAddress(), result -> {
                 if (result.succeeded()) {
@@ -95,6 +103,9 @@ public class TcpServerProvider implements NetworkProvider<TcpServerProperties> {
             if (config.getOptions() == null) {
                 config.setOptions(new NetServerOptions());
             }
+            FastBeanCopier
+                .copy(properties.getConfigurations(), new ServerSocketOptions())
+                .apply(config.getOptions(), vertx.isNativeTransportEnabled());
             if (config.isSsl()) {
                 config.getOptions().setSsl(true);
                 return certificateManager.getCertificate(config.getCertId())
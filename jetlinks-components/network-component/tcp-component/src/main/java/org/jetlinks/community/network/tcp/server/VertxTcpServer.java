@@ -28,6 +28,16 @@ public class VertxTcpServer extends AbstractTcpServer implements TcpServer {
     @Setter
     private long keepAliveTimeout = Duration.ofMinutes(10).toMillis();
 
+    @Setter
+    private long writeHighWaterMark = 512 * 1024;
+
+    //写空闲及读写空闲超时时间,读空闲超时时间为心跳超时时间
+    @Setter
+    private long writeIdleTimeout;
+
+    @Setter
+    private long allIdleTimeout;
+
     @Getter
     private String id;
 
@@ -63,6 +73,7 @@ public class VertxTcpServer extends AbstractTcpServer implements TcpServer {
     protected void acceptTcpConnection(NetSocket socket) {
         VertxTcpClient client = new VertxTcpClient(id + "_" + socket.remoteAddress());
         client.setKeepAliveTimeoutMs(keepAliveTimeout);
+        client.setWriteHighWaterMark(writeHighWaterMark);
         try {
             socket.exceptionHandler(err -> {
                 log.error("tcp server client [{}] error", socket.remoteAddress(), err);
@@ -72,6 +83,7 @@ public class VertxTcpServer extends AbstractTcpServer implements TcpServer {
             });
             client.setRecordParser(parserSupplier.get());
             client.setSocket(socket);
+            client.startIdleCheck(writeIdleTimeout, allIdleTimeout);
             received(client);
             log.debug("accept tcp client [{}] connection", socket.remoteAddress());
         } catch (Exception e) {
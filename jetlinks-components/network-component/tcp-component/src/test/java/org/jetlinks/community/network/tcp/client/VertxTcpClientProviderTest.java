@@ -1,17 +1,23 @@
 package org.jetlinks.community.network.tcp.client;
 
+import io.netty.buffer.Unpooled;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.net.NetClientOptions;
 import org.jetlinks.community.network.tcp.TcpMessage;
 import org.jetlinks.community.network.tcp.parser.DefaultPayloadParserBuilder;
 import org.jetlinks.community.network.tcp.parser.PayloadParserType;
 import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Collections;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 class VertxTcpClientProviderTest {
 
 
@@ -47,4 +53,39 @@ class VertxTcpClientProviderTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    void testCoalescedSend() {
+        Vertx vertx = Vertx.vertx();
+        Buffer received = Buffer.buffer();
+
+        vertx.createNetServer()
+                .connectHandler(socket -> socket.handler(received::appendBuffer))
+                .listen(12312);
+
+        VertxTcpClientProvider provider = new VertxTcpClientProvider(id -> Mono.empty(), vertx, new DefaultPayloadParserBuilder());
+
+        TcpClientProperties properties = new TcpClientProperties();
+        properties.setHost("127.0.0.1");
+        properties.setPort(12312);
+        properties.setParserType(PayloadParserType.DIRECT);
+        properties.setOptions(new NetClientOptions());
+
+        VertxTcpClient client = provider.createNetwork(properties);
+        Flux.interval(Duration.ofMillis(10))
+                .filter(i -> client.isAlive())
+                .blockFirst(Duration.ofSeconds(5));
+
+        Flux.range(0, 1000)
+                .flatMap(i -> client.send(new TcpMessage(Unpooled.wrappedBuffer("test".getBytes()))))
+                .as(StepVerifier::create)
+                .expectNextCount(1000)
+                .verifyComplete();
+
+        Flux.interval(Duration.ofMillis(10))
+                .filter(i -> received.length() >= 4000)
+                .blockFirst(Duration.ofSeconds(5));
+        assertEquals(4000, received.length());
+        assertEquals(0, client.getPendingWrites());
+    }
+
+}
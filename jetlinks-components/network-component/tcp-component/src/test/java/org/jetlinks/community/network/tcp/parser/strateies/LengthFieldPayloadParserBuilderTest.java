@@ -0,0 +1,56 @@
+package org.jetlinks.community.network.tcp.parser.strateies;
+
+import io.vertx.core.buffer.Buffer;
+import org.jetlinks.community.ValueObject;
+import org.jetlinks.community.network.tcp.parser.PayloadParser;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class LengthFieldPayloadParserBuilderTest {
+
+    @Test
+    void testLengthField() {
+        LengthFieldPayloadParserBuilder builder = new LengthFieldPayloadParserBuilder();
+        Map<String, Object> config = new HashMap<>();
+        config.put("lengthFieldLength", 2);
+        config.put("initialBytesToStrip", 2);
+        PayloadParser parser = builder.build(ValueObject.of(config));
+        List<String> arr = new ArrayList<>();
+
+        parser.handlePayload(buffer -> arr.add(buffer.toString(StandardCharsets.UTF_8)));
+
+        parser.handle(Buffer.buffer(new byte[]{0, 5}).appendString("123"));
+        parser.handle(Buffer.buffer("45").appendBytes(new byte[]{0}));
+        parser.handle(Buffer.buffer(new byte[]{3}).appendString("678").appendBytes(new byte[]{0, 2}).appendString("90"));
+
+        Assert.assertArrayEquals(new Object[]{"12345", "678", "90"}, arr.toArray());
+    }
+
+    @Test
+    void testResync() {
+        LengthFieldPayloadParserBuilder builder = new LengthFieldPayloadParserBuilder();
+        Map<String, Object> config = new HashMap<>();
+        config.put("magic", "AA55");
+        config.put("lengthFieldOffset", 2);
+        config.put("lengthFieldLength", 1);
+        config.put("initialBytesToStrip", 3);
+        config.put("maxFrameLength", 16);
+        config.put("littleEndian", true);
+        PayloadParser parser = builder.build(ValueObject.of(config));
+        List<String> arr = new ArrayList<>();
+
+        parser.handlePayload(buffer -> arr.add(buffer.toString(StandardCharsets.UTF_8)));
+
+        //开头的无效数据,长度超过最大长度的数据包
+        parser.handle(Buffer.buffer(new byte[]{1, 2, (byte) 0xAA, 0x55, 100, (byte) 0xAA}));
+        parser.handle(Buffer.buffer(new byte[]{0x55, 3}).appendString("abc"));
+
+        Assert.assertArrayEquals(new Object[]{"abc"}, arr.toArray());
+    }
+}
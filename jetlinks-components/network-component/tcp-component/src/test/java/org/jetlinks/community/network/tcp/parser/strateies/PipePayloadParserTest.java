@@ -2,6 +2,7 @@ package org.jetlinks.community.network.tcp.parser.strateies;
 
 import io.vertx.core.buffer.Buffer;
 import org.jetlinks.community.network.utils.BytesUtils;
+import org.junit.Assert;
 import org.junit.jupiter.api.Test;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -9,6 +10,8 @@ import reactor.test.StepVerifier;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 class PipePayloadParserTest {
 
@@ -85,5 +88,23 @@ class PipePayloadParserTest {
 
     }
 
+    @Test
+    void testDelimitedCallback() {
+        PipePayloadParser parser = new PipePayloadParser();
+        List<String> arr = new ArrayList<>();
+
+        parser.delimited("\r\n")
+                .handler(buffer -> parser.result(buffer).complete());
+        parser.handlePayload(buffer -> arr.add(buffer.toString(StandardCharsets.UTF_8)));
+
+        parser.handle(Buffer.buffer("123\r"));
+        parser.handle(Buffer.buffer("\n456\r\n78"));
+        parser.handle(Buffer.buffer("9\r\n"));
+        parser.close();
+        parser.handle(Buffer.buffer("000\r\n"));
+
+        Assert.assertArrayEquals(new Object[]{"123", "456", "789"}, arr.toArray());
+    }
+
 
-}
\ No newline at end of file
+}
@@ -5,14 +5,23 @@ import org.jetlinks.community.ValueObject;
 import org.jetlinks.community.network.tcp.parser.PayloadParser;
 import org.jetlinks.community.network.utils.BytesUtils;
 import org.jetlinks.core.Values;
+import org.junit.Assert;
 import org.junit.jupiter.api.Test;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 class ScriptPayloadParserBuilderTest {
 
@@ -55,4 +64,95 @@ class ScriptPayloadParserBuilderTest {
                 .verifyComplete();
     }
 
-}
\ No newline at end of file
+    @Test
+    void testSharedFactory() {
+        ScriptPayloadParserBuilder builder = new ScriptPayloadParserBuilder();
+        Map<String, Object> config = new HashMap<>();
+        config.put("script", "\n" +
+                "var BytesUtils = org.jetlinks.community.network.utils.BytesUtils;\n" +
+                "parser.fixed(4)\n" +
+                "       .handler(function(buffer){\n" +
+                "            parser.context().put('len', BytesUtils.highBytesToInt(buffer.getBytes()));\n" +
+                "            parser.fixed(parser.context().get('len'));\n" +
+                "        })\n" +
+                "       .handler(function(buffer){\n" +
+                "            parser.result(buffer.toString(\"UTF-8\"))\n" +
+                "                   .complete();\n" +
+                "        });");
+        config.put("lang", "javascript");
+        Supplier<PayloadParser> factory = builder.createFactory(ValueObject.of(config));
+
+        //两个连接交替收到数据,解析状态互不影响
+        PayloadParser first = factory.get();
+        PayloadParser second = factory.get();
+        List<String> firstResult = new ArrayList<>();
+        List<String> secondResult = new ArrayList<>();
+        first.handlePayload(buffer -> firstResult.add(buffer.toString(StandardCharsets.UTF_8)));
+        second.handlePayload(buffer -> secondResult.add(buffer.toString(StandardCharsets.UTF_8)));
+
+        first.handle(Buffer.buffer(BytesUtils.toHighBytes(5)).appendString("12"));
+        second.handle(Buffer.buffer(BytesUtils.toHighBytes(2)).appendString("a"));
+        first.handle(Buffer.buffer("345"));
+        second.handle(Buffer.buffer("b"));
+
+        Assert.assertArrayEquals(new Object[]{"12345"}, firstResult.toArray());
+        Assert.assertArrayEquals(new Object[]{"ab"}, secondResult.toArray());
+    }
+
+    @Test
+    void testConcurrentStatefulConnections() throws Exception {
+        ScriptPayloadParserBuilder builder = new ScriptPayloadParserBuilder();
+        Map<String, Object> config = new HashMap<>();
+        //使用parser.context()保存每个连接的序号和长度
+        config.put("script", "\n" +
+                "var BytesUtils = org.jetlinks.community.network.utils.BytesUtils;\n" +
+                "parser.fixed(4)\n" +
+                "       .handler(function(buffer){\n" +
+                "            var ctx = parser.context();\n" +
+                "            ctx.put('len', BytesUtils.highBytesToInt(buffer.getBytes()));\n" +
+                "            ctx.put('seq', (ctx.get('seq') || 0) + 1);\n" +
+                "            parser.fixed(ctx.get('len'));\n" +
+                "        })\n" +
+                "       .handler(function(buffer){\n" +
+                "            parser.result(parser.context().get('seq') + ':' + buffer.toString(\"UTF-8\"))\n" +
+                "                   .complete();\n" +
+                "        });");
+        config.put("lang", "javascript");
+        Supplier<PayloadParser> factory = builder.createFactory(ValueObject.of(config));
+
+        int packets = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (String connection : new String[]{"a", "b"}) {
+                //每个连接在自己的线程中处理数据,两个连接同时执行脚本
+                futures.add(executor.submit(() -> {
+                    PayloadParser parser = factory.get();
+                    List<String> result = new ArrayList<>();
+                    parser.handlePayload(buffer -> result.add(buffer.toString(StandardCharsets.UTF_8)));
+                    start.await();
+                    for (int i = 0; i < packets; i++) {
+                        String payload = connection + "-" + i;
+                        //数据包拆分到两次接收中
+                        parser.handle(Buffer.buffer(BytesUtils.toHighBytes(payload.length())).appendString(payload.substring(0, 1)));
+                        parser.handle(Buffer.buffer(payload.substring(1)));
+                    }
+                    return result;
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < futures.size(); i++) {
+                String connection = i == 0 ? "a" : "b";
+                List<String> result = futures.get(i).get(30, TimeUnit.SECONDS);
+                Assert.assertEquals(packets, result.size());
+                for (int seq = 0; seq < packets; seq++) {
+                    Assert.assertEquals((seq + 1) + ":" + connection + "-" + seq, result.get(seq));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
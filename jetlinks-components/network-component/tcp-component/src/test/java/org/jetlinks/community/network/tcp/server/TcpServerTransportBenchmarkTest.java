@@ -0,0 +1,105 @@
+package org.jetlinks.community.network.tcp.server;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetClientOptions;
+import io.vertx.core.net.NetServerOptions;
+import lombok.extern.slf4j.Slf4j;
+import org.jetlinks.community.network.ServerSocketOptions;
+import org.jetlinks.community.network.tcp.client.TcpClient;
+import org.jetlinks.community.network.tcp.parser.DefaultPayloadParserBuilder;
+import org.jetlinks.community.network.tcp.parser.PayloadParserType;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对比epoll和nio传输的建立连接速度和吞吐量,需要在linux下运行.
+ */
+@Slf4j
+@Disabled
+class TcpServerTransportBenchmarkTest {
+
+    static final int connections = 5000;
+
+    static final int messagesPerConnection = 200;
+
+    static final int frameSize = 64;
+
+    @Test
+    void benchmark() throws Exception {
+        run(false, 18081);
+        run(true, 18082);
+    }
+
+    void run(boolean nativeTransport, int port) throws Exception {
+        Vertx vertx = Vertx.vertx(new VertxOptions().setPreferNativeTransport(nativeTransport));
+        NetServerOptions options = new NetServerOptions().setPort(port);
+        new ServerSocketOptions().apply(options, vertx.isNativeTransportEnabled());
+        TcpServerProperties properties = TcpServerProperties.builder()
+            .id("benchmark")
+            .options(options)
+            .port(port)
+            .instance(Runtime.getRuntime().availableProcessors())
+            .parserType(PayloadParserType.FIXED_LENGTH)
+            .parserConfiguration(Collections.singletonMap("size", frameSize))
+            .build();
+        TcpServer server = new TcpServerProvider((id) -> Mono.empty(), vertx, new DefaultPayloadParserBuilder())
+            .createNetwork(properties);
+
+        CountDownLatch connected = new CountDownLatch(connections);
+        CountDownLatch received = new CountDownLatch(connections * messagesPerConnection);
+        Disposable disposable = server
+            .handleConnection()
+            .doOnNext(ignore -> connected.countDown())
+            .flatMap(TcpClient::subscribe, Integer.MAX_VALUE)
+            .subscribe(ignore -> received.countDown());
+
+        Vertx clientVertx = Vertx.vertx(new VertxOptions().setPreferNativeTransport(nativeTransport));
+        NetClient client = clientVertx.createNetClient(new NetClientOptions().setTcpNoDelay(true));
+        Buffer frame = Buffer.buffer(new byte[frameSize]);
+        AtomicLong connectError = new AtomicLong();
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < connections; i++) {
+            client.connect(port, "127.0.0.1", result -> {
+                if (result.failed()) {
+                    connectError.incrementAndGet();
+                    connected.countDown();
+                    return;
+                }
+                for (int j = 0; j < messagesPerConnection; j++) {
+                    result.result().write(frame);
+                }
+            });
+        }
+        connected.await(60, TimeUnit.SECONDS);
+        long connectTime = System.currentTimeMillis() - start;
+        received.await(120, TimeUnit.SECONDS);
+        long totalTime = System.currentTimeMillis() - start;
+        long messages = (long) connections * messagesPerConnection - received.getCount();
+
+        log.info("transport:{},connections:{},connect errors:{},connect time:{}ms,connect rate:{}/s,messages:{},throughput:{} msg/s",
+            vertx.isNativeTransportEnabled() ? "epoll" : "nio",
+            connections,
+            connectError.get(),
+            connectTime,
+            connections * 1000L / Math.max(1, connectTime),
+            messages,
+            messages * 1000L / Math.max(1, totalTime));
+
+        disposable.dispose();
+        server.shutdown();
+        client.close();
+        clientVertx.close();
+        vertx.close();
+    }
+}
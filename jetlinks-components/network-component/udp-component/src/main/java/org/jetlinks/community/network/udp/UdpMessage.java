@@ -0,0 +1,29 @@
+package org.jetlinks.community.network.udp;
+
+import io.netty.buffer.ByteBuf;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.jetlinks.core.message.codec.EncodedMessage;
+
+import java.net.InetSocketAddress;
+
+/**
+ * UDP报文
+ *
+ * @author zhouhao
+ * @since 1.0
+ **/
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class UdpMessage implements EncodedMessage {
+
+    private ByteBuf payload;
+
+    //接收时为发送方地址,发送时为目标地址
+    private InetSocketAddress address;
+
+}
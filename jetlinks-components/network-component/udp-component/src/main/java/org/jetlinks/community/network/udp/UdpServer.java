@@ -0,0 +1,34 @@
+package org.jetlinks.community.network.udp;
+
+import org.jetlinks.community.network.Network;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * UDP服务
+ *
+ * @author zhouhao
+ * @since 1.0
+ **/
+public interface UdpServer extends Network {
+
+    /**
+     * 订阅收到的UDP报文
+     *
+     * @return UDP报文
+     */
+    Flux<UdpMessage> subscribe();
+
+    /**
+     * 发送报文到{@link UdpMessage#getAddress()}
+     *
+     * @param message 报文
+     * @return 发送结果
+     */
+    Mono<Boolean> send(UdpMessage message);
+
+    /**
+     * 关闭服务端
+     */
+    void shutdown();
+}
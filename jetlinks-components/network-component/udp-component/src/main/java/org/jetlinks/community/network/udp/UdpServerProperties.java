@@ -0,0 +1,48 @@
+package org.jetlinks.community.network.udp;
+
+import io.vertx.core.datagram.DatagramSocketOptions;
+import lombok.*;
+import org.jetlinks.community.ValueObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author zhouhao
+ * @since 1.0
+ **/
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UdpServerProperties implements ValueObject {
+
+    private String id;
+
+    private DatagramSocketOptions options;
+
+    private String host;
+
+    private int port;
+
+    //接收报文的socket数量,使用本地传输(SO_REUSEPORT)时由内核分配报文到各个socket
+    @Builder.Default
+    private int instance = Runtime.getRuntime().availableProcessors();
+
+    //接收缓冲区的报文数量,超过一半时丢弃报文
+    @Builder.Default
+    private int bufferSize = 4096;
+
+    @Builder.Default
+    private Map<String, Object> configuration = new HashMap<>();
+
+    public String getHost() {
+        return host == null || host.isEmpty() ? "0.0.0.0" : host;
+    }
+
+    @Override
+    public Map<String, Object> getAll() {
+        return configuration;
+    }
+}
@@ -0,0 +1,101 @@
+package org.jetlinks.community.network.udp;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.datagram.DatagramSocket;
+import io.vertx.core.datagram.DatagramSocketOptions;
+import lombok.extern.slf4j.Slf4j;
+import org.hswebframework.web.bean.FastBeanCopier;
+import org.jetlinks.core.metadata.ConfigMetadata;
+import org.jetlinks.community.network.*;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * UDP服务网络组件
+ *
+ * @author zhouhao
+ * @since 1.0
+ **/
+@Component
+@Slf4j
+public class UdpServerProvider implements NetworkProvider<UdpServerProperties> {
+
+    private final Vertx vertx;
+
+    public UdpServerProvider(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    @Nonnull
+    @Override
+    public NetworkType getType() {
+        return DefaultNetworkType.UDP;
+    }
+
+    @Nonnull
+    @Override
+    public VertxUdpServer createNetwork(@Nonnull UdpServerProperties properties) {
+        VertxUdpServer server = new VertxUdpServer(properties.getId(), properties.getBufferSize());
+        initServer(server, properties);
+        return server;
+    }
+
+    private void initServer(VertxUdpServer server, UdpServerProperties properties) {
+        //没有SO_REUSEPORT时多个socket无法绑定同一个端口
+        int instance = properties.getOptions().isReusePort() ? Math.max(1, properties.getInstance()) : 1;
+        List<DatagramSocket> sockets = new ArrayList<>(instance);
+        for (int i = 0; i < instance; i++) {
+            sockets.add(vertx.createDatagramSocket(properties.getOptions()));
+        }
+        server.setSockets(sockets);
+        for (DatagramSocket socket : sockets) {
+            socket.listen(properties.getPort(), properties.getHost(), result -> {
+                if (result.succeeded()) {
+                    log.info("udp server startup on {}", result.result().localAddress());
+                } else {
+                    log.error("startup udp server error", result.cause());
+                }
+            });
+        }
+    }
+
+    @Override
+    public void reload(@Nonnull Network network, @Nonnull UdpServerProperties properties) {
+        VertxUdpServer server = ((VertxUdpServer) network);
+        server.shutdown();
+        initServer(server, properties);
+    }
+
+    @Nullable
+    @Override
+    public ConfigMetadata getConfigMetadata() {
+        return null;
+    }
+
+    @Nonnull
+    @Override
+    public Mono<UdpServerProperties> createConfig(@Nonnull NetworkProperties properties) {
+        return Mono.fromSupplier(() -> {
+            UdpServerProperties config = FastBeanCopier.copy(properties.getConfigurations(), new UdpServerProperties());
+            config.setId(properties.getId());
+            config.setConfiguration(properties.getConfigurations());
+            if (config.getOptions() == null) {
+                //receiveBufferSize,sendBufferSize等参数和DatagramSocketOptions一致
+                config.setOptions(FastBeanCopier.copy(properties.getConfigurations(), new DatagramSocketOptions()));
+            }
+            config.getOptions().setReuseAddress(true);
+            if (vertx.isNativeTransportEnabled()) {
+                config.getOptions().setReusePort(true);
+            } else {
+                log.debug("native transport is not available, udp server [{}] use single socket", config.getId());
+                config.getOptions().setReusePort(false);
+            }
+            return config;
+        });
+    }
+}
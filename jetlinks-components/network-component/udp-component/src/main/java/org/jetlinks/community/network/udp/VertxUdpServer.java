@@ -0,0 +1,133 @@
+package org.jetlinks.community.network.udp;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.datagram.DatagramPacket;
+import io.vertx.core.datagram.DatagramSocket;
+import io.vertx.core.net.SocketAddress;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.jetlinks.community.network.DefaultNetworkType;
+import org.jetlinks.community.network.NetworkType;
+import reactor.core.publisher.EmitterProcessor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 基于vert.x的UDP服务,支持多个socket同时接收报文
+ *
+ * @author zhouhao
+ * @since 1.0
+ **/
+@Slf4j
+public class VertxUdpServer implements UdpServer {
+
+    @Getter
+    private String id;
+
+    private volatile List<DatagramSocket> sockets = Collections.emptyList();
+
+    //发送报文时轮询使用socket
+    private final AtomicInteger index = new AtomicInteger();
+
+    private final EmitterProcessor<UdpMessage> processor;
+
+    //多个socket在不同的事件循环中接收报文,使用串行化的sink
+    private final FluxSink<UdpMessage> sink;
+
+    public VertxUdpServer(String id) {
+        this(id, 4096);
+    }
+
+    public VertxUdpServer(String id, int bufferSize) {
+        this.id = id;
+        this.processor = EmitterProcessor.create(bufferSize, false);
+        this.sink = processor.sink();
+    }
+
+    private void execute(Runnable runnable) {
+        try {
+            runnable.run();
+        } catch (Exception e) {
+            log.warn("close udp server error", e);
+        }
+    }
+
+    public void setSockets(List<DatagramSocket> sockets) {
+        if (!this.sockets.isEmpty()) {
+            shutdown();
+        }
+        for (DatagramSocket socket : sockets) {
+            socket.handler(this::received)
+                .exceptionHandler(err -> log.error("udp server [{}] error", id, err));
+        }
+        this.sockets = sockets;
+    }
+
+    protected void received(DatagramPacket packet) {
+        if (processor.getPending() > processor.getBufferSize() / 2) {
+            log.warn("not handler,drop udp message from {}", packet.sender());
+            return;
+        }
+        SocketAddress sender = packet.sender();
+        sink.next(new UdpMessage(packet.data().getByteBuf(), new InetSocketAddress(sender.host(), sender.port())));
+    }
+
+    @Override
+    public Flux<UdpMessage> subscribe() {
+        return processor
+            .map(Function.identity());
+    }
+
+    @Override
+    public Mono<Boolean> send(UdpMessage message) {
+        return Mono.create(sink -> {
+            List<DatagramSocket> sockets = this.sockets;
+            if (sockets.isEmpty()) {
+                sink.error(new SocketException("udp server closed"));
+                return;
+            }
+            //所有socket绑定了同一个端口,使用任意socket发送即可
+            DatagramSocket socket = sockets.get(Math.abs(index.getAndIncrement() % sockets.size()));
+            InetSocketAddress address = message.getAddress();
+            socket.send(Buffer.buffer(message.getPayload()), address.getPort(), address.getHostString(), result -> {
+                if (result.succeeded()) {
+                    sink.success(true);
+                } else {
+                    sink.error(result.cause());
+                }
+            });
+        });
+    }
+
+    @Override
+    public NetworkType getType() {
+        return DefaultNetworkType.UDP;
+    }
+
+    @Override
+    public void shutdown() {
+        List<DatagramSocket> sockets = this.sockets;
+        this.sockets = Collections.emptyList();
+        for (DatagramSocket socket : sockets) {
+            execute(socket::close);
+        }
+    }
+
+    @Override
+    public boolean isAlive() {
+        return !sockets.isEmpty();
+    }
+
+    @Override
+    public boolean isAutoReload() {
+        return false;
+    }
+}
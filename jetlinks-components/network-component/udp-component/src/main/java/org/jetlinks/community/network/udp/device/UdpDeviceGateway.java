@@ -0,0 +1,316 @@
+package org.jetlinks.community.network.udp.device;
+
+import io.netty.buffer.ByteBufUtil;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.hswebframework.web.logger.ReactiveLogger;
+import org.jetlinks.community.gateway.DeviceGateway;
+import org.jetlinks.community.gateway.monitor.DeviceGatewayMonitor;
+import org.jetlinks.community.gateway.monitor.GatewayMonitors;
+import org.jetlinks.community.gateway.monitor.MonitorSupportDeviceGateway;
+import org.jetlinks.community.network.DefaultNetworkType;
+import org.jetlinks.community.network.NetworkType;
+import org.jetlinks.community.network.udp.UdpMessage;
+import org.jetlinks.community.network.udp.UdpServer;
+import org.jetlinks.core.ProtocolSupport;
+import org.jetlinks.core.ProtocolSupports;
+import org.jetlinks.core.device.DeviceOperator;
+import org.jetlinks.core.device.DeviceRegistry;
+import org.jetlinks.core.message.*;
+import org.jetlinks.core.message.codec.*;
+import org.jetlinks.core.server.session.DeviceSession;
+import org.jetlinks.core.server.session.DeviceSessionManager;
+import org.jetlinks.supports.server.DecodedClientMessageHandler;
+import reactor.core.Disposable;
+import reactor.core.publisher.EmitterProcessor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.Nonnull;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * UDP设备网关,UDP报文按设备地址分组后按批次解码,同一批次使用同一个编解码器按顺序处理.
+ * 同一地址的报文始终在同一分组中按顺序处理,不同分组之间并行处理.
+ * 设备会话以设备地址为key,超过心跳超时时间未收到报文则失效.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+@Slf4j
+class UdpDeviceGateway implements DeviceGateway, MonitorSupportDeviceGateway {
+
+    @Getter
+    private String id;
+
+    private UdpServer udpServer;
+
+    private String protocol;
+
+    private ProtocolSupports supports;
+
+    private DeviceRegistry registry;
+
+    private DecodedClientMessageHandler clientMessageHandler;
+
+    private DeviceSessionManager sessionManager;
+
+    private DeviceGatewayMonitor gatewayMonitor;
+
+    //设备心跳超时时间
+    private Duration keepAliveTimeout;
+
+    //每批解码的最大报文数量
+    private int batchSize;
+
+    //并行处理的分组数量
+    private int parallelism;
+
+    //设备会话,key为设备地址
+    private final Map<InetSocketAddress, UdpDeviceSession> sessions = new ConcurrentHashMap<>();
+
+    private EmitterProcessor<Message> processor = EmitterProcessor.create(false);
+
+    private FluxSink<Message> sink = processor.sink();
+
+    private AtomicBoolean started = new AtomicBoolean();
+
+    private List<Disposable> disposable = new CopyOnWriteArrayList<>();
+
+    public UdpDeviceGateway(String id,
+                            String protocol,
+                            ProtocolSupports supports,
+                            DeviceRegistry registry,
+                            DecodedClientMessageHandler clientMessageHandler,
+                            DeviceSessionManager sessionManager,
+                            UdpServer udpServer,
+                            Duration keepAliveTimeout,
+                            int batchSize,
+                            int parallelism) {
+        this.gatewayMonitor = GatewayMonitors.getDeviceGatewayMonitor(id);
+        this.id = id;
+        this.protocol = protocol;
+        this.supports = supports;
+        this.registry = registry;
+        this.clientMessageHandler = clientMessageHandler;
+        this.sessionManager = sessionManager;
+        this.udpServer = udpServer;
+        this.keepAliveTimeout = keepAliveTimeout;
+        this.batchSize = Math.max(1, batchSize);
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public Mono<ProtocolSupport> getProtocol() {
+        return supports.getProtocol(protocol);
+    }
+
+    @Override
+    public long totalConnection() {
+        return sessions.size();
+    }
+
+    @Override
+    public Transport getTransport() {
+        return DefaultTransport.UDP;
+    }
+
+    @Override
+    public NetworkType getNetworkType() {
+        return DefaultNetworkType.UDP;
+    }
+
+    private void doStart() {
+        if (started.getAndSet(true) || !disposable.isEmpty()) {
+            return;
+        }
+        disposable.add(udpServer
+            .subscribe()
+            .filter(r -> started.get())
+            .doOnNext(r -> gatewayMonitor.receivedMessage())
+            //按地址分组,分组数量固定,避免地址过多时分组无法被消费
+            .groupBy(r -> (r.getAddress().hashCode() & Integer.MAX_VALUE) % parallelism)
+            .flatMap(group -> group
+                //批量解码,每批只获取一次编解码器
+                .bufferTimeout(batchSize, Duration.ofMillis(10))
+                .concatMap(this::decodeBatch), parallelism)
+            .subscriberContext(ReactiveLogger.start("network", udpServer.getId()))
+            .subscribe());
+
+        //UDP没有断开事件,定时清理失效的会话
+        disposable.add(Flux
+            .interval(Duration.ofSeconds(30))
+            .subscribe(ignore -> checkSession()));
+    }
+
+    private Mono<Void> decodeBatch(List<UdpMessage> batch) {
+        return getProtocol()
+            .flatMap(pt -> pt.getMessageCodec(getTransport()))
+            .flatMapMany(codec -> Flux
+                .fromIterable(batch)
+                .concatMap(message -> decode(codec, message)))
+            .onErrorResume(err -> {
+                log.error("处理UDP消息失败", err);
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    void checkSession() {
+        for (UdpDeviceSession session : sessions.values()) {
+            if (!session.isAlive()) {
+                sessionManager.unregister(session.getDeviceId());
+                session.close();
+            }
+        }
+    }
+
+    private Mono<Void> decode(DeviceMessageCodec codec, UdpMessage udpMessage) {
+        InetSocketAddress address = udpMessage.getAddress();
+        log.debug("收到UDP[{}]报文:\n{}", address, udpMessage);
+        return Flux
+            .from(codec.decode(new FromDeviceMessageContext() {
+                @Override
+                @Nonnull
+                public EncodedMessage getMessage() {
+                    return udpMessage;
+                }
+
+                @Override
+                public DeviceSession getSession() {
+                    UdpDeviceSession session = sessions.get(address);
+                    if (session == null) {
+                        return new UnknownUdpDeviceSession(address, udpServer, getTransport()) {
+                            @Override
+                            public Mono<Boolean> send(EncodedMessage encodedMessage) {
+                                return super.send(encodedMessage).doOnSuccess(r -> gatewayMonitor.sentMessage());
+                            }
+                        };
+                    }
+                    return session;
+                }
+
+                @Override
+                public DeviceOperator getDevice() {
+                    return getSession().getOperator();
+                }
+            }))
+            .switchIfEmpty(Mono.fromRunnable(() -> log.warn("无法识别的UDP[{}]消息:\n{}", address, udpMessage)))
+            .cast(DeviceMessage.class)
+            .concatMap(message -> registry
+                .getDevice(message.getDeviceId())
+                .switchIfEmpty(Mono.fromRunnable(() -> log.warn("设备[{}]未注册,UDP[{}]消息:[{}],设备消息:{}",
+                    message.getDeviceId(),
+                    address,
+                    ByteBufUtil.hexDump(udpMessage.getPayload()),
+                    message)))
+                .flatMap(device -> handleMessage(device, message, address)))
+            .onErrorResume(err -> {
+                log.error("处理UDP[{}]消息失败:\n{}", address, udpMessage, err);
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    private Mono<Void> handleMessage(DeviceOperator device, DeviceMessage message, InetSocketAddress address) {
+        //设备下线
+        if (message instanceof DeviceOfflineMessage) {
+            UdpDeviceSession session = sessions.get(address);
+            if (session != null) {
+                session.close();
+            }
+            sessionManager.unregister(device.getDeviceId());
+            return Mono.empty();
+        }
+        //UDP设备收到任意消息即认为在线
+        getOrCreateSession(device, address);
+        if (message instanceof DeviceOnlineMessage) {
+            return Mono.empty();
+        }
+        message.addHeaderIfAbsent(Headers.clientAddress, String.valueOf(address));
+
+        if (processor.hasDownstreams()) {
+            sink.next(message);
+        }
+        return clientMessageHandler
+            .handleMessage(device, message)
+            .then();
+    }
+
+    private UdpDeviceSession getOrCreateSession(DeviceOperator device, InetSocketAddress address) {
+        UdpDeviceSession session = sessions.get(address);
+        if (session != null && session.getDeviceId().equals(device.getDeviceId()) && session.isAlive()) {
+            session.ping();
+            return session;
+        }
+        DeviceSession exists = sessionManager.getSession(device.getDeviceId());
+        if (exists instanceof UdpDeviceSession && exists.isAlive()) {
+            //设备地址变更
+            session = ((UdpDeviceSession) exists);
+            sessions.remove(session.getAddress(), session);
+            session.setAddress(address);
+        } else {
+            UdpDeviceSession newSession = new UdpDeviceSession(device, udpServer, address, getTransport(), keepAliveTimeout) {
+                @Override
+                public Mono<Boolean> send(EncodedMessage encodedMessage) {
+                    return super.send(encodedMessage).doOnSuccess(r -> gatewayMonitor.sentMessage());
+                }
+            };
+            newSession.onClose(() -> {
+                sessions.remove(newSession.getAddress(), newSession);
+                gatewayMonitor.disconnected();
+                gatewayMonitor.totalConnection(sessions.size());
+            });
+            session = newSession;
+            sessionManager.register(session);
+            gatewayMonitor.connected();
+        }
+        session.ping();
+        sessions.put(address, session);
+        gatewayMonitor.totalConnection(sessions.size());
+        return session;
+    }
+
+    @Override
+    public Flux<Message> onMessage() {
+        return processor.map(Function.identity());
+    }
+
+    @Override
+    public Mono<Void> pause() {
+        return Mono.fromRunnable(() -> started.set(false));
+    }
+
+    @Override
+    public Mono<Void> startup() {
+        return Mono.fromRunnable(this::doStart);
+    }
+
+    @Override
+    public Mono<Void> shutdown() {
+        return Mono.fromRunnable(() -> {
+            started.set(false);
+
+            disposable.forEach(Disposable::dispose);
+
+            disposable.clear();
+
+            for (UdpDeviceSession session : sessions.values()) {
+                sessionManager.unregister(session.getDeviceId());
+                session.close();
+            }
+        });
+    }
+
+    @Override
+    public boolean isAlive() {
+        return started.get();
+    }
+}
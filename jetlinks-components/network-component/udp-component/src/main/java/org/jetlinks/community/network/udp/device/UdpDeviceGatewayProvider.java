@@ -0,0 +1,84 @@
+package org.jetlinks.community.network.udp.device;
+
+import org.jetlinks.community.ValueObject;
+import org.jetlinks.community.gateway.DeviceGateway;
+import org.jetlinks.community.gateway.supports.DeviceGatewayProperties;
+import org.jetlinks.community.gateway.supports.DeviceGatewayProvider;
+import org.jetlinks.community.network.DefaultNetworkType;
+import org.jetlinks.community.network.NetworkManager;
+import org.jetlinks.community.network.NetworkType;
+import org.jetlinks.community.network.udp.UdpServer;
+import org.jetlinks.core.ProtocolSupports;
+import org.jetlinks.core.device.DeviceRegistry;
+import org.jetlinks.core.server.session.DeviceSessionManager;
+import org.jetlinks.supports.server.DecodedClientMessageHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+@Component
+public class UdpDeviceGatewayProvider implements DeviceGatewayProvider {
+
+    private final NetworkManager networkManager;
+
+    private final DeviceRegistry registry;
+
+    private final DeviceSessionManager sessionManager;
+
+    private final DecodedClientMessageHandler messageHandler;
+
+    private final ProtocolSupports protocolSupports;
+
+    public UdpDeviceGatewayProvider(NetworkManager networkManager,
+                                    DeviceRegistry registry,
+                                    DeviceSessionManager sessionManager,
+                                    DecodedClientMessageHandler messageHandler,
+                                    ProtocolSupports protocolSupports) {
+        this.networkManager = networkManager;
+        this.registry = registry;
+        this.sessionManager = sessionManager;
+        this.messageHandler = messageHandler;
+        this.protocolSupports = protocolSupports;
+    }
+
+    @Override
+    public String getId() {
+        return "udp-device-gateway";
+    }
+
+    @Override
+    public String getName() {
+        return "UDP设备网关";
+    }
+
+    @Override
+    public NetworkType getNetworkType() {
+        return DefaultNetworkType.UDP;
+    }
+
+    @Override
+    public Mono<DeviceGateway> createDeviceGateway(DeviceGatewayProperties properties) {
+        return networkManager
+            .<UdpServer>getNetwork(getNetworkType(), properties.getNetworkId())
+            .map(udpServer -> {
+                ValueObject config = ValueObject.of(properties.getConfiguration());
+                String protocol = config.getString("protocol", null);
+
+                Assert.hasText(protocol, "protocol can not be empty");
+
+                return new UdpDeviceGateway(properties.getId(),
+                    protocol,
+                    protocolSupports,
+                    registry,
+                    messageHandler,
+                    sessionManager,
+                    udpServer,
+                    config.getDuration("keepAliveTimeout", Duration.ofMinutes(10)),
+                    config.getInt("batchSize", 256),
+                    config.getInt("parallelism", Runtime.getRuntime().availableProcessors() * 2)
+                );
+            });
+    }
+}
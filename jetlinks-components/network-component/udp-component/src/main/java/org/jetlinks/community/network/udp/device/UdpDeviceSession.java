@@ -0,0 +1,125 @@
+package org.jetlinks.community.network.udp.device;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.jetlinks.community.network.udp.UdpMessage;
+import org.jetlinks.community.network.udp.UdpServer;
+import org.jetlinks.core.device.DeviceOperator;
+import org.jetlinks.core.message.codec.EncodedMessage;
+import org.jetlinks.core.message.codec.Transport;
+import org.jetlinks.core.server.session.DeviceSession;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * UDP设备会话,UDP没有连接,以设备最近一次上报报文的地址作为会话地址.
+ * 超过{@link #setKeepAliveTimeout(Duration)}未收到报文时会话失效.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+class UdpDeviceSession implements DeviceSession {
+
+    @Getter
+    private String id;
+
+    @Getter
+    private DeviceOperator operator;
+
+    private UdpServer server;
+
+    @Getter
+    private Transport transport;
+
+    //NAT映射变化后设备的地址可能会改变
+    @Getter
+    @Setter
+    private volatile InetSocketAddress address;
+
+    private volatile long keepAliveTimeoutMs;
+
+    private volatile long lastPingTime = System.currentTimeMillis();
+
+    private long connectTime = System.currentTimeMillis();
+
+    private volatile boolean closed;
+
+    private List<Runnable> closeListener = new CopyOnWriteArrayList<>();
+
+    UdpDeviceSession(DeviceOperator operator,
+                     UdpServer server,
+                     InetSocketAddress address,
+                     Transport transport,
+                     Duration keepAliveTimeout) {
+        this.id = operator.getDeviceId();
+        this.operator = operator;
+        this.server = server;
+        this.address = address;
+        this.transport = transport;
+        this.keepAliveTimeoutMs = keepAliveTimeout.toMillis();
+    }
+
+    @Override
+    public String getDeviceId() {
+        return operator.getDeviceId();
+    }
+
+    @Override
+    public long lastPingTime() {
+        return lastPingTime;
+    }
+
+    @Override
+    public long connectTime() {
+        return connectTime;
+    }
+
+    @Override
+    public Mono<Boolean> send(EncodedMessage encodedMessage) {
+        return server.send(new UdpMessage(encodedMessage.getPayload(), address));
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Runnable runnable : closeListener) {
+            runnable.run();
+        }
+        closeListener.clear();
+    }
+
+    @Override
+    public void ping() {
+        lastPingTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public void setKeepAliveTimeout(Duration timeout) {
+        keepAliveTimeoutMs = timeout.toMillis();
+    }
+
+    @Override
+    public boolean isAlive() {
+        return !closed
+            && server.isAlive()
+            && (keepAliveTimeoutMs < 0 || System.currentTimeMillis() - lastPingTime < keepAliveTimeoutMs);
+    }
+
+    @Override
+    public Optional<InetSocketAddress> getClientAddress() {
+        return Optional.ofNullable(address);
+    }
+
+    @Override
+    public void onClose(Runnable call) {
+        closeListener.add(call);
+    }
+}
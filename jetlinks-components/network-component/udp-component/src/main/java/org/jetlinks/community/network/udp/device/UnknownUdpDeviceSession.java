@@ -0,0 +1,87 @@
+package org.jetlinks.community.network.udp.device;
+
+import lombok.Getter;
+import org.jetlinks.community.network.udp.UdpMessage;
+import org.jetlinks.community.network.udp.UdpServer;
+import org.jetlinks.core.device.DeviceOperator;
+import org.jetlinks.core.message.codec.EncodedMessage;
+import org.jetlinks.core.message.codec.Transport;
+import org.jetlinks.core.server.session.DeviceSession;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.Optional;
+
+class UnknownUdpDeviceSession implements DeviceSession {
+
+    @Getter
+    private String id;
+
+    private UdpServer server;
+
+    private InetSocketAddress address;
+
+    @Getter
+    private Transport transport;
+
+    private long lastPingTime = System.currentTimeMillis();
+
+    private long connectTime = System.currentTimeMillis();
+
+    UnknownUdpDeviceSession(InetSocketAddress address, UdpServer server, Transport transport) {
+        this.id = String.valueOf(address);
+        this.address = address;
+        this.server = server;
+        this.transport = transport;
+    }
+
+    @Override
+    public String getDeviceId() {
+        return "unknown";
+    }
+
+    @Override
+    public DeviceOperator getOperator() {
+        return null;
+    }
+
+    @Override
+    public long lastPingTime() {
+        return lastPingTime;
+    }
+
+    @Override
+    public long connectTime() {
+        return connectTime;
+    }
+
+    @Override
+    public Mono<Boolean> send(EncodedMessage encodedMessage) {
+        return server.send(new UdpMessage(encodedMessage.getPayload(), address));
+    }
+
+    @Override
+    public void close() {
+
+    }
+
+    @Override
+    public void ping() {
+        lastPingTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public boolean isAlive() {
+        return server.isAlive();
+    }
+
+    @Override
+    public Optional<InetSocketAddress> getClientAddress() {
+        return Optional.of(address);
+    }
+
+    @Override
+    public void onClose(Runnable call) {
+
+    }
+}
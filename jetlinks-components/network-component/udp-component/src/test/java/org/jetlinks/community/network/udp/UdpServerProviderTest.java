@@ -0,0 +1,92 @@
+package org.jetlinks.community.network.udp;
+
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Vertx;
+import io.vertx.core.datagram.DatagramSocket;
+import io.vertx.core.datagram.DatagramSocketOptions;
+import lombok.extern.slf4j.Slf4j;
+import org.jetlinks.community.network.NetworkProperties;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Slf4j
+class UdpServerProviderTest {
+
+    static Vertx vertx = Vertx.vertx();
+
+    static UdpServer udpServer;
+
+    @BeforeAll
+    static void init() {
+        UdpServerProvider provider = new UdpServerProvider(vertx);
+
+        NetworkProperties properties = new NetworkProperties();
+        properties.setId("test");
+        Map<String, Object> config = new HashMap<>();
+        config.put("host", "127.0.0.1");
+        config.put("port", 8089);
+        config.put("instance", 2);
+        properties.setConfigurations(config);
+
+        udpServer = provider
+            .createConfig(properties)
+            .map(provider::createNetwork)
+            .block();
+    }
+
+    @Test
+    void testReceive() {
+        DatagramSocket client = vertx.createDatagramSocket(new DatagramSocketOptions());
+
+        Mono.delay(Duration.ofMillis(500))
+            .subscribe(ignore -> {
+                for (int i = 0; i < 10; i++) {
+                    client.send("hello", 8089, "127.0.0.1", r -> {
+                        if (r.failed()) {
+                            log.error("udp客户端消息发送错误", r.cause());
+                        }
+                    });
+                }
+            });
+
+        udpServer.subscribe()
+            .map(msg -> msg.getPayload().toString(StandardCharsets.UTF_8))
+            .take(10)
+            .as(StepVerifier::create)
+            .expectNextCount(10)
+            .verifyComplete();
+
+        client.close();
+    }
+
+    @Test
+    void testReply() {
+        MonoProcessor<String> reply = MonoProcessor.create();
+        DatagramSocket client = vertx.createDatagramSocket(new DatagramSocketOptions());
+        client.handler(packet -> reply.onNext(packet.data().toString()));
+
+        //收到消息后回复到发送方地址
+        udpServer.subscribe()
+            .take(1)
+            .flatMap(msg -> udpServer.send(new UdpMessage(Unpooled.wrappedBuffer("world".getBytes()), msg.getAddress())))
+            .subscribe();
+
+        client.listen(0, "127.0.0.1", r -> client.send("hello", 8089, "127.0.0.1", ignore -> {
+        }));
+
+        reply.as(StepVerifier::create)
+            .expectNext("world")
+            .verifyComplete();
+
+        client.close();
+    }
+
+}
@@ -0,0 +1,164 @@
+package org.jetlinks.community.network.udp.device;
+
+import io.netty.buffer.Unpooled;
+import org.jetlinks.community.network.udp.UdpMessage;
+import org.jetlinks.community.network.udp.UdpServer;
+import org.jetlinks.core.ProtocolSupport;
+import org.jetlinks.core.ProtocolSupports;
+import org.jetlinks.core.device.DeviceOperator;
+import org.jetlinks.core.device.DeviceRegistry;
+import org.jetlinks.core.message.codec.DeviceMessageCodec;
+import org.jetlinks.core.message.codec.MessageDecodeContext;
+import org.jetlinks.core.message.property.ReportPropertyMessage;
+import org.jetlinks.core.server.session.DeviceSession;
+import org.jetlinks.core.server.session.DeviceSessionManager;
+import org.jetlinks.supports.server.DecodedClientMessageHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.EmitterProcessor;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class UdpDeviceGatewayTest {
+
+    static InetSocketAddress address = new InetSocketAddress("127.0.0.1", 10001);
+
+    static InetSocketAddress natAddress = new InetSocketAddress("127.0.0.1", 10002);
+
+    EmitterProcessor<UdpMessage> received = EmitterProcessor.create(false);
+
+    Map<String, DeviceSession> registered = new ConcurrentHashMap<>();
+
+    DeviceSessionManager sessionManager;
+
+    //已处理的消息数量
+    volatile CountDownLatch handled;
+
+    UdpDeviceGateway gateway;
+
+    @BeforeEach
+    void init() {
+        UdpServer udpServer = mock(UdpServer.class);
+        when(udpServer.getId()).thenReturn("test");
+        when(udpServer.isAlive()).thenReturn(true);
+        when(udpServer.subscribe()).thenReturn(received);
+
+        //报文内容即设备ID
+        DeviceMessageCodec codec = mock(DeviceMessageCodec.class);
+        doAnswer(invocation -> {
+            MessageDecodeContext context = invocation.getArgument(0);
+            ReportPropertyMessage message = new ReportPropertyMessage();
+            message.setDeviceId(context.getMessage().getPayload().toString(StandardCharsets.UTF_8));
+            return Mono.just(message);
+        }).when(codec).decode(any());
+
+        ProtocolSupport protocol = mock(ProtocolSupport.class);
+        doReturn(Mono.just(codec)).when(protocol).getMessageCodec(any());
+        ProtocolSupports supports = mock(ProtocolSupports.class);
+        doReturn(Mono.just(protocol)).when(supports).getProtocol("test");
+
+        DeviceRegistry registry = mock(DeviceRegistry.class);
+        doAnswer(invocation -> {
+            DeviceOperator device = mock(DeviceOperator.class);
+            when(device.getDeviceId()).thenReturn(invocation.getArgument(0));
+            return Mono.just(device);
+        }).when(registry).getDevice(anyString());
+
+        DecodedClientMessageHandler messageHandler = mock(DecodedClientMessageHandler.class);
+        doAnswer(invocation -> {
+            handled.countDown();
+            return Mono.just(true);
+        }).when(messageHandler).handleMessage(any(), any());
+
+        sessionManager = mock(DeviceSessionManager.class);
+        doAnswer(invocation -> {
+            DeviceSession session = invocation.getArgument(0);
+            registered.put(session.getDeviceId(), session);
+            return null;
+        }).when(sessionManager).register(any());
+        doAnswer(invocation -> registered.remove(invocation.<String>getArgument(0)))
+            .when(sessionManager).unregister(anyString());
+        doAnswer(invocation -> registered.get(invocation.<String>getArgument(0)))
+            .when(sessionManager).getSession(anyString());
+
+        gateway = new UdpDeviceGateway("test",
+            "test",
+            supports,
+            registry,
+            messageHandler,
+            sessionManager,
+            udpServer,
+            Duration.ofMillis(200),
+            16,
+            4);
+        gateway.startup().block();
+    }
+
+    @AfterEach
+    void shutdown() {
+        gateway.shutdown().block();
+    }
+
+    void receive(String deviceId, InetSocketAddress from) throws InterruptedException {
+        handled = new CountDownLatch(1);
+        received.onNext(new UdpMessage(Unpooled.wrappedBuffer(deviceId.getBytes()), from));
+        assertTrue(handled.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testCreateSession() throws InterruptedException {
+        receive("device-1", address);
+
+        DeviceSession session = registered.get("device-1");
+        assertTrue(session instanceof UdpDeviceSession);
+        assertEquals(address, ((UdpDeviceSession) session).getAddress());
+        assertEquals(1, gateway.totalConnection());
+
+        //同一地址再次上报复用会话
+        receive("device-1", address);
+        assertSame(session, registered.get("device-1"));
+        verify(sessionManager, times(1)).register(any());
+    }
+
+    @Test
+    void testCheckSessionExpired() throws InterruptedException {
+        receive("device-1", address);
+        assertEquals(1, gateway.totalConnection());
+
+        //未超时不清理
+        gateway.checkSession();
+        assertTrue(registered.containsKey("device-1"));
+
+        Thread.sleep(300);
+        gateway.checkSession();
+        assertFalse(registered.containsKey("device-1"));
+        assertEquals(0, gateway.totalConnection());
+    }
+
+    @Test
+    void testAddressChanged() throws InterruptedException {
+        receive("device-1", address);
+        DeviceSession session = registered.get("device-1");
+
+        //NAT映射变化后使用新的地址上报
+        receive("device-1", natAddress);
+
+        assertSame(session, registered.get("device-1"));
+        assertEquals(natAddress, ((UdpDeviceSession) session).getAddress());
+        assertEquals(1, gateway.totalConnection());
+        verify(sessionManager, times(1)).register(any());
+    }
+}
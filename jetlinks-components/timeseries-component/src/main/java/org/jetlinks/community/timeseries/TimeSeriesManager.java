@@ -1,6 +1,13 @@
 package org.jetlinks.community.timeseries;
 
+import org.hswebframework.ezorm.core.param.QueryParam;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * 时序数据服务管理器,统一管理时序数据操作接口
@@ -20,6 +27,19 @@ public interface TimeSeriesManager {
 
     TimeSeriesService getService(String metric);
 
+    /**
+     * 使用相同的条件统计多个指标的数据量
+     *
+     * @param metrics    指标
+     * @param queryParam 查询条件
+     * @return 指标和数据量, key为指标
+     */
+    default Mono<Map<String, Integer>> count(Collection<String> metrics, QueryParam queryParam) {
+        return Flux.fromIterable(metrics)
+            .flatMap(metric -> getService(metric).count(queryParam).map(count -> Tuples.of(metric, count)))
+            .collectMap(Tuple2::getT1, Tuple2::getT2);
+    }
+
     /**
      * 注册元数据
      *
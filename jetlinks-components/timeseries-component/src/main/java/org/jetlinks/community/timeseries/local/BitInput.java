@@ -0,0 +1,53 @@
+package org.jetlinks.community.timeseries.local;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 按位读取数据
+ *
+ * @author zhouhao
+ * @see BitOutput
+ * @since 1.0
+ */
+class BitInput {
+
+    private final byte[] buffer;
+
+    private long position;
+
+    BitInput(byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    boolean readBit() {
+        boolean bit = ((buffer[(int) (position >>> 3)] >>> (7 - (position & 7))) & 1) == 1;
+        position++;
+        return bit;
+    }
+
+    long readBits(int bits) {
+        long value = 0;
+        for (int i = 0; i < bits; i++) {
+            value = (value << 1) | (readBit() ? 1 : 0);
+        }
+        return value;
+    }
+
+    //读取有符号数
+    long readSignedBits(int bits) {
+        long value = readBits(bits);
+        if (bits < 64 && (value & (1L << (bits - 1))) != 0) {
+            value |= -1L << bits;
+        }
+        return value;
+    }
+
+    String readString() {
+        int len = (int) readBits(32);
+        byte[] bytes = new byte[len];
+        for (int i = 0; i < len; i++) {
+            bytes[i] = (byte) readBits(8);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,73 @@
+package org.jetlinks.community.timeseries.local;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 按位写出数据
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+class BitOutput {
+
+    private byte[] buffer;
+
+    //已写入的位数
+    private long position;
+
+    BitOutput() {
+        this(64);
+    }
+
+    BitOutput(int initialSize) {
+        this.buffer = new byte[Math.max(8, initialSize)];
+    }
+
+    void writeBit(boolean bit) {
+        ensureCapacity(1);
+        if (bit) {
+            buffer[(int) (position >>> 3)] |= (byte) (0x80 >>> (position & 7));
+        }
+        position++;
+    }
+
+    /**
+     * 写出value的低bits位
+     *
+     * @param value 值
+     * @param bits  位数,最大64
+     */
+    void writeBits(long value, int bits) {
+        ensureCapacity(bits);
+        for (int i = bits - 1; i >= 0; i--) {
+            if (((value >>> i) & 1) == 1) {
+                buffer[(int) (position >>> 3)] |= (byte) (0x80 >>> (position & 7));
+            }
+            position++;
+        }
+    }
+
+    void writeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeBits(bytes.length, 32);
+        for (byte b : bytes) {
+            writeBits(b, 8);
+        }
+    }
+
+    long getPosition() {
+        return position;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, (int) ((position + 7) >>> 3));
+    }
+
+    private void ensureCapacity(int bits) {
+        long required = (position + bits + 7) >>> 3;
+        if (required > buffer.length) {
+            buffer = Arrays.copyOf(buffer, (int) Math.max(required, buffer.length * 2L));
+        }
+    }
+}
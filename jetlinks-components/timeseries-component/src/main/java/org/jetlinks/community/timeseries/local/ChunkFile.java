@@ -0,0 +1,230 @@
+package org.jetlinks.community.timeseries.local;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.jetlinks.community.timeseries.TimeSeriesData;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * 数据块文件,一个文件包含同一个时间分区内多个时间序列的数据块.
+ * <pre>
+ * 文件头: magic(4) version(1) 文件头长度(4) 序列数量(4) [序列key,行数,最小时间,最大时间,偏移量,长度]...
+ * 数据:   [序列数据块]...
+ * </pre>
+ * 文件头中的序列索引缓存在{@link ChunkHeaderCache}中,常驻内存的只有时间范围和行数.
+ *
+ * @author zhouhao
+ * @see SeriesCodec
+ * @since 1.0
+ */
+class ChunkFile {
+
+    static final int MAGIC = 0x4A4C5453;
+
+    static final byte VERSION = 1;
+
+    static final String SUFFIX = ".chunk";
+
+    //magic(4) version(1) 文件头长度(4)
+    static final int HEADER_OFFSET = 9;
+
+    @Getter
+    private final File file;
+
+    //数据开始的位置
+    private final long dataOffset;
+
+    private final ChunkHeaderCache headerCache;
+
+    @Getter
+    private final long rowCount;
+
+    @Getter
+    private final long minTimestamp;
+
+    @Getter
+    private final long maxTimestamp;
+
+    private ChunkFile(File file, long dataOffset, List<SeriesIndex> series, ChunkHeaderCache headerCache) {
+        this.file = file;
+        this.dataOffset = dataOffset;
+        this.headerCache = headerCache;
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE, rows = 0;
+        for (SeriesIndex index : series) {
+            min = Math.min(min, index.minTimestamp);
+            max = Math.max(max, index.maxTimestamp);
+            rows += index.rowCount;
+        }
+        this.minTimestamp = min;
+        this.maxTimestamp = max;
+        this.rowCount = rows;
+    }
+
+    /**
+     * 写出数据块文件,先写入临时文件,完成后再重命名,保证文件完整.
+     *
+     * @param file        文件
+     * @param seriesRows  序列和数据
+     * @param headerCache 文件头缓存
+     * @return 数据块文件
+     * @throws IOException 写出失败
+     */
+    static ChunkFile write(File file, Map<String, List<TimeSeriesData>> seriesRows, ChunkHeaderCache headerCache) throws IOException {
+        List<SeriesIndex> indexes = new ArrayList<>(seriesRows.size());
+        List<byte[]> blocks = new ArrayList<>(seriesRows.size());
+        long offset = 0;
+        for (Map.Entry<String, List<TimeSeriesData>> entry : seriesRows.entrySet()) {
+            List<TimeSeriesData> rows = new ArrayList<>(entry.getValue());
+            rows.sort(Comparator.comparingLong(TimeSeriesData::getTimestamp));
+            byte[] block = SeriesCodec.encode(rows);
+            indexes.add(new SeriesIndex(entry.getKey(),
+                rows.size(),
+                rows.get(0).getTimestamp(),
+                rows.get(rows.size() - 1).getTimestamp(),
+                offset,
+                block.length));
+            blocks.add(block);
+            offset += block.length;
+        }
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        try (DataOutputStream header = new DataOutputStream(headerBytes)) {
+            header.writeInt(indexes.size());
+            for (SeriesIndex index : indexes) {
+                header.writeUTF(index.key);
+                header.writeInt(index.rowCount);
+                header.writeLong(index.minTimestamp);
+                header.writeLong(index.maxTimestamp);
+                header.writeLong(index.offset);
+                header.writeInt(index.length);
+            }
+        }
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream fileOutput = new FileOutputStream(tmp);
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput))) {
+            output.writeInt(MAGIC);
+            output.writeByte(VERSION);
+            output.writeInt(headerBytes.size());
+            headerBytes.writeTo(output);
+            for (byte[] block : blocks) {
+                output.write(block);
+            }
+            output.flush();
+            fileOutput.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        ChunkFile chunk = new ChunkFile(file, HEADER_OFFSET + headerBytes.size(), indexes, headerCache);
+        headerCache.put(chunk, indexes);
+        return chunk;
+    }
+
+    static ChunkFile open(File file, ChunkHeaderCache headerCache) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            long dataOffset = HEADER_OFFSET + readVersion(input, file);
+            List<SeriesIndex> indexes = readSeries(input);
+            ChunkFile chunk = new ChunkFile(file, dataOffset, indexes, headerCache);
+            headerCache.put(chunk, indexes);
+            return chunk;
+        }
+    }
+
+    /**
+     * 获取序列索引,缓存中不存在时从文件中读取
+     *
+     * @return 序列索引
+     * @throws IOException 读取失败
+     */
+    List<SeriesIndex> getSeries() throws IOException {
+        return headerCache.get(this);
+    }
+
+    //从文件中读取序列索引
+    List<SeriesIndex> readHeader() throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            readVersion(input, file);
+            return readSeries(input);
+        }
+    }
+
+    //校验文件并返回文件头长度
+    private static int readVersion(DataInputStream input, File file) throws IOException {
+        if (input.readInt() != MAGIC) {
+            throw new IOException("unsupported chunk file:" + file);
+        }
+        byte version = input.readByte();
+        if (version != VERSION) {
+            throw new IOException("unsupported chunk file version " + version + ":" + file);
+        }
+        return input.readInt();
+    }
+
+    private static List<SeriesIndex> readSeries(DataInputStream input) throws IOException {
+        int size = input.readInt();
+        List<SeriesIndex> indexes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String key = input.readUTF();
+            indexes.add(new SeriesIndex(key,
+                input.readInt(),
+                input.readLong(),
+                input.readLong(),
+                input.readLong(),
+                input.readInt()));
+        }
+        return indexes;
+    }
+
+    /**
+     * 读取序列数据
+     *
+     * @param index 序列索引
+     * @return 数据
+     * @throws IOException 读取失败
+     */
+    List<TimeSeriesData> read(SeriesIndex index) throws IOException {
+        byte[] block = new byte[index.length];
+        try (RandomAccessFile accessFile = new RandomAccessFile(file, "r")) {
+            accessFile.seek(dataOffset + index.offset);
+            accessFile.readFully(block);
+        }
+        return SeriesCodec.decode(block, index.rowCount);
+    }
+
+    long getFileSize() {
+        return file.length();
+    }
+
+    //删除文件并释放缓存的文件头
+    boolean delete() {
+        headerCache.remove(this);
+        return file.delete();
+    }
+
+    //文件名中的序号
+    long getSequence() {
+        String name = file.getName();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static class SeriesIndex {
+        private final String key;
+
+        private final int rowCount;
+
+        private final long minTimestamp;
+
+        private final long maxTimestamp;
+
+        private final long offset;
+
+        private final int length;
+
+        boolean isOverlap(long from, long to) {
+            return minTimestamp <= to && maxTimestamp >= from;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.jetlinks.community.timeseries.local;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 数据块文件头缓存,按最近使用淘汰,限制常驻内存的序列索引数量.
+ * 被淘汰的文件头在下次查询时重新从文件中读取.
+ *
+ * @author zhouhao
+ * @see ChunkFile
+ * @since 1.0
+ */
+class ChunkHeaderCache {
+
+    //缓存的序列索引最大数量
+    private final long maxSeries;
+
+    private final LinkedHashMap<ChunkFile, List<ChunkFile.SeriesIndex>> cache = new LinkedHashMap<>(16, 0.75F, true);
+
+    private long seriesCount;
+
+    ChunkHeaderCache(long maxSeries) {
+        this.maxSeries = maxSeries;
+    }
+
+    List<ChunkFile.SeriesIndex> get(ChunkFile chunk) throws IOException {
+        synchronized (this) {
+            List<ChunkFile.SeriesIndex> series = cache.get(chunk);
+            if (series != null) {
+                return series;
+            }
+        }
+        //在锁外读取文件,避免阻塞其他查询
+        List<ChunkFile.SeriesIndex> series = chunk.readHeader();
+        put(chunk, series);
+        return series;
+    }
+
+    synchronized void put(ChunkFile chunk, List<ChunkFile.SeriesIndex> series) {
+        List<ChunkFile.SeriesIndex> old = cache.put(chunk, series);
+        if (old != null) {
+            seriesCount -= old.size();
+        }
+        seriesCount += series.size();
+        Iterator<Map.Entry<ChunkFile, List<ChunkFile.SeriesIndex>>> iterator = cache.entrySet().iterator();
+        //至少保留刚放入的文件头
+        while (seriesCount > maxSeries && cache.size() > 1 && iterator.hasNext()) {
+            Map.Entry<ChunkFile, List<ChunkFile.SeriesIndex>> eldest = iterator.next();
+            if (eldest.getKey() == chunk) {
+                continue;
+            }
+            seriesCount -= eldest.getValue().size();
+            iterator.remove();
+        }
+    }
+
+    synchronized void remove(ChunkFile chunk) {
+        List<ChunkFile.SeriesIndex> old = cache.remove(chunk);
+        if (old != null) {
+            seriesCount -= old.size();
+        }
+    }
+
+    synchronized long getSeriesCount() {
+        return seriesCount;
+    }
+}
@@ -0,0 +1,197 @@
+package org.jetlinks.community.timeseries.local;
+
+import org.jetlinks.community.timeseries.TimeSeriesData;
+import org.jetlinks.community.timeseries.query.*;
+import org.springframework.util.StringUtils;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 在内存中执行聚合查询,返回的数据结构与elasticsearch实现一致:
+ * 按时间分组时按时间倒序,并填充没有数据的时间分组;按字段分组时按数据量倒序.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+class LocalAggregation {
+
+    static final Map<String, DateTimeFormatter> formatters = new ConcurrentHashMap<>();
+
+    static final String DEFAULT_FORMAT = "yyyy-MM-dd HH:mm:ss";
+
+    private final AggregationQueryParam param;
+
+    //时间分组 -> 字段分组 -> 聚合值
+    private final Map<Long, Map<List<String>, Accumulator[]>> groups = new HashMap<>();
+
+    LocalAggregation(AggregationQueryParam param) {
+        this.param = param;
+    }
+
+    void accept(TimeSeriesData data) {
+        TimeGroup timeGroup = param.getGroupByTime();
+        long time = 0;
+        if (timeGroup != null && timeGroup.getInterval() != null) {
+            Object value = SeriesCodec.TIMESTAMP.equals(timeGroup.getProperty())
+                ? (Object) data.getTimestamp()
+                : data.getData().get(timeGroup.getProperty());
+            if (value == null) {
+                return;
+            }
+            time = timeGroup.getBucketStart(TermFilter.toTime(value));
+        }
+        List<String> groupKey = new ArrayList<>(param.getGroupBy().size());
+        for (Group group : param.getGroupBy()) {
+            Object value = data.getData().get(group.getProperty());
+            //与elasticsearch terms聚合一致,忽略没有值的数据
+            if (value == null) {
+                return;
+            }
+            groupKey.add(String.valueOf(value));
+        }
+        Accumulator[] accumulators = groups
+            .computeIfAbsent(time, ignore -> new HashMap<>())
+            .computeIfAbsent(groupKey, ignore -> createAccumulators());
+        List<AggregationColumn> columns = param.getAggColumns();
+        for (int i = 0; i < accumulators.length; i++) {
+            accumulators[i].accept(data.getData().get(columns.get(i).getProperty()));
+        }
+    }
+
+    private Accumulator[] createAccumulators() {
+        Accumulator[] accumulators = new Accumulator[param.getAggColumns().size()];
+        for (int i = 0; i < accumulators.length; i++) {
+            accumulators[i] = new Accumulator();
+        }
+        return accumulators;
+    }
+
+    /**
+     * 获取聚合结果
+     *
+     * @param startWithTime 开始时间
+     * @param endWithTime   结束时间
+     * @return 聚合结果
+     */
+    List<Map<String, Object>> getResult(long startWithTime, long endWithTime) {
+        int limit = param.getLimit();
+        List<Map<String, Object>> result = new ArrayList<>();
+        TimeGroup timeGroup = param.getGroupByTime();
+        if (timeGroup == null || timeGroup.getInterval() == null) {
+            addGroupRows(result, Collections.emptyMap(), groups.getOrDefault(0L, Collections.emptyMap()), limit);
+            return limit(result, limit);
+        }
+        DateTimeFormatter formatter = getFormatter(timeGroup.getFormat());
+        long first = timeGroup.getBucketStart(startWithTime);
+        //按时间倒序,填充没有数据的时间分组
+        for (long time = timeGroup.getBucketStart(endWithTime); time >= first && result.size() < limit; time = timeGroup.getBucketStart(time - 1)) {
+            Map<String, Object> timeRow = new HashMap<>();
+            timeRow.put(timeGroup.getAlias(), formatter.format(Instant.ofEpochMilli(time)));
+            Map<List<String>, Accumulator[]> timeGroups = groups.get(time);
+            if (timeGroups == null) {
+                if (param.getGroupBy().isEmpty()) {
+                    putValues(timeRow, createAccumulators());
+                }
+                result.add(timeRow);
+                continue;
+            }
+            addGroupRows(result, timeRow, timeGroups, limit);
+        }
+        return limit(result, limit);
+    }
+
+    private void addGroupRows(List<Map<String, Object>> result,
+                              Map<String, Object> parent,
+                              Map<List<String>, Accumulator[]> groupValues,
+                              int limit) {
+        List<Map.Entry<List<String>, Accumulator[]>> entries = new ArrayList<>(groupValues.entrySet());
+        //按数据量倒序
+        entries.sort(Comparator.comparingLong((Map.Entry<List<String>, Accumulator[]> e) -> e.getValue().length == 0 ? 0 : e.getValue()[0].rows).reversed());
+        List<Group> groupBy = param.getGroupBy();
+        for (int i = 0; i < entries.size() && i < limit; i++) {
+            Map.Entry<List<String>, Accumulator[]> entry = entries.get(i);
+            Map<String, Object> row = new HashMap<>(parent);
+            for (int g = 0; g < groupBy.size(); g++) {
+                row.put(groupBy.get(g).getAlias(), entry.getKey().get(g));
+            }
+            putValues(row, entry.getValue());
+            result.add(row);
+        }
+    }
+
+    private void putValues(Map<String, Object> row, Accumulator[] accumulators) {
+        List<AggregationColumn> columns = param.getAggColumns();
+        for (int i = 0; i < accumulators.length; i++) {
+            AggregationColumn column = columns.get(i);
+            Aggregation aggregation = column.getAggregation();
+            if (aggregation == null || aggregation == Aggregation.NONE) {
+                continue;
+            }
+            row.put(column.getAlias(), accumulators[i].getValue(aggregation));
+        }
+    }
+
+    private static List<Map<String, Object>> limit(List<Map<String, Object>> result, int limit) {
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    static DateTimeFormatter getFormatter(String format) {
+        return formatters.computeIfAbsent(StringUtils.hasText(format) ? format : DEFAULT_FORMAT,
+            pattern -> DateTimeFormatter.ofPattern(pattern).withZone(ZoneId.systemDefault()));
+    }
+
+    static class Accumulator {
+        //行数,用于分组排序
+        private long rows;
+
+        //有值的数量
+        private long count;
+
+        //数值的数量
+        private long numbers;
+
+        private double sum;
+
+        private double min = Double.POSITIVE_INFINITY;
+
+        private double max = Double.NEGATIVE_INFINITY;
+
+        void accept(Object value) {
+            rows++;
+            if (value == null) {
+                return;
+            }
+            count++;
+            Number number = TermFilter.toNumber(value);
+            if (number == null) {
+                return;
+            }
+            double val = number.doubleValue();
+            numbers++;
+            sum += val;
+            min = Math.min(min, val);
+            max = Math.max(max, val);
+        }
+
+        double getValue(Aggregation aggregation) {
+            switch (aggregation) {
+                case COUNT:
+                    return count;
+                case SUM:
+                    return sum;
+                case AVG:
+                    return numbers == 0 ? 0 : sum / numbers;
+                case MIN:
+                    return numbers == 0 ? 0 : min;
+                case MAX:
+                    return numbers == 0 ? 0 : max;
+                default:
+                    return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.jetlinks.community.timeseries.local;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * 开启本地时序数据存储: jetlinks.timeseries.local.enabled=true
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+@Configuration
+@EnableConfigurationProperties(LocalTimeSeriesProperties.class)
+@ConditionalOnProperty(prefix = "jetlinks.timeseries.local", name = "enabled", havingValue = "true")
+public class LocalTimeSeriesConfiguration {
+
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    @Primary
+    public LocalTimeSeriesManager localTimeSeriesManager(LocalTimeSeriesProperties properties) {
+        return new LocalTimeSeriesManager(properties);
+    }
+
+}
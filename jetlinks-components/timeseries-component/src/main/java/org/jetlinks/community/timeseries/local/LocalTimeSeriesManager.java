@@ -0,0 +1,141 @@
+package org.jetlinks.community.timeseries.local;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetlinks.community.timeseries.TimeSeriesManager;
+import org.jetlinks.community.timeseries.TimeSeriesMetadata;
+import org.jetlinks.community.timeseries.TimeSeriesMetric;
+import org.jetlinks.community.timeseries.TimeSeriesService;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本地时序数据管理器,每个指标使用独立的目录存储数据
+ *
+ * @author zhouhao
+ * @see LocalTimeSeriesProperties
+ * @since 1.0
+ */
+@Slf4j
+public class LocalTimeSeriesManager implements TimeSeriesManager {
+
+    private final LocalTimeSeriesProperties properties;
+
+    private final Map<String, LocalTimeSeriesService> services = new ConcurrentHashMap<>();
+
+    //所有指标共用,限制常驻内存的文件头总量
+    private final ChunkHeaderCache headerCache;
+
+    private Disposable disposable;
+
+    public LocalTimeSeriesManager(LocalTimeSeriesProperties properties) {
+        this.properties = properties;
+        this.headerCache = new ChunkHeaderCache(properties.getMaxCachedSeries());
+    }
+
+    @Override
+    public TimeSeriesService getService(TimeSeriesMetric metric) {
+        return getService(metric.getId());
+    }
+
+    @Override
+    public TimeSeriesService getService(String metric) {
+        return getLocalService(metric);
+    }
+
+    private LocalTimeSeriesService getLocalService(String metric) {
+        return services.computeIfAbsent(toDirName(metric), this::createService);
+    }
+
+    private LocalTimeSeriesService createService(String name) {
+        try {
+            LocalTimeSeriesStore store = new LocalTimeSeriesStore(
+                name,
+                new File(properties.getDataDir(), name),
+                properties.getPartition(),
+                properties.getSeriesKey(),
+                properties.getCompactThreshold(),
+                properties.getMaxCompactRows(),
+                headerCache);
+            return new LocalTimeSeriesService(store, properties.getMaxHeadRows());
+        } catch (IOException e) {
+            throw new UncheckedIOException("open time series store [" + name + "] error", e);
+        }
+    }
+
+    @Override
+    public Mono<Void> registerMetadata(TimeSeriesMetadata metadata) {
+        return Mono.fromRunnable(() -> getLocalService(metadata.getMetric().getId()).setMetadata(metadata));
+    }
+
+    //指标作为目录名称,替换掉不能用于文件名的字符
+    static String toDirName(String metric) {
+        return metric.replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+
+    public void start() {
+        File[] dirs = new File(properties.getDataDir()).listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                services.computeIfAbsent(dir.getName(), this::createService);
+            }
+        }
+        disposable = Flux.interval(properties.getFlushInterval())
+            .onBackpressureDrop()
+            .concatMap(ignore -> Mono
+                .fromRunnable(this::flushAndClean)
+                .onErrorResume(err -> {
+                    log.error("flush time series data error", err);
+                    return Mono.empty();
+                }))
+            .subscribe();
+    }
+
+    private void flushAndClean() {
+        long now = System.currentTimeMillis();
+        for (LocalTimeSeriesService service : services.values()) {
+            service.getStore().flush();
+            if (properties.getRetention() != null) {
+                service.getStore().deleteBefore(now - properties.getRetention().toMillis());
+            }
+            service.getStore().compact();
+        }
+    }
+
+    public void flush() {
+        for (LocalTimeSeriesService service : services.values()) {
+            service.getStore().flush();
+        }
+    }
+
+    /**
+     * @return 所有指标数据文件占用的磁盘空间, 单位: 字节
+     */
+    public long getDiskSize() {
+        long size = 0;
+        for (LocalTimeSeriesService service : services.values()) {
+            size += service.getStore().getDiskSize();
+        }
+        return size;
+    }
+
+    public void shutdown() {
+        if (disposable != null) {
+            disposable.dispose();
+        }
+        for (LocalTimeSeriesService service : services.values()) {
+            try {
+                service.getStore().close();
+            } catch (Exception e) {
+                log.warn("close time series store error", e);
+            }
+        }
+        services.clear();
+    }
+}
@@ -0,0 +1,50 @@
+package org.jetlinks.community.timeseries.local;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 本地时序数据存储配置
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "jetlinks.timeseries.local")
+public class LocalTimeSeriesProperties {
+
+    //开启后使用本地存储代替elasticsearch
+    private boolean enabled = false;
+
+    //数据目录
+    private String dataDir = "./data/timeseries";
+
+    //时间分区
+    private Duration partition = Duration.ofDays(1);
+
+    //内存数据写出到文件的间隔
+    private Duration flushInterval = Duration.ofMinutes(1);
+
+    //内存中最大数据量,超过后立即写出到文件
+    private int maxHeadRows = 50000;
+
+    //按此字段划分时间序列,按此字段查询时只读取对应序列的数据
+    private String seriesKey = "deviceId";
+
+    //数据保留时间,为空时不删除
+    private Duration retention;
+
+    //分区内数据块文件数量达到此值后合并,小于2时不合并
+    private int compactThreshold = 8;
+
+    //单次合并的最大数据行数
+    private long maxCompactRows = 1_000_000;
+
+    //内存中缓存的数据块文件头(序列索引)最大数量,超过后按最近使用淘汰
+    private long maxCachedSeries = 100_000;
+
+}
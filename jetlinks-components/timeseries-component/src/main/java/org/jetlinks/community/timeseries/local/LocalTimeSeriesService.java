@@ -0,0 +1,241 @@
+package org.jetlinks.community.timeseries.local;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hswebframework.ezorm.core.param.QueryParam;
+import org.hswebframework.ezorm.core.param.Sort;
+import org.hswebframework.ezorm.core.param.TermType;
+import org.jetlinks.community.timeseries.TimeSeriesData;
+import org.jetlinks.community.timeseries.TimeSeriesMetadata;
+import org.jetlinks.community.timeseries.TimeSeriesService;
+import org.jetlinks.community.timeseries.query.AggregationData;
+import org.jetlinks.community.timeseries.query.AggregationQueryParam;
+import org.jetlinks.core.metadata.PropertyMetadata;
+import org.jetlinks.core.metadata.types.DateTimeType;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 基于本地存储的时序数据服务
+ *
+ * @author zhouhao
+ * @see LocalTimeSeriesStore
+ * @since 1.0
+ */
+@Slf4j
+class LocalTimeSeriesService implements TimeSeriesService {
+
+    private final LocalTimeSeriesStore store;
+
+    private final int maxHeadRows;
+
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    private volatile List<PropertyMetadata> properties = Collections.emptyList();
+
+    LocalTimeSeriesService(LocalTimeSeriesStore store, int maxHeadRows) {
+        this.store = store;
+        this.maxHeadRows = maxHeadRows;
+    }
+
+    void setMetadata(TimeSeriesMetadata metadata) {
+        this.properties = metadata.getProperties();
+    }
+
+    LocalTimeSeriesStore getStore() {
+        return store;
+    }
+
+    @Override
+    public Flux<TimeSeriesData> query(QueryParam queryParam) {
+        return Flux
+            .defer(() -> Flux.fromIterable(doQuery(queryParam)))
+            .subscribeOn(Schedulers.elastic());
+    }
+
+    @Override
+    public Mono<Integer> count(QueryParam queryParam) {
+        return Mono
+            .fromCallable(() -> {
+                int[] count = new int[1];
+                scan(queryParam, data -> count[0]++);
+                return count[0];
+            })
+            .subscribeOn(Schedulers.elastic());
+    }
+
+    @Override
+    public Flux<AggregationData> aggregation(AggregationQueryParam param) {
+        if (param.getLimit() <= 0) {
+            return Flux.empty();
+        }
+        return Flux
+            .defer(() -> {
+                long startWithTime = calculateStartWithTime(param);
+                long endWithTime = param.getEndWithTime();
+                QueryParam queryParam = param.getQueryParam().clone();
+                queryParam.setPaging(false);
+                queryParam.and(param.getTimeProperty(), TermType.btw, Arrays.asList(startWithTime, endWithTime));
+                LocalAggregation aggregation = new LocalAggregation(param);
+                scan(queryParam, aggregation::accept);
+                return Flux.fromIterable(aggregation.getResult(startWithTime, endWithTime));
+            })
+            .map(AggregationData::of)
+            .subscribeOn(Schedulers.elastic());
+    }
+
+    @Override
+    public Mono<Void> save(Publisher<TimeSeriesData> data) {
+        return Flux.from(data)
+            .buffer(1000)
+            .flatMap(this::doSave)
+            .then();
+    }
+
+    @Override
+    public Mono<Void> save(TimeSeriesData data) {
+        return doSave(Collections.singletonList(data));
+    }
+
+    private Mono<Void> doSave(List<TimeSeriesData> data) {
+        return Mono.fromRunnable(() -> {
+            List<TimeSeriesData> rows = new ArrayList<>(data.size());
+            for (TimeSeriesData row : data) {
+                rows.add(TimeSeriesData.of(row.getTimestamp(), convertData(row.getData())));
+            }
+            try {
+                if (store.append(rows) >= maxHeadRows) {
+                    flushAsync();
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException("write time series data error", e);
+            }
+        });
+    }
+
+    //与elasticsearch一致,时间类型转为时间戳
+    private Map<String, Object> convertData(Map<String, Object> data) {
+        Map<String, Object> converted = new HashMap<>(data);
+        for (PropertyMetadata property : properties) {
+            Object value = converted.get(property.getId());
+            if (value != null && property.getValueType() instanceof DateTimeType) {
+                Date date = ((DateTimeType) property.getValueType()).convert(value);
+                converted.put(property.getId(), date == null ? null : date.getTime());
+            }
+        }
+        return converted;
+    }
+
+    void flushAsync() {
+        if (flushing.compareAndSet(false, true)) {
+            Schedulers.elastic().schedule(() -> {
+                try {
+                    store.flush();
+                } finally {
+                    flushing.set(false);
+                }
+            });
+        }
+    }
+
+    private void scan(QueryParam queryParam, Consumer<TimeSeriesData> consumer) {
+        TermFilter filter = TermFilter.of(queryParam.getTerms());
+        ScanRange range = filter.getScanRange(store.getSeriesKeyName());
+        LocalTimeSeriesStore.Snapshot snapshot = store.snapshot();
+        for (Long partition : snapshot.getPartitions(range, true)) {
+            for (TimeSeriesData data : snapshot.read(partition, range)) {
+                if (filter.test(data)) {
+                    consumer.accept(data);
+                }
+            }
+        }
+    }
+
+    private List<TimeSeriesData> doQuery(QueryParam queryParam) {
+        TermFilter filter = TermFilter.of(queryParam.getTerms());
+        ScanRange range = filter.getScanRange(store.getSeriesKeyName());
+        List<Sort> sorts = queryParam.getSorts() == null || queryParam.getSorts().isEmpty()
+            ? Collections.singletonList(createTimestampSort())
+            : queryParam.getSorts();
+        boolean sortByTime = sorts.size() == 1 && SeriesCodec.TIMESTAMP.equals(sorts.get(0).getName());
+        boolean desc = !sortByTime || !"asc".equalsIgnoreCase(sorts.get(0).getOrder());
+        int offset = queryParam.isPaging() ? queryParam.getPageIndex() * queryParam.getPageSize() : 0;
+        int size = queryParam.isPaging() ? queryParam.getPageSize() : Integer.MAX_VALUE;
+        long required = (long) offset + size;
+
+        List<TimeSeriesData> matched = new ArrayList<>();
+        LocalTimeSeriesStore.Snapshot snapshot = store.snapshot();
+        for (Long partition : snapshot.getPartitions(range, desc)) {
+            for (TimeSeriesData data : snapshot.read(partition, range)) {
+                if (filter.test(data)) {
+                    matched.add(data);
+                }
+            }
+            //分区之间时间不重叠,按时间排序时已经满足分页条件则不再读取后续的分区
+            if (sortByTime && matched.size() >= required) {
+                break;
+            }
+        }
+        matched.sort(createComparator(sorts));
+        List<TimeSeriesData> result = new ArrayList<>();
+        for (int i = offset; i < matched.size() && result.size() < size; i++) {
+            TimeSeriesData data = matched.get(i);
+            Map<String, Object> map = new HashMap<>(data.getData());
+            map.put(SeriesCodec.TIMESTAMP, data.getTimestamp());
+            result.add(TimeSeriesData.of(data.getTimestamp(), map));
+        }
+        return result;
+    }
+
+    private static Sort createTimestampSort() {
+        Sort sort = new Sort(SeriesCodec.TIMESTAMP);
+        sort.setOrder("desc");
+        return sort;
+    }
+
+    private static Comparator<TimeSeriesData> createComparator(List<Sort> sorts) {
+        Comparator<TimeSeriesData> comparator = null;
+        for (Sort sort : sorts) {
+            String name = sort.getName();
+            Comparator<TimeSeriesData> next = (left, right) -> compareValue(getValue(left, name), getValue(right, name));
+            if ("desc".equalsIgnoreCase(sort.getOrder())) {
+                next = next.reversed();
+            }
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        return comparator;
+    }
+
+    private static Object getValue(TimeSeriesData data, String name) {
+        return SeriesCodec.TIMESTAMP.equals(name) ? data.getTimestamp() : data.getData().get(name);
+    }
+
+    private static int compareValue(Object left, Object right) {
+        if (left == right) {
+            return 0;
+        }
+        if (left == null) {
+            return -1;
+        }
+        if (right == null) {
+            return 1;
+        }
+        return TermFilter.compare(left, right);
+    }
+
+    //与elasticsearch实现一致,根据分组间隔和数量计算开始时间
+    static long calculateStartWithTime(AggregationQueryParam param) {
+        long startWithParam = param.getStartWithTime();
+        if (param.getGroupByTime() != null && param.getGroupByTime().getInterval() != null) {
+            long timeInterval = param.getGroupByTime().getInterval().toMillis() * param.getLimit();
+            long tempStartWithParam = param.getEndWithTime() - timeInterval;
+            startWithParam = Math.max(tempStartWithParam, startWithParam);
+        }
+        return startWithParam;
+    }
+}
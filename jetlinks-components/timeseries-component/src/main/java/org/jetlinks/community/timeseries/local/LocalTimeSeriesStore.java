@@ -0,0 +1,514 @@
+package org.jetlinks.community.timeseries.local;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetlinks.community.timeseries.TimeSeriesData;
+import org.jetlinks.community.timeseries.query.TimeGroup;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个指标的本地存储.
+ * <p>
+ * 写入的数据先写入预写日志,再放入内存(head),定时或者内存数据量达到上限后,
+ * 按时间分区和序列写出到数据块文件,然后删除对应的预写日志.
+ * <p>
+ * 分区内数据块文件数量达到阈值后,将较小的数据块合并为一个文件.合并前先写出合并记录(compact),
+ * 重启时根据合并记录和合并后的文件是否存在,删除已合并的文件或者放弃未完成的合并.
+ * <pre>
+ * {dataDir}/{metric}/wal/{segment}.wal
+ * {dataDir}/{metric}/{partition}/{sequence}.chunk
+ * {dataDir}/{metric}/{partition}/{sequence}.compact
+ * </pre>
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+@Slf4j
+class LocalTimeSeriesStore implements Closeable {
+
+    private final String name;
+
+    private final File dir;
+
+    private final Duration partition;
+
+    private final String seriesKey;
+
+    private final WriteAheadLog wal;
+
+    private final Object lock = new Object();
+
+    private final Object flushLock = new Object();
+
+    //内存中的数据
+    private List<TimeSeriesData> head = new ArrayList<>();
+
+    //正在写出到文件的数据
+    private List<TimeSeriesData> flushing = Collections.emptyList();
+
+    //写出失败的日志文件,在下一次写出成功后删除
+    private final List<File> pendingSegments = new ArrayList<>();
+
+    private final NavigableMap<Long, List<ChunkFile>> partitions = new ConcurrentSkipListMap<>();
+
+    private final AtomicLong chunkSequence = new AtomicLong();
+
+    static final String COMPACT_SUFFIX = ".compact";
+
+    //合并后的文件延迟删除,等待正在进行的查询读取完成
+    static final long OBSOLETE_DELETE_DELAY = 60_000;
+
+    private final ChunkHeaderCache headerCache;
+
+    //分区内数据块文件数量达到此值后合并
+    private final int compactThreshold;
+
+    //单次合并的最大数据行数
+    private final long maxCompactRows;
+
+    //已被合并等待删除的文件,只在flushLock中访问
+    private final List<Compacted> compacted = new ArrayList<>();
+
+    LocalTimeSeriesStore(String name, File dir, Duration partition, String seriesKey) throws IOException {
+        this(name, dir, partition, seriesKey, 8, 1_000_000, new ChunkHeaderCache(100_000));
+    }
+
+    LocalTimeSeriesStore(String name,
+                         File dir,
+                         Duration partition,
+                         String seriesKey,
+                         int compactThreshold,
+                         long maxCompactRows,
+                         ChunkHeaderCache headerCache) throws IOException {
+        this.name = name;
+        this.dir = dir;
+        this.partition = partition;
+        this.seriesKey = seriesKey;
+        this.compactThreshold = compactThreshold;
+        this.maxCompactRows = maxCompactRows;
+        this.headerCache = headerCache;
+        dir.mkdirs();
+        loadChunks();
+        File walDir = new File(dir, "wal");
+        List<File> segments = WriteAheadLog.getSegments(walDir);
+        this.wal = new WriteAheadLog(walDir);
+        //重放上次未写出的数据
+        for (File segment : segments) {
+            int count = WriteAheadLog.replay(segment, head::add);
+            log.debug("replay {} rows from wal [{}]", count, segment);
+        }
+        pendingSegments.addAll(segments);
+        flush();
+    }
+
+    private void loadChunks() {
+        File[] partitionDirs = dir.listFiles(File::isDirectory);
+        if (partitionDirs == null) {
+            return;
+        }
+        for (File partitionDir : partitionDirs) {
+            long partitionStart;
+            try {
+                partitionStart = Long.parseLong(partitionDir.getName());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            File[] files = partitionDir.listFiles();
+            if (files == null) {
+                continue;
+            }
+            recoverCompaction(partitionDir);
+            files = partitionDir.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                String fileName = file.getName();
+                if (fileName.endsWith(".tmp")) {
+                    //未写完的文件
+                    file.delete();
+                    continue;
+                }
+                if (!fileName.endsWith(ChunkFile.SUFFIX)) {
+                    continue;
+                }
+                try {
+                    ChunkFile chunk = ChunkFile.open(file, headerCache);
+                    partitions.computeIfAbsent(partitionStart, ignore -> new CopyOnWriteArrayList<>()).add(chunk);
+                    chunkSequence.accumulateAndGet(chunk.getSequence(), Math::max);
+                } catch (Exception e) {
+                    log.warn("load time series chunk file [{}] error", file, e);
+                }
+            }
+        }
+        //按写出顺序排列
+        for (List<ChunkFile> chunks : partitions.values()) {
+            chunks.sort(Comparator.comparingLong(ChunkFile::getSequence));
+        }
+    }
+
+    //处理上次未完成的合并
+    private void recoverCompaction(File partitionDir) {
+        File[] manifests = partitionDir.listFiles((ignore, fileName) -> fileName.endsWith(COMPACT_SUFFIX));
+        if (manifests == null) {
+            return;
+        }
+        for (File manifest : manifests) {
+            String fileName = manifest.getName();
+            File target = new File(partitionDir, fileName.substring(0, fileName.length() - COMPACT_SUFFIX.length()) + ChunkFile.SUFFIX);
+            if (target.exists()) {
+                //合并已完成,删除被合并的文件
+                try {
+                    for (String source : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+                        if (!source.isEmpty()) {
+                            new File(partitionDir, source).delete();
+                        }
+                    }
+                } catch (IOException e) {
+                    log.warn("read time series compact file [{}] error", manifest, e);
+                    continue;
+                }
+            }
+            //合并未完成时保留原文件
+            manifest.delete();
+        }
+    }
+
+    long getPartition(long timestamp) {
+        return TimeGroup.getBucketStart(partition, timestamp);
+    }
+
+    String getSeriesKeyName() {
+        return seriesKey;
+    }
+
+    String getSeriesKey(TimeSeriesData data) {
+        Object key = data.getData().get(seriesKey);
+        return key == null ? "" : String.valueOf(key);
+    }
+
+    /**
+     * 写入数据
+     *
+     * @param rows 数据
+     * @return 内存中的数据量
+     * @throws IOException 写入日志失败
+     */
+    int append(Collection<TimeSeriesData> rows) throws IOException {
+        synchronized (lock) {
+            for (TimeSeriesData row : rows) {
+                wal.append(row);
+                head.add(row);
+            }
+            wal.flush();
+            return head.size();
+        }
+    }
+
+    /**
+     * 将内存中的数据写出到数据块文件
+     */
+    void flush() {
+        synchronized (flushLock) {
+            List<TimeSeriesData> rows;
+            File segment;
+            synchronized (lock) {
+                if (head.isEmpty()) {
+                    deletePendingSegments();
+                    return;
+                }
+                rows = head;
+                head = new ArrayList<>();
+                flushing = rows;
+                try {
+                    segment = wal.rotate();
+                } catch (IOException e) {
+                    log.error("rotate wal of [{}] error", name, e);
+                    head = rows;
+                    flushing = Collections.emptyList();
+                    return;
+                }
+            }
+            //按分区和序列分组
+            Map<Long, Map<String, List<TimeSeriesData>>> grouped = new TreeMap<>();
+            for (TimeSeriesData row : rows) {
+                grouped.computeIfAbsent(getPartition(row.getTimestamp()), ignore -> new LinkedHashMap<>())
+                    .computeIfAbsent(getSeriesKey(row), ignore -> new ArrayList<>())
+                    .add(row);
+            }
+            Map<Long, ChunkFile> written = new HashMap<>();
+            List<TimeSeriesData> failed = new ArrayList<>();
+            for (Map.Entry<Long, Map<String, List<TimeSeriesData>>> entry : grouped.entrySet()) {
+                File partitionDir = new File(dir, String.valueOf(entry.getKey()));
+                partitionDir.mkdirs();
+                try {
+                    written.put(entry.getKey(), ChunkFile.write(new File(partitionDir, chunkSequence.incrementAndGet() + ChunkFile.SUFFIX), entry.getValue(), headerCache));
+                } catch (Throwable e) {
+                    log.error("write time series chunk of [{}] error", name, e);
+                    entry.getValue().values().forEach(failed::addAll);
+                }
+            }
+            synchronized (lock) {
+                written.forEach((partitionStart, chunk) -> partitions
+                    .computeIfAbsent(partitionStart, ignore -> new CopyOnWriteArrayList<>())
+                    .add(chunk));
+                flushing = Collections.emptyList();
+                if (!failed.isEmpty()) {
+                    //写出失败的数据放回内存,保留日志文件用于重启后恢复
+                    head.addAll(0, failed);
+                    pendingSegments.add(segment);
+                    return;
+                }
+            }
+            segment.delete();
+            deletePendingSegments();
+        }
+    }
+
+    private void deletePendingSegments() {
+        for (File pending : pendingSegments) {
+            pending.delete();
+        }
+        pendingSegments.clear();
+    }
+
+    /**
+     * 合并数据块文件数量达到阈值的分区,每个分区每次只合并一次,
+     * 从最小的数据块开始选择,合并的数据行数不超过上限.
+     */
+    void compact() {
+        synchronized (flushLock) {
+            deleteCompacted(false);
+            if (compactThreshold <= 1) {
+                return;
+            }
+            for (Map.Entry<Long, List<ChunkFile>> entry : partitions.entrySet()) {
+                if (entry.getValue().size() < compactThreshold) {
+                    continue;
+                }
+                try {
+                    compact(entry.getKey(), entry.getValue());
+                } catch (Throwable e) {
+                    log.error("compact time series partition [{}] of [{}] error", entry.getKey(), name, e);
+                }
+            }
+        }
+    }
+
+    private void compact(long partitionStart, List<ChunkFile> chunks) throws IOException {
+        List<ChunkFile> candidates = new ArrayList<>(chunks);
+        candidates.sort(Comparator.comparingLong(ChunkFile::getRowCount));
+        List<ChunkFile> sources = new ArrayList<>();
+        long rows = 0;
+        for (ChunkFile chunk : candidates) {
+            if (rows + chunk.getRowCount() > maxCompactRows) {
+                break;
+            }
+            rows += chunk.getRowCount();
+            sources.add(chunk);
+        }
+        if (sources.size() < 2) {
+            return;
+        }
+        sources.sort(Comparator.comparingLong(ChunkFile::getSequence));
+        Map<String, List<TimeSeriesData>> seriesRows = new LinkedHashMap<>();
+        for (ChunkFile chunk : sources) {
+            for (ChunkFile.SeriesIndex index : chunk.getSeries()) {
+                seriesRows.computeIfAbsent(index.getKey(), ignore -> new ArrayList<>())
+                    .addAll(chunk.read(index));
+            }
+        }
+        File partitionDir = new File(dir, String.valueOf(partitionStart));
+        long sequence = chunkSequence.incrementAndGet();
+        //先写出合并记录,再写出合并后的文件
+        File manifest = new File(partitionDir, sequence + COMPACT_SUFFIX);
+        File tmp = new File(partitionDir, manifest.getName() + ".tmp");
+        StringBuilder content = new StringBuilder();
+        for (ChunkFile chunk : sources) {
+            content.append(chunk.getFile().getName()).append('\n');
+        }
+        Files.write(tmp.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp.toPath(), manifest.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        ChunkFile merged;
+        try {
+            merged = ChunkFile.write(new File(partitionDir, sequence + ChunkFile.SUFFIX), seriesRows, headerCache);
+        } catch (IOException e) {
+            manifest.delete();
+            throw e;
+        }
+        synchronized (lock) {
+            List<ChunkFile> current = partitions.computeIfAbsent(partitionStart, ignore -> new CopyOnWriteArrayList<>());
+            current.removeAll(sources);
+            current.add(merged);
+        }
+        compacted.add(new Compacted(manifest, sources, System.currentTimeMillis() + OBSOLETE_DELETE_DELAY));
+        log.debug("compact {} chunks ({} rows) of [{}] partition [{}] into [{}]", sources.size(), rows, name, partitionStart, merged.getFile());
+    }
+
+    //删除已被合并的文件,然后删除合并记录
+    private void deleteCompacted(boolean force) {
+        long now = System.currentTimeMillis();
+        Iterator<Compacted> iterator = compacted.iterator();
+        while (iterator.hasNext()) {
+            Compacted obsolete = iterator.next();
+            if (!force && obsolete.deleteTime > now) {
+                continue;
+            }
+            for (ChunkFile chunk : obsolete.sources) {
+                chunk.delete();
+            }
+            obsolete.manifest.delete();
+            File partitionDir = obsolete.manifest.getParentFile();
+            if (!partitions.containsKey(Long.parseLong(partitionDir.getName()))) {
+                //分区已过期删除
+                partitionDir.delete();
+            }
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 删除指定时间之前的分区
+     *
+     * @param timestamp 时间
+     */
+    void deleteBefore(long timestamp) {
+        long partitionMillis = partition.toMillis();
+        for (Long partitionStart : new ArrayList<>(partitions.headMap(getPartition(timestamp), false).keySet())) {
+            if (partitionStart + partitionMillis > timestamp) {
+                continue;
+            }
+            List<ChunkFile> chunks = partitions.remove(partitionStart);
+            if (chunks != null) {
+                for (ChunkFile chunk : chunks) {
+                    chunk.delete();
+                }
+            }
+            new File(dir, String.valueOf(partitionStart)).delete();
+            log.debug("delete time series partition [{}] of [{}]", partitionStart, name);
+        }
+    }
+
+    //磁盘占用
+    long getDiskSize() {
+        long size = 0;
+        for (List<ChunkFile> chunks : partitions.values()) {
+            for (ChunkFile chunk : chunks) {
+                size += chunk.getFileSize();
+            }
+        }
+        for (File segment : WriteAheadLog.getSegments(new File(dir, "wal"))) {
+            size += segment.length();
+        }
+        return size;
+    }
+
+    Snapshot snapshot() {
+        synchronized (lock) {
+            NavigableMap<Long, List<ChunkFile>> chunks = new TreeMap<>();
+            partitions.forEach((key, value) -> chunks.put(key, new ArrayList<>(value)));
+            NavigableMap<Long, List<TimeSeriesData>> heads = new TreeMap<>();
+            for (TimeSeriesData row : flushing) {
+                heads.computeIfAbsent(getPartition(row.getTimestamp()), ignore -> new ArrayList<>()).add(row);
+            }
+            for (TimeSeriesData row : head) {
+                heads.computeIfAbsent(getPartition(row.getTimestamp()), ignore -> new ArrayList<>()).add(row);
+            }
+            return new Snapshot(chunks, heads);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        synchronized (flushLock) {
+            deleteCompacted(true);
+        }
+        wal.close();
+    }
+
+    /**
+     * 数据快照,查询时使用,不受后续写入和写出的影响
+     */
+    class Snapshot {
+        private final NavigableMap<Long, List<ChunkFile>> chunks;
+
+        private final NavigableMap<Long, List<TimeSeriesData>> heads;
+
+        Snapshot(NavigableMap<Long, List<ChunkFile>> chunks, NavigableMap<Long, List<TimeSeriesData>> heads) {
+            this.chunks = chunks;
+            this.heads = heads;
+        }
+
+        /**
+         * 获取范围内的分区
+         *
+         * @param range 扫描范围
+         * @param desc  是否倒序
+         * @return 分区
+         */
+        NavigableSet<Long> getPartitions(ScanRange range, boolean desc) {
+            long from = range.getFrom() == Long.MIN_VALUE ? Long.MIN_VALUE : getPartition(range.getFrom());
+            if (from > range.getTo()) {
+                return Collections.emptyNavigableSet();
+            }
+            TreeSet<Long> keys = new TreeSet<>(chunks.subMap(from, true, range.getTo(), true).keySet());
+            keys.addAll(heads.subMap(from, true, range.getTo(), true).keySet());
+            return desc ? keys.descendingSet() : keys;
+        }
+
+        List<TimeSeriesData> read(long partitionStart, ScanRange range) {
+            List<TimeSeriesData> result = new ArrayList<>();
+            for (ChunkFile chunk : chunks.getOrDefault(partitionStart, Collections.emptyList())) {
+                if (chunk.getMaxTimestamp() < range.getFrom() || chunk.getMinTimestamp() > range.getTo()) {
+                    continue;
+                }
+                try {
+                    for (ChunkFile.SeriesIndex index : chunk.getSeries()) {
+                        if (!range.isSeriesMatch(index.getKey()) || !index.isOverlap(range.getFrom(), range.getTo())) {
+                            continue;
+                        }
+                        for (TimeSeriesData row : chunk.read(index)) {
+                            if (range.isTimeMatch(row.getTimestamp())) {
+                                result.add(row);
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    //文件可能已经因为过期被删除
+                    log.warn("read time series chunk [{}] error", chunk.getFile(), e);
+                }
+            }
+            for (TimeSeriesData row : heads.getOrDefault(partitionStart, Collections.emptyList())) {
+                if (range.isTimeMatch(row.getTimestamp()) && range.isSeriesMatch(getSeriesKey(row))) {
+                    result.add(row);
+                }
+            }
+            return result;
+        }
+    }
+
+    private static class Compacted {
+        private final File manifest;
+
+        private final List<ChunkFile> sources;
+
+        private final long deleteTime;
+
+        private Compacted(File manifest, List<ChunkFile> sources, long deleteTime) {
+            this.manifest = manifest;
+            this.sources = sources;
+            this.deleteTime = deleteTime;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.jetlinks.community.timeseries.local;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Set;
+
+/**
+ * 数据扫描范围,根据查询条件计算,用于跳过不需要读取的分区和序列
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+@Getter
+@AllArgsConstructor
+class ScanRange {
+
+    static final ScanRange ALL = new ScanRange(null, Long.MIN_VALUE, Long.MAX_VALUE);
+
+    //序列,为null时读取全部序列
+    private final Set<String> seriesKeys;
+
+    private final long from;
+
+    private final long to;
+
+    boolean isSeriesMatch(String key) {
+        return seriesKeys == null || seriesKeys.contains(key);
+    }
+
+    boolean isTimeMatch(long timestamp) {
+        return timestamp >= from && timestamp <= to;
+    }
+}
@@ -0,0 +1,349 @@
+package org.jetlinks.community.timeseries.local;
+
+import com.alibaba.fastjson.JSON;
+import org.jetlinks.community.timeseries.TimeSeriesData;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * 单个时间序列数据块的编解码.
+ * <p>
+ * 时间戳使用delta-of-delta编码,浮点数使用XOR编码,整数使用差值编码,字符串使用字典编码,
+ * 其他类型的值转为JSON后使用字典编码.每一列使用位图记录是否有值.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+class SeriesCodec {
+
+    static final int TYPE_LONG = 0;
+    static final int TYPE_DOUBLE = 1;
+    static final int TYPE_STRING = 2;
+    static final int TYPE_JSON = 3;
+
+    static final String TIMESTAMP = "timestamp";
+
+    /**
+     * 编码数据,数据需要按时间正序排列
+     *
+     * @param rows 数据
+     * @return 编码后的数据
+     */
+    static byte[] encode(List<TimeSeriesData> rows) {
+        BitOutput out = new BitOutput(rows.size() * 8);
+        int size = rows.size();
+        long[] timestamps = new long[size];
+        //按列存储
+        Map<String, Object[]> columns = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            TimeSeriesData row = rows.get(i);
+            timestamps[i] = row.getTimestamp();
+            for (Map.Entry<String, Object> entry : row.getData().entrySet()) {
+                if (entry.getValue() == null || TIMESTAMP.equals(entry.getKey())) {
+                    continue;
+                }
+                columns.computeIfAbsent(entry.getKey(), key -> new Object[size])[i] = entry.getValue();
+            }
+        }
+        writeTimestamps(out, timestamps);
+        out.writeBits(columns.size(), 16);
+        for (Map.Entry<String, Object[]> column : columns.entrySet()) {
+            Object[] values = column.getValue();
+            int type = detectType(values);
+            out.writeString(column.getKey());
+            out.writeBits(type, 2);
+            for (Object value : values) {
+                out.writeBit(value != null);
+            }
+            switch (type) {
+                case TYPE_LONG:
+                    writeLongs(out, values);
+                    break;
+                case TYPE_DOUBLE:
+                    writeDoubles(out, values);
+                    break;
+                default:
+                    writeStrings(out, values, type == TYPE_JSON);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    static List<TimeSeriesData> decode(byte[] data, int size) {
+        BitInput in = new BitInput(data);
+        long[] timestamps = readTimestamps(in, size);
+        List<Map<String, Object>> rows = new ArrayList<>(size);
+        for (long timestamp : timestamps) {
+            Map<String, Object> row = new HashMap<>();
+            row.put(TIMESTAMP, timestamp);
+            rows.add(row);
+        }
+        int columnSize = (int) in.readBits(16);
+        for (int c = 0; c < columnSize; c++) {
+            String name = in.readString();
+            int type = (int) in.readBits(2);
+            boolean[] present = new boolean[size];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                present[i] = in.readBit();
+                if (present[i]) {
+                    count++;
+                }
+            }
+            Object[] values;
+            switch (type) {
+                case TYPE_LONG:
+                    values = readLongs(in, count);
+                    break;
+                case TYPE_DOUBLE:
+                    values = readDoubles(in, count);
+                    break;
+                default:
+                    values = readStrings(in, count, type == TYPE_JSON);
+            }
+            for (int i = 0, index = 0; i < size; i++) {
+                if (present[i]) {
+                    rows.get(i).put(name, values[index++]);
+                }
+            }
+        }
+        List<TimeSeriesData> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(TimeSeriesData.of(timestamps[i], rows.get(i)));
+        }
+        return result;
+    }
+
+    static int detectType(Object[] values) {
+        boolean isLong = true, isNumber = true, isString = true;
+        for (Object value : values) {
+            if (value == null) {
+                continue;
+            }
+            boolean integer = value instanceof Long
+                || value instanceof Integer
+                || value instanceof Short
+                || value instanceof Byte
+                || value instanceof Date;
+            isLong &= integer;
+            isNumber &= integer || value instanceof Double || value instanceof Float
+                || value instanceof BigDecimal || value instanceof BigInteger;
+            isString &= value instanceof String;
+        }
+        if (isLong) {
+            return TYPE_LONG;
+        }
+        if (isNumber) {
+            return TYPE_DOUBLE;
+        }
+        return isString ? TYPE_STRING : TYPE_JSON;
+    }
+
+    /* =========== 时间戳 =========== */
+
+    static void writeTimestamps(BitOutput out, long[] timestamps) {
+        if (timestamps.length == 0) {
+            return;
+        }
+        long prev = timestamps[0];
+        long prevDelta = 0;
+        out.writeBits(prev, 64);
+        for (int i = 1; i < timestamps.length; i++) {
+            long delta = timestamps[i] - prev;
+            writeSigned(out, delta - prevDelta);
+            prev = timestamps[i];
+            prevDelta = delta;
+        }
+    }
+
+    static long[] readTimestamps(BitInput in, int size) {
+        long[] timestamps = new long[size];
+        if (size == 0) {
+            return timestamps;
+        }
+        long prev = timestamps[0] = in.readBits(64);
+        long prevDelta = 0;
+        for (int i = 1; i < size; i++) {
+            long delta = prevDelta + readSigned(in);
+            prev = timestamps[i] = prev + delta;
+            prevDelta = delta;
+        }
+        return timestamps;
+    }
+
+    /* =========== 整数 =========== */
+
+    static void writeLongs(BitOutput out, Object[] values) {
+        long prev = 0;
+        for (Object value : values) {
+            if (value == null) {
+                continue;
+            }
+            long val = value instanceof Date ? ((Date) value).getTime() : ((Number) value).longValue();
+            writeSigned(out, val - prev);
+            prev = val;
+        }
+    }
+
+    static Object[] readLongs(BitInput in, int count) {
+        Object[] values = new Object[count];
+        long prev = 0;
+        for (int i = 0; i < count; i++) {
+            prev = prev + readSigned(in);
+            values[i] = prev;
+        }
+        return values;
+    }
+
+    //变长有符号数: 0 | 10+7位 | 110+9位 | 1110+12位 | 11110+32位 | 11111+64位
+    static void writeSigned(BitOutput out, long value) {
+        if (value == 0) {
+            out.writeBit(false);
+        } else if (value >= -64 && value <= 63) {
+            out.writeBits(0b10, 2);
+            out.writeBits(value, 7);
+        } else if (value >= -256 && value <= 255) {
+            out.writeBits(0b110, 3);
+            out.writeBits(value, 9);
+        } else if (value >= -2048 && value <= 2047) {
+            out.writeBits(0b1110, 4);
+            out.writeBits(value, 12);
+        } else if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            out.writeBits(0b11110, 5);
+            out.writeBits(value, 32);
+        } else {
+            out.writeBits(0b11111, 5);
+            out.writeBits(value, 64);
+        }
+    }
+
+    static long readSigned(BitInput in) {
+        if (!in.readBit()) {
+            return 0;
+        }
+        if (!in.readBit()) {
+            return in.readSignedBits(7);
+        }
+        if (!in.readBit()) {
+            return in.readSignedBits(9);
+        }
+        if (!in.readBit()) {
+            return in.readSignedBits(12);
+        }
+        if (!in.readBit()) {
+            return in.readSignedBits(32);
+        }
+        return in.readBits(64);
+    }
+
+    /* =========== 浮点数 =========== */
+
+    static void writeDoubles(BitOutput out, Object[] values) {
+        long prev = 0;
+        int prevLeading = -1, prevTrailing = 0;
+        boolean first = true;
+        for (Object value : values) {
+            if (value == null) {
+                continue;
+            }
+            long bits = Double.doubleToRawLongBits(((Number) value).doubleValue());
+            if (first) {
+                out.writeBits(bits, 64);
+                prev = bits;
+                first = false;
+                continue;
+            }
+            long xor = bits ^ prev;
+            prev = bits;
+            if (xor == 0) {
+                out.writeBit(false);
+                continue;
+            }
+            out.writeBit(true);
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+                //复用上一个值的有效位区间
+                out.writeBit(false);
+                out.writeBits(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+            } else {
+                int significant = 64 - leading - trailing;
+                out.writeBit(true);
+                out.writeBits(leading, 5);
+                out.writeBits(significant - 1, 6);
+                out.writeBits(xor >>> trailing, significant);
+                prevLeading = leading;
+                prevTrailing = trailing;
+            }
+        }
+    }
+
+    static Object[] readDoubles(BitInput in, int count) {
+        Object[] values = new Object[count];
+        if (count == 0) {
+            return values;
+        }
+        long prev = in.readBits(64);
+        values[0] = Double.longBitsToDouble(prev);
+        int prevLeading = 0, prevTrailing = 0;
+        for (int i = 1; i < count; i++) {
+            if (in.readBit()) {
+                long xor;
+                if (!in.readBit()) {
+                    xor = in.readBits(64 - prevLeading - prevTrailing) << prevTrailing;
+                } else {
+                    prevLeading = (int) in.readBits(5);
+                    int significant = (int) in.readBits(6) + 1;
+                    prevTrailing = 64 - prevLeading - significant;
+                    xor = in.readBits(significant) << prevTrailing;
+                }
+                prev ^= xor;
+            }
+            values[i] = Double.longBitsToDouble(prev);
+        }
+        return values;
+    }
+
+    /* =========== 字符串 =========== */
+
+    static void writeStrings(BitOutput out, Object[] values, boolean json) {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        List<Integer> indexes = new ArrayList<>(values.length);
+        for (Object value : values) {
+            if (value == null) {
+                continue;
+            }
+            String str = json ? JSON.toJSONString(value) : (String) value;
+            indexes.add(dictionary.computeIfAbsent(str, ignore -> dictionary.size()));
+        }
+        out.writeBits(dictionary.size(), 32);
+        for (String str : dictionary.keySet()) {
+            out.writeString(str);
+        }
+        int bits = bitsFor(dictionary.size());
+        for (Integer index : indexes) {
+            out.writeBits(index, bits);
+        }
+    }
+
+    static Object[] readStrings(BitInput in, int count, boolean json) {
+        int size = (int) in.readBits(32);
+        Object[] dictionary = new Object[size];
+        for (int i = 0; i < size; i++) {
+            String str = in.readString();
+            dictionary[i] = json ? JSON.parse(str) : str;
+        }
+        int bits = bitsFor(size);
+        Object[] values = new Object[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = dictionary[(int) in.readBits(bits)];
+        }
+        return values;
+    }
+
+    static int bitsFor(int size) {
+        return size <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(size - 1);
+    }
+}
@@ -0,0 +1,251 @@
+package org.jetlinks.community.timeseries.local;
+
+import org.hswebframework.ezorm.core.param.Term;
+import org.jetlinks.community.timeseries.TimeSeriesData;
+import org.jetlinks.core.metadata.types.DateTimeType;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 在内存中根据查询条件过滤时序数据,支持的条件类型与elasticsearch实现一致:
+ * eq,not,gt,gte,lt,lte,btw,in,nin,like,nlike,isnull,notnull
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+class TermFilter implements Predicate<TimeSeriesData> {
+
+    static final DateTimeType timeType = new DateTimeType();
+
+    static final Map<String, Pattern> likePatterns = new ConcurrentHashMap<>();
+
+    private final List<Term> terms;
+
+    private TermFilter(List<Term> terms) {
+        this.terms = terms == null ? Collections.emptyList() : terms;
+    }
+
+    static TermFilter of(List<Term> terms) {
+        return new TermFilter(terms);
+    }
+
+    @Override
+    public boolean test(TimeSeriesData data) {
+        return test(terms, data);
+    }
+
+    /**
+     * 根据顶层的and条件计算需要扫描的序列和时间范围
+     *
+     * @param seriesKey 序列字段
+     * @return 扫描范围
+     */
+    ScanRange getScanRange(String seriesKey) {
+        Set<String> keys = null;
+        long from = Long.MIN_VALUE, to = Long.MAX_VALUE;
+        for (int i = 0; i < terms.size(); i++) {
+            Term term = terms.get(i);
+            //存在or条件时无法确定范围
+            if (i > 0 && term.getType() == Term.Type.or) {
+                return ScanRange.ALL;
+            }
+        }
+        for (Term term : terms) {
+            if (term.getColumn() == null || term.getValue() == null || !term.getTerms().isEmpty()) {
+                continue;
+            }
+            String column = term.getColumn().trim();
+            String type = String.valueOf(term.getTermType()).toLowerCase();
+            if (SeriesCodec.TIMESTAMP.equals(column)) {
+                List<Object> values = toList(term.getValue());
+                switch (type) {
+                    case "eq":
+                        from = Math.max(from, toTime(values.get(0)));
+                        to = Math.min(to, toTime(values.get(0)));
+                        break;
+                    case "gt":
+                        from = Math.max(from, toTime(values.get(0)) + 1);
+                        break;
+                    case "gte":
+                        from = Math.max(from, toTime(values.get(0)));
+                        break;
+                    case "lt":
+                        to = Math.min(to, toTime(values.get(0)) - 1);
+                        break;
+                    case "lte":
+                        to = Math.min(to, toTime(values.get(0)));
+                        break;
+                    case "btw":
+                        if (values.size() > 0 && values.get(0) != null) {
+                            from = Math.max(from, toTime(values.get(0)));
+                        }
+                        if (values.size() > 1 && values.get(1) != null) {
+                            to = Math.min(to, toTime(values.get(1)));
+                        }
+                        break;
+                    default:
+                }
+            } else if (column.equals(seriesKey) && ("eq".equals(type) || "in".equals(type))) {
+                Set<String> values = new HashSet<>();
+                for (Object value : toList(term.getValue())) {
+                    values.add(String.valueOf(value));
+                }
+                if (keys != null) {
+                    values.retainAll(keys);
+                }
+                keys = values;
+            }
+        }
+        return new ScanRange(keys, from, to);
+    }
+
+    static boolean test(List<Term> terms, TimeSeriesData data) {
+        boolean result = true;
+        boolean first = true;
+        for (Term term : terms) {
+            boolean matched;
+            if (!term.getTerms().isEmpty()) {
+                matched = test(term.getTerms(), data);
+            } else {
+                matched = test(term, data);
+            }
+            if (first) {
+                result = matched;
+                first = false;
+            } else if (term.getType() == Term.Type.or) {
+                result = result || matched;
+            } else {
+                result = result && matched;
+            }
+        }
+        return result;
+    }
+
+    static boolean test(Term term, TimeSeriesData data) {
+        if (term.getColumn() == null) {
+            return true;
+        }
+        String column = term.getColumn().trim();
+        Object value = SeriesCodec.TIMESTAMP.equals(column)
+            ? (Object) data.getTimestamp()
+            : data.getData().get(column);
+        String type = String.valueOf(term.getTermType()).toLowerCase();
+        if ("isnull".equals(type)) {
+            return value == null;
+        }
+        if ("notnull".equals(type)) {
+            return value != null;
+        }
+        if (term.getValue() == null) {
+            return true;
+        }
+        switch (type) {
+            case "eq":
+                return value != null && compare(value, term.getValue()) == 0;
+            case "not":
+                return value == null || compare(value, term.getValue()) != 0;
+            case "gt":
+                return value != null && compare(value, term.getValue()) > 0;
+            case "gte":
+                return value != null && compare(value, term.getValue()) >= 0;
+            case "lt":
+                return value != null && compare(value, term.getValue()) < 0;
+            case "lte":
+                return value != null && compare(value, term.getValue()) <= 0;
+            case "btw": {
+                if (value == null) {
+                    return false;
+                }
+                List<Object> values = toList(term.getValue());
+                return (values.size() < 1 || values.get(0) == null || compare(value, values.get(0)) >= 0)
+                    && (values.size() < 2 || values.get(1) == null || compare(value, values.get(1)) <= 0);
+            }
+            case "in":
+                return value != null && in(value, term.getValue());
+            case "nin":
+                return value == null || !in(value, term.getValue());
+            case "like":
+                return value != null && like(value, term.getValue());
+            case "nlike":
+                return value == null || !like(value, term.getValue());
+            default:
+                return true;
+        }
+    }
+
+    static boolean in(Object value, Object termValue) {
+        for (Object val : toList(termValue)) {
+            if (val != null && compare(value, val) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean like(Object value, Object termValue) {
+        Pattern pattern = likePatterns.computeIfAbsent(String.valueOf(termValue), like -> Pattern.compile(
+            Arrays.stream(like.split("%", -1))
+                .map(Pattern::quote)
+                .collect(Collectors.joining(".*")), Pattern.DOTALL));
+        return pattern.matcher(String.valueOf(value)).matches();
+    }
+
+    static int compare(Object value, Object termValue) {
+        if (value instanceof Number) {
+            Number number = toNumber(termValue);
+            if (number != null) {
+                if (value instanceof BigDecimal || number instanceof BigDecimal) {
+                    return new BigDecimal(value.toString()).compareTo(new BigDecimal(number.toString()));
+                }
+                return Double.compare(((Number) value).doubleValue(), number.doubleValue());
+            }
+        }
+        return String.valueOf(value).compareTo(String.valueOf(termValue));
+    }
+
+    static Number toNumber(Object value) {
+        if (value instanceof Number) {
+            return (Number) value;
+        }
+        if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        if (value instanceof String) {
+            try {
+                return new BigDecimal((String) value);
+            } catch (NumberFormatException e) {
+                try {
+                    Date date = timeType.convert(value);
+                    return date == null ? null : date.getTime();
+                } catch (Exception ignore) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    static long toTime(Object value) {
+        Number number = toNumber(value);
+        return number == null ? 0 : number.longValue();
+    }
+
+    @SuppressWarnings("all")
+    static List<Object> toList(Object value) {
+        if (value instanceof Collection) {
+            return new ArrayList<>((Collection<Object>) value);
+        }
+        if (value instanceof Object[]) {
+            return Arrays.asList((Object[]) value);
+        }
+        if (value instanceof String) {
+            return new ArrayList<>(Arrays.asList(((String) value).split(",")));
+        }
+        return Collections.singletonList(value);
+    }
+}
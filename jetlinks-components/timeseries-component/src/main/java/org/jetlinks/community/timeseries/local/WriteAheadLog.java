@@ -0,0 +1,149 @@
+package org.jetlinks.community.timeseries.local;
+
+import com.alibaba.fastjson.JSON;
+import lombok.extern.slf4j.Slf4j;
+import org.jetlinks.community.timeseries.TimeSeriesData;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * 预写日志,数据写入内存前先写入日志,内存数据写出到数据块文件后删除对应的日志.
+ * <p>
+ * 每条记录格式: 时间戳(8) 长度(4) 数据(JSON) CRC32(4),重放时遇到不完整的记录则停止.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+@Slf4j
+class WriteAheadLog implements Closeable {
+
+    static final String SUFFIX = ".wal";
+
+    private final File dir;
+
+    private long segment;
+
+    private FileOutputStream fileOutput;
+
+    private DataOutputStream output;
+
+    WriteAheadLog(File dir) throws IOException {
+        this.dir = dir;
+        dir.mkdirs();
+        this.segment = getSegments(dir)
+            .stream()
+            .mapToLong(WriteAheadLog::getSegmentId)
+            .max()
+            .orElse(0) + 1;
+        open();
+    }
+
+    private void open() throws IOException {
+        fileOutput = new FileOutputStream(new File(dir, segment + SUFFIX), true);
+        output = new DataOutputStream(new BufferedOutputStream(fileOutput, 64 * 1024));
+    }
+
+    synchronized void append(TimeSeriesData data) throws IOException {
+        byte[] bytes = JSON.toJSONBytes(data.getData());
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes);
+        output.writeLong(data.getTimestamp());
+        output.writeInt(bytes.length);
+        output.write(bytes);
+        output.writeInt((int) crc32.getValue());
+    }
+
+    //写出到操作系统
+    synchronized void flush() throws IOException {
+        output.flush();
+    }
+
+    //写出到磁盘
+    synchronized void sync() throws IOException {
+        output.flush();
+        fileOutput.getFD().sync();
+    }
+
+    /**
+     * 切换到新的日志文件
+     *
+     * @return 旧的日志文件
+     */
+    synchronized File rotate() throws IOException {
+        File old = new File(dir, segment + SUFFIX);
+        output.close();
+        segment++;
+        open();
+        return old;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        output.close();
+    }
+
+    static List<File> getSegments(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        List<File> segments = new ArrayList<>(Arrays.asList(files));
+        segments.sort(Comparator.comparingLong(WriteAheadLog::getSegmentId));
+        return segments;
+    }
+
+    static long getSegmentId(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 重放日志
+     *
+     * @param file     日志文件
+     * @param consumer 数据消费者
+     * @return 重放的数据量
+     */
+    static int replay(File file, Consumer<TimeSeriesData> consumer) throws IOException {
+        int count = 0;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                long timestamp;
+                byte[] bytes;
+                int crc;
+                try {
+                    timestamp = input.readLong();
+                    int len = input.readInt();
+                    if (len < 0) {
+                        break;
+                    }
+                    bytes = new byte[len];
+                    input.readFully(bytes);
+                    crc = input.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                CRC32 crc32 = new CRC32();
+                crc32.update(bytes);
+                if ((int) crc32.getValue() != crc) {
+                    log.warn("wal file [{}] is corrupted, skip the rest", file);
+                    break;
+                }
+                consumer.accept(TimeSeriesData.of(timestamp, JSON.parseObject(new String(bytes, StandardCharsets.UTF_8))));
+                count++;
+            }
+        }
+        return count;
+    }
+}
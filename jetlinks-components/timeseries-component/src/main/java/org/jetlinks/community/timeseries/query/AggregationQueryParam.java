@@ -137,6 +137,24 @@ public class AggregationQueryParam {
         return groupBy(new Group(property, alias));
     }
 
+    /**
+     * 复制一个新的查询条件,修改复制后的条件不会影响原始条件
+     *
+     * @return 新的查询条件
+     */
+    public AggregationQueryParam copy() {
+        AggregationQueryParam param = new AggregationQueryParam();
+        param.setAggColumns(new ArrayList<>(aggColumns));
+        param.setGroupByTime(groupByTime);
+        param.setGroupBy(new ArrayList<>(groupBy));
+        param.setLimit(limit);
+        param.setStartWithTime(startWithTime);
+        param.setEndWithTime(endWithTime);
+        param.setTimeProperty(timeProperty);
+        param.setQueryParam(queryParam.clone());
+        return param;
+    }
+
     public <T> T execute(Function<AggregationQueryParam, T> executor) {
         return executor.apply(this);
     }
@@ -6,6 +6,7 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import java.time.Duration;
+import java.util.TimeZone;
 
 @Getter
 @Setter
@@ -30,4 +31,20 @@ public class TimeGroup {
         this.alias = alias;
         this.format = format;
     }
+
+    /**
+     * 获取时间所在分组的开始时间,与elasticsearch的date_histogram一致,按系统默认时区对齐
+     *
+     * @param timestamp 时间戳
+     * @return 分组开始时间
+     */
+    public long getBucketStart(long timestamp) {
+        return getBucketStart(interval, timestamp);
+    }
+
+    public static long getBucketStart(Duration interval, long timestamp) {
+        long millis = interval.toMillis();
+        long offset = TimeZone.getDefault().getOffset(timestamp);
+        return timestamp - Math.floorMod(timestamp + offset, millis);
+    }
 }
@@ -0,0 +1,73 @@
+package org.jetlinks.community.timeseries.rollup;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.jetlinks.community.timeseries.query.TimeGroup;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 降采样(汇总)周期
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+@Getter
+@AllArgsConstructor
+public enum RollupInterval {
+
+    MINUTE("1m", Duration.ofMinutes(1)),
+    HOUR("1h", Duration.ofHours(1)),
+    DAY("1d", Duration.ofDays(1));
+
+    private final String id;
+
+    private final Duration interval;
+
+    /**
+     * 获取时间所在周期的开始时间
+     *
+     * @param timestamp 时间戳
+     * @return 周期开始时间
+     */
+    public long getBucketStart(long timestamp) {
+        return TimeGroup.getBucketStart(interval, timestamp);
+    }
+
+    /**
+     * 获取能满足指定聚合周期的最粗粒度的降采样周期
+     *
+     * @param interval 聚合周期
+     * @return 降采样周期
+     */
+    public static Optional<RollupInterval> coarsest(Duration interval) {
+        List<RollupInterval> candidates = candidates(interval);
+        return candidates.isEmpty() ? Optional.empty() : Optional.of(candidates.get(0));
+    }
+
+    /**
+     * 获取全部能满足指定聚合周期的降采样周期,按粒度从粗到细排序
+     *
+     * @param interval 聚合周期
+     * @return 降采样周期
+     */
+    public static List<RollupInterval> candidates(Duration interval) {
+        if (interval == null) {
+            return Collections.emptyList();
+        }
+        long millis = interval.toMillis();
+        List<RollupInterval> candidates = new ArrayList<>();
+        RollupInterval[] values = values();
+        for (int i = values.length - 1; i >= 0; i--) {
+            long rollup = values[i].interval.toMillis();
+            if (millis >= rollup && millis % rollup == 0) {
+                candidates.add(values[i]);
+            }
+        }
+        return candidates;
+    }
+}
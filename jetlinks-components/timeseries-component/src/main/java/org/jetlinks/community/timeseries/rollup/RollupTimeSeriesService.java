@@ -0,0 +1,213 @@
+package org.jetlinks.community.timeseries.rollup;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hswebframework.ezorm.core.param.QueryParam;
+import org.hswebframework.ezorm.core.param.Term;
+import org.hswebframework.web.api.crud.entity.PagerResult;
+import org.jetlinks.community.timeseries.TimeSeriesData;
+import org.jetlinks.community.timeseries.TimeSeriesService;
+import org.jetlinks.community.timeseries.query.*;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * 支持降采样的时序服务,聚合查询时自动使用能满足聚合周期的最粗粒度的降采样数据.
+ * <p>
+ * 降采样数据只包含已经结束的周期,最后一个未结束的周期仍然从原始数据中聚合.
+ * 无法使用降采样数据的查询(如:按非维度字段过滤,聚合非数值字段)直接查询原始数据.
+ * <p>
+ * 开启降采样之前的数据没有降采样结果,查询开始时间早于降采样数据第一个完整周期时也直接查询原始数据.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+@Slf4j
+public class RollupTimeSeriesService implements TimeSeriesService {
+
+    private final TimeSeriesService raw;
+
+    private final Map<RollupInterval, TimeSeriesService> rollups;
+
+    //原始数据中进行降采样的字段
+    private final String valueProperty;
+
+    //降采样数据中保留的维度字段,只有按这些字段过滤或者分组时才能使用降采样数据
+    private final Set<String> dimensions;
+
+    //获取降采样数据最早的时间,没有数据时返回空
+    private final Function<RollupInterval, Mono<Long>> startTimeLoader;
+
+    public RollupTimeSeriesService(TimeSeriesService raw,
+                                   Map<RollupInterval, TimeSeriesService> rollups,
+                                   String valueProperty,
+                                   Set<String> dimensions,
+                                   Function<RollupInterval, Mono<Long>> startTimeLoader) {
+        this.raw = raw;
+        this.rollups = rollups;
+        this.valueProperty = valueProperty;
+        this.dimensions = dimensions;
+        this.startTimeLoader = startTimeLoader;
+    }
+
+    @Override
+    public Flux<TimeSeriesData> query(QueryParam queryParam) {
+        return raw.query(queryParam);
+    }
+
+    @Override
+    public Mono<Integer> count(QueryParam queryParam) {
+        return raw.count(queryParam);
+    }
+
+    @Override
+    public Mono<PagerResult<TimeSeriesData>> queryPager(QueryParam queryParam) {
+        return raw.queryPager(queryParam);
+    }
+
+    @Override
+    public <T> Mono<PagerResult<T>> queryPager(QueryParam queryParam, Function<TimeSeriesData, T> mapper) {
+        return raw.queryPager(queryParam, mapper);
+    }
+
+    @Override
+    public Mono<Void> save(Publisher<TimeSeriesData> data) {
+        return raw.save(data);
+    }
+
+    @Override
+    public Mono<Void> save(TimeSeriesData data) {
+        return raw.save(data);
+    }
+
+    @Override
+    public Flux<AggregationData> aggregation(AggregationQueryParam param) {
+        TimeGroup timeGroup = param.getGroupByTime();
+        if (timeGroup == null || !isRollupSupported(param)) {
+            return raw.aggregation(param);
+        }
+        //粗粒度的降采样未配置时使用更细粒度的降采样
+        return Flux
+            .fromIterable(RollupInterval.candidates(timeGroup.getInterval()))
+            .filter(rollups::containsKey)
+            .concatMap(interval -> isRollupCovered(interval, param).filter(Boolean::booleanValue).map(ignore -> interval))
+            .next()
+            .map(Optional::of)
+            .defaultIfEmpty(Optional.empty())
+            .flatMapMany(interval -> interval
+                .map(rollupInterval -> doRollupAggregation(rollupInterval, param))
+                .orElseGet(() -> raw.aggregation(param)));
+    }
+
+    //查询开始时间之后的数据是否都已经有降采样结果,开启降采样时的第一个周期只包含部分数据
+    protected Mono<Boolean> isRollupCovered(RollupInterval interval, AggregationQueryParam param) {
+        return startTimeLoader
+            .apply(interval)
+            .map(startTime -> param.getStartWithTime() >= interval.getBucketStart(startTime) + interval.getInterval().toMillis())
+            .defaultIfEmpty(false)
+            .onErrorReturn(false);
+    }
+
+    protected Flux<AggregationData> doRollupAggregation(RollupInterval interval, AggregationQueryParam param) {
+        //最后一个未结束的周期
+        long tailStart = param.getGroupByTime().getBucketStart(param.getEndWithTime());
+
+        AggregationQueryParam rollupParam = param.copy();
+        rollupParam.setAggColumns(new ArrayList<>());
+        rollupParam.to(tailStart - 1);
+        for (AggregationColumn column : param.getAggColumns()) {
+            switch (column.getAggregation()) {
+                case MIN:
+                    rollupParam.min(RollupValue.MIN, column.getAlias());
+                    break;
+                case MAX:
+                    rollupParam.max(RollupValue.MAX, column.getAlias());
+                    break;
+                case SUM:
+                    rollupParam.sum(RollupValue.SUM, column.getAlias());
+                    break;
+                case COUNT:
+                    rollupParam.sum(RollupValue.COUNT, column.getAlias());
+                    break;
+                case AVG:
+                    rollupParam.sum(RollupValue.SUM, avgSumAlias(column));
+                    rollupParam.sum(RollupValue.COUNT, avgCountAlias(column));
+                    break;
+            }
+        }
+        AggregationQueryParam tailParam = param.copy();
+        tailParam.from(tailStart);
+
+        return Flux
+            .concat(
+                tailStart > param.getStartWithTime()
+                    ? raw.aggregation(tailParam)
+                    : Flux.empty(),
+                rollups.get(interval)
+                    .aggregation(rollupParam)
+                    .map(data -> convertRollupResult(param, data.asMap()))
+            )
+            .take(param.getLimit() > 0 ? param.getLimit() : Long.MAX_VALUE);
+    }
+
+    private AggregationData convertRollupResult(AggregationQueryParam param, Map<String, Object> data) {
+        Map<String, Object> result = new HashMap<>(data);
+        for (AggregationColumn column : param.getAggColumns()) {
+            if (column.getAggregation() == Aggregation.AVG) {
+                Object sum = result.remove(avgSumAlias(column));
+                Object count = result.remove(avgCountAlias(column));
+                if (sum instanceof Number && count instanceof Number && ((Number) count).doubleValue() > 0) {
+                    result.put(column.getAlias(), ((Number) sum).doubleValue() / ((Number) count).doubleValue());
+                } else {
+                    result.put(column.getAlias(), 0);
+                }
+            }
+        }
+        return AggregationData.of(result);
+    }
+
+    private static String avgSumAlias(AggregationColumn column) {
+        return "_rollup_" + column.getAlias() + "_sum";
+    }
+
+    private static String avgCountAlias(AggregationColumn column) {
+        return "_rollup_" + column.getAlias() + "_count";
+    }
+
+    protected boolean isRollupSupported(AggregationQueryParam param) {
+        if (param.getAggColumns().isEmpty() || !"timestamp".equals(param.getTimeProperty())) {
+            return false;
+        }
+        for (AggregationColumn column : param.getAggColumns()) {
+            if (!valueProperty.equals(column.getProperty())
+                || column.getAggregation() == null
+                || column.getAggregation() == Aggregation.NONE) {
+                return false;
+            }
+        }
+        for (Group group : param.getGroupBy()) {
+            if (!dimensions.contains(group.getProperty())) {
+                return false;
+            }
+        }
+        return isDimensionTerms(param.getQueryParam().getTerms());
+    }
+
+    private boolean isDimensionTerms(List<Term> terms) {
+        if (terms == null) {
+            return true;
+        }
+        for (Term term : terms) {
+            if (term.getColumn() != null && !dimensions.contains(term.getColumn())) {
+                return false;
+            }
+            if (!isDimensionTerms(term.getTerms())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
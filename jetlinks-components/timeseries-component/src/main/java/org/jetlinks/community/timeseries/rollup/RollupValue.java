@@ -0,0 +1,61 @@
+package org.jetlinks.community.timeseries.rollup;
+
+import lombok.Getter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 一个周期内的降采样值,多个相同周期的值可以再次合并.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+@Getter
+public class RollupValue {
+
+    public static final String MIN = "min";
+    public static final String MAX = "max";
+    public static final String AVG = "avg";
+    public static final String SUM = "sum";
+    public static final String COUNT = "count";
+    public static final String LAST = "last";
+
+    private double min = Double.NaN;
+
+    private double max = Double.NaN;
+
+    private double sum;
+
+    private long count;
+
+    private double last;
+
+    private long lastTime = Long.MIN_VALUE;
+
+    public synchronized void accept(double value, long timestamp) {
+        if (count == 0 || value < min) {
+            min = value;
+        }
+        if (count == 0 || value > max) {
+            max = value;
+        }
+        sum += value;
+        count++;
+        if (timestamp >= lastTime) {
+            last = value;
+            lastTime = timestamp;
+        }
+    }
+
+    public synchronized Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put(MIN, min);
+        map.put(MAX, max);
+        map.put(SUM, sum);
+        map.put(COUNT, count);
+        map.put(AVG, count == 0 ? 0 : sum / count);
+        map.put(LAST, last);
+        return map;
+    }
+}
@@ -0,0 +1,166 @@
+package org.jetlinks.community.timeseries.local;
+
+import org.hswebframework.ezorm.core.param.QueryParam;
+import org.jetlinks.community.timeseries.TimeSeriesData;
+import org.jetlinks.community.timeseries.query.AggregationData;
+import org.jetlinks.community.timeseries.query.AggregationQueryParam;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalTimeSeriesServiceTest {
+
+    static TimeSeriesData data(long timestamp, String deviceId, Object value) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("deviceId", deviceId);
+        map.put("value", value);
+        map.put("type", "report");
+        return TimeSeriesData.of(timestamp, map);
+    }
+
+    @Test
+    void testCodec() {
+        List<TimeSeriesData> rows = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            Map<String, Object> map = new HashMap<>();
+            map.put("long", (long) i * 3);
+            map.put("double", i * 1.5D);
+            map.put("string", "s" + (i % 3));
+            if (i % 2 == 0) {
+                map.put("optional", "v");
+            }
+            rows.add(TimeSeriesData.of(now + i * 1000L + (i % 7), map));
+        }
+        List<TimeSeriesData> decoded = SeriesCodec.decode(SeriesCodec.encode(rows), rows.size());
+        assertEquals(rows.size(), decoded.size());
+        for (int i = 0; i < rows.size(); i++) {
+            TimeSeriesData row = decoded.get(i);
+            assertEquals(rows.get(i).getTimestamp(), row.getTimestamp());
+            assertEquals((long) i * 3, row.getData().get("long"));
+            assertEquals(i * 1.5D, row.getData().get("double"));
+            assertEquals("s" + (i % 3), row.getData().get("string"));
+            assertEquals(i % 2 == 0 ? "v" : null, row.getData().get("optional"));
+        }
+    }
+
+    @Test
+    void testSaveAndQuery(@TempDir File dir) throws Exception {
+        LocalTimeSeriesProperties properties = new LocalTimeSeriesProperties();
+        properties.setDataDir(dir.getAbsolutePath());
+        LocalTimeSeriesManager manager = new LocalTimeSeriesManager(properties);
+
+        long now = System.currentTimeMillis();
+        List<TimeSeriesData> rows = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            rows.add(data(now - i * 60_000L, "device-" + (i % 2), i));
+        }
+        manager.getService("test-metric")
+            .save(Flux.fromIterable(rows))
+            .as(StepVerifier::create)
+            .verifyComplete();
+
+        //一半数据在内存中,一半在文件中
+        manager.flush();
+        manager.getService("test-metric")
+            .save(data(now + 1, "device-0", 100))
+            .as(StepVerifier::create)
+            .verifyComplete();
+
+        manager.getService("test-metric")
+            .count(new QueryParam())
+            .as(StepVerifier::create)
+            .expectNext(101)
+            .verifyComplete();
+
+        QueryParam param = new QueryParam();
+        param.setPageSize(10);
+        param.and("deviceId", "device-0");
+        manager.getService("test-metric")
+            .query(param)
+            .map(data -> data.getTimestamp())
+            .collectList()
+            .as(StepVerifier::create)
+            .assertNext(list -> {
+                assertEquals(10, list.size());
+                assertEquals(now + 1, list.get(0));
+                assertEquals(now, list.get(1));
+                assertEquals(now - 2 * 60_000L, list.get(2));
+            })
+            .verifyComplete();
+
+        AggregationQueryParam.of()
+            .count("value", "total")
+            .max("value", "max")
+            .from(now - Duration.ofHours(2).toMillis())
+            .to(now + 1)
+            .filter(query -> query.where("deviceId", "device-1"))
+            .execute(manager.getService("test-metric")::aggregation)
+            .map(AggregationData::asMap)
+            .as(StepVerifier::create)
+            .assertNext(map -> {
+                assertEquals(50L, ((Number) map.get("total")).longValue());
+                assertEquals(99D, ((Number) map.get("max")).doubleValue());
+            })
+            .verifyComplete();
+
+        manager.shutdown();
+    }
+
+    @Test
+    void testReplayWal(@TempDir File dir) throws Exception {
+        long now = System.currentTimeMillis();
+        LocalTimeSeriesStore store = new LocalTimeSeriesStore("test", dir, Duration.ofDays(1), "deviceId");
+        store.append(Arrays.asList(data(now, "device-0", 1), data(now + 1, "device-1", 2)));
+        //模拟异常退出,不写出数据块文件
+
+        LocalTimeSeriesStore reopened = new LocalTimeSeriesStore("test", dir, Duration.ofDays(1), "deviceId");
+        LocalTimeSeriesService service = new LocalTimeSeriesService(reopened, 1000);
+        service.count(new QueryParam())
+            .as(StepVerifier::create)
+            .expectNext(2)
+            .verifyComplete();
+        reopened.close();
+    }
+
+    @Test
+    void testCompact(@TempDir File dir) throws Exception {
+        long now = System.currentTimeMillis();
+        //只缓存一个序列索引,查询时需要重新读取文件头
+        LocalTimeSeriesStore store = new LocalTimeSeriesStore("test", dir, Duration.ofDays(1), "deviceId", 3, 1000, new ChunkHeaderCache(1));
+        for (int i = 0; i < 4; i++) {
+            store.append(Arrays.asList(data(now + i, "device-0", i), data(now + i, "device-1", i)));
+            store.flush();
+        }
+        File partitionDir = new File(dir, String.valueOf(store.getPartition(now)));
+        assertEquals(4, partitionDir.listFiles((ignore, name) -> name.endsWith(ChunkFile.SUFFIX)).length);
+
+        store.compact();
+        LocalTimeSeriesService service = new LocalTimeSeriesService(store, 1000);
+        service.count(new QueryParam())
+            .as(StepVerifier::create)
+            .expectNext(8)
+            .verifyComplete();
+        store.close();
+        //关闭时删除已合并的文件
+        assertEquals(1, partitionDir.listFiles((ignore, name) -> name.endsWith(ChunkFile.SUFFIX)).length);
+        assertEquals(0, partitionDir.listFiles((ignore, name) -> name.endsWith(LocalTimeSeriesStore.COMPACT_SUFFIX)).length);
+
+        QueryParam param = new QueryParam();
+        param.and("deviceId", "device-1");
+        LocalTimeSeriesStore reopened = new LocalTimeSeriesStore("test", dir, Duration.ofDays(1), "deviceId");
+        new LocalTimeSeriesService(reopened, 1000)
+            .count(param)
+            .as(StepVerifier::create)
+            .expectNext(4)
+            .verifyComplete();
+        reopened.close();
+    }
+}
@@ -5,6 +5,7 @@ import org.jetlinks.core.metadata.DeviceMetadata;
 import org.jetlinks.core.metadata.DeviceMetadataCodec;
 import org.jetlinks.community.device.events.DeviceProductDeployEvent;
 import org.jetlinks.community.device.service.LocalDeviceProductService;
+import org.jetlinks.community.device.timeseries.DevicePropertyRollupManager;
 import org.jetlinks.community.device.timeseries.DeviceTimeSeriesMetadata;
 import org.jetlinks.community.timeseries.TimeSeriesManager;
 import org.jetlinks.supports.official.JetLinksDeviceMetadataCodec;
@@ -32,10 +33,15 @@ public class DeviceProductDeployHandler implements CommandLineRunner {
 
     private final TimeSeriesManager timeSeriesManager;
 
+    private final DevicePropertyRollupManager rollupManager;
+
     @Autowired
-    public DeviceProductDeployHandler(LocalDeviceProductService productService, TimeSeriesManager timeSeriesManager) {
+    public DeviceProductDeployHandler(LocalDeviceProductService productService,
+                                      TimeSeriesManager timeSeriesManager,
+                                      DevicePropertyRollupManager rollupManager) {
         this.productService = productService;
         this.timeSeriesManager = timeSeriesManager;
+        this.rollupManager = rollupManager;
     }
 
     @EventListener
@@ -55,6 +61,7 @@ public class DeviceProductDeployHandler implements CommandLineRunner {
 
     private void initDevicePropertiesTimeSeriesMetadata(String productId) {
         timeSeriesManager.registerMetadata(DeviceTimeSeriesMetadata.properties(productId))
+            .then(rollupManager.registerMetadata(productId))
             .doOnError(err -> log.error(err.getMessage(), err))
             .subscribe();
     }
@@ -5,6 +5,7 @@ import org.jetlinks.core.metadata.DeviceMetadata;
 import org.jetlinks.community.dashboard.DashboardObject;
 import org.jetlinks.community.dashboard.Measurement;
 import org.jetlinks.community.dashboard.ObjectDefinition;
+import org.jetlinks.community.device.timeseries.DevicePropertyRollupManager;
 import org.jetlinks.community.device.timeseries.DeviceTimeSeriesMetric;
 import org.jetlinks.community.gateway.MessageGateway;
 import org.jetlinks.community.timeseries.TimeSeriesManager;
@@ -22,20 +23,27 @@ public class DeviceDashboardObject implements DashboardObject {
 
     private TimeSeriesManager timeSeriesManager;
 
+    private DevicePropertyRollupManager rollupManager;
+
     private DeviceDashboardObject(String id, String name,
                                   DeviceProductOperator productOperator,
-                                  MessageGateway messageGateway, TimeSeriesManager timeSeriesManager) {
+                                  MessageGateway messageGateway,
+                                  TimeSeriesManager timeSeriesManager,
+                                  DevicePropertyRollupManager rollupManager) {
         this.id = id;
         this.name = name;
         this.productOperator = productOperator;
         this.messageGateway = messageGateway;
         this.timeSeriesManager = timeSeriesManager;
+        this.rollupManager = rollupManager;
     }
 
     public static DeviceDashboardObject of(String id, String name,
                                            DeviceProductOperator productOperator,
-                                           MessageGateway messageGateway, TimeSeriesManager timeSeriesManager) {
-        return new DeviceDashboardObject(id, name, productOperator, messageGateway, timeSeriesManager);
+                                           MessageGateway messageGateway,
+                                           TimeSeriesManager timeSeriesManager,
+                                           DevicePropertyRollupManager rollupManager) {
+        return new DeviceDashboardObject(id, name, productOperator, messageGateway, timeSeriesManager, rollupManager);
     }
 
     @Override
@@ -62,14 +70,14 @@ public class DeviceDashboardObject implements DashboardObject {
                 .map(event -> new DeviceEventMeasurement(messageGateway, event, timeSeriesManager.getService(DeviceTimeSeriesMetric.deviceEventMetric(id, event.getId())))),
 
             productOperator.getMetadata()
-                .map(metadata -> new DevicePropertiesMeasurement(messageGateway, metadata, timeSeriesManager.getService(DeviceTimeSeriesMetric.devicePropertyMetric(id)))),
+                .map(metadata -> new DevicePropertiesMeasurement(messageGateway, metadata, rollupManager.getService(id))),
 
             productOperator.getMetadata()
                 .map(metadata -> new DeviceEventsMeasurement(productOperator.getId(), messageGateway, metadata, timeSeriesManager)),
 
             productOperator.getMetadata()
                 .flatMapIterable(DeviceMetadata::getProperties)
-                .map(event -> new DevicePropertyMeasurement(messageGateway, event, timeSeriesManager.getService(DeviceTimeSeriesMetric.devicePropertyMetric(id))))
+                .map(event -> new DevicePropertyMeasurement(messageGateway, event, rollupManager.getService(id)))
         );
     }
 
@@ -77,7 +85,7 @@ public class DeviceDashboardObject implements DashboardObject {
     public Mono<Measurement> getMeasurement(String id) {
         if ("properties".equals(id)) {
             return productOperator.getMetadata()
-                .map(metadata -> new DevicePropertiesMeasurement(messageGateway, metadata, timeSeriesManager.getService(DeviceTimeSeriesMetric.devicePropertyMetric(this.id))));
+                .map(metadata -> new DevicePropertiesMeasurement(messageGateway, metadata, rollupManager.getService(this.id)));
         }
         if ("events".equals(id)) {
             return productOperator.getMetadata()
@@ -89,6 +97,6 @@ public class DeviceDashboardObject implements DashboardObject {
             //事件没获取到则尝试获取属性
             .switchIfEmpty(productOperator.getMetadata()
                 .flatMap(metadata -> Mono.justOrEmpty(metadata.getProperty(id)))
-                .map(event -> new DevicePropertyMeasurement(messageGateway, event, timeSeriesManager.getService(DeviceTimeSeriesMetric.devicePropertyMetric(this.id)))));
+                .map(event -> new DevicePropertyMeasurement(messageGateway, event, rollupManager.getService(this.id))));
     }
 }
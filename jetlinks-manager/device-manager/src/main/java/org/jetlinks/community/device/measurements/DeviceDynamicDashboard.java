@@ -5,6 +5,7 @@ import org.jetlinks.community.dashboard.DashboardObject;
 import org.jetlinks.community.device.entity.DeviceProductEntity;
 import org.jetlinks.community.device.service.LocalDeviceProductService;
 import org.jetlinks.community.gateway.MessageGateway;
+import org.jetlinks.community.device.timeseries.DevicePropertyRollupManager;
 import org.jetlinks.community.timeseries.TimeSeriesManager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -28,6 +29,9 @@ public class DeviceDynamicDashboard implements DeviceDashboard {
     @Autowired
     private TimeSeriesManager timeSeriesManager;
 
+    @Autowired
+    private DevicePropertyRollupManager rollupManager;
+
     @PostConstruct
     public void init() {
         //设备状态变更
@@ -48,6 +52,6 @@ public class DeviceDynamicDashboard implements DeviceDashboard {
 
     protected Mono<DeviceDashboardObject> convertObject(DeviceProductEntity product) {
         return registry.getProduct(product.getId())
-            .map(operator -> DeviceDashboardObject.of(product.getId(), product.getName(), operator, messageGateway, timeSeriesManager));
+            .map(operator -> DeviceDashboardObject.of(product.getId(), product.getName(), operator, messageGateway, timeSeriesManager, rollupManager));
     }
 }
@@ -11,12 +11,21 @@ import org.jetlinks.community.device.message.DeviceMessageUtils;
 import org.jetlinks.community.gateway.MessageGateway;
 import org.jetlinks.community.gateway.Subscription;
 import org.jetlinks.community.timeseries.TimeSeriesService;
+import org.jetlinks.community.timeseries.query.Aggregation;
+import org.jetlinks.community.timeseries.query.AggregationQueryParam;
+import org.jetlinks.core.metadata.types.DateTimeType;
+import org.jetlinks.core.metadata.types.EnumType;
 import org.jetlinks.core.metadata.types.IntType;
+import org.jetlinks.core.metadata.types.NumberType;
 import org.jetlinks.core.metadata.types.ObjectType;
 import org.jetlinks.core.metadata.types.StringType;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -36,6 +45,9 @@ class DevicePropertyMeasurement extends StaticMeasurement {
         this.metadata = metadata;
         this.timeSeriesService = timeSeriesService;
         addDimension(new RealTimeDevicePropertyDimension());
+        if (metadata.getValueType() instanceof NumberType) {
+            addDimension(new AggDevicePropertyDimension());
+        }
     }
 
 
@@ -140,4 +152,64 @@ class DevicePropertyMeasurement extends StaticMeasurement {
                 });
         }
     }
+
+    static ConfigMetadata aggConfigMetadata = new DefaultConfigMetadata()
+        .add("deviceId", "设备", "指定设备", new StringType().expand("selector", "device-selector"))
+        .add("time", "周期", "例如: 1m,1h,1d", new StringType())
+        .add("agg", "聚合类型", "", new EnumType()
+            .addElement(EnumType.Element.of("AVG", "平均值"))
+            .addElement(EnumType.Element.of("MAX", "最大值"))
+            .addElement(EnumType.Element.of("MIN", "最小值"))
+            .addElement(EnumType.Element.of("SUM", "总和"))
+            .addElement(EnumType.Element.of("COUNT", "数量")))
+        .add("format", "时间格式", "如: MM-dd:HH", new StringType())
+        .add("limit", "最大数据量", "", new IntType())
+        .add("from", "时间从", "", new DateTimeType())
+        .add("to", "时间至", "", new DateTimeType());
+
+    /**
+     * 聚合设备属性,开启降采样时使用降采样数据进行聚合
+     */
+    private class AggDevicePropertyDimension implements MeasurementDimension {
+
+        @Override
+        public DimensionDefinition getDefinition() {
+            return CommonDimensionDefinition.agg;
+        }
+
+        @Override
+        public DataType getValueType() {
+            return metadata.getValueType();
+        }
+
+        @Override
+        public ConfigMetadata getParams() {
+            return aggConfigMetadata;
+        }
+
+        @Override
+        public boolean isRealTime() {
+            return false;
+        }
+
+        @Override
+        public Flux<SimpleMeasurementValue> getValue(MeasurementParameter parameter) {
+            return AggregationQueryParam.of()
+                .agg("numberValue", "value", parameter.get("agg", Aggregation.class).orElse(Aggregation.AVG))
+                .groupBy(parameter.getDuration("time", Duration.ofHours(1)),
+                    parameter.getString("format", "MM月dd日 HH时"))
+                .filter(query -> query
+                    .where("property", metadata.getId())
+                    .is("deviceId", parameter.getString("deviceId", null)))
+                .limit(parameter.getInt("limit", 10))
+                .from(parameter.getDate("from").orElseGet(() -> Date.from(LocalDateTime.now().plusDays(-1).atZone(ZoneId.systemDefault()).toInstant())))
+                .to(parameter.getDate("to").orElseGet(Date::new))
+                .execute(timeSeriesService::aggregation)
+                .index((index, data) -> SimpleMeasurementValue.of(
+                    data.get("value").orElse(0),
+                    data.getString("time").orElse(""),
+                    index))
+                .sort();
+        }
+    }
 }
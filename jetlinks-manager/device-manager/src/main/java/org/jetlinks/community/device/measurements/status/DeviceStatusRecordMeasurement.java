@@ -9,7 +9,6 @@ import org.jetlinks.core.metadata.types.IntType;
 import org.jetlinks.core.metadata.types.StringType;
 import org.jetlinks.community.dashboard.*;
 import org.jetlinks.community.dashboard.supports.StaticMeasurement;
-import org.jetlinks.community.device.entity.DeviceInstanceEntity;
 import org.jetlinks.community.device.enums.DeviceState;
 import org.jetlinks.community.device.service.LocalDeviceInstanceService;
 import org.jetlinks.community.device.timeseries.DeviceTimeSeriesMetric;
@@ -97,6 +96,7 @@ class DeviceStatusRecordMeasurement
 
     static ConfigMetadata currentMetadata = new DefaultConfigMetadata()
         .add("productId", "设备型号", "", new StringType())
+        .add("orgId", "机构", "", new StringType())
         .add("state", "状态", "online", new EnumType()
             .addElement(EnumType.Element.of(DeviceState.online.getValue(), DeviceState.online.getText()))
             .addElement(EnumType.Element.of(DeviceState.offline.getValue(), DeviceState.offline.getText()))
@@ -128,11 +128,12 @@ class DeviceStatusRecordMeasurement
 
         @Override
         public Mono<MeasurementValue> getValue(MeasurementParameter parameter) {
+            //从内存中获取设备数量
             return instanceService
-                .createQuery()
-                .and(DeviceInstanceEntity::getProductId, parameter.getString("productId").orElse(null))
-                .and(DeviceInstanceEntity::getState, parameter.get("state", DeviceState.class).orElse(null))
-                .count()
+                .countDevice(
+                    parameter.getString("productId").orElse(null),
+                    parameter.getString("orgId").orElse(null),
+                    parameter.get("state", DeviceState.class).orElse(null))
                 .map(val -> SimpleMeasurementValue.of(val, System.currentTimeMillis()));
         }
     }
@@ -9,6 +9,7 @@ import org.jetlinks.community.device.entity.DevicePropertiesEntity;
 import org.jetlinks.community.device.enums.DeviceLogType;
 import org.jetlinks.community.device.events.handler.ValueTypeTranslator;
 import org.jetlinks.community.device.message.DeviceMessageUtils;
+import org.jetlinks.community.device.timeseries.DevicePropertyRollupManager;
 import org.jetlinks.community.device.timeseries.DeviceTimeSeriesMetric;
 import org.jetlinks.community.gateway.TopicMessage;
 import org.jetlinks.community.gateway.annotation.Subscribe;
@@ -46,9 +47,18 @@ public class TimeSeriesMessageWriterConnector{
 
     public DeviceRegistry registry;
 
+    public DevicePropertyRollupManager rollupManager;
+
     public TimeSeriesMessageWriterConnector(TimeSeriesManager timeSeriesManager, DeviceRegistry registry) {
+        this(timeSeriesManager, registry, null);
+    }
+
+    public TimeSeriesMessageWriterConnector(TimeSeriesManager timeSeriesManager,
+                                            DeviceRegistry registry,
+                                            DevicePropertyRollupManager rollupManager) {
         this.timeSeriesManager = timeSeriesManager;
         this.registry = registry;
+        this.rollupManager = rollupManager;
     }
 
     @Subscribe(topics = "/device/**",id = "device-message-ts-writer")
@@ -140,7 +150,11 @@ public class TimeSeriesMessageWriterConnector{
                                 .productId(productId)
                                 .build()
                                 .withValue(propertyMetadata.get(entry.getKey()), entry.getValue());
-
+                            //数值类型的属性进行降采样
+                            if (rollupManager != null && entity.getNumberValue() != null) {
+                                rollupManager.accept(productId, entity.getOrgId(), entity.getDeviceId(),
+                                    entity.getProperty(), message.getTimestamp(), entity.getNumberValue());
+                            }
                             return TimeSeriesData.of(message.getTimestamp(), entity.toMap());
                         })
                         .flatMap(data -> timeSeriesManager.getService(DeviceTimeSeriesMetric.devicePropertyMetric(productId)).save(data))
@@ -0,0 +1,318 @@
+package org.jetlinks.community.device.service;
+
+import org.jetlinks.community.device.enums.DeviceState;
+
+import java.util.*;
+
+/**
+ * 设备最后一次写入数据库的状态,以及按产品,机构,状态分组的设备数量.
+ * <p>
+ * 设备ID映射为数组下标,每个设备只占用一个字节:低2位为状态,第3位表示是否已知为网关设备,第4位表示是否为网关设备,
+ * 第5位表示状态已过期.
+ * 同步状态时只写入发生变化的设备,状态变化时同时修改分组数量.
+ * <p>
+ * 缓存只包含本节点写入的状态,其他节点或者手动修改数据库后可能与数据库不一致.
+ * 每次对账开始时全部状态标记为过期,过期的状态在下一次同步时重新写入,因此不一致最多持续一个对账间隔.
+ * 分组数量同样只包含本节点的变化,对账时使用数据库中的数量替换.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+class DeviceStateCache {
+
+    private static final int STATE_MASK = 0x03;
+
+    private static final int GATEWAY_KNOWN = 0x04;
+
+    private static final int GATEWAY = 0x08;
+
+    private static final int EXPIRED = 0x10;
+
+    private static final DeviceState[] STATES = DeviceState.values();
+
+    private final Map<String, Integer> index = new HashMap<>();
+
+    private byte[] flags = new byte[1024];
+
+    //设备所在的分组,-1为未知
+    private int[] groups = newGroups(1024, 0);
+
+    private int size;
+
+    //产品ID+机构ID -> 分组下标
+    private final Map<GroupKey, Integer> groupIndex = new HashMap<>();
+
+    private final List<GroupKey> groupKeys = new ArrayList<>();
+
+    //分组下标 -> 各个状态的设备数量
+    private List<long[]> counts = new ArrayList<>();
+
+    private static int[] newGroups(int length, int from) {
+        int[] groups = new int[length];
+        Arrays.fill(groups, from, length, -1);
+        return groups;
+    }
+
+    private int indexOf(String deviceId) {
+        Integer idx = index.get(deviceId);
+        if (idx == null) {
+            idx = size++;
+            if (idx >= flags.length) {
+                flags = Arrays.copyOf(flags, flags.length << 1);
+                int[] newGroups = newGroups(flags.length, groups.length);
+                System.arraycopy(groups, 0, newGroups, 0, groups.length);
+                groups = newGroups;
+            }
+            index.put(deviceId, idx);
+        }
+        return idx;
+    }
+
+    private int groupOf(String productId, String orgId) {
+        GroupKey key = new GroupKey(productId, orgId);
+        Integer group = groupIndex.get(key);
+        if (group == null) {
+            groupIndex.put(key, group = groupKeys.size());
+            groupKeys.add(key);
+            counts.add(new long[STATES.length]);
+        }
+        return group;
+    }
+
+    private void count(int idx, int delta) {
+        int state = flags[idx] & STATE_MASK;
+        if (groups[idx] >= 0 && state != 0) {
+            counts.get(groups[idx])[state - 1] += delta;
+        }
+    }
+
+    /**
+     * @return 最后一次写入的状态, 未知时返回<code>null</code>
+     */
+    synchronized DeviceState getState(String deviceId) {
+        Integer idx = index.get(deviceId);
+        if (idx == null) {
+            return null;
+        }
+        int state = flags[idx] & STATE_MASK;
+        return state == 0 ? null : STATES[state - 1];
+    }
+
+    /**
+     * 判断最后一次写入的状态是否与指定的状态相同,状态已过期时返回<code>false</code>
+     *
+     * @return 是否不需要再写入
+     */
+    synchronized boolean isUnchanged(String deviceId, DeviceState state) {
+        Integer idx = index.get(deviceId);
+        if (idx == null || (flags[idx] & EXPIRED) != 0) {
+            return false;
+        }
+        int current = flags[idx] & STATE_MASK;
+        return current != 0 && STATES[current - 1] == state;
+    }
+
+    synchronized void putState(String deviceId, DeviceState state) {
+        int idx = indexOf(deviceId);
+        count(idx, -1);
+        flags[idx] = (byte) ((flags[idx] & ~(STATE_MASK | EXPIRED)) | (state.ordinal() + 1));
+        count(idx, 1);
+    }
+
+    synchronized void putState(Collection<String> deviceIds, DeviceState state) {
+        for (String deviceId : deviceIds) {
+            putState(deviceId, state);
+        }
+    }
+
+    /**
+     * 状态未知时才设置,用于新增设备,不覆盖已经同步的状态
+     */
+    synchronized void initState(String deviceId, DeviceState state) {
+        if (state != null && getState(deviceId) == null) {
+            putState(deviceId, state);
+        }
+    }
+
+    /**
+     * 设置设备所属的产品和机构,为<code>null</code>时不修改
+     */
+    synchronized void putGroup(String deviceId, String productId, String orgId) {
+        int idx = indexOf(deviceId);
+        GroupKey old = groups[idx] >= 0 ? groupKeys.get(groups[idx]) : null;
+        if (old != null) {
+            productId = productId == null ? old.productId : productId;
+            orgId = orgId == null ? old.orgId : orgId;
+        }
+        int group = groupOf(productId, orgId);
+        if (group != groups[idx]) {
+            count(idx, -1);
+            groups[idx] = group;
+            count(idx, 1);
+        }
+    }
+
+    /**
+     * @return 是否为网关设备, 未知时返回<code>null</code>
+     */
+    synchronized Boolean isGateway(String deviceId) {
+        Integer idx = index.get(deviceId);
+        if (idx == null || (flags[idx] & GATEWAY_KNOWN) == 0) {
+            return null;
+        }
+        return (flags[idx] & GATEWAY) != 0;
+    }
+
+    synchronized void putGateway(String deviceId, boolean gateway) {
+        int idx = indexOf(deviceId);
+        flags[idx] = (byte) ((flags[idx] & (STATE_MASK | EXPIRED)) | GATEWAY_KNOWN | (gateway ? GATEWAY : 0));
+    }
+
+    /**
+     * 清空设备是否为网关设备的缓存,设备修改产品后重新获取
+     */
+    synchronized void invalidate(String deviceId) {
+        Integer idx = index.get(deviceId);
+        if (idx != null) {
+            flags[idx] = (byte) (flags[idx] & (STATE_MASK | EXPIRED));
+        }
+    }
+
+    /**
+     * 删除设备,下标不回收
+     */
+    synchronized void remove(String deviceId) {
+        Integer idx = index.get(deviceId);
+        if (idx != null) {
+            count(idx, -1);
+            flags[idx] = 0;
+            groups[idx] = -1;
+        }
+    }
+
+    /**
+     * 统计设备数量
+     *
+     * @param productId 产品ID,为<code>null</code>时不限制
+     * @param orgId     机构ID,为<code>null</code>时不限制
+     * @param state     状态,为<code>null</code>时不限制
+     * @return 设备数量
+     */
+    synchronized long count(String productId, String orgId, DeviceState state) {
+        long total = 0;
+        for (int i = 0; i < groupKeys.size(); i++) {
+            GroupKey key = groupKeys.get(i);
+            if ((productId != null && !productId.equals(key.productId)) || (orgId != null && !orgId.equals(key.orgId))) {
+                continue;
+            }
+            long[] stateCounts = counts.get(i);
+            if (state != null) {
+                total += stateCounts[state.ordinal()];
+            } else {
+                for (long count : stateCounts) {
+                    total += count;
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 开始和数据库对账,所有设备的状态标记为过期
+     *
+     * @return 对账过程中数据库中各分组的设备数量
+     */
+    synchronized Reconciliation reconcile() {
+        for (int i = 0; i < size; i++) {
+            flags[i] |= EXPIRED;
+        }
+        return new Reconciliation();
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    class Reconciliation {
+
+        private final Map<GroupKey, long[]> dbCounts = new HashMap<>();
+
+        /**
+         * 添加数据库中的设备,使用数据库中的状态覆盖缓存的状态
+         */
+        void add(String deviceId, String productId, String orgId, DeviceState state) {
+            synchronized (DeviceStateCache.this) {
+                putGroup(deviceId, productId, orgId);
+                if (state != null) {
+                    putState(deviceId, state);
+                }
+            }
+            add(productId, orgId, state, 1);
+        }
+
+        /**
+         * 添加数据库中按分组统计的设备数量
+         */
+        void add(String productId, String orgId, DeviceState state, long count) {
+            if (state != null) {
+                dbCounts.computeIfAbsent(new GroupKey(productId, orgId), ignore -> new long[STATES.length])[state.ordinal()] += count;
+            }
+        }
+
+        /**
+         * 使用数据库中的数量替换分组数量,对账期间发生的变化以数据库为准
+         *
+         * @return 与数据库数量不一致的分组数量
+         */
+        int complete() {
+            synchronized (DeviceStateCache.this) {
+                int diff = 0;
+                List<long[]> newCounts = new ArrayList<>(groupKeys.size());
+                for (int i = 0; i < groupKeys.size(); i++) {
+                    long[] db = dbCounts.remove(groupKeys.get(i));
+                    db = db == null ? new long[STATES.length] : db;
+                    if (!Arrays.equals(db, counts.get(i))) {
+                        diff++;
+                    }
+                    newCounts.add(db);
+                }
+                counts = newCounts;
+                //对账期间删除的设备,分组不存在
+                for (Map.Entry<GroupKey, long[]> entry : dbCounts.entrySet()) {
+                    diff++;
+                    groupOf(entry.getKey().productId, entry.getKey().orgId);
+                    counts.set(groupIndex.get(entry.getKey()), entry.getValue());
+                }
+                return diff;
+            }
+        }
+    }
+
+    private static class GroupKey {
+        private final String productId;
+
+        private final String orgId;
+
+        private GroupKey(String productId, String orgId) {
+            this.productId = productId;
+            this.orgId = orgId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof GroupKey)) {
+                return false;
+            }
+            GroupKey that = (GroupKey) o;
+            return Objects.equals(productId, that.productId) && Objects.equals(orgId, that.orgId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(productId, orgId);
+        }
+    }
+}
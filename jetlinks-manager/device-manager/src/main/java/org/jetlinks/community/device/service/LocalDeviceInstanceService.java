@@ -10,6 +10,9 @@ import org.apache.commons.collections4.CollectionUtils;
 import org.hswebframework.ezorm.core.dsl.Query;
 import org.hswebframework.ezorm.core.param.QueryParam;
 import org.hswebframework.ezorm.core.param.TermType;
+import org.hswebframework.ezorm.rdb.executor.SqlRequests;
+import org.hswebframework.ezorm.rdb.executor.reactive.ReactiveSqlExecutor;
+import org.hswebframework.ezorm.rdb.executor.wrapper.ResultWrappers;
 import org.hswebframework.ezorm.rdb.mapping.ReactiveRepository;
 import org.hswebframework.ezorm.rdb.mapping.defaults.SaveResult;
 import org.hswebframework.web.api.crud.entity.PagerResult;
@@ -23,6 +26,7 @@ import org.jetlinks.community.device.entity.*;
 import org.jetlinks.community.device.message.DeviceMessageUtils;
 import org.jetlinks.community.gateway.Subscription;
 import org.jetlinks.community.gateway.annotation.Subscribe;
+import org.jetlinks.community.gateway.events.DeviceCredentialChangedEvent;
 import org.jetlinks.core.device.DeviceConfigKey;
 import org.jetlinks.core.device.DeviceOperator;
 import org.jetlinks.core.device.DeviceRegistry;
@@ -44,6 +48,8 @@ import org.jetlinks.community.timeseries.TimeSeriesManager;
 import org.jetlinks.supports.official.JetLinksDeviceMetadata;
 import org.reactivestreams.Publisher;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.io.buffer.DataBufferFactory;
 import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.HttpHeaders;
@@ -55,7 +61,6 @@ import reactor.core.publisher.Mono;
 import reactor.core.publisher.SignalType;
 import reactor.core.scheduler.Schedulers;
 import reactor.util.function.Tuple2;
-import reactor.util.function.Tuple3;
 import reactor.util.function.Tuples;
 
 import javax.annotation.PostConstruct;
@@ -64,10 +69,7 @@ import java.io.OutputStream;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -89,16 +91,166 @@ public class LocalDeviceInstanceService extends GenericReactiveCrudService<Devic
     @Autowired
     private TimeSeriesManager timeSeriesManager;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     @Autowired
     @SuppressWarnings("all")
     private ReactiveRepository<DeviceTagEntity, String> tagRepository;
 
+    @Autowired
+    private ReactiveSqlExecutor sqlExecutor;
+
+    //对账间隔
+    @Value("${device.state.reconcile-interval:10m}")
+    private Duration reconcileInterval = Duration.ofMinutes(10);
+
+    //是否已经从数据库加载了设备状态和数量
+    private volatile boolean countLoaded;
+
+    //最后一次写入数据库的设备状态以及分组设备数量,同步状态时只写入发生变化的设备
+    private final DeviceStateCache stateCache = new DeviceStateCache();
 
     @Override
     public Mono<SaveResult> save(Publisher<DeviceInstanceEntity> entityPublisher) {
         return Flux.from(entityPublisher)
             .doOnNext(instance -> instance.setState(null))
-            .as(super::save);
+            .collectList()
+            .flatMap(list -> super
+                .save(Flux.fromIterable(list))
+                .doOnSuccess(ignore -> {
+                    list.forEach(this::updateCount);
+                    //修改已有设备时配置(密钥等)可能已变更
+                    publishCredentialChanged(list);
+                }));
+    }
+
+    @Override
+    public Mono<Integer> insert(Publisher<DeviceInstanceEntity> entityPublisher) {
+        return Flux.from(entityPublisher)
+            .collectList()
+            .flatMap(list -> super
+                .insert(Flux.fromIterable(list))
+                .doOnSuccess(ignore -> list.forEach(this::updateCount)));
+    }
+
+    @Override
+    public Mono<Integer> updateById(String id, Mono<DeviceInstanceEntity> entityPublisher) {
+        return entityPublisher
+            .flatMap(instance -> super
+                .updateById(id, Mono.just(instance))
+                .doOnSuccess(ignore -> {
+                    instance.setId(id);
+                    updateCount(instance);
+                    eventPublisher.publishEvent(DeviceCredentialChangedEvent.ofDevice(id));
+                }));
+    }
+
+    @Override
+    public Mono<Integer> deleteById(Publisher<String> idPublisher) {
+        return Flux.from(idPublisher)
+            .collectList()
+            .flatMap(list -> super
+                .deleteById(Flux.fromIterable(list))
+                .doOnSuccess(ignore -> {
+                    list.forEach(stateCache::remove);
+                    eventPublisher.publishEvent(DeviceCredentialChangedEvent.ofDevice(list));
+                }));
+    }
+
+    private void publishCredentialChanged(List<DeviceInstanceEntity> list) {
+        List<String> idList = list
+            .stream()
+            .map(DeviceInstanceEntity::getId)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+        if (!idList.isEmpty()) {
+            eventPublisher.publishEvent(DeviceCredentialChangedEvent.ofDevice(idList));
+        }
+    }
+
+    //新增或者修改设备后更新分组数量
+    private void updateCount(DeviceInstanceEntity instance) {
+        if (instance.getId() == null) {
+            return;
+        }
+        stateCache.invalidate(instance.getId());
+        stateCache.putGroup(instance.getId(), instance.getProductId(), instance.getOrgId());
+        //新增的设备为未激活状态
+        stateCache.initState(instance.getId(), instance.getState() == null ? DeviceState.notActive : instance.getState());
+    }
+
+    /**
+     * 从内存中统计设备数量,数量随设备状态变化以及新增删除设备更新,并定时和数据库对账.
+     * 启动后还未从数据库加载时直接查询数据库.
+     * <p>
+     * 计数只在本节点维护,不会在集群中同步:集群部署时其他节点写入的状态变化要等到下一次对账才会体现,
+     * 各节点返回的数量最多可能落后一个对账间隔(device.state.reconcile-interval).需要准确数量时应直接查询数据库.
+     *
+     * @param productId 产品ID,为<code>null</code>时不限制
+     * @param orgId     机构ID,为<code>null</code>时不限制
+     * @param state     状态,为<code>null</code>时不限制
+     * @return 设备数量
+     */
+    public Mono<Long> countDevice(String productId, String orgId, DeviceState state) {
+        if (!countLoaded) {
+            return createQuery()
+                .and(DeviceInstanceEntity::getProductId, productId)
+                .and(DeviceInstanceEntity::getOrgId, orgId)
+                .and(DeviceInstanceEntity::getState, state)
+                .count()
+                .map(Integer::longValue);
+        }
+        return Mono.fromSupplier(() -> stateCache.count(productId, orgId, state));
+    }
+
+    /**
+     * 和数据库对账,使用数据库中的设备数量替换内存中的数量.
+     * 第一次对账时加载每个设备的状态和分组,之后只按产品,机构,状态分组统计数量.
+     * 对账时缓存的设备状态全部过期,设备下一次同步状态时重新写入数据库.
+     *
+     * @return 与数据库数量不一致的分组数量
+     */
+    public Mono<Integer> reconcileCount() {
+        return Mono.defer(() -> {
+            DeviceStateCache.Reconciliation reconciliation = stateCache.reconcile();
+            Mono<Void> load = countLoaded
+                ? sqlExecutor
+                .select(Mono.just(SqlRequests.of("select product_id,org_id,state,count(1) total from dev_device_instance group by product_id,org_id,state")), ResultWrappers.map())
+                .doOnNext(row -> {
+                    //不同数据库返回的列名大小写不同
+                    Map<String, Object> group = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                    group.putAll(row);
+                    Object total = group.get("total");
+                    reconciliation.add(
+                        (String) group.get("product_id"),
+                        (String) group.get("org_id"),
+                        parseState(group.get("state")),
+                        total instanceof Number ? ((Number) total).longValue() : 0);
+                })
+                .then()
+                : createQuery()
+                .select(DeviceInstanceEntity::getId, DeviceInstanceEntity::getProductId, DeviceInstanceEntity::getOrgId, DeviceInstanceEntity::getState)
+                .fetch()
+                .doOnNext(instance -> reconciliation.add(instance.getId(), instance.getProductId(), instance.getOrgId(), instance.getState()))
+                .then();
+            return load.then(Mono.fromSupplier(() -> {
+                int diff = reconciliation.complete();
+                countLoaded = true;
+                return diff;
+            }));
+        });
+    }
+
+    private static DeviceState parseState(Object state) {
+        if (state == null) {
+            return null;
+        }
+        try {
+            return DeviceState.valueOf(String.valueOf(state));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
     }
 
     /**
@@ -132,16 +284,23 @@ public class LocalDeviceInstanceService extends GenericReactiveCrudService<Devic
      * @return
      */
     private Mono<Map<String, Integer>> getEventCounts(List<EventMetadata> events, String deviceId, String productId) {
-        return Flux.merge(
-            events
-                .stream()
-                .map(Metadata::getId)
-                .map(eventId -> Query.of()
-                    .where("deviceId", deviceId)
-                    .execute(timeSeriesManager.getService(DeviceTimeSeriesMetric.deviceEventMetric(productId, eventId))::count)
-                    .map(count -> Tuples.of(eventId, count)))
-                .collect(Collectors.toList())
-        ).collect(Collectors.toMap(Tuple2::getT1, Tuple2::getT2));
+        //指标和事件ID的对应关系
+        Map<String, String> metrics = events
+            .stream()
+            .map(Metadata::getId)
+            .collect(Collectors.toMap(eventId -> DeviceTimeSeriesMetric.deviceEventMetric(productId, eventId).getId(), Function.identity(), (a, b) -> a));
+        if (metrics.isEmpty()) {
+            return Mono.just(new HashMap<>());
+        }
+        //一次请求统计全部事件
+        return Query.of()
+            .where("deviceId", deviceId)
+            .execute(param -> timeSeriesManager.count(metrics.keySet(), param))
+            .map(counts -> {
+                Map<String, Integer> eventCounts = new HashMap<>();
+                metrics.forEach((metric, eventId) -> eventCounts.put(eventId, counts.getOrDefault(metric, 0)));
+                return eventCounts;
+            });
     }
 
 
@@ -182,6 +341,9 @@ public class LocalDeviceInstanceService extends GenericReactiveCrudService<Devic
                 )
                 .thenReturn(instance))
             .buffer(50)
+            //重新发布后设备配置(密钥等)可能已变更
+            .doOnNext(all -> eventPublisher.publishEvent(DeviceCredentialChangedEvent.ofDevice(
+                all.stream().map(DeviceInstanceEntity::getId).collect(Collectors.toList()))))
             .publishOn(Schedulers.single())
             .flatMap(all -> Flux.fromIterable(all)
                 .groupBy(DeviceInstanceEntity::getState)
@@ -194,6 +356,7 @@ public class LocalDeviceInstanceService extends GenericReactiveCrudService<Devic
                             .set(DeviceInstanceEntity::getRegistryTime, new Date())
                             .in(DeviceInstanceEntity::getId, list)
                             .execute()
+                            .doOnSuccess(r -> stateCache.putState(list, group.key()))
                             .map(r -> DeviceDeployResult.success(list.size()))
                             .onErrorResume(err -> Mono.just(DeviceDeployResult.error(err.getMessage()))))));
     }
@@ -211,7 +374,11 @@ public class LocalDeviceInstanceService extends GenericReactiveCrudService<Devic
                 .then(createUpdate()
                     .set(DeviceInstanceEntity::getState, DeviceState.notActive.getValue())
                     .where(DeviceInstanceEntity::getId, id)
-                    .execute()));
+                    .execute()
+                    .doOnSuccess(r -> {
+                        stateCache.putState(id, DeviceState.notActive);
+                        eventPublisher.publishEvent(DeviceCredentialChangedEvent.ofDevice(id));
+                    })));
     }
 
     public Mono<DeviceDetail> getDeviceDetail(String deviceId) {
@@ -230,7 +397,8 @@ public class LocalDeviceInstanceService extends GenericReactiveCrudService<Devic
                         .flatMap(state -> createUpdate()
                             .set(DeviceInstanceEntity::getState, state)
                             .where(DeviceInstanceEntity::getId, deviceId)
-                            .execute())
+                            .execute()
+                            .doOnSuccess(r -> stateCache.putState(deviceId, state)))
                         .thenReturn(operator))
                 .flatMap(detail::with)
                 .defaultIfEmpty(detail))
@@ -252,6 +420,7 @@ public class LocalDeviceInstanceService extends GenericReactiveCrudService<Devic
                 return createUpdate().set(DeviceInstanceEntity::getState, deviceState)
                     .where(DeviceInstanceEntity::getId, deviceId)
                     .execute()
+                    .doOnSuccess(r -> stateCache.putState(deviceId, deviceState))
                     .thenReturn(deviceState);
             })
             .defaultIfEmpty(DeviceState.notActive);
@@ -285,6 +454,7 @@ public class LocalDeviceInstanceService extends GenericReactiveCrudService<Devic
                     .set(DeviceInstanceEntity::getState, deviceRunInfo.getState())
                     .where(DeviceInstanceEntity::getId, deviceId)
                     .execute()
+                    .doOnSuccess(r -> stateCache.putState(deviceId, deviceRunInfo.getState()))
                     .thenReturn(deviceRunInfo))
             );
     }
@@ -366,14 +536,36 @@ public class LocalDeviceInstanceService extends GenericReactiveCrudService<Devic
     @PostConstruct
     public void init() {
 
-        //订阅设备上下线
+        //加载数据库中的设备状态和数量,并定时对账
+        Flux.interval(Duration.ZERO, reconcileInterval)
+            .onBackpressureDrop()
+            .concatMap(ignore -> reconcileCount()
+                .onErrorResume(err -> {
+                    log.error("reconcile device count error", err);
+                    return Mono.empty();
+                }))
+            .subscribe(diff -> {
+                if (diff > 0) {
+                    log.debug("reconcile device count, {} groups changed", diff);
+                }
+            });
+
+        //订阅设备上下线,上下线消息中已经包含了设备状态,不需要再从注册中心获取
         FluxUtils.bufferRate(messageGateway
             .subscribe(Subscription.asList("/device/*/online", "/device/*/offline"), "device-state-synchronizer", false)
             .flatMap(message -> Mono.justOrEmpty(DeviceMessageUtils.convert(message))
-                .map(DeviceMessage::getDeviceId)), 800, 200, Duration.ofSeconds(2))
+                .map(msg -> Tuples.of(msg.getDeviceId(), msg instanceof DeviceOnlineMessage ? DeviceState.online : DeviceState.offline))), 800, 200, Duration.ofSeconds(2))
             .publishOn(Schedulers.parallel())
-            .concatMap(list -> syncStateBatch(Flux.just(list), false).reduce(Math::addExact))
+            .concatMap(list -> {
+                //同一个设备以最后一次状态为准
+                Map<String, DeviceState> states = new LinkedHashMap<>();
+                for (Tuple2<String, DeviceState> tp : list) {
+                    states.put(tp.getT1(), tp.getT2());
+                }
+                return syncState(states).reduce(0, Math::addExact);
+            })
             .onErrorContinue((err, obj) -> log.error(err.getMessage(), err))
+            .filter(i -> i > 0)
             .subscribe((i) -> log.info("同步设备状态成功:{}", i));
     }
 
@@ -392,42 +584,87 @@ public class LocalDeviceInstanceService extends GenericReactiveCrudService<Devic
                 .flatMap(registry::getDevice)
                 .flatMap(operation -> {
                     Mono<Byte> state = force ? operation.checkState() : operation.getState();
-                    return Mono.zip(
-                        state.defaultIfEmpty(org.jetlinks.core.device.DeviceState.offline),//状态
-                        Mono.just(operation.getDeviceId()), //设备id
-                        operation.getConfig(DeviceConfigKey.isGatewayDevice).defaultIfEmpty(false)//是否为网关设备
-                    );
+                    return state
+                        .defaultIfEmpty(org.jetlinks.core.device.DeviceState.offline)
+                        .map(value -> Tuples.of(operation.getDeviceId(), DeviceState.of(value)));
                 })
-                .collect(Collectors.groupingBy(Tuple2::getT1))
-                .flatMapIterable(Map::entrySet)
-                .flatMap(group -> {
-                    DeviceState state = DeviceState.of(group.getKey());
-                    return Mono.zip(
-                        //批量修改设备状态
-                        getRepository()
-                            .createUpdate()
-                            .set(DeviceInstanceEntity::getState, state)
-                            .where()
-                            .in(DeviceInstanceEntity::getId, group.getValue().stream().map(Tuple3::getT2).collect(Collectors.toList()))
-                            .execute()
-                            .thenReturn(group.getValue().size())//mysql下可能不会返回更新数量
-                        ,
-                        //修改子设备状态
-                        Flux.fromIterable(group.getValue())
-                            .filter(Tuple3::getT3)
-                            .map(Tuple3::getT2)
-                            .collectList()
-                            .filter(CollectionUtils::isNotEmpty)
-                            .flatMap(parents ->
-                                getRepository()
-                                    .createUpdate()
-                                    .set(DeviceInstanceEntity::getState, state)
-                                    .where()
-                                    .in(DeviceInstanceEntity::getParentId, parents)
-                                    .execute())
-                            .defaultIfEmpty(0),
-                        Math::addExact);
-                }));
+                .collectMap(Tuple2::getT1, Tuple2::getT2, LinkedHashMap::new)
+                .flatMapMany(states -> syncState(states, force)));
+    }
+
+    /**
+     * 同步设备状态,只写入和上一次写入的状态不同或者缓存已过期的设备,相同状态的设备合并为一条更新语句
+     *
+     * @param states 设备ID和状态
+     * @return 更新数量
+     */
+    public Flux<Integer> syncState(Map<String, DeviceState> states) {
+        return syncState(states, false);
+    }
+
+    /**
+     * 同步设备状态,相同状态的设备合并为一条更新语句
+     *
+     * @param states 设备ID和状态
+     * @param force  是否强制写入,为<code>true</code>时不和缓存的状态比较,全部写入数据库
+     * @return 更新数量
+     */
+    public Flux<Integer> syncState(Map<String, DeviceState> states, boolean force) {
+        Map<DeviceState, List<String>> changes = new HashMap<>();
+        states.forEach((deviceId, state) -> {
+            if (force || !stateCache.isUnchanged(deviceId, state)) {
+                changes.computeIfAbsent(state, ignore -> new ArrayList<>()).add(deviceId);
+            }
+        });
+        return Flux
+            .fromIterable(changes.entrySet())
+            .flatMap(group -> Mono.zip(
+                //批量修改设备状态
+                updateState(group.getKey(), group.getValue()),
+                //修改子设备状态
+                updateChildrenState(group.getKey(), group.getValue(), force),
+                Math::addExact));
+    }
+
+    private Mono<Integer> updateState(DeviceState state, List<String> deviceIdList) {
+        return getRepository()
+            .createUpdate()
+            .set(DeviceInstanceEntity::getState, state)
+            .where()
+            .in(DeviceInstanceEntity::getId, deviceIdList)
+            .execute()
+            .doOnSuccess(ignore -> stateCache.putState(deviceIdList, state))
+            .thenReturn(deviceIdList.size());//mysql下可能不会返回更新数量
+    }
+
+    private Mono<Integer> updateChildrenState(DeviceState state, List<String> deviceIdList, boolean force) {
+        return Flux
+            .fromIterable(deviceIdList)
+            .filterWhen(this::isGatewayDevice)
+            .collectList()
+            .filter(CollectionUtils::isNotEmpty)
+            .flatMapMany(parents -> createQuery()
+                .select(DeviceInstanceEntity::getId)
+                .in(DeviceInstanceEntity::getParentId, parents)
+                .fetch())
+            .map(DeviceInstanceEntity::getId)
+            .filter(childId -> force || !stateCache.isUnchanged(childId, state))
+            .collectList()
+            .filter(CollectionUtils::isNotEmpty)
+            .flatMap(children -> updateState(state, children))
+            .defaultIfEmpty(0);
+    }
+
+    private Mono<Boolean> isGatewayDevice(String deviceId) {
+        Boolean gateway = stateCache.isGateway(deviceId);
+        if (gateway != null) {
+            return Mono.just(gateway);
+        }
+        return registry
+            .getDevice(deviceId)
+            .flatMap(operator -> operator.getConfig(DeviceConfigKey.isGatewayDevice))
+            .defaultIfEmpty(false)
+            .doOnNext(value -> stateCache.putGateway(deviceId, value));
     }
 
 
@@ -443,6 +680,7 @@ public class LocalDeviceInstanceService extends GenericReactiveCrudService<Devic
                     .set(DeviceInstanceEntity::getState, DeviceState.of(state))
                     .where(DeviceInstanceEntity::getId, childId)
                     .execute()
+                    .doOnSuccess(r -> stateCache.putState(childId, DeviceState.of(state)))
                     .then(registry
                         .getDevice(childId)
                         .flatMap(dev -> dev.setConfig(DeviceConfigKey.parentGatewayId, message.getDeviceId())))
@@ -466,6 +704,7 @@ public class LocalDeviceInstanceService extends GenericReactiveCrudService<Devic
                     .set(DeviceInstanceEntity::getState, DeviceState.of(state))
                     .where(DeviceInstanceEntity::getId, childId)
                     .execute()
+                    .doOnSuccess(r -> stateCache.putState(childId, DeviceState.of(state)))
                     .then());
 
 
@@ -9,10 +9,12 @@ import org.jetlinks.core.device.ProductInfo;
 import org.jetlinks.community.device.entity.DeviceProductEntity;
 import org.jetlinks.community.device.enums.DeviceProductState;
 import org.jetlinks.community.device.events.DeviceProductDeployEvent;
+import org.jetlinks.community.gateway.events.DeviceCredentialChangedEvent;
 import org.reactivestreams.Publisher;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import static org.jetlinks.community.device.enums.DeviceType.gateway;
@@ -44,6 +46,8 @@ public class LocalDeviceProductService extends GenericReactiveCrudService<Device
                 .doOnNext(i -> {
                     log.debug("设备型号：{}发布成功", product.getName());
                     eventPublisher.publishEvent(FastBeanCopier.copy(product, new DeviceProductDeployEvent()));
+                    //产品配置可能包含认证信息
+                    eventPublisher.publishEvent(DeviceCredentialChangedEvent.ofProduct(id));
                 })
             );
     }
@@ -53,14 +57,19 @@ public class LocalDeviceProductService extends GenericReactiveCrudService<Device
         return createUpdate()
             .set(DeviceProductEntity::getState, DeviceProductState.unregistered.getValue())
             .where(DeviceProductEntity::getId, id)
-            .execute();
+            .execute()
+            .doOnSuccess(i -> eventPublisher.publishEvent(DeviceCredentialChangedEvent.ofProduct(id)));
 
     }
 
     @Override
     public Mono<Integer> deleteById(Publisher<String> idPublisher) {
         // TODO: 2019/12/5 校验是否可以删除
-        return super.deleteById(idPublisher);
+        return Flux.from(idPublisher)
+            .collectList()
+            .flatMap(list -> super
+                .deleteById(Flux.fromIterable(list))
+                .doOnSuccess(i -> list.forEach(id -> eventPublisher.publishEvent(DeviceCredentialChangedEvent.ofProduct(id)))));
     }
 
 }
@@ -0,0 +1,117 @@
+package org.jetlinks.community.device.timeseries;
+
+import org.jetlinks.community.timeseries.TimeSeriesMetadata;
+import org.jetlinks.community.timeseries.TimeSeriesMetric;
+import org.jetlinks.community.timeseries.rollup.RollupInterval;
+import org.jetlinks.community.timeseries.rollup.RollupValue;
+import org.jetlinks.core.metadata.PropertyMetadata;
+import org.jetlinks.core.metadata.SimplePropertyMetadata;
+import org.jetlinks.core.metadata.types.DoubleType;
+import org.jetlinks.core.metadata.types.LongType;
+import org.jetlinks.core.metadata.types.StringType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class DevicePropertiesRollupTimeSeriesMetadata implements TimeSeriesMetadata {
+
+    private final static List<PropertyMetadata> metadata = new ArrayList<>();
+
+    private final TimeSeriesMetric metric;
+
+    public DevicePropertiesRollupTimeSeriesMetadata(String productId, RollupInterval interval) {
+        this.metric = DeviceTimeSeriesMetric.devicePropertyRollupMetric(productId, interval);
+    }
+
+    static {
+        {
+            SimplePropertyMetadata property = new SimplePropertyMetadata();
+            property.setId("property");
+            property.setValueType(new StringType());
+            property.setName("属性标识");
+            metadata.add(property);
+        }
+
+        {
+            SimplePropertyMetadata property = new SimplePropertyMetadata();
+            property.setId("deviceId");
+            property.setValueType(new StringType());
+            property.setName("设备ID");
+            metadata.add(property);
+        }
+
+        {
+            SimplePropertyMetadata property = new SimplePropertyMetadata();
+            property.setId("productId");
+            property.setValueType(new StringType());
+            property.setName("型号ID");
+            metadata.add(property);
+        }
+
+        {
+            SimplePropertyMetadata property = new SimplePropertyMetadata();
+            property.setId("orgId");
+            property.setValueType(new StringType());
+            property.setName("组织ID");
+            metadata.add(property);
+        }
+
+        {
+            SimplePropertyMetadata property = new SimplePropertyMetadata();
+            property.setId(RollupValue.MIN);
+            property.setValueType(new DoubleType());
+            property.setName("最小值");
+            metadata.add(property);
+        }
+
+        {
+            SimplePropertyMetadata property = new SimplePropertyMetadata();
+            property.setId(RollupValue.MAX);
+            property.setValueType(new DoubleType());
+            property.setName("最大值");
+            metadata.add(property);
+        }
+
+        {
+            SimplePropertyMetadata property = new SimplePropertyMetadata();
+            property.setId(RollupValue.AVG);
+            property.setValueType(new DoubleType());
+            property.setName("平均值");
+            metadata.add(property);
+        }
+
+        {
+            SimplePropertyMetadata property = new SimplePropertyMetadata();
+            property.setId(RollupValue.SUM);
+            property.setValueType(new DoubleType());
+            property.setName("总和");
+            metadata.add(property);
+        }
+
+        {
+            SimplePropertyMetadata property = new SimplePropertyMetadata();
+            property.setId(RollupValue.COUNT);
+            property.setValueType(new LongType());
+            property.setName("数量");
+            metadata.add(property);
+        }
+
+        {
+            SimplePropertyMetadata property = new SimplePropertyMetadata();
+            property.setId(RollupValue.LAST);
+            property.setValueType(new DoubleType());
+            property.setName("最后的值");
+            metadata.add(property);
+        }
+    }
+
+    @Override
+    public TimeSeriesMetric getMetric() {
+        return metric;
+    }
+
+    @Override
+    public List<PropertyMetadata> getProperties() {
+        return new ArrayList<>(metadata);
+    }
+}
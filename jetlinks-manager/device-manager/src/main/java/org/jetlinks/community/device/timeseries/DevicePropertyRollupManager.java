@@ -0,0 +1,257 @@
+package org.jetlinks.community.device.timeseries;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.hswebframework.ezorm.core.param.QueryParam;
+import org.jetlinks.community.timeseries.TimeSeriesData;
+import org.jetlinks.community.timeseries.TimeSeriesManager;
+import org.jetlinks.community.timeseries.TimeSeriesService;
+import org.jetlinks.community.timeseries.rollup.RollupInterval;
+import org.jetlinks.community.timeseries.rollup.RollupTimeSeriesService;
+import org.jetlinks.community.timeseries.rollup.RollupValue;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.jetlinks.community.device.timeseries.DeviceTimeSeriesMetric.devicePropertyMetric;
+import static org.jetlinks.community.device.timeseries.DeviceTimeSeriesMetric.devicePropertyRollupMetric;
+
+/**
+ * 设备属性降采样管理器,根据设备上报的数值类型属性在内存中持续计算每分钟,每小时,每天的
+ * 最小值,最大值,平均值,总和,数量以及最后的值,在周期结束后写入到对应的降采样时序数据中.
+ * <p>
+ * 周期结束后才到达的数据会作为新的降采样数据写入,聚合查询时会与之前的数据合并.
+ * 内存中的周期数量达到上限时提前写出全部周期,同一个周期会写入多条降采样数据,同样在查询时合并.
+ *
+ * @author zhouhao
+ * @see RollupTimeSeriesService
+ * @since 1.0
+ */
+@Component
+@Slf4j
+@ConfigurationProperties(prefix = "device.property.rollup")
+public class DevicePropertyRollupManager {
+
+    //降采样数据最早时间的缓存时间,旧的数据可能被删除
+    static final long START_TIME_CACHE_TIME = Duration.ofMinutes(10).toMillis();
+
+    static final Set<String> dimensions = new HashSet<>(Arrays.asList("deviceId", "productId", "orgId", "property"));
+
+    private final TimeSeriesManager timeSeriesManager;
+
+    @Getter
+    @Setter
+    private boolean enabled = false;
+
+    @Getter
+    @Setter
+    private List<RollupInterval> intervals = new ArrayList<>(Arrays.asList(RollupInterval.values()));
+
+    //检查周期是否结束的间隔
+    @Getter
+    @Setter
+    private Duration flushInterval = Duration.ofSeconds(10);
+
+    //周期结束后等待延迟到达的数据的时间
+    @Getter
+    @Setter
+    private Duration flushDelay = Duration.ofSeconds(5);
+
+    //内存中最大的周期数量
+    @Getter
+    @Setter
+    private int maxBuckets = 100000;
+
+    private final Map<RollupKey, RollupValue> buckets = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    //降采样数据最早的时间,key为降采样时序指标ID
+    private final Map<String, StartTime> startTimes = new ConcurrentHashMap<>();
+
+    private Disposable disposable;
+
+    public DevicePropertyRollupManager(TimeSeriesManager timeSeriesManager) {
+        this.timeSeriesManager = timeSeriesManager;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        disposable = Flux.interval(flushInterval)
+            .onBackpressureDrop()
+            .concatMap(ignore -> flush(false)
+                .onErrorResume(err -> {
+                    log.error("flush device property rollup error", err);
+                    return Mono.empty();
+                }))
+            .subscribe();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (disposable != null) {
+            disposable.dispose();
+        }
+        flush(true).block(Duration.ofSeconds(10));
+    }
+
+    /**
+     * 获取设备属性时序服务,聚合查询时自动使用降采样数据
+     *
+     * @param productId 型号ID
+     * @return 时序服务
+     */
+    public TimeSeriesService getService(String productId) {
+        TimeSeriesService raw = timeSeriesManager.getService(devicePropertyMetric(productId));
+        if (!enabled) {
+            return raw;
+        }
+        Map<RollupInterval, TimeSeriesService> rollups = new EnumMap<>(RollupInterval.class);
+        for (RollupInterval interval : intervals) {
+            rollups.put(interval, timeSeriesManager.getService(devicePropertyRollupMetric(productId, interval)));
+        }
+        return new RollupTimeSeriesService(raw, rollups, "numberValue", dimensions, interval -> getStartTime(productId, interval));
+    }
+
+    /**
+     * 获取降采样数据中最早的时间,用于判断查询的时间范围是否都已经有降采样结果
+     *
+     * @param productId 型号ID
+     * @param interval  降采样周期
+     * @return 最早的时间, 没有数据时返回空
+     */
+    protected Mono<Long> getStartTime(String productId, RollupInterval interval) {
+        String metric = devicePropertyRollupMetric(productId, interval).getId();
+        StartTime cached = startTimes.get(metric);
+        long now = System.currentTimeMillis();
+        if (cached != null && now - cached.loadTime < START_TIME_CACHE_TIME) {
+            return Mono.just(cached.time);
+        }
+        QueryParam param = new QueryParam();
+        param.orderBy("timestamp").asc();
+        param.doPaging(0, 1);
+        return timeSeriesManager
+            .getService(devicePropertyRollupMetric(productId, interval))
+            .query(param)
+            .next()
+            .map(TimeSeriesData::getTimestamp)
+            .doOnNext(time -> startTimes.put(metric, new StartTime(time, now)));
+    }
+
+    /**
+     * 注册降采样时序数据元数据
+     *
+     * @param productId 型号ID
+     * @return 注册结果
+     */
+    public Mono<Void> registerMetadata(String productId) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return Flux.fromIterable(intervals)
+            .flatMap(interval -> timeSeriesManager.registerMetadata(DeviceTimeSeriesMetadata.propertiesRollup(productId, interval)))
+            .then();
+    }
+
+    /**
+     * 接收数值类型的属性值
+     *
+     * @param productId 型号ID
+     * @param orgId     组织ID
+     * @param deviceId  设备ID
+     * @param property  属性
+     * @param timestamp 时间
+     * @param value     值
+     */
+    public void accept(String productId, String orgId, String deviceId, String property, long timestamp, Number value) {
+        if (!enabled || value == null || productId == null) {
+            return;
+        }
+        double val = value.doubleValue();
+        for (RollupInterval interval : intervals) {
+            //在compute中写入,和flush中的remove互斥,周期被移除后写入的数据会进入新的周期
+            buckets.compute(
+                new RollupKey(productId, orgId, deviceId, property, interval, interval.getBucketStart(timestamp)),
+                (key, rollup) -> {
+                    if (rollup == null) {
+                        rollup = new RollupValue();
+                    }
+                    rollup.accept(val, timestamp);
+                    return rollup;
+                });
+        }
+        if (buckets.size() >= maxBuckets && flushing.compareAndSet(false, true)) {
+            log.warn("device property rollup buckets exceeded {}, flush all", maxBuckets);
+            flush(true)
+                .doFinally(s -> flushing.set(false))
+                .subscribe(null, err -> log.error("flush device property rollup error", err));
+        }
+    }
+
+    /**
+     * 写出已经结束的周期
+     *
+     * @param all 是否写出全部周期(包括未结束的)
+     * @return 写出结果
+     */
+    protected Mono<Void> flush(boolean all) {
+        long now = System.currentTimeMillis();
+        long delay = flushDelay.toMillis();
+        return Flux.fromIterable(buckets.keySet())
+            .filter(key -> all || key.getBucketStart() + key.getInterval().getInterval().toMillis() + delay <= now)
+            //移除后不会再有数据写入此周期
+            .flatMap(key -> Mono.justOrEmpty(buckets.remove(key))
+                .map(value -> {
+                    Map<String, Object> data = value.toMap();
+                    data.put("productId", key.getProductId());
+                    data.put("orgId", key.getOrgId());
+                    data.put("deviceId", key.getDeviceId());
+                    data.put("property", key.getProperty());
+                    return TimeSeriesData.of(key.getBucketStart(), data);
+                })
+                .flatMap(data -> timeSeriesManager
+                    .getService(devicePropertyRollupMetric(key.getProductId(), key.getInterval()))
+                    .save(data)))
+            .then();
+    }
+
+    @AllArgsConstructor
+    static class StartTime {
+        private final long time;
+
+        private final long loadTime;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    static class RollupKey {
+        private final String productId;
+
+        private final String orgId;
+
+        private final String deviceId;
+
+        private final String property;
+
+        private final RollupInterval interval;
+
+        private final long bucketStart;
+    }
+
+}
@@ -2,6 +2,7 @@ package org.jetlinks.community.device.timeseries;
 
 import org.jetlinks.core.metadata.EventMetadata;
 import org.jetlinks.community.timeseries.TimeSeriesMetadata;
+import org.jetlinks.community.timeseries.rollup.RollupInterval;
 
 /**
  * 设备相关时序数据库元数据定义
@@ -21,6 +22,17 @@ public interface DeviceTimeSeriesMetadata {
         return new DevicePropertiesTimeSeriesMetadata(productId);
     }
 
+    /**
+     * 获取设备属性降采样时序数据元数据
+     *
+     * @param productId 型号ID
+     * @param interval  降采样周期
+     * @return 元数据
+     */
+    static TimeSeriesMetadata propertiesRollup(String productId, RollupInterval interval) {
+        return new DevicePropertiesRollupTimeSeriesMetadata(productId, interval);
+    }
+
     /**
      * 获取设备事件时序数据元数据
      *
@@ -3,6 +3,7 @@ package org.jetlinks.community.device.timeseries;
 import org.jetlinks.core.device.DeviceProductOperator;
 import org.jetlinks.core.metadata.EventMetadata;
 import org.jetlinks.community.timeseries.TimeSeriesMetric;
+import org.jetlinks.community.timeseries.rollup.RollupInterval;
 
 /**
  * 设备时序数据度量标识
@@ -36,6 +37,17 @@ public interface DeviceTimeSeriesMetric {
         return TimeSeriesMetric.of("properties_".concat(productId));
     }
 
+    /**
+     * 获取指定设备型号的设备属性降采样度量标识
+     *
+     * @param productId 型号ID
+     * @param interval  降采样周期
+     * @return 度量标识
+     */
+    static TimeSeriesMetric devicePropertyRollupMetric(String productId, RollupInterval interval) {
+        return TimeSeriesMetric.of("rollup_properties_".concat(interval.getId()).concat("_").concat(productId));
+    }
+
     /**
      * 获取指定设备型号的设备操作日志度量标识
      *
@@ -0,0 +1,154 @@
+package org.jetlinks.community.device.service;
+
+import org.jetlinks.community.device.enums.DeviceState;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceStateCacheTest {
+
+    @Test
+    void testCount() {
+        DeviceStateCache cache = new DeviceStateCache();
+        cache.putGroup("d1", "p1", "o1");
+        cache.putGroup("d2", "p1", "o2");
+        cache.putGroup("d3", "p2", "o1");
+        cache.putState(Arrays.asList("d1", "d2", "d3"), DeviceState.offline);
+
+        assertEquals(3, cache.count(null, null, null));
+        assertEquals(2, cache.count("p1", null, DeviceState.offline));
+        assertEquals(2, cache.count(null, "o1", null));
+        assertEquals(1, cache.count("p1", "o2", DeviceState.offline));
+        assertEquals(0, cache.count(null, null, DeviceState.online));
+
+        //状态变化时修改数量
+        cache.putState("d1", DeviceState.online);
+        assertEquals(1, cache.count("p1", null, DeviceState.online));
+        assertEquals(1, cache.count("p1", null, DeviceState.offline));
+
+        //删除设备
+        cache.remove("d1");
+        assertEquals(0, cache.count(null, null, DeviceState.online));
+        assertEquals(2, cache.count(null, null, null));
+        assertNull(cache.getState("d1"));
+    }
+
+    @Test
+    void testPutGroup() {
+        DeviceStateCache cache = new DeviceStateCache();
+        cache.putGroup("d1", "p1", "o1");
+        cache.putState("d1", DeviceState.online);
+
+        //只修改机构,产品不变
+        cache.putGroup("d1", null, "o2");
+        assertEquals(0, cache.count(null, "o1", null));
+        assertEquals(1, cache.count("p1", "o2", DeviceState.online));
+
+        //修改产品
+        cache.putGroup("d1", "p2", null);
+        assertEquals(0, cache.count("p1", null, null));
+        assertEquals(1, cache.count("p2", "o2", DeviceState.online));
+    }
+
+    @Test
+    void testInitState() {
+        DeviceStateCache cache = new DeviceStateCache();
+        cache.putState("d1", DeviceState.online);
+
+        //不覆盖已经同步的状态
+        cache.initState("d1", DeviceState.notActive);
+        cache.initState("d2", DeviceState.notActive);
+        assertEquals(DeviceState.online, cache.getState("d1"));
+        assertEquals(DeviceState.notActive, cache.getState("d2"));
+    }
+
+    @Test
+    void testGateway() {
+        DeviceStateCache cache = new DeviceStateCache();
+        cache.putState("d1", DeviceState.online);
+        assertNull(cache.isGateway("d1"));
+
+        cache.putGateway("d1", true);
+        assertTrue(cache.isGateway("d1"));
+        assertEquals(DeviceState.online, cache.getState("d1"));
+
+        cache.invalidate("d1");
+        assertNull(cache.isGateway("d1"));
+        assertEquals(DeviceState.online, cache.getState("d1"));
+    }
+
+    @Test
+    void testGrow() {
+        DeviceStateCache cache = new DeviceStateCache();
+        for (int i = 0; i < 3000; i++) {
+            cache.putGroup("d" + i, "p" + (i % 3), null);
+            cache.putState("d" + i, DeviceState.offline);
+        }
+        assertEquals(3000, cache.size());
+        assertEquals(1000, cache.count("p1", null, DeviceState.offline));
+        assertEquals(DeviceState.offline, cache.getState("d2999"));
+    }
+
+    @Test
+    void testReconciliation() {
+        DeviceStateCache cache = new DeviceStateCache();
+        cache.putGroup("d1", "p1", "o1");
+        cache.putGroup("d2", "p1", "o1");
+        cache.putState(Arrays.asList("d1", "d2"), DeviceState.offline);
+
+        //其他节点修改了设备状态并新增了设备
+        DeviceStateCache.Reconciliation reconciliation = cache.reconcile();
+        reconciliation.add("d1", "p1", "o1", DeviceState.online);
+        reconciliation.add("d2", "p1", "o1", DeviceState.offline);
+        reconciliation.add("d3", "p2", "o1", DeviceState.notActive);
+
+        reconciliation.complete();
+        assertEquals(DeviceState.online, cache.getState("d1"));
+        assertEquals(1, cache.count("p1", null, DeviceState.online));
+        assertEquals(1, cache.count("p1", null, DeviceState.offline));
+        assertEquals(1, cache.count("p2", null, DeviceState.notActive));
+
+        //数量一致
+        reconciliation = cache.reconcile();
+        reconciliation.add("p1", "o1", DeviceState.online, 1);
+        reconciliation.add("p1", "o1", DeviceState.offline, 1);
+        reconciliation.add("p2", "o1", DeviceState.notActive, 1);
+        assertEquals(0, reconciliation.complete());
+
+        //其他节点删除了设备
+        reconciliation = cache.reconcile();
+        reconciliation.add("p1", "o1", DeviceState.online, 1);
+        assertEquals(2, reconciliation.complete());
+        assertEquals(1, cache.count(null, null, null));
+    }
+
+    @Test
+    void testExpire() {
+        DeviceStateCache cache = new DeviceStateCache();
+        assertFalse(cache.isUnchanged("d1", DeviceState.online));
+
+        cache.putState("d1", DeviceState.online);
+        cache.putState("d2", DeviceState.online);
+        assertTrue(cache.isUnchanged("d1", DeviceState.online));
+        assertFalse(cache.isUnchanged("d1", DeviceState.offline));
+
+        //对账后状态过期,需要重新写入
+        DeviceStateCache.Reconciliation reconciliation = cache.reconcile();
+        assertFalse(cache.isUnchanged("d1", DeviceState.online));
+
+        //对账时加载的状态不过期
+        reconciliation.add("d2", null, null, DeviceState.online);
+        reconciliation.complete();
+        assertTrue(cache.isUnchanged("d2", DeviceState.online));
+
+        //网关缓存不影响过期标记
+        cache.putGateway("d1", false);
+        assertFalse(cache.isUnchanged("d1", DeviceState.online));
+        assertEquals(DeviceState.online, cache.getState("d1"));
+
+        cache.putState("d1", DeviceState.online);
+        assertTrue(cache.isUnchanged("d1", DeviceState.online));
+    }
+}
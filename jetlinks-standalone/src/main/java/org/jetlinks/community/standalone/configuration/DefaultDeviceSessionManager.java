@@ -14,11 +14,13 @@ import org.slf4j.LoggerFactory;
 import reactor.core.publisher.*;
 import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
@@ -30,10 +32,16 @@ import java.util.stream.Collectors;
  */
 public class DefaultDeviceSessionManager implements DeviceSessionManager {
 
-    private final Map<String, DeviceSession> repository = new ConcurrentHashMap<>(4096);
+    //停止服务时并发写入离线的数量
+    private static final int SHUTDOWN_OFFLINE_CONCURRENCY = 256;
+
+    private final DeviceSessionStore repository = new DeviceSessionStore(Runtime.getRuntime().availableProcessors() * 4);
 
     private final Map<String, Map<String, ChildrenDeviceSession>> children = new ConcurrentHashMap<>(4096);
 
+    //子设备ID -> 子设备会话,子设备会话中包含了父设备会话
+    private final Map<String, ChildrenRef> childrenIndex = new ConcurrentHashMap<>(4096);
+
     @Getter
     @Setter
     private Logger log = LoggerFactory.getLogger(DefaultDeviceSessionManager.class);
@@ -60,14 +68,46 @@ public class DefaultDeviceSessionManager implements DeviceSessionManager {
 
     private String serverId;
 
-    private Queue<Runnable> scheduleJobQueue = new ArrayDeque<>();
+    //延迟执行的任务,如关闭连接等
+    private SessionJobQueue scheduleJobQueue;
 
-    private EmitterProcessor<DeviceSession> unregisterHandler = EmitterProcessor.create(Integer.MAX_VALUE, false);
+    //延迟任务队列最大长度,队列已满时直接执行
+    @Getter
+    @Setter
+    private int scheduleJobQueueSize = 100000;
 
-    private FluxSink<DeviceSession> unregisterSession = unregisterHandler.sink();
+    //每次检查最多执行的延迟任务数量
+    @Getter
+    @Setter
+    private int scheduleJobDrainBudget = 10000;
 
     private Map<String, LongAdder> transportCounter = new ConcurrentHashMap<>();
 
+    //会话过期检查时间轮,只处理到达检查时间的会话
+    private final SessionTimingWheel<DeviceSession> timingWheel = new SessionTimingWheel<>(Duration.ofSeconds(1), 512);
+
+    //会话检查间隔,会话在最后一次心跳之后经过此时间才会进行检查
+    @Getter
+    @Setter
+    private Duration sessionCheckInterval = Duration.ofSeconds(30);
+
+    //会话检查是否正在执行,上一次检查未完成时跳过本次检查
+    private final AtomicBoolean checking = new AtomicBoolean();
+
+    //设备频繁上下线抑制配置
+    @Getter
+    @Setter
+    private FlapDampingProperties flapDamping = new FlapDampingProperties();
+
+    private DeviceFlapDamper flapDamper;
+
+    //停止服务时等待设备全部下线的最大时间
+    @Getter
+    @Setter
+    private Duration shutdownTimeout = Duration.ofSeconds(20);
+
+    private volatile boolean shuttingDown;
+
     @Getter
     @Setter
     private Map<String, Long> transportLimits = new ConcurrentHashMap<>();
@@ -77,10 +117,61 @@ public class DefaultDeviceSessionManager implements DeviceSessionManager {
     }
 
     public void shutdown() {
-        repository.values()
-            .parallelStream()
-            .map(DeviceSession::getId)
-            .forEach(this::unregister);
+        shuttingDown = true;
+        long startWith = System.currentTimeMillis();
+        //延迟中的下线立即执行
+        if (flapDamper != null) {
+            flapDamper.dispose();
+        }
+        List<List<DeviceSession>> shards = repository.removeAll();
+        try {
+            long remaining = shutdownTimeout.toMillis() - (System.currentTimeMillis() - startWith);
+            Flux.fromIterable(shards)
+                .flatMap(this::shutdownSessions, Runtime.getRuntime().availableProcessors())
+                .then()
+                .block(Duration.ofMillis(Math.max(1, remaining)));
+        } catch (Exception e) {
+            log.warn("offline device sessions timeout after {}ms", System.currentTimeMillis() - startWith, e);
+        }
+        if (scheduleJobQueue != null) {
+            scheduleJobQueue.drainAll();
+        }
+        log.info("shutdown device session manager use {}ms", System.currentTimeMillis() - startWith);
+    }
+
+    //批量关闭一个分片中的会话,写入离线后统一发送离线通知
+    private Mono<Void> shutdownSessions(List<DeviceSession> sessions) {
+        List<DeviceSession> offline = new ArrayList<>(sessions.size());
+        for (DeviceSession session : sessions) {
+            transportCounter
+                .computeIfAbsent(session.getTransport().getId(), transport -> new LongAdder())
+                .decrement();
+            offline.add(session);
+            offline.addAll(removeAllChildren(session.getDeviceId()));
+        }
+        for (DeviceSession session : offline) {
+            try {
+                session.close();
+            } catch (Exception e) {
+                log.warn("close device [{}] session error", session.getDeviceId(), e);
+            }
+        }
+        return Flux
+            .fromIterable(offline)
+            .flatMap(session -> session
+                .getOperator()
+                .offline()
+                .onErrorResume(err -> {
+                    log.error("offline device [{}] error", session.getDeviceId(), err);
+                    return Mono.empty();
+                }), SHUTDOWN_OFFLINE_CONCURRENCY)
+            .then(Mono.fromRunnable(() -> {
+                if (onDeviceUnRegister.hasDownstreams()) {
+                    for (DeviceSession session : offline) {
+                        unregisterListener.next(session);
+                    }
+                }
+            }));
     }
 
     @Override
@@ -101,15 +192,33 @@ public class DefaultDeviceSessionManager implements DeviceSessionManager {
         return counter == null ? 0 : counter.longValue();
     }
 
+    private void scheduleCheck(DeviceSession session) {
+        long now = System.currentTimeMillis();
+        long interval = sessionCheckInterval.toMillis();
+        long lastPingTime = session.lastPingTime();
+        //最近有心跳则从心跳时间开始计算,否则会话自身的超时时间比检查间隔长,在下一个间隔再检查
+        long deadline = now - lastPingTime < interval ? lastPingTime + interval : now + interval;
+        timingWheel.schedule(session, deadline);
+    }
+
     public Mono<Long> checkSession() {
         AtomicLong startWith = new AtomicLong();
-        return Flux.fromIterable(repository.values())
-            .distinct()
+        return Flux
+            .defer(() -> {
+                List<DeviceSession> sessions = new ArrayList<>();
+                synchronized (timingWheel) {
+                    timingWheel.advance(System.currentTimeMillis(), sessions::add);
+                }
+                return Flux.fromIterable(sessions);
+            })
+            //忽略已经注销或者被替换的会话
+            .filter(session -> repository.get(session.getDeviceId()) == session)
             .publishOn(Schedulers.parallel())
             .filterWhen(session -> {
                 if (!session.isAlive()) {
                     return Mono.just(true);
                 }
+                scheduleCheck(session);
                 return session
                     .getOperator()
                     .getConnectionServerId()
@@ -136,22 +245,16 @@ public class DefaultDeviceSessionManager implements DeviceSessionManager {
             })
             .doOnError(err -> log.error(err.getMessage(), err))
             .doOnSubscribe(subscription -> {
-                log.info("start check session");
+                log.trace("start check session");
                 startWith.set(System.currentTimeMillis());
             })
             .doFinally(s -> {
                 //上报session数量
                 transportCounter.forEach((transport, number) -> gatewayServerMonitor.metrics().reportSession(transport, number.intValue()));
-                //执行任务
-                for (Runnable runnable = scheduleJobQueue.poll(); runnable != null; runnable = scheduleJobQueue.poll()) {
-                    try {
-                        runnable.run();
-                    } catch (Exception e) {
-                        log.error(e.getMessage(), e);
-                    }
-                }
-                if (log.isInfoEnabled()) {
-                    log.info("check session complete,current server sessions:{}.use time:{}ms.",
+                //执行任务,剩余的任务下一次再执行
+                scheduleJobQueue.drain();
+                if (log.isTraceEnabled()) {
+                    log.trace("check session complete,current server sessions:{}.use time:{}ms.",
                         transportCounter,
                         System.currentTimeMillis() - startWith.get());
 
@@ -166,38 +269,19 @@ public class DefaultDeviceSessionManager implements DeviceSessionManager {
             executorService = Executors.newSingleThreadScheduledExecutor();
         }
         serverId = gatewayServerMonitor.getCurrentServerId();
-
-        //每30秒检查一次设备连接情况
-        executorService.scheduleAtFixedRate(() -> this.checkSession().subscribe(), 10, 30, TimeUnit.SECONDS);
-
-        unregisterHandler
-            .subscribeOn(Schedulers.parallel())
-            .flatMap(session -> {
-                //注册中心下线
-                return session.getOperator()
-                    .offline()
-                    .doFinally(s -> {
-                        if (onDeviceUnRegister.hasDownstreams()) {
-                            unregisterListener.next(session);
-                        }
-                    })
-                    .onErrorContinue((err, obj) -> log.error(err.getMessage(), err))
-                    .then(Mono.justOrEmpty(children.remove(session.getDeviceId()))
-                        .flatMapIterable(Map::values)
-                        .flatMap(childrenDeviceSession -> childrenDeviceSession
-                            .getOperator()
-                            .offline()
-                            .doFinally(s -> {
-                                if (onDeviceUnRegister.hasDownstreams()) {
-                                    unregisterListener.next(childrenDeviceSession);
-                                }
-                                scheduleJobQueue.add(childrenDeviceSession::close);
-                            })
-                        ).then());
-
-            })
-            .onErrorContinue((err, obj) -> log.error(err.getMessage(), err))
-            .subscribe();
+        scheduleJobQueue = new SessionJobQueue(scheduleJobQueueSize, scheduleJobDrainBudget);
+        flapDamper = new DeviceFlapDamper(flapDamping);
+
+        //每秒推进一次时间轮,检查到达检查时间的设备连接
+        executorService.scheduleAtFixedRate(() -> {
+            if (!checking.compareAndSet(false, true)) {
+                log.debug("previous session check is still running, skip this tick");
+                return;
+            }
+            this.checkSession()
+                .doFinally(s -> checking.set(false))
+                .subscribe();
+        }, 1, 1, TimeUnit.SECONDS);
     }
 
 
@@ -213,10 +297,54 @@ public class DefaultDeviceSessionManager implements DeviceSessionManager {
 
     @Override
     public ChildrenDeviceSession getSession(String deviceId, String childrenId) {
-        return Optional.ofNullable(children.get(deviceId))
-            .map(map -> map.get(childrenId))
-            .filter(ChildrenDeviceSession::isAlive)
-            .orElse(null);
+        ChildrenRef ref = childrenIndex.get(childrenId);
+        if (ref == null || !ref.parentId.equals(deviceId) || !ref.session.isAlive()) {
+            return null;
+        }
+        return ref.session;
+    }
+
+    private void addChildren(String deviceId, ChildrenDeviceSession session) {
+        String childrenId = session.getDeviceId();
+        children.compute(deviceId, (parentId, map) -> {
+            if (map == null) {
+                map = new ConcurrentHashMap<>();
+            }
+            map.put(childrenId, session);
+            ChildrenRef old = childrenIndex.put(childrenId, new ChildrenRef(parentId, session));
+            //子设备切换了网关设备
+            if (old != null && !old.parentId.equals(parentId)) {
+                Optional.ofNullable(children.get(old.parentId))
+                    .ifPresent(oldMap -> oldMap.remove(childrenId, old.session));
+            }
+            return map;
+        });
+    }
+
+    private ChildrenDeviceSession removeChildren(String deviceId, String childrenId) {
+        ChildrenDeviceSession[] removed = new ChildrenDeviceSession[1];
+        children.computeIfPresent(deviceId, (parentId, map) -> {
+            removed[0] = map.remove(childrenId);
+            if (removed[0] != null) {
+                removeChildrenIndex(removed[0]);
+            }
+            return map.isEmpty() ? null : map;
+        });
+        return removed[0];
+    }
+
+    private Collection<ChildrenDeviceSession> removeAllChildren(String deviceId) {
+        List<ChildrenDeviceSession> removed = new ArrayList<>();
+        children.computeIfPresent(deviceId, (parentId, map) -> {
+            removed.addAll(map.values());
+            removed.forEach(this::removeChildrenIndex);
+            return null;
+        });
+        return removed;
+    }
+
+    private void removeChildrenIndex(ChildrenDeviceSession session) {
+        childrenIndex.computeIfPresent(session.getDeviceId(), (id, ref) -> ref.session == session ? null : ref);
     }
 
     @Override
@@ -234,7 +362,7 @@ public class DefaultDeviceSessionManager implements DeviceSessionManager {
                     .online(session.getServerId().orElse(serverId), session.getId())
                     .then(deviceOperator.setConfig(DeviceConfigKey.parentGatewayId, deviceId))
                     .thenReturn(new ChildrenDeviceSession(childrenDeviceId, session, deviceOperator)))
-                .doOnSuccess(s -> children.computeIfAbsent(deviceId, __ -> new ConcurrentHashMap<>()).put(childrenDeviceId, s));
+                .doOnNext(s -> addChildren(deviceId, s));
         });
 
     }
@@ -242,8 +370,7 @@ public class DefaultDeviceSessionManager implements DeviceSessionManager {
     @Override
     public Mono<ChildrenDeviceSession> unRegisterChildren(String deviceId, String childrenId) {
 
-        return Mono.justOrEmpty(children.get(deviceId))
-            .flatMap(map -> Mono.justOrEmpty(map.remove(childrenId)))
+        return Mono.fromSupplier(() -> removeChildren(deviceId, childrenId))
             .doOnNext(ChildrenDeviceSession::close)
             .flatMap(session -> session.getOperator()
                 .offline()
@@ -258,16 +385,13 @@ public class DefaultDeviceSessionManager implements DeviceSessionManager {
 
     @Override
     public DeviceSession register(DeviceSession session) {
-        DeviceSession old = repository.put(session.getDeviceId(), session);
-        if (old != null) {
-            //清空sessionId不同
-            if (!old.getId().equals(old.getDeviceId())) {
-                repository.remove(old.getId());
-            }
-        }
-        if (!session.getId().equals(session.getDeviceId())) {
-            repository.put(session.getId(), session);
+        //停止服务中,不再接受新的连接
+        if (shuttingDown) {
+            log.warn("server is shutting down,reject device [{}] session", session.getDeviceId());
+            session.close();
+            return null;
         }
+        DeviceSession old = repository.put(session);
         if (null != old) {
             //1. 可能是多个设备使用了相同的id.
             //2. 可能是同一个设备,注销后立即上线,由于种种原因,先处理了上线后处理了注销逻辑.
@@ -280,17 +404,23 @@ public class DefaultDeviceSessionManager implements DeviceSessionManager {
                 .computeIfAbsent(session.getTransport().getId(), transport -> new LongAdder())
                 .increment();
         }
+        if (old != session) {
+            scheduleCheck(session);
+        }
+        //设备在延迟下线期间重新连接,取消下线并且不再发送上线通知
+        boolean dampened = old == null && flapDamper.online(session.getDeviceId());
 
         //注册中心上线
         session.getOperator()
             .online(session.getServerId().orElse(serverId), session.getId(), session.getClientAddress().map(String::valueOf).orElse(null))
             .doFinally(s -> {
                 //通知
-                if (onDeviceRegister.hasDownstreams()) {
+                if (!dampened && onDeviceRegister.hasDownstreams()) {
                     registerListener.next(session);
                 }
             })
-            .subscribe();
+            .subscribe(ignore -> {
+            }, err -> log.error("online device [{}] error", session.getDeviceId(), err));
 
         return old;
     }
@@ -311,21 +441,41 @@ public class DefaultDeviceSessionManager implements DeviceSessionManager {
 
     @Override
     public Flux<DeviceSession> getAllSession() {
-        return Flux
-            .fromIterable(repository.values())
-            .distinct(DeviceSession::getDeviceId);
+        return Flux.fromIterable(repository.values());
+    }
+
+    /**
+     * @return 会话索引内存占用统计
+     */
+    public List<DeviceSessionStore.MemoryUsage> getMemoryUsage() {
+        return repository.getMemoryUsage();
+    }
+
+    public int getSessionCount() {
+        return repository.size();
+    }
+
+    /**
+     * @return 延迟任务队列统计
+     */
+    public Map<String, Object> getScheduleJobStatistics() {
+        return scheduleJobQueue == null ? Collections.emptyMap() : scheduleJobQueue.getStatistics();
+    }
+
+    /**
+     * @return 设备频繁上下线抑制统计
+     */
+    public Map<String, Object> getFlapStatistics() {
+        return flapDamper == null ? Collections.emptyMap() : flapDamper.getStatistics();
     }
 
     @Override
     public boolean sessionIsAlive(String deviceId) {
-        return getSession(deviceId) != null
-            ||
-            children.values()
-                .stream()
-                .anyMatch(r -> {
-                    DeviceSession session = r.get(deviceId);
-                    return session != null && session.isAlive();
-                });
+        if (getSession(deviceId) != null) {
+            return true;
+        }
+        ChildrenRef ref = childrenIndex.get(deviceId);
+        return ref != null && ref.session.isAlive();
     }
 
     @Override
@@ -333,23 +483,63 @@ public class DefaultDeviceSessionManager implements DeviceSessionManager {
         DeviceSession session = repository.remove(idOrDeviceId);
 
         if (null != session) {
-            if (!session.getId().equals(session.getDeviceId())) {
-                repository.remove(session.getId().equals(idOrDeviceId) ? session.getDeviceId() : session.getId());
-            }
             //本地计数
             transportCounter
                 .computeIfAbsent(session.getTransport().getId(), transport -> new LongAdder())
                 .decrement();
-            // TODO: 2019/12/26 monitor
-            if (unregisterHandler.getPending() > 0) {
-                log.info("pending unregister session:{}", unregisterHandler.getPending());
+            //子设备会话依赖网关设备的连接,立即从本地移除并关闭
+            Collection<ChildrenDeviceSession> childrenSessions = removeAllChildren(session.getDeviceId());
+            //注册中心下线.开启抑制时延迟执行,延迟期间重新连接则取消
+            //子设备跟随网关设备一起延迟下线,网关设备重新连接时一起取消,子设备由网关重新注册
+            flapDamper.offline(session, () -> {
+                if (repository.get(session.getDeviceId()) != null) {
+                    return;
+                }
+                offline(session, () -> {
+                    //通知
+                    if (onDeviceUnRegister.hasDownstreams()) {
+                        unregisterListener.next(session);
+                    }
+                });
+                for (ChildrenDeviceSession childrenDeviceSession : childrenSessions) {
+                    //延迟期间子设备已经通过其他网关重新注册
+                    if (childrenIndex.containsKey(childrenDeviceSession.getDeviceId())) {
+                        continue;
+                    }
+                    offline(childrenDeviceSession, () -> {
+                        if (onDeviceUnRegister.hasDownstreams()) {
+                            unregisterListener.next(childrenDeviceSession);
+                        }
+                    });
+                }
+            });
+            for (ChildrenDeviceSession childrenDeviceSession : childrenSessions) {
+                scheduleJobQueue.add(childrenDeviceSession::close);
             }
-            //通知
-            unregisterSession.next(session);
             //加入关闭连接队列
             scheduleJobQueue.add(session::close);
         }
         return session;
     }
 
-}
\ No newline at end of file
+    //注册中心下线,完成后执行回调
+    private void offline(DeviceSession session, Runnable callback) {
+        session.getOperator()
+            .offline()
+            .doFinally(s -> callback.run())
+            .subscribe(ignore -> {
+            }, err -> log.error("offline device [{}] error", session.getDeviceId(), err));
+    }
+
+    private static class ChildrenRef {
+        private final String parentId;
+
+        private final ChildrenDeviceSession session;
+
+        private ChildrenRef(String parentId, ChildrenDeviceSession session) {
+            this.parentId = parentId;
+            this.session = session;
+        }
+    }
+
+}
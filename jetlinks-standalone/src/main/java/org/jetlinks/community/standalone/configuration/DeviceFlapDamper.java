@@ -0,0 +1,239 @@
+package org.jetlinks.community.standalone.configuration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetlinks.core.device.DeviceConfigKey;
+import org.jetlinks.core.server.session.DeviceSession;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 设备频繁上下线抑制.
+ * <p>
+ * 设备断开连接后延迟执行下线,在延迟期间重新连接则取消下线,同时不再发送上线事件.
+ * 统计窗口内频繁重连的设备,延迟时间按指数增长.
+ *
+ * @author zhouhao
+ * @see FlapDampingProperties
+ * @since 1.0
+ */
+@Slf4j
+class DeviceFlapDamper implements Disposable {
+
+    private final FlapDampingProperties properties;
+
+    private final Map<String, FlapState> states = new ConcurrentHashMap<>();
+
+    //延迟执行的下线数量
+    private final LongAdder heldOffline = new LongAdder();
+
+    //被抑制的上下线事件数量
+    private final LongAdder suppressedEvents = new LongAdder();
+
+    //延迟时间超过宽限期的下线数量
+    private final LongAdder penalized = new LongAdder();
+
+    private final Disposable cleaner;
+
+    DeviceFlapDamper(FlapDampingProperties properties) {
+        this.properties = properties;
+        this.cleaner = properties.isEnabled()
+            ? Flux.interval(properties.getFlapWindow(), Schedulers.parallel()).subscribe(ignore -> cleanup())
+            : Disposable.disposed();
+    }
+
+    /**
+     * 设备下线,可能延迟执行
+     *
+     * @param session 会话
+     * @param offline 下线操作
+     */
+    void offline(DeviceSession session, Runnable offline) {
+        if (!properties.isEnabled()) {
+            offline.run();
+            return;
+        }
+        PendingOffline[] holder = new PendingOffline[2];
+        int[] flaps = new int[1];
+        //在compute中设置,避免与清理任务并发时状态丢失
+        states.compute(session.getDeviceId(), (deviceId, state) -> {
+            if (state == null) {
+                state = new FlapState();
+            }
+            synchronized (state) {
+                holder[0] = state.pending;
+                holder[1] = state.pending = new PendingOffline(state, offline);
+                flaps[0] = state.getFlaps(System.currentTimeMillis());
+            }
+            return state;
+        });
+        if (holder[0] != null) {
+            holder[0].fire();
+        }
+        PendingOffline pending = holder[1];
+        heldOffline.increment();
+        session.getOperator()
+            .getSelfConfig(DeviceConfigKey.productId)
+            .defaultIfEmpty("")
+            .onErrorReturn("")
+            .subscribe(productId -> {
+                long holdTime = properties.getHoldTime(productId, flaps[0]);
+                if (holdTime > properties.getGracePeriod().toMillis()) {
+                    penalized.increment();
+                    log.debug("device [{}] flapping {} times, offline held for {}ms", session.getDeviceId(), flaps[0], holdTime);
+                }
+                pending.schedule(holdTime);
+            });
+    }
+
+    /**
+     * 设备上线,如果设备还在延迟下线中则取消下线
+     *
+     * @param deviceId 设备ID
+     * @return 是否取消了下线, 取消时不需要再发送上线事件
+     */
+    boolean online(String deviceId) {
+        if (!properties.isEnabled()) {
+            return false;
+        }
+        FlapState state = states.get(deviceId);
+        if (state == null) {
+            return false;
+        }
+        synchronized (state) {
+            PendingOffline pending = state.pending;
+            state.pending = null;
+            if (pending == null || !pending.cancel()) {
+                return false;
+            }
+            state.flap(System.currentTimeMillis(), properties.getFlapWindow().toMillis());
+        }
+        //下线和上线事件都被抑制
+        suppressedEvents.add(2);
+        return true;
+    }
+
+    /**
+     * 立即执行全部延迟中的下线
+     */
+    void flush() {
+        for (FlapState state : states.values()) {
+            PendingOffline pending;
+            synchronized (state) {
+                pending = state.pending;
+            }
+            if (pending != null) {
+                pending.fire();
+            }
+        }
+    }
+
+    private void cleanup() {
+        long now = System.currentTimeMillis();
+        long window = properties.getFlapWindow().toMillis();
+        for (String deviceId : states.keySet()) {
+            states.computeIfPresent(deviceId, (key, state) -> {
+                synchronized (state) {
+                    return state.pending == null && now - state.lastFlapTime > window ? null : state;
+                }
+            });
+        }
+    }
+
+    Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("heldOffline", heldOffline.sum());
+        statistics.put("suppressedEvents", suppressedEvents.sum());
+        statistics.put("penalized", penalized.sum());
+        statistics.put("tracking", states.size());
+        return statistics;
+    }
+
+    @Override
+    public void dispose() {
+        cleaner.dispose();
+        flush();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return cleaner.isDisposed();
+    }
+
+    private class FlapState {
+        private PendingOffline pending;
+
+        private int flaps;
+
+        private long windowStart;
+
+        private long lastFlapTime;
+
+        private int getFlaps(long now) {
+            return now - windowStart > properties.getFlapWindow().toMillis() ? 0 : flaps;
+        }
+
+        private void flap(long now, long window) {
+            if (now - windowStart > window) {
+                windowStart = now;
+                flaps = 0;
+            }
+            flaps++;
+            lastFlapTime = now;
+        }
+    }
+
+    private static class PendingOffline {
+        private final FlapState state;
+
+        private final Runnable action;
+
+        private boolean done;
+
+        private Disposable timer;
+
+        private PendingOffline(FlapState state, Runnable action) {
+            this.state = state;
+            this.action = action;
+        }
+
+        private synchronized void schedule(long delay) {
+            if (done) {
+                return;
+            }
+            timer = Schedulers.parallel().schedule(this::fire, delay, TimeUnit.MILLISECONDS);
+        }
+
+        private synchronized boolean cancel() {
+            if (done) {
+                return false;
+            }
+            done = true;
+            if (timer != null) {
+                timer.dispose();
+            }
+            return true;
+        }
+
+        private void fire() {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+            }
+            synchronized (state) {
+                if (state.pending == this) {
+                    state.pending = null;
+                }
+            }
+            action.run();
+        }
+    }
+}
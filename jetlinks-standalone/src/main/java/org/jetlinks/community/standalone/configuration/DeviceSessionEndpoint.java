@@ -0,0 +1,40 @@
+package org.jetlinks.community.standalone.configuration;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 设备会话统计: /actuator/devicesessions
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+@Endpoint(id = "devicesessions")
+public class DeviceSessionEndpoint {
+
+    private final DefaultDeviceSessionManager sessionManager;
+
+    public DeviceSessionEndpoint(DefaultDeviceSessionManager sessionManager) {
+        this.sessionManager = sessionManager;
+    }
+
+    @ReadOperation
+    public Map<String, Object> sessions() {
+        List<DeviceSessionStore.MemoryUsage> usages = sessionManager.getMemoryUsage();
+        long estimatedBytes = 0;
+        for (DeviceSessionStore.MemoryUsage usage : usages) {
+            estimatedBytes += usage.getEstimatedBytes();
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("total", sessionManager.getSessionCount());
+        result.put("estimatedBytes", estimatedBytes);
+        result.put("usages", usages);
+        result.put("flapDamping", sessionManager.getFlapStatistics());
+        result.put("scheduleJobs", sessionManager.getScheduleJobStatistics());
+        return result;
+    }
+}
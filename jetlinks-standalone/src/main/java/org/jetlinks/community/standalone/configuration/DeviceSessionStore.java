@@ -0,0 +1,215 @@
+package org.jetlinks.community.standalone.configuration;
+
+import lombok.Getter;
+import org.jetlinks.core.server.session.DeviceSession;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 设备会话存储,按设备ID分片存储会话,会话ID与设备ID不同时才记录会话ID索引.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+class DeviceSessionStore {
+
+    //ConcurrentHashMap节点(对象头,hash,key,value,next)
+    static final int NODE_BYTES = 32;
+
+    //哈希表槽位,按0.75的负载因子计算
+    static final int SLOT_BYTES = 6;
+
+    private final Map<String, DeviceSession>[] shards;
+
+    private final int mask;
+
+    //会话ID -> 设备ID
+    private final Map<String, String> sessionIdIndex = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("all")
+    DeviceSessionStore(int shardCount) {
+        int size = Integer.highestOneBit(Math.max(shardCount - 1, 1)) << 1;
+        this.mask = size - 1;
+        this.shards = new Map[size];
+        for (int i = 0; i < size; i++) {
+            shards[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    private Map<String, DeviceSession> shard(String deviceId) {
+        int hash = deviceId.hashCode();
+        return shards[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    /**
+     * 根据设备ID或者会话ID获取会话
+     */
+    DeviceSession get(String idOrDeviceId) {
+        DeviceSession session = shard(idOrDeviceId).get(idOrDeviceId);
+        if (session != null) {
+            return session;
+        }
+        String deviceId = sessionIdIndex.get(idOrDeviceId);
+        if (deviceId == null) {
+            return null;
+        }
+        session = shard(deviceId).get(deviceId);
+        return session != null && session.getId().equals(idOrDeviceId) ? session : null;
+    }
+
+    /**
+     * 保存会话
+     *
+     * @return 设备之前的会话
+     */
+    DeviceSession put(DeviceSession session) {
+        String deviceId = session.getDeviceId();
+        DeviceSession old = shard(deviceId).put(deviceId, session);
+        if (old != null && !old.getId().equals(deviceId)) {
+            sessionIdIndex.remove(old.getId(), deviceId);
+        }
+        if (!session.getId().equals(deviceId)) {
+            sessionIdIndex.put(session.getId(), deviceId);
+        }
+        return old;
+    }
+
+    /**
+     * 根据设备ID或者会话ID删除会话
+     *
+     * @return 被删除的会话
+     */
+    DeviceSession remove(String idOrDeviceId) {
+        DeviceSession session = shard(idOrDeviceId).remove(idOrDeviceId);
+        if (session != null) {
+            if (!session.getId().equals(session.getDeviceId())) {
+                sessionIdIndex.remove(session.getId(), session.getDeviceId());
+            }
+            return session;
+        }
+        String deviceId = sessionIdIndex.remove(idOrDeviceId);
+        if (deviceId == null) {
+            return null;
+        }
+        Map<String, DeviceSession> shard = shard(deviceId);
+        session = shard.get(deviceId);
+        if (session != null && session.getId().equals(idOrDeviceId) && shard.remove(deviceId, session)) {
+            return session;
+        }
+        return null;
+    }
+
+    /**
+     * @return 全部会话, 每个分片按弱一致性遍历, 不会重复返回同一个会话
+     */
+    Iterable<DeviceSession> values() {
+        return () -> new Iterator<DeviceSession>() {
+            private int index;
+
+            private Iterator<DeviceSession> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && index < shards.length) {
+                    current = shards[index++].values().iterator();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public DeviceSession next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    /**
+     * 按分片删除全部会话,用于停止服务
+     *
+     * @return 每个分片中被删除的会话
+     */
+    List<List<DeviceSession>> removeAll() {
+        List<List<DeviceSession>> removed = new ArrayList<>(shards.length);
+        for (Map<String, DeviceSession> shard : shards) {
+            List<DeviceSession> sessions = new ArrayList<>(shard.size());
+            for (Iterator<DeviceSession> iterator = shard.values().iterator(); iterator.hasNext(); ) {
+                DeviceSession session = iterator.next();
+                iterator.remove();
+                if (!session.getId().equals(session.getDeviceId())) {
+                    sessionIdIndex.remove(session.getId(), session.getDeviceId());
+                }
+                sessions.add(session);
+            }
+            if (!sessions.isEmpty()) {
+                removed.add(sessions);
+            }
+        }
+        return removed;
+    }
+
+    int size() {
+        int size = 0;
+        for (Map<String, DeviceSession> shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    /**
+     * 按传输协议和会话类型统计会话数量以及会话索引估算占用的内存,用于容量规划.
+     * 不包含会话对象本身以及连接占用的内存.
+     *
+     * @return 内存占用统计
+     */
+    List<MemoryUsage> getMemoryUsage() {
+        Map<String, MemoryUsage> usages = new TreeMap<>();
+        for (DeviceSession session : values()) {
+            String transport = session.getTransport() == null ? "unknown" : session.getTransport().getId();
+            String type = session.getClass().getSimpleName();
+            if (type.isEmpty()) {
+                //匿名类
+                type = session.getClass().getSuperclass().getSimpleName();
+            }
+            String finalType = type;
+            MemoryUsage usage = usages.computeIfAbsent(transport + ":" + type, ignore -> new MemoryUsage(transport, finalType));
+            usage.sessions++;
+            usage.estimatedBytes += NODE_BYTES + SLOT_BYTES + stringBytes(session.getDeviceId());
+            if (!session.getId().equals(session.getDeviceId())) {
+                usage.sessionIdIndexes++;
+                usage.estimatedBytes += NODE_BYTES + SLOT_BYTES + stringBytes(session.getId());
+            }
+        }
+        return new ArrayList<>(usages.values());
+    }
+
+    //String对象(24) + char数组(16 + 2 * length),按8字节对齐
+    static long stringBytes(String str) {
+        return 24 + align(16 + 2L * str.length());
+    }
+
+    static long align(long size) {
+        return (size + 7) & ~7;
+    }
+
+    @Getter
+    public static class MemoryUsage {
+        private final String transport;
+
+        private final String type;
+
+        private long sessions;
+
+        private long sessionIdIndexes;
+
+        private long estimatedBytes;
+
+        MemoryUsage(String transport, String type) {
+            this.transport = transport;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.jetlinks.community.standalone.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 设备频繁上下线抑制配置
+ *
+ * @author zhouhao
+ * @see DeviceFlapDamper
+ * @since 1.0
+ */
+@Getter
+@Setter
+public class FlapDampingProperties {
+
+    private boolean enabled = false;
+
+    //设备断开后延迟下线的时间,在此期间重新连接则不产生上下线事件
+    private Duration gracePeriod = Duration.ofSeconds(10);
+
+    //在统计窗口内重连次数达到此值后,延迟时间按指数增长
+    private int flapThreshold = 3;
+
+    //重连次数统计窗口
+    private Duration flapWindow = Duration.ofMinutes(5);
+
+    //最大延迟下线时间
+    private Duration maxSuppression = Duration.ofMinutes(10);
+
+    //按产品单独配置,key为产品ID
+    private Map<String, ProductRule> products = new HashMap<>();
+
+    /**
+     * 获取下线延迟时间
+     *
+     * @param productId 产品ID
+     * @param flaps     统计窗口内的重连次数
+     * @return 延迟时间, 毫秒
+     */
+    long getHoldTime(String productId, int flaps) {
+        ProductRule rule = productId == null ? null : products.get(productId);
+        if (rule != null && Boolean.FALSE.equals(rule.getEnabled())) {
+            return 0;
+        }
+        long grace = (rule != null && rule.getGracePeriod() != null ? rule.getGracePeriod() : gracePeriod).toMillis();
+        int threshold = rule != null && rule.getFlapThreshold() != null ? rule.getFlapThreshold() : flapThreshold;
+        long max = (rule != null && rule.getMaxSuppression() != null ? rule.getMaxSuppression() : maxSuppression).toMillis();
+        if (flaps < threshold) {
+            return grace;
+        }
+        int exp = Math.min(flaps - threshold + 1, 20);
+        return Math.max(grace, Math.min(grace << exp, max));
+    }
+
+    @Getter
+    @Setter
+    public static class ProductRule {
+        private Boolean enabled;
+
+        private Duration gracePeriod;
+
+        private Integer flapThreshold;
+
+        private Duration maxSuppression;
+    }
+}
@@ -5,6 +5,7 @@ import io.vertx.core.Vertx;
 import io.vertx.core.VertxOptions;
 import lombok.extern.slf4j.Slf4j;
 import org.jetlinks.community.device.message.writer.TimeSeriesMessageWriterConnector;
+import org.jetlinks.community.device.timeseries.DevicePropertyRollupManager;
 import org.jetlinks.community.timeseries.TimeSeriesManager;
 import org.jetlinks.core.ProtocolSupports;
 import org.jetlinks.core.cluster.ClusterManager;
@@ -73,7 +74,13 @@ public class JetLinksConfiguration {
 
     @Bean
     public Vertx vertx(VertxOptions vertxOptions) {
-        return Vertx.vertx(vertxOptions);
+        Vertx vertx = Vertx.vertx(vertxOptions);
+        if (vertx.isNativeTransportEnabled()) {
+            log.info("vertx native transport enabled");
+        } else if (vertxOptions.getPreferNativeTransport()) {
+            log.warn("vertx native transport unavailable, fallback to nio", vertx.unavailableNativeTransportCause());
+        }
+        return vertx;
     }
 
     @Bean
@@ -109,8 +116,10 @@ public class JetLinksConfiguration {
 
     @Bean
     @ConditionalOnProperty(prefix = "device.message.writer.time-series", name = "enabled", havingValue = "true", matchIfMissing = true)
-    public TimeSeriesMessageWriterConnector timeSeriesMessageWriterConnector(TimeSeriesManager timeSeriesManager, DeviceRegistry registry) {
-        return new TimeSeriesMessageWriterConnector(timeSeriesManager, registry);
+    public TimeSeriesMessageWriterConnector timeSeriesMessageWriterConnector(TimeSeriesManager timeSeriesManager,
+                                                                             DeviceRegistry registry,
+                                                                             DevicePropertyRollupManager rollupManager) {
+        return new TimeSeriesMessageWriterConnector(timeSeriesManager, registry, rollupManager);
     }
 
     @Bean(destroyMethod = "shutdown")
@@ -164,6 +173,11 @@ public class JetLinksConfiguration {
     }
 
 
+    @Bean
+    public DeviceSessionEndpoint deviceSessionEndpoint(DefaultDeviceSessionManager sessionManager) {
+        return new DeviceSessionEndpoint(sessionManager);
+    }
+
     @Bean(initMethod = "init", destroyMethod = "shutdown")
     public DefaultDeviceSessionManager deviceSessionManager(JetLinksProperties properties,
                                                             GatewayServerMonitor monitor,
@@ -175,6 +189,11 @@ public class JetLinksConfiguration {
         sessionManager.setExecutorService(executorService);
         sessionManager.setGatewayServerMonitor(monitor);
         sessionManager.setRegistry(registry);
+        sessionManager.setSessionCheckInterval(properties.getSession().getCheckInterval());
+        sessionManager.setShutdownTimeout(properties.getSession().getShutdownTimeout());
+        sessionManager.setScheduleJobQueueSize(properties.getSession().getJobQueueSize());
+        sessionManager.setScheduleJobDrainBudget(properties.getSession().getJobDrainBudget());
+        sessionManager.setFlapDamping(properties.getSession().getFlapDamping());
         Optional.ofNullable(properties.getTransportLimit()).ifPresent(sessionManager::setTransportLimits);
 
         sessionManager.onRegister()
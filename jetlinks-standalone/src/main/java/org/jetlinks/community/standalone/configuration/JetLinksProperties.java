@@ -7,6 +7,7 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 
 import javax.annotation.PostConstruct;
 import java.net.InetAddress;
+import java.time.Duration;
 import java.util.Map;
 
 @ConfigurationProperties(prefix = "jetlinks")
@@ -20,6 +21,8 @@ public class JetLinksProperties {
 
     private Map<String, Long> transportLimit;
 
+    private SessionProperties session = new SessionProperties();
+
     @PostConstruct
     @SneakyThrows
     public void init() {
@@ -27,4 +30,23 @@ public class JetLinksProperties {
             serverId = InetAddress.getLocalHost().getHostName();
         }
     }
+
+    @Getter
+    @Setter
+    public static class SessionProperties {
+        //设备会话检查间隔
+        private Duration checkInterval = Duration.ofSeconds(30);
+
+        //停止服务时等待设备全部下线的最大时间
+        private Duration shutdownTimeout = Duration.ofSeconds(20);
+
+        //延迟任务队列最大长度
+        private int jobQueueSize = 100000;
+
+        //每次检查最多执行的延迟任务数量
+        private int jobDrainBudget = 10000;
+
+        //设备频繁上下线抑制
+        private FlapDampingProperties flapDamping = new FlapDampingProperties();
+    }
 }
@@ -0,0 +1,139 @@
+package org.jetlinks.community.standalone.configuration;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 会话延迟任务队列,多个线程添加任务,由单个线程定时执行.
+ * <p>
+ * 队列有最大长度,队列已满时由添加任务的线程直接执行,每次执行最多执行指定数量的任务,
+ * 剩余的任务在下一次执行.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+@Slf4j
+class SessionJobQueue {
+
+    private final Queue<Job> queue = new ConcurrentLinkedQueue<>();
+
+    //ConcurrentLinkedQueue.size()需要遍历,单独计数
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final int maxSize;
+
+    private final int drainBudget;
+
+    //队列已满时直接执行的任务数量
+    private final LongAdder overflow = new LongAdder();
+
+    private final LongAdder executed = new LongAdder();
+
+    //最近一次执行的任务从添加到执行的最大等待时间
+    private volatile long lastMaxLatency;
+
+    //最近一次执行的耗时
+    private volatile long lastDrainTime;
+
+    SessionJobQueue(int maxSize, int drainBudget) {
+        this.maxSize = maxSize <= 0 ? Integer.MAX_VALUE : maxSize;
+        this.drainBudget = drainBudget <= 0 ? Integer.MAX_VALUE : drainBudget;
+    }
+
+    /**
+     * 添加任务,可在任意线程中调用
+     *
+     * @param runnable 任务
+     */
+    void add(Runnable runnable) {
+        for (; ; ) {
+            int current = size.get();
+            if (current >= maxSize) {
+                overflow.increment();
+                run(runnable);
+                return;
+            }
+            if (size.compareAndSet(current, current + 1)) {
+                break;
+            }
+        }
+        queue.add(new Job(runnable, System.currentTimeMillis()));
+    }
+
+    /**
+     * 执行队列中的任务,只能由单个线程调用
+     *
+     * @return 执行的任务数量
+     */
+    int drain() {
+        long start = System.currentTimeMillis();
+        long maxLatency = 0;
+        int count = 0;
+        Job job;
+        while (count < drainBudget && (job = queue.poll()) != null) {
+            size.decrementAndGet();
+            maxLatency = Math.max(maxLatency, start - job.time);
+            run(job.runnable);
+            count++;
+        }
+        executed.add(count);
+        if (count > 0) {
+            lastMaxLatency = maxLatency;
+            lastDrainTime = System.currentTimeMillis() - start;
+        }
+        if (count >= drainBudget && log.isDebugEnabled()) {
+            log.debug("session job queue drain budget exhausted, pending jobs:{}", size.get());
+        }
+        return count;
+    }
+
+    /**
+     * 执行全部任务
+     */
+    void drainAll() {
+        Job job;
+        while ((job = queue.poll()) != null) {
+            size.decrementAndGet();
+            run(job.runnable);
+        }
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("pending", size.get());
+        statistics.put("executed", executed.sum());
+        statistics.put("overflow", overflow.sum());
+        statistics.put("lastMaxLatency", lastMaxLatency);
+        statistics.put("lastDrainTime", lastDrainTime);
+        return statistics;
+    }
+
+    private void run(Runnable runnable) {
+        try {
+            runnable.run();
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    private static class Job {
+        private final Runnable runnable;
+
+        private final long time;
+
+        private Job(Runnable runnable, long time) {
+            this.runnable = runnable;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.jetlinks.community.standalone.configuration;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * 哈希时间轮,按到期时间将数据放入对应的槽中,推进时只处理已经到期的槽.
+ * <p>
+ * 任意线程都可以调用{@link SessionTimingWheel#schedule(Object, long)},
+ * {@link SessionTimingWheel#advance(long, Consumer)}只能由单个线程调用.
+ *
+ * @author zhouhao
+ * @since 1.0
+ */
+class SessionTimingWheel<T> {
+
+    private final long tickDuration;
+
+    private final int mask;
+
+    private final Queue<Entry<T>>[] wheel;
+
+    //新加入的数据,推进时间轮时再放入对应的槽中
+    private final Queue<Entry<T>> pending = new ConcurrentLinkedQueue<>();
+
+    private final long startTime;
+
+    //下一个需要处理的槽
+    private long tick;
+
+    @SuppressWarnings("all")
+    SessionTimingWheel(Duration tickDuration, int ticksPerWheel) {
+        int size = Integer.highestOneBit(Math.max(ticksPerWheel - 1, 1)) << 1;
+        this.tickDuration = Math.max(tickDuration.toMillis(), 1);
+        this.mask = size - 1;
+        this.wheel = new Queue[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+        this.startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 添加数据,在到期时间之后推进时间轮时返回
+     *
+     * @param value    数据
+     * @param deadline 到期时间
+     */
+    void schedule(T value, long deadline) {
+        pending.add(new Entry<>(value, deadline));
+    }
+
+    /**
+     * 推进时间轮到指定时间
+     *
+     * @param now     当前时间
+     * @param expired 到期的数据
+     */
+    void advance(long now, Consumer<T> expired) {
+        for (Entry<T> entry = pending.poll(); entry != null; entry = pending.poll()) {
+            //已经过了到期时间的放入下一个处理的槽中
+            long ticks = Math.max((entry.deadline - startTime) / tickDuration, tick);
+            wheel[(int) (ticks & mask)].add(entry);
+        }
+        //只处理已经完整经过的槽,槽中本轮的数据都已经到期
+        long currentTick = (now - startTime) / tickDuration;
+        List<Entry<T>> remaining = new ArrayList<>();
+        for (; tick < currentTick; tick++) {
+            Queue<Entry<T>> bucket = wheel[(int) (tick & mask)];
+            for (Entry<T> entry = bucket.poll(); entry != null; entry = bucket.poll()) {
+                if (entry.deadline <= now) {
+                    expired.accept(entry.value);
+                } else {
+                    //还需要更多轮
+                    remaining.add(entry);
+                }
+            }
+            bucket.addAll(remaining);
+            remaining.clear();
+        }
+    }
+
+    private static class Entry<T> {
+        private final T value;
+
+        private final long deadline;
+
+        private Entry(T value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+    }
+}